@@ -0,0 +1,58 @@
+package com.example.familytree.benchmarks;
+
+import com.example.familytree.services.FamilyTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of adding a person with both parents to a family tree of a given size.
+ * The tree consists of two clans, each descending from a single founder, so parents picked
+ * from the youngest generation have ancestors with huge descendant subtrees.
+ * The cost must stay flat when the tree grows, as the cycle check must not depend on the descendants' count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AddPersonBenchmark {
+	private static final int MAX_AGE = 100;
+	private static final int BRANCHING = 5;
+
+	@Param({"1000", "100000", "1000000"})
+	private int treeSize;
+
+	private FamilyTree familyTree;
+	private String parent1;
+	private String parent2;
+	private long counter;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		familyTree = new FamilyTree(new NoOpDBService(), MAX_AGE);
+		parent1 = addClan("A", treeSize / 2);
+		parent2 = addClan("B", treeSize / 2);
+	}
+
+	@Benchmark
+	public void addPersonWithParents() {
+		familyTree.addPerson("Child" + counter++, 0, parent1, parent2, null);
+	}
+
+	/**
+	 * Adds a clan where the person i has the parent (i - 1) / BRANCHING.
+	 * Returns the name of the last (the youngest) added person.
+	 */
+	private String addClan(String prefix, int size) {
+		int depth = 0;
+		int levelEnd = 1;
+		for (int i = 0; i < size; i++) {
+			if (i == levelEnd) {
+				depth++;
+				levelEnd = levelEnd * BRANCHING + 1;
+			}
+			String parent = i == 0 ? null : prefix + (i - 1) / BRANCHING;
+			familyTree.addPerson(prefix + i, MAX_AGE - 10 * depth, parent, null, null);
+		}
+		return prefix + (size - 1);
+	}
+}
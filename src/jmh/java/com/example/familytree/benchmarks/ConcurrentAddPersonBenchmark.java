@@ -0,0 +1,53 @@
+package com.example.familytree.benchmarks;
+
+import com.example.familytree.services.FamilyTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the throughput of adding persons to unrelated families from multiple threads.
+ * Every thread grows its own family, where both parents have a couple of thousand ancestors, so most of the time
+ * is spent in the validation that runs under the family component lock only.
+ * Run it with a few thread counts (e.g. '-t 1', '-t 4'); the throughput should grow with the cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ConcurrentAddPersonBenchmark {
+	private static final int MAX_AGE = 100;
+	private static final int GENERATIONS = 11;
+
+	private final AtomicInteger families = new AtomicInteger();
+	private FamilyTree familyTree;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		familyTree = new FamilyTree(new NoOpDBService(), MAX_AGE);
+	}
+
+	@State(Scope.Thread)
+	public static class Family {
+		private String prefix;
+		private long counter;
+
+		/**
+		 * Adds full pedigrees of GENERATIONS generations ending with the persons "Parent1" and "Parent2",
+		 * so that the cycle check of their children compares two big sets of ancestors.
+		 */
+		@Setup(Level.Trial)
+		public void setUp(ConcurrentAddPersonBenchmark benchmark) {
+			prefix = "Family" + benchmark.families.getAndIncrement() + "-";
+			GenealogyGenerator.pedigrees(Arrays.asList(prefix + "Parent1", prefix + "Parent2"), GENERATIONS, MAX_AGE,
+					false, (name, age, parent1, parent2) -> benchmark.familyTree.addPerson(name, age, parent1, parent2, null));
+		}
+	}
+
+	@Benchmark
+	public void addPersonToOwnFamily(Family family) {
+		familyTree.addPerson(family.prefix + "Child" + family.counter++, 0,
+				family.prefix + "Parent1", family.prefix + "Parent2", null);
+	}
+}
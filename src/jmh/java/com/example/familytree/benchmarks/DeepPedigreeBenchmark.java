@@ -0,0 +1,45 @@
+package com.example.familytree.benchmarks;
+
+import com.example.familytree.services.FamilyTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures adding a child of two parents that both have a full pedigree of a given number of generations,
+ * so the cycle check compares two sets of 2^generations ancestors that share nothing.
+ * The parents already have a child, so both pedigrees are in the same family component, and the check
+ * can't be skipped on the grounds of the parents being in unrelated families.
+ * With interleaved, the pedigrees are added a person of each at a time, so the ancestors' sequence numbers
+ * of both parents interleave, and their sets have to be compared word by word (the worst case);
+ * otherwise, each pedigree gets a range of numbers of its own, and the sets differ at the top of their tries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DeepPedigreeBenchmark {
+	private static final int MAX_AGE = 100;
+
+	@Param({"8", "11", "14"})
+	private int generations;
+
+	@Param({"false", "true"})
+	private boolean interleaved;
+
+	private FamilyTree familyTree;
+	private long counter;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		familyTree = new FamilyTree(new NoOpDBService(), MAX_AGE);
+		GenealogyGenerator.pedigrees(Arrays.asList("Father", "Mother"), generations, MAX_AGE, interleaved,
+				(name, age, parent1, parent2) -> familyTree.addPerson(name, age, parent1, parent2, null));
+		familyTree.addPerson("FirstChild", 0, "Father", "Mother", null);
+	}
+
+	@Benchmark
+	public void addChild() {
+		familyTree.addPerson("Child" + counter++, 0, "Father", "Mother", null);
+	}
+}
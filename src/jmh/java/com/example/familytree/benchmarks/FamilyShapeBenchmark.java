@@ -0,0 +1,49 @@
+package com.example.familytree.benchmarks;
+
+import com.example.familytree.services.FamilyTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of adding a person to family trees of different shapes (see GenealogyGenerator):
+ * a deep chain, a wide family, a balanced tree and random generations with spouses married in.
+ * A new person is a child of a random person of the youngest generation and of a spouse without ancestors,
+ * so that the cycle check has two parents to compare.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FamilyShapeBenchmark {
+
+	@Param({"CHAIN", "WIDE", "BALANCED", "RANDOM"})
+	private GenealogyGenerator.Shape shape;
+
+	@Param({"1000", "100000"})
+	private int treeSize;
+
+	private FamilyTree familyTree;
+	private String[] parents;
+	private String spouse;
+	private long counter;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		// a year more for the spouse and the new persons below the youngest generation
+		int maxAge = GenealogyGenerator.maxAge(shape, treeSize) + 2;
+		familyTree = new FamilyTree(new NoOpDBService(), maxAge);
+		List<String> youngest = GenealogyGenerator.generate(shape, treeSize, 42, "Person",
+				(name, age, parent1, parent2) -> familyTree.addPerson(name, age + 2, parent1, parent2, null));
+		parents = youngest.toArray(new String[0]);
+		spouse = "Spouse";
+		familyTree.addPerson(spouse, maxAge, null, null, null);
+	}
+
+	@Benchmark
+	public void addPerson() {
+		String parent = parents[ThreadLocalRandom.current().nextInt(parents.length)];
+		familyTree.addPerson("Child" + counter++, 0, parent, spouse, null);
+	}
+}
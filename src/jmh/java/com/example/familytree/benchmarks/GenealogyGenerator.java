@@ -0,0 +1,128 @@
+package com.example.familytree.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic genealogies of a given shape and size. Persons are generated after their parents,
+ * so they can be added to a family tree in the given order, and they pass its validation:
+ * a person is older than its children, and the parents of a person never have a common ancestor.
+ * The oldest generation gets the age maxAge(shape, size), and every next generation is a year younger.
+ */
+public final class GenealogyGenerator {
+
+	public enum Shape {
+		/**
+		 * Every person is the only child of the previous one: the deepest tree of a size.
+		 */
+		CHAIN,
+		/**
+		 * A founder and its children: the widest tree of a size.
+		 */
+		WIDE,
+		/**
+		 * A founder whose descendants form a complete binary tree: every person has two children.
+		 */
+		BALANCED,
+		/**
+		 * Generations roughly doubling in size, where every person has a parent in the previous generation
+		 * and most of them have a second parent married into the family (a person without ancestors).
+		 */
+		RANDOM
+	}
+
+	/**
+	 * Receives the generated persons; the parents' names are null for missing parents.
+	 */
+	@FunctionalInterface
+	public interface PersonSink {
+		void add(String name, int age, String parent1, String parent2);
+	}
+
+	private static final double SECOND_PARENT_PROBABILITY = 0.8;
+
+	private GenealogyGenerator() {
+	}
+
+	/**
+	 * Returns the max age a family tree must allow for a genealogy of a shape and size.
+	 */
+	public static int maxAge(Shape shape, int size) {
+		switch (shape) {
+			case CHAIN:
+				return size - 1;
+			case WIDE:
+				return 1;
+			default:
+				// the generations at least double in size
+				return 32 - Integer.numberOfLeadingZeros(size);
+		}
+	}
+
+	/**
+	 * Generates a genealogy of a shape with a given number of persons, named prefix + index.
+	 * Returns the names of the persons of the youngest generation, which is the last one generated.
+	 */
+	public static List<String> generate(Shape shape, int size, long seed, String prefix, PersonSink sink) {
+		Random random = new Random(seed);
+		int age = maxAge(shape, size);
+		List<String> generation = Collections.singletonList(prefix + 0);
+		sink.add(prefix + 0, age, null, null);
+		int index = 1;
+
+		while (index < size) {
+			List<String> parents = generation;
+			generation = new ArrayList<>();
+			age--;
+			int generationSize = shape == Shape.CHAIN ? 1 : shape == Shape.WIDE ? size - index : 2 * parents.size();
+			for (int i = 0; i < generationSize && index < size; i++) {
+				String parent1;
+				String parent2 = null;
+				switch (shape) {
+					case BALANCED:
+						parent1 = parents.get(i / 2);
+						break;
+					case RANDOM:
+						parent1 = parents.get(random.nextInt(parents.size()));
+						if (index + 1 < size && random.nextDouble() < SECOND_PARENT_PROBABILITY) {
+							// a spouse of the parent's generation, married into the family
+							parent2 = prefix + index++;
+							sink.add(parent2, age + 1, null, null);
+						}
+						break;
+					default:
+						parent1 = parents.get(0);
+				}
+				String name = prefix + index++;
+				sink.add(name, age, parent1, parent2);
+				generation.add(name);
+			}
+		}
+		return generation;
+	}
+
+	/**
+	 * Generates full pedigrees of a given number of generations ending with persons of given names:
+	 * each person, its two parents, their four parents and so on. The ancestors are named
+	 * name + generation + "-" + index, where the generation 0 is the oldest one, of the age maxAge.
+	 * The pedigrees are generated one after another, or a person of each at a time if they're interleaved.
+	 */
+	public static void pedigrees(List<String> names, int generations, int maxAge, boolean interleaved, PersonSink sink) {
+		int size = (1 << generations) - 1;
+		for (int k = 0; k < names.size() * size; k++) {
+			String name = names.get(interleaved ? k % names.size() : k / size);
+			int index = interleaved ? k / names.size() : k % size;
+			int generation = 0;
+			while (index >= 1 << (generations - 1 - generation)) {
+				index -= 1 << (generations - 1 - generation);
+				generation++;
+			}
+			String parent1 = generation == 0 ? null : name + (generation - 1) + "-" + (2 * index);
+			String parent2 = generation == 0 ? null : name + (generation - 1) + "-" + (2 * index + 1);
+			String person = generation == generations - 1 ? name : name + generation + "-" + index;
+			sink.add(person, maxAge - generation, parent1, parent2);
+		}
+	}
+}
@@ -0,0 +1,312 @@
+package com.example.familytree.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A closed-loop HTTP load test of a running service: every connection sends a request, waits for the response
+ * and sends the next one, so the latency includes the time a request waits for a server thread.
+ * Unlike the JMH benchmarks, it measures the whole REST layer, e.g. the Tomcat pool against the virtual threads
+ * (see VirtualThreadsConfig). The connections are non-blocking and spread over a few selector threads,
+ * so tens of thousands of them don't need a client thread each (the open files limit must allow them, see ulimit -n).
+ * A write is a POST of a new person, which blocks on the database service; the dummy one blocks for
+ * familyTree.db.dummy.latencyMillis with the write-behind queue disabled. A read is a GET of a given path.
+ * Usage: LoadTest [host=localhost] [port=8080] [connections=10000] [threads=4] [warmupSeconds=10] [seconds=30]
+ * [writePercent=10] [path=/familyTree?order=ASC&limit=100], or './gradlew loadTest -PloadTestArgs="..."'.
+ * It prints the throughput and the latency percentiles of the measured period; compare e.g.:
+ * java -jar familytree.jar --familyTree.db.writeBehind.enabled=false --familyTree.db.dummy.latencyMillis=50
+ * java -jar familytree.jar --spring.profiles.active=virtualThreads (the same, on Java 21)
+ */
+public class LoadTest {
+	private static final byte[] HEADER_END = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (separator < 0) {
+				throw new IllegalArgumentException("Argument " + arg + " isn't a key=value pair");
+			}
+			options.put(arg.substring(0, separator), arg.substring(separator + 1));
+		}
+		InetSocketAddress address = new InetSocketAddress(options.getOrDefault("host", "localhost"),
+				Integer.parseInt(options.getOrDefault("port", "8080")));
+		int connections = Integer.parseInt(options.getOrDefault("connections", "10000"));
+		int threads = Integer.parseInt(options.getOrDefault("threads", "4"));
+		long warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("warmupSeconds", "10")));
+		long measuredNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("seconds", "30")));
+		int writePercent = Integer.parseInt(options.getOrDefault("writePercent", "10"));
+		String path = options.getOrDefault("path", "/familyTree?order=ASC&limit=100");
+		// the names of the persons written by a run start with the run's prefix, so they're new to the service
+		String run = Long.toString(System.currentTimeMillis(), 36);
+
+		long start = System.nanoTime();
+		List<Worker> workers = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			int workerConnections = connections / threads + (i < connections % threads ? 1 : 0);
+			workers.add(new Worker(run + "-" + i, address, workerConnections, path, writePercent,
+					start + warmupNanos, start + warmupNanos + measuredNanos));
+		}
+		for (Worker worker : workers) {
+			worker.start();
+		}
+		for (Worker worker : workers) {
+			worker.join();
+		}
+
+		Recorder total = new Recorder();
+		for (Worker worker : workers) {
+			total.add(worker.recorder);
+		}
+		long[] latencies = total.sorted();
+		double seconds = measuredNanos / 1e9;
+		System.out.printf("connections: %d, requests: %d (%.0f/s), errors: %d%n",
+				connections, latencies.length, latencies.length / seconds, total.errors);
+		if (latencies.length > 0) {
+			System.out.printf("latency ms: p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+					percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+					percentile(latencies, 0.999), latencies[latencies.length - 1] / 1e6);
+		}
+	}
+
+	private static double percentile(long[] sorted, double percentile) {
+		return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)] / 1e6;
+	}
+
+	/**
+	 * Latencies in nanoseconds, in a growable array, and the number of failed requests.
+	 */
+	private static class Recorder {
+		long[] latencies = new long[1024];
+		int size;
+		long errors;
+
+		void record(long latency) {
+			if (size == latencies.length) {
+				latencies = Arrays.copyOf(latencies, size * 2);
+			}
+			latencies[size++] = latency;
+		}
+
+		void add(Recorder other) {
+			for (int i = 0; i < other.size; i++) {
+				record(other.latencies[i]);
+			}
+			errors += other.errors;
+		}
+
+		long[] sorted() {
+			long[] sorted = Arrays.copyOf(latencies, size);
+			Arrays.sort(sorted);
+			return sorted;
+		}
+	}
+
+	/**
+	 * A selector thread running its share of the connections until the end of the measured period.
+	 */
+	private static class Worker extends Thread {
+		final InetSocketAddress address;
+		final int connections;
+		final String path;
+		final int writePercent;
+		final long measureFrom;
+		final long measureTo;
+		final Recorder recorder = new Recorder();
+		int written;
+
+		Worker(String id, InetSocketAddress address, int connections, String path, int writePercent,
+			   long measureFrom, long measureTo) {
+			super("load-test-" + id);
+			this.address = address;
+			this.connections = connections;
+			this.path = path;
+			this.writePercent = writePercent;
+			this.measureFrom = measureFrom;
+			this.measureTo = measureTo;
+		}
+
+		@Override
+		public void run() {
+			try (Selector selector = Selector.open()) {
+				for (int i = 0; i < connections; i++) {
+					connect(selector);
+				}
+				while (System.nanoTime() < measureTo) {
+					selector.select(100);
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						Connection connection = (Connection) key.attachment();
+						try {
+							if (key.isConnectable()) {
+								connection.channel.finishConnect();
+								send(key, connection);
+							} else if (key.isWritable()) {
+								write(key, connection);
+							} else if (key.isReadable()) {
+								read(key, connection);
+							}
+						} catch (IOException e) {
+							// refused or reset under load; it counts as a failed request and the connection is reopened
+							fail(key, connection);
+							connect(selector);
+						}
+					}
+				}
+				for (SelectionKey key : selector.keys()) {
+					key.channel().close();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		private void connect(Selector selector) throws IOException {
+			SocketChannel channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			channel.connect(address);
+			channel.register(selector, SelectionKey.OP_CONNECT, new Connection(channel));
+		}
+
+		private void send(SelectionKey key, Connection connection) throws IOException {
+			String request;
+			if (ThreadLocalRandom.current().nextInt(100) < writePercent) {
+				String body = "{\"name\": \"" + getName() + "-" + written++ + "\", \"age\": "
+						+ ThreadLocalRandom.current().nextInt(100) + "}";
+				request = "POST /familyTree HTTP/1.1\r\nHost: " + address.getHostString()
+						+ "\r\nContent-Type: application/json;charset=UTF-8\r\nContent-Length: "
+						+ body.getBytes(StandardCharsets.UTF_8).length + "\r\n\r\n" + body;
+			} else {
+				request = "GET " + path + " HTTP/1.1\r\nHost: " + address.getHostString() + "\r\n\r\n";
+			}
+			connection.request = ByteBuffer.wrap(request.getBytes(StandardCharsets.UTF_8));
+			connection.response.clear();
+			connection.sentAt = System.nanoTime();
+			write(key, connection);
+		}
+
+		private void write(SelectionKey key, Connection connection) throws IOException {
+			connection.channel.write(connection.request);
+			key.interestOps(connection.request.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+		}
+
+		private void read(SelectionKey key, Connection connection) throws IOException {
+			if (!connection.response.hasRemaining()) {
+				ByteBuffer grown = ByteBuffer.allocate(connection.response.capacity() * 2);
+				connection.response.flip();
+				grown.put(connection.response);
+				connection.response = grown;
+			}
+			if (connection.channel.read(connection.response) < 0) {
+				throw new IOException("Connection closed");
+			}
+			int status = connection.complete();
+			if (status == 0) {
+				return;
+			}
+			long now = System.nanoTime();
+			if (connection.sentAt >= measureFrom && now <= measureTo) {
+				if (status >= 400) {
+					recorder.errors++;
+				} else {
+					recorder.record(now - connection.sentAt);
+				}
+			}
+			if (connection.closing) {
+				// Tomcat closes a keep-alive connection after 100 requests by default
+				key.cancel();
+				connection.channel.close();
+				connect(key.selector());
+			} else {
+				send(key, connection);
+			}
+		}
+
+		private void fail(SelectionKey key, Connection connection) {
+			if (connection.sentAt >= measureFrom) {
+				recorder.errors++;
+			}
+			key.cancel();
+			try {
+				connection.channel.close();
+			} catch (IOException e) {
+				// it's being reopened anyway
+			}
+		}
+	}
+
+	/**
+	 * A keep-alive connection with its request in flight and the response read so far.
+	 */
+	private static class Connection {
+		final SocketChannel channel;
+		ByteBuffer request;
+		ByteBuffer response = ByteBuffer.allocate(4096);
+		long sentAt;
+		boolean closing;
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		/**
+		 * Returns the status of the response if it's been read completely, 0 otherwise.
+		 * The body is delimited by the Content-Length header, or by the last chunk of a chunked body.
+		 * The server may close the connection after the response (see closing).
+		 */
+		int complete() {
+			byte[] bytes = response.array();
+			int length = response.position();
+			int headerEnd = indexOf(bytes, 0, length, HEADER_END);
+			if (headerEnd < 0) {
+				return 0;
+			}
+			String headers = new String(bytes, 0, headerEnd, StandardCharsets.US_ASCII).toLowerCase();
+			int bodyStart = headerEnd + HEADER_END.length;
+			int contentLength = headers.indexOf("\r\ncontent-length:");
+			if (contentLength >= 0) {
+				int valueStart = contentLength + "\r\ncontent-length:".length();
+				int valueEnd = headers.indexOf("\r\n", valueStart);
+				int bodyLength = Integer.parseInt(headers.substring(valueStart, valueEnd < 0 ? headers.length() : valueEnd).trim());
+				if (length - bodyStart < bodyLength) {
+					return 0;
+				}
+			} else if (headers.contains("\r\ntransfer-encoding: chunked")
+					&& (length - bodyStart < LAST_CHUNK.length || indexOf(bytes, length - LAST_CHUNK.length, length, LAST_CHUNK) < 0)) {
+				return 0;
+			}
+			closing = headers.contains("\r\nconnection: close");
+			return Integer.parseInt(headers.substring("HTTP/1.1 ".length(), "HTTP/1.1 ".length() + 3));
+		}
+
+		private static int indexOf(byte[] bytes, int from, int to, byte[] pattern) {
+			for (int i = from; i <= to - pattern.length; i++) {
+				int j = 0;
+				while (j < pattern.length && bytes[i + j] == pattern[j]) {
+					j++;
+				}
+				if (j == pattern.length) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+}
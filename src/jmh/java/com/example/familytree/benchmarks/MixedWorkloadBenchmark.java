@@ -0,0 +1,66 @@
+package com.example.familytree.benchmarks;
+
+import com.example.familytree.services.FamilyTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the throughput of a mix of reads and writes on a random genealogy (see GenealogyGenerator).
+ * A write adds a child of a random person of the youngest generation and a spouse without ancestors;
+ * a read is one of getPerson, getAncestors up to the grandparents, and countPersons.
+ * Run it with a few thread counts (e.g. '-t 1', '-t 8', '-t 64'), or run './gradlew jmhScaling',
+ * which runs it with 1 to 64 threads and writes a JSON result file per thread count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MixedWorkloadBenchmark {
+	private static final int TREE_SIZE = 100000;
+
+	@Param({"1", "10", "50"})
+	private int writePercent;
+
+	private FamilyTree familyTree;
+	private String[] names;
+	private String[] parents;
+	private final AtomicLong counter = new AtomicLong();
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		GenealogyGenerator.Shape shape = GenealogyGenerator.Shape.RANDOM;
+		// a year more for the spouse and the new persons below the youngest generation
+		int maxAge = GenealogyGenerator.maxAge(shape, TREE_SIZE) + 2;
+		familyTree = new FamilyTree(new NoOpDBService(), maxAge);
+		names = new String[TREE_SIZE];
+		List<String> youngest = GenealogyGenerator.generate(shape, TREE_SIZE, 42, "Person", (name, age, parent1, parent2) -> {
+			familyTree.addPerson(name, age + 2, parent1, parent2, null);
+			names[Integer.parseInt(name.substring("Person".length()))] = name;
+		});
+		parents = youngest.toArray(new String[0]);
+		familyTree.addPerson("Spouse", maxAge, null, null, null);
+	}
+
+	@Benchmark
+	public Object mixed() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int operation = random.nextInt(100);
+		if (operation < writePercent) {
+			String parent = parents[random.nextInt(parents.length)];
+			familyTree.addPerson("Child" + counter.getAndIncrement(), 0, parent, "Spouse", null);
+			return parent;
+		}
+		String name = names[random.nextInt(TREE_SIZE)];
+		switch (operation % 3) {
+			case 0:
+				return familyTree.getPerson(name);
+			case 1:
+				return familyTree.getAncestors(name, 2);
+			default:
+				return familyTree.countPersons(null, null);
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package com.example.familytree.benchmarks;
+
+import com.example.familytree.collections.CompactFamilyGraph;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the memory taken by a CompactFamilyGraph per person, which is mostly the names:
+ * it adds persons named Person0, Person1, ... without relatives, and compares the heap (and direct memory)
+ * used after a full garbage collection before and after. The names passed to the graph aren't kept.
+ * Usage: NameFootprint [size=1000000] [offHeap=false], with a heap big enough for the size
+ * (e.g. -Xmx2g for 10M persons); it's a main rather than a JMH benchmark, as JMH measures time.
+ */
+public class NameFootprint {
+
+	public static void main(String[] args) {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		boolean offHeap = args.length > 1 && Boolean.parseBoolean(args[1]);
+
+		long heapBefore = usedHeap();
+		long directBefore = usedDirectMemory();
+		CompactFamilyGraph graph = new CompactFamilyGraph(100, offHeap);
+		for (int i = 0; i < size; i++) {
+			graph.add("Person" + i, i % 101);
+		}
+		long heap = usedHeap() - heapBefore;
+		long direct = usedDirectMemory() - directBefore;
+
+		System.out.printf("persons: %d (names of %d to %d characters), heap: %d bytes, direct: %d bytes, "
+						+ "%.1f bytes per person%n", graph.size(), "Person0".length(), ("Person" + (size - 1)).length(),
+				heap, direct, (double) (heap + direct) / size);
+	}
+
+	/**
+	 * Returns the heap used after a full garbage collection.
+	 */
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	private static long usedDirectMemory() {
+		long used = 0;
+		for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+			used += pool.getMemoryUsed();
+		}
+		return used;
+	}
+}
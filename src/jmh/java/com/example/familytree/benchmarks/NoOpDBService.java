@@ -0,0 +1,21 @@
+package com.example.familytree.benchmarks;
+
+import com.example.familytree.entities.Person;
+import com.example.familytree.services.DBService;
+
+/**
+ * A persistence layer that doesn't do anything, so that the benchmarks measure the family tree only.
+ */
+public class NoOpDBService implements DBService {
+	@Override
+	public void savePerson(Person person) {
+	}
+
+	@Override
+	public void updatePerson(Person person) {
+	}
+
+	@Override
+	public void deletePerson(Person person) {
+	}
+}
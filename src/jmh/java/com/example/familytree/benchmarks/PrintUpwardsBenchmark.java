@@ -0,0 +1,37 @@
+package com.example.familytree.benchmarks;
+
+import com.example.familytree.services.FamilyTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures printUpwards of the youngest person of a chain of a given depth (number of generations).
+ * The log is set to WARN in src/jmh/resources/logback.xml, so the lines aren't formatted nor written out;
+ * set the com.example.familytree logger to INFO there to include them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PrintUpwardsBenchmark {
+
+	@Param({"10", "100", "1000"})
+	private int depth;
+
+	private FamilyTree familyTree;
+	private String youngest;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		GenealogyGenerator.Shape shape = GenealogyGenerator.Shape.CHAIN;
+		familyTree = new FamilyTree(new NoOpDBService(), GenealogyGenerator.maxAge(shape, depth));
+		youngest = GenealogyGenerator.generate(shape, depth, 42, "Person",
+				(name, age, parent1, parent2) -> familyTree.addPerson(name, age, parent1, parent2, null)).get(0);
+	}
+
+	@Benchmark
+	public List<String> printUpwards() {
+		return familyTree.printUpwards(youngest);
+	}
+}
@@ -0,0 +1,76 @@
+package com.example.familytree.benchmarks;
+
+import com.example.familytree.entities.Person;
+import com.example.familytree.enums.Order;
+import com.example.familytree.services.FamilyTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compares the lock-free read path of the FamilyTree with reads guarded by a ReentrantReadWriteLock,
+ * the way all of the queries were guarded before.
+ * Run it with a few thread counts (e.g. '-t 1', '-t 4', '-t 8'): the lock-free reads should scale with the cores,
+ * while the read lock makes all of the readers update its shared reader count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReadPathBenchmark {
+	private static final int MAX_AGE = 100;
+	private static final int TREE_SIZE = 10000;
+	private static final int GENERATION_SIZE = 1000;
+
+	@Param({"optimistic", "readWriteLock"})
+	private String readPath;
+
+	private FamilyTree familyTree;
+	private String[] names;
+	private Lock readLock;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		familyTree = new FamilyTree(new NoOpDBService(), MAX_AGE);
+		names = new String[TREE_SIZE];
+		// generations of persons, each one having a parent in the previous generation
+		for (int i = 0; i < TREE_SIZE; i++) {
+			int generation = i / GENERATION_SIZE;
+			String parent = generation == 0 ? null : "Person" + (i - GENERATION_SIZE);
+			names[i] = "Person" + i;
+			familyTree.addPerson(names[i], MAX_AGE - 5 * generation, parent, null, null);
+		}
+		readLock = readPath.equals("readWriteLock") ? new ReentrantReadWriteLock().readLock() : null;
+	}
+
+	@Benchmark
+	public Person getPerson() {
+		String name = names[ThreadLocalRandom.current().nextInt(TREE_SIZE)];
+		if (readLock == null) {
+			return familyTree.getPerson(name);
+		}
+		readLock.lock();
+		try {
+			return familyTree.getPerson(name);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public List<Person> getSortedFamilyList() {
+		if (readLock == null) {
+			return familyTree.getSortedFamilyList(Order.ASC);
+		}
+		readLock.lock();
+		try {
+			return familyTree.getSortedFamilyList(Order.ASC);
+		} finally {
+			readLock.unlock();
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package com.example.familytree.benchmarks;
+
+import com.example.familytree.responses.Relationship;
+import com.example.familytree.services.FamilyTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures getRelationship in the worst cases for its search, within one family component of two full
+ * pedigrees of a given number of generations (the parents of a common child):
+ * the parents themselves, which aren't related, and the father and his most distant cousin, whose only
+ * common ancestors are the oldest couple of his pedigree, so that the search has to climb all of the generations.
+ * With interleaved, the pedigrees' sequence numbers interleave; see DeepPedigreeBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RelationshipBenchmark {
+	private static final int MAX_AGE = 100;
+
+	@Param({"8", "11", "14"})
+	private int generations;
+
+	@Param({"false", "true"})
+	private boolean interleaved;
+
+	private FamilyTree familyTree;
+	private String cousin;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		familyTree = new FamilyTree(new NoOpDBService(), MAX_AGE);
+		GenealogyGenerator.pedigrees(Arrays.asList("Father", "Mother"), generations, MAX_AGE, interleaved,
+				(name, age, parent1, parent2) -> familyTree.addPerson(name, age, parent1, parent2, null));
+		familyTree.addPerson("Child", 0, "Father", "Mother", null);
+
+		// a line of descendants of the father's oldest couple, married to spouses without ancestors
+		String parent1 = "Father0-0";
+		String parent2 = "Father0-1";
+		for (int generation = 1; generation < generations; generation++) {
+			cousin = "Cousin" + generation;
+			familyTree.addPerson(cousin, MAX_AGE - generation, parent1, parent2, null);
+			parent1 = cousin;
+			parent2 = "Spouse" + generation;
+			familyTree.addPerson(parent2, MAX_AGE - generation, null, null, null);
+		}
+	}
+
+	@Benchmark
+	public Relationship unrelated() {
+		return familyTree.getRelationship("Father", "Mother");
+	}
+
+	@Benchmark
+	public Relationship distantCousins() {
+		return familyTree.getRelationship("Father", cousin);
+	}
+}
@@ -0,0 +1,91 @@
+package com.example.familytree.benchmarks;
+
+import com.example.familytree.collections.IntSortedList;
+import com.example.familytree.collections.SortedList;
+import com.example.familytree.enums.Order;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the SortedList hot paths at different sizes: filling a list with a given number of elements
+ * and turning a list of a given size into an ordered java.util.List; the same is measured for
+ * the IntSortedList, which keeps the ids in bucket arrays instead of linked nodes.
+ * The default sizes fit into a default heap; a list of 100M elements needs a few GB of it, e.g.
+ * '-p size=100000000 -jvmArgsAppend -Xmx12g'.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SortedListBenchmark {
+	private static final int MAX_AGE = 100;
+	private static final int INDEX_MASK = (1 << 16) - 1;
+	private static final Object ELEMENT = new Object();
+
+	@Param({"1000", "1000000", "10000000"})
+	private int size;
+
+	private int[] indexes;
+	private SortedList<Object> list;
+	private IntSortedList intList;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Random random = new Random(42);
+		indexes = new int[INDEX_MASK + 1];
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = random.nextInt(MAX_AGE + 1);
+		}
+		list = fill();
+		intList = fillInts();
+	}
+
+	/**
+	 * Creates a list and adds size elements at random indexes to it; divide the time by size to get
+	 * the cost of a single add().
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 5)
+	@Measurement(iterations = 10)
+	public SortedList<Object> add() {
+		return fill();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 5)
+	@Measurement(iterations = 10)
+	public IntSortedList addInts() {
+		return fillInts();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	public List<Object> toOrderedList() {
+		return list.toOrderedList(Order.ASC);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	public int[] toArray() {
+		return intList.toArray(Order.ASC);
+	}
+
+	private SortedList<Object> fill() {
+		SortedList<Object> sortedList = new SortedList<>(MAX_AGE);
+		for (int i = 0; i < size; i++) {
+			sortedList.add(indexes[i & INDEX_MASK], ELEMENT);
+		}
+		return sortedList;
+	}
+
+	private IntSortedList fillInts() {
+		IntSortedList sortedList = new IntSortedList(MAX_AGE);
+		for (int id = 0; id < size; id++) {
+			sortedList.add(indexes[id & INDEX_MASK], id);
+		}
+		return sortedList;
+	}
+}
@@ -0,0 +1,54 @@
+package com.example.familytree.benchmarks;
+
+import com.example.familytree.services.FamilyTree;
+import com.example.familytree.services.WriteAheadLogDBService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Measures the throughput of durable person additions, each one acknowledged only after its log record is synced.
+ * Concurrent writers share fsyncs thanks to the group commit, so the throughput should grow with the thread count
+ * instead of being capped by the disk sync latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+public class WriteAheadLogBenchmark {
+	private static final int MAX_AGE = 100;
+
+	private final AtomicLong counter = new AtomicLong();
+
+	private Path directory;
+	private WriteAheadLogDBService dbService;
+	private FamilyTree familyTree;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("wal-benchmark");
+		dbService = new WriteAheadLogDBService(directory, 64 * 1024 * 1024);
+		familyTree = new FamilyTree(dbService, MAX_AGE);
+		familyTree.addPerson("Parent1", MAX_AGE, null, null, null);
+		familyTree.addPerson("Parent2", MAX_AGE, null, null, null);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		dbService.close();
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public void addPersonDurably() {
+		familyTree.addPerson("Child" + counter.incrementAndGet(), 0, "Parent1", "Parent2", null);
+	}
+}
@@ -1,29 +1,106 @@
 package com.example.familytree;
 
 import com.example.familytree.entities.Person;
+import com.example.familytree.responses.ImportReport;
+import com.example.familytree.services.BulkImporter;
 import com.example.familytree.services.DBService;
+import com.example.familytree.services.WriteAheadLogDBService;
+import com.example.familytree.services.WriteBehindDBService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 
+import java.nio.file.Paths;
+
 @SpringBootApplication
 public class FamilyTreeApplication {
+	private static final Logger log = LoggerFactory.getLogger(FamilyTreeApplication.class);
 
 	public static void main(String[] args) {
 		SpringApplication.run(FamilyTreeApplication.class, args);
 	}
 
 	@Bean
-	public DBService generateDummyDBService() {
+	public DBService generateDBService(@Value("${familyTree.db.wal.enabled}") boolean walEnabled,
+									   @Value("${familyTree.db.wal.directory}") String walDirectory,
+									   @Value("${familyTree.db.wal.segmentSize}") long walSegmentSize,
+									   @Value("${familyTree.db.writeBehind.enabled}") boolean writeBehindEnabled,
+									   @Value("${familyTree.db.writeBehind.batchSize}") int batchSize,
+									   @Value("${familyTree.db.writeBehind.maxLatencyMillis}") long maxLatencyMillis,
+									   @Value("${familyTree.db.writeBehind.capacity}") int capacity,
+									   @Value("${familyTree.db.writeBehind.durable}") boolean durable,
+									   @Value("${familyTree.db.dummy.latencyMillis}") long dummyLatencyMillis,
+									   MeterRegistry meterRegistry) {
+		if (walEnabled) {
+			// the log is durable and batched by itself, so it's never put behind the write-behind queue
+			WriteAheadLogDBService wal = new WriteAheadLogDBService(Paths.get(walDirectory), walSegmentSize);
+			// read replicas report the number of records they've applied, which is compared with this one
+			meterRegistry.gauge("familytree.wal.sequence", wal, WriteAheadLogDBService::getSyncedSequence);
+			return wal;
+		}
+		DBService dbService = generateDummyDBService(dummyLatencyMillis);
+		if (writeBehindEnabled) {
+			return new WriteBehindDBService(dbService, batchSize, maxLatencyMillis, capacity, durable);
+		}
+		return dbService;
+	}
+
+	/**
+	 * Imports a file given with the --familyTree.import=<path> command line argument (see BulkImporter).
+	 */
+	@Bean
+	public CommandLineRunner importFile(BulkImporter bulkImporter, @Value("${familyTree.import:}") String path) {
+		return args -> {
+			if (path.isEmpty()) {
+				return;
+			}
+			ImportReport report = bulkImporter.importFile(Paths.get(path));
+			log.info("Imported {} of {} rows from {} in {} ms ({} rows/s)", report.getImported(), report.getRows(), path,
+					report.getElapsedMillis(), report.getRowsPerSecond());
+			for (ImportReport.Rejection rejection : report.getRejections()) {
+				log.warn("Rejected line {}: {}", rejection.getLine(), rejection.getReason());
+			}
+		};
+	}
+
+	/**
+	 * Returns a database service that stores nothing; every call blocks for a given latency, so that load tests
+	 * can simulate a remote database (see LoadTest).
+	 */
+	private DBService generateDummyDBService(long latencyMillis) {
 		return new DBService() {
 			@Override
 			public void savePerson(Person person) {
-				System.out.println("Dummy database service stored person " + person.getName());
+				block();
+				log.debug("Dummy database service stored person {}", person.getName());
 			}
 
 			@Override
 			public void updatePerson(Person person) {
-				System.out.println("Dummy database service updated person " + person.getName());
+				block();
+				log.debug("Dummy database service updated person {}", person.getName());
+			}
+
+			@Override
+			public void deletePerson(Person person) {
+				block();
+				log.debug("Dummy database service deleted person {}", person.getName());
+			}
+
+			private void block() {
+				if (latencyMillis == 0) {
+					return;
+				}
+				try {
+					Thread.sleep(latencyMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
 			}
 		};
 	}
@@ -0,0 +1,143 @@
+package com.example.familytree.cluster;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.NoSuchElementException;
+
+/**
+ * A client of a shard, i.e. a FamilyTree service instance holding a part of a cluster's family.
+ * It's a plain HttpURLConnection wrapper: the requests block, and the JDK keeps the connections alive.
+ * HttpURLConnection can't send PATCH requests, so they're sent as POST ones with the _method=PATCH parameter,
+ * which Spring's HiddenHttpMethodFilter turns back into PATCH on the shard. The filter lets any client override
+ * the method of a POST, so it's disabled in application.properties, and the shards are started with
+ * spring.mvc.hiddenmethod.filter.enabled=true; they must be reachable by the router only.
+ * The client is thread-safe.
+ */
+public class ShardClient {
+	private final String url;
+	private final int timeoutMillis;
+
+	public ShardClient(String url, int timeoutMillis) {
+		this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	/**
+	 * Sends a request with an optional body to a given path (which includes the query, encoded)
+	 * and returns the response, whatever its status.
+	 */
+	public Response send(String method, String path, String contentType, byte[] body) {
+		try {
+			HttpURLConnection connection = open(method, path, contentType, body);
+			int status = connection.getResponseCode();
+			InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+			byte[] responseBody = in == null ? new byte[0] : readAll(in);
+			return new Response(status, connection.getContentType(), responseBody);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Shard " + url + " failed", e);
+		}
+	}
+
+	/**
+	 * Sends a GET request and returns the response body stream, which the caller must close.
+	 * A status other than 200 is thrown as the exception the shard got (see check()).
+	 */
+	public InputStream stream(String path) {
+		try {
+			HttpURLConnection connection = open("GET", path, null, null);
+			int status = connection.getResponseCode();
+			if (status != HttpURLConnection.HTTP_OK) {
+				InputStream error = connection.getErrorStream();
+				if (error != null) {
+					error.close();
+				}
+				throw exception(status);
+			}
+			return connection.getInputStream();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Shard " + url + " failed", e);
+		}
+	}
+
+	private HttpURLConnection open(String method, String path, String contentType, byte[] body) throws IOException {
+		if ("PATCH".equals(method)) {
+			method = "POST";
+			path += (path.indexOf('?') < 0 ? "?" : "&") + "_method=PATCH";
+		}
+		HttpURLConnection connection = (HttpURLConnection) new URL(url + path).openConnection();
+		connection.setRequestMethod(method);
+		connection.setConnectTimeout(timeoutMillis);
+		connection.setReadTimeout(timeoutMillis);
+		if (body != null) {
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", contentType);
+			connection.setFixedLengthStreamingMode(body.length);
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(body);
+			}
+		}
+		return connection;
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		try (InputStream input = in) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			for (int read; (read = input.read(buffer)) != -1; ) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		}
+	}
+
+	/**
+	 * Returns the exception a shard has answered with a given status for: 400 stands for
+	 * an IllegalArgumentException and 404 for a NoSuchElementException, like in the controllers.
+	 */
+	private RuntimeException exception(int status) {
+		if (status == HttpURLConnection.HTTP_BAD_REQUEST) {
+			return new IllegalArgumentException("Shard " + url + " rejected the request");
+		} else if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+			return new NoSuchElementException();
+		}
+		return new UncheckedIOException(new IOException("Shard " + url + " answered with status " + status));
+	}
+
+	/**
+	 * A shard's response.
+	 */
+	public class Response {
+		public final int status;
+		public final String contentType;
+		public final byte[] body;
+
+		Response(int status, String contentType, byte[] body) {
+			this.status = status;
+			this.contentType = contentType;
+			this.body = body;
+		}
+
+		public boolean isOk() {
+			return status == HttpURLConnection.HTTP_OK;
+		}
+
+		/**
+		 * Returns the response itself if it's 200 OK, or throws the exception the shard has answered for.
+		 */
+		public Response check() {
+			if (!isOk()) {
+				throw exception(status);
+			}
+			return this;
+		}
+	}
+}
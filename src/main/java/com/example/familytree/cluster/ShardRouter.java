@@ -0,0 +1,675 @@
+package com.example.familytree.cluster;
+
+import com.example.familytree.enums.Order;
+import com.example.familytree.forms.PersonForm;
+import com.example.familytree.responses.AgeCounts;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.util.UriUtils;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Routes the requests of a cluster of FamilyTree services (shards); a service is a router if it's given the shards
+ * with familyTree.cluster.shards=<comma separated shard URLs>, and a shard (or a standalone service) otherwise.
+ * The family is partitioned by connected components (the persons linked through parents and children), so the
+ * relatives of a person are all on its shard, and every query about them is answered by that shard alone.
+ * A new component is placed on the shard its first person's name hashes to (the person that becomes the component's
+ * root on the shard), and when a person links components of different shards, the components are moved to the shard
+ * of the biggest one first, so that the fewest persons are moved.
+ * The shard of each name is kept in a directory; a name missing in it is looked for on all of the shards at once.
+ * The sorted list and the counts are scatter-gathered: the shards stream their sorted lists, and the router merges
+ * them in the bucket (age) order, so the router's memory doesn't grow with the family.
+ * Requests are routed concurrently, but a move excludes all of them, so that none sees a half moved component;
+ * the router must be the only client of the shards, so a cluster has a single router.
+ * A move isn't atomic: the component is imported into the target shard first and deleted from the source one then,
+ * so if the deletion fails, the copy left behind on the source shard must be deleted by hand.
+ */
+@Service
+@ConditionalOnExpression(ShardRouter.ROUTER_MODE)
+public class ShardRouter {
+	public static final String ROUTER_MODE = "!'${familyTree.cluster.shards:}'.isEmpty()";
+	public static final String SHARD_MODE = "'${familyTree.cluster.shards:}'.isEmpty()";
+
+	private static final Logger log = LoggerFactory.getLogger(ShardRouter.class);
+	private static final String JSON = MediaType.APPLICATION_JSON_UTF8_VALUE;
+	private static final String NDJSON = "application/x-ndjson";
+
+	private final List<ShardClient> shards;
+	private final ObjectMapper objectMapper;
+	private final ExecutorService executor;
+
+	/**
+	 * The shard index of each known name.
+	 */
+	private final Map<String, Integer> directory;
+
+	/**
+	 * New names being added, reserved until their shard has answered.
+	 */
+	private final Set<String> pendingNames;
+
+	/**
+	 * Taken for reading by every request, and for writing by the requests that move components.
+	 */
+	private final ReentrantReadWriteLock moveLock;
+
+	private final Counter moves;
+	private final Counter movedPersons;
+
+	@Autowired
+	public ShardRouter(@Value("${familyTree.cluster.shards}") String shardUrls,
+					   @Value("${familyTree.cluster.timeoutMillis}") int timeoutMillis,
+					   ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+		this.shards = Arrays.stream(shardUrls.split(","))
+				.map(String::trim)
+				.filter(url -> !url.isEmpty())
+				.map(url -> new ShardClient(url, timeoutMillis))
+				.collect(Collectors.toList());
+		this.objectMapper = objectMapper;
+		this.executor = Executors.newCachedThreadPool(task -> {
+			Thread thread = new Thread(task, "shard-router");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.directory = new ConcurrentHashMap<>();
+		this.pendingNames = ConcurrentHashMap.newKeySet();
+		this.moveLock = new ReentrantReadWriteLock();
+		this.moves = Counter.builder("familytree.cluster.moves")
+				.description("Components moved between shards")
+				.register(meterRegistry);
+		this.movedPersons = Counter.builder("familytree.cluster.movedPersons")
+				.description("Persons of the components moved between shards")
+				.register(meterRegistry);
+		log.info("Routing requests to {} shards: {}", shards.size(), shardUrls);
+	}
+
+	@PreDestroy
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Forwards a request about a given person to its shard and returns the response;
+	 * a deleted person is removed from the directory.
+	 * Performance: O(1) if the person is in the directory, a request to every shard otherwise
+	 */
+	public ShardClient.Response forward(String name, String method, String path, String contentType, byte[] body) {
+		moveLock.readLock().lock();
+		try {
+			int shard = locate(name);
+			if (shard < 0) {
+				throw new NoSuchElementException();
+			}
+			ShardClient.Response response = shards.get(shard).send(method, path, contentType, body);
+			if ("DELETE".equals(method) && response.isOk()) {
+				directory.remove(name);
+			}
+			return response;
+		} finally {
+			moveLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Forwards a request about two persons to their shard and returns the response, or null if they're on
+	 * different shards, so they aren't related at all.
+	 */
+	public ShardClient.Response forward(String name, String otherName, String path) {
+		moveLock.readLock().lock();
+		try {
+			int shard = locateExisting(name);
+			int otherShard = locateExisting(otherName);
+			if (shard != otherShard) {
+				return null;
+			}
+			return shards.get(shard).send("GET", path, null, null);
+		} finally {
+			moveLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds a person on the shard of its relatives, moving their components to a single shard first
+	 * if they're on many; a person without known relatives starts a component on the shard of its name's hash.
+	 * Names are unique across the cluster, so a new name is looked for on all of the shards first, and it's reserved
+	 * until its shard has answered, so that concurrent additions of the same name, which may be placed on different
+	 * shards by their relatives, are rejected but the first one.
+	 * Performance: a request to every shard per name missing in the directory, plus the moves
+	 */
+	public ShardClient.Response addPerson(PersonForm personForm) {
+		byte[] body = toJson(personForm);
+		return write(personForm.getName(), false, relativeNames(personForm),
+				shard -> shards.get(shard).send("POST", "/familyTree", JSON, body));
+	}
+
+	/**
+	 * Updates (or patches) a person on its shard, moving the components of its new relatives there first,
+	 * or the person's component to them, whichever is bigger.
+	 */
+	public ShardClient.Response updatePerson(String name, PersonForm personForm, boolean patch) {
+		byte[] body = toJson(personForm);
+		return write(name, true, relativeNames(personForm),
+				shard -> shards.get(shard).send(patch ? "PATCH" : "PUT", "/familyTree/" + encode(name), JSON, body));
+	}
+
+	private ShardClient.Response write(String name, boolean existing, List<String> relativeNames,
+									   IntFunction<ShardClient.Response> request) {
+		List<String> names = new ArrayList<>(relativeNames);
+		if (existing) {
+			names.add(name);
+		}
+		boolean reserved = !existing && name != null;
+		if (reserved && !pendingNames.add(name)) {
+			throw new IllegalArgumentException("Name " + name + " already exists");
+		}
+		try {
+			moveLock.readLock().lock();
+			try {
+				Map<Integer, List<String>> placement = placement(name, existing, names);
+				if (placement.size() <= 1) {
+					int shard = placement.isEmpty() ? home(name) : placement.keySet().iterator().next();
+					return written(name, shard, request.apply(shard));
+				}
+			} finally {
+				moveLock.readLock().unlock();
+			}
+
+			// the components must be moved, which nobody may see half done
+			moveLock.writeLock().lock();
+			try {
+				Map<Integer, List<String>> placement = placement(name, existing, names);
+				int shard = placement.isEmpty() ? home(name) : colocate(placement);
+				return written(name, shard, request.apply(shard));
+			} finally {
+				moveLock.writeLock().unlock();
+			}
+		} finally {
+			if (reserved) {
+				pendingNames.remove(name);
+			}
+		}
+	}
+
+	/**
+	 * Returns the known names of given ones per shard (in the shard order); a new name must be unknown
+	 * and an existing one must be known.
+	 */
+	private Map<Integer, List<String>> placement(String name, boolean existing, List<String> names) {
+		if (existing) {
+			if (locate(name) < 0) {
+				throw new NoSuchElementException("Name " + name + " doesn't exist");
+			}
+		} else if (name != null && locate(name) >= 0) {
+			throw new IllegalArgumentException("Name " + name + " already exists");
+		}
+		Map<Integer, List<String>> placement = new TreeMap<>();
+		for (String relativeName : names) {
+			int shard = locate(relativeName);
+			if (shard >= 0) {
+				placement.computeIfAbsent(shard, key -> new ArrayList<>()).add(relativeName);
+			}
+		}
+		return placement;
+	}
+
+	private ShardClient.Response written(String name, int shard, ShardClient.Response response) {
+		if (response.isOk() && name != null) {
+			directory.put(name, shard);
+		}
+		return response;
+	}
+
+	/**
+	 * Moves the components of given names to the shard holding the biggest one of them and returns the shard.
+	 * It must be called under the move lock.
+	 */
+	private int colocate(Map<Integer, List<String>> placement) {
+		int target = -1;
+		int biggest = -1;
+		for (Map.Entry<Integer, List<String>> names : placement.entrySet()) {
+			for (String name : names.getValue()) {
+				int size = componentSize(names.getKey(), name);
+				if (size > biggest) {
+					biggest = size;
+					target = names.getKey();
+				}
+			}
+		}
+		for (Map.Entry<Integer, List<String>> names : placement.entrySet()) {
+			for (String name : names.getValue()) {
+				// a component is moved once, however many of the names it holds
+				if (directory.get(name) != target) {
+					move(name, names.getKey(), target);
+				}
+			}
+		}
+		return target;
+	}
+
+	/**
+	 * Moves the component of a given name from a shard to another one: the component is exported by the source
+	 * shard (parents before children), imported by the target one, and then deleted from the source one.
+	 * Performance: O(C) requests' work where C is the size of the component
+	 */
+	private void move(String name, int source, int target) {
+		ShardClient from = shards.get(source);
+		ShardClient to = shards.get(target);
+		byte[] component = from.send("GET", "/familyTree/" + encode(name) + "/component", null, null).check().body;
+		JsonNode report = readTree(to.send("POST", "/familyTree/bulk", NDJSON, component).check().body);
+		if (report.get("rejected").asLong() > 0) {
+			throw new IllegalStateException("Component of " + name + " couldn't be moved from " + from.getUrl()
+					+ " to " + to.getUrl() + ": " + report.get("rejections"));
+		}
+		from.send("DELETE", "/familyTree/" + encode(name) + "/component", null, null).check();
+
+		int persons = 0;
+		try (MappingIterator<PersonForm> records = objectMapper.readerFor(PersonForm.class).readValues(component)) {
+			while (records.hasNext()) {
+				directory.put(records.next().getName(), target);
+				persons++;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		moves.increment();
+		movedPersons.increment(persons);
+		log.info("Moved the component of {} ({} persons) from {} to {}", name, persons, from.getUrl(), to.getUrl());
+	}
+
+	/**
+	 * Writes the names of the cluster's sorted family to a given generator as a JSON array, merging the sorted lists
+	 * the shards stream. The persons are merged by age (the buckets), and the persons of the same age by the name
+	 * for the composite orders, or in the shard order otherwise. The generation depth isn't known to the router,
+	 * so the AGE_GENERATION orders aren't supported, and a page may be resumed after a person for the age only
+	 * orders, as a shard can resume after a person it holds only.
+	 * Like a shard's list, the merged list is weakly consistent: it may miss the persons added in the meantime.
+	 * The lists are read under the move lock, so that a component moved in the meantime is neither listed twice
+	 * nor missed; a move waits for the list to be written then.
+	 * Performance: O(L log S) where L is the length of the list and S is the number of shards
+	 */
+	public void writeSortedList(Order order, Integer fromAge, Integer toAge, Integer afterAge, String afterName,
+								Integer limit, JsonGenerator generator) throws IOException {
+		if (order.getKey() == Order.Key.AGE_GENERATION) {
+			throw new IllegalArgumentException("Order " + order + " isn't supported by a cluster");
+		}
+		if (afterName != null && order.getKey() != Order.Key.AGE) {
+			throw new IllegalArgumentException("Order " + order + " cannot be resumed after a name in a cluster");
+		}
+
+		moveLock.readLock().lock();
+		try {
+			int owner = afterName == null ? -1 : locateExisting(afterName);
+			int afterNameAge = owner < 0 ? -1 : readTree(shards.get(owner)
+					.send("GET", "/familyTree/" + encode(afterName), null, null).check().body).get("age").asInt();
+			List<Future<InputStream>> responses = new ArrayList<>();
+			for (int shard = 0; shard < shards.size(); shard++) {
+				String path = sortedListPath(order, fromAge, toAge, afterAge, afterName, limit, shard, owner,
+						afterNameAge);
+				ShardClient client = shards.get(shard);
+				responses.add(path == null ? null : executor.submit(() -> client.stream(path)));
+			}
+			merge(order, limit, responses, generator);
+		} finally {
+			moveLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Merges the sorted lists streamed by the shards (null for the shards that have no part in the list)
+	 * and writes them to a given generator.
+	 */
+	private void merge(Order order, Integer limit, List<Future<InputStream>> responses, JsonGenerator generator)
+			throws IOException {
+		List<Cursor> cursors = new ArrayList<>();
+		try {
+			for (int shard = 0; shard < responses.size(); shard++) {
+				if (responses.get(shard) != null) {
+					Cursor cursor = new Cursor(shard, objectMapper.getFactory().createParser(get(responses.get(shard))));
+					cursors.add(cursor);
+					cursor.start();
+				}
+			}
+			PriorityQueue<Cursor> queue = new PriorityQueue<>(Math.max(1, cursors.size()), comparator(order));
+			for (Cursor cursor : cursors) {
+				if (cursor.next()) {
+					queue.add(cursor);
+				}
+			}
+
+			generator.writeStartArray();
+			for (int i = 0; (limit == null || i < limit) && !queue.isEmpty(); i++) {
+				Cursor cursor = queue.poll();
+				generator.writeString(cursor.name);
+				if (cursor.next()) {
+					queue.add(cursor);
+				}
+			}
+			generator.writeEndArray();
+		} finally {
+			for (Cursor cursor : cursors) {
+				cursor.parser.close();
+			}
+			for (int shard = cursors.size(); shard < responses.size(); shard++) {
+				closeQuietly(responses.get(shard));
+			}
+		}
+	}
+
+	/**
+	 * Returns the path of a shard's part of the sorted list, or null if the shard has no part in it.
+	 * A page resumed after a person of a given age must skip the persons of that age of the shards before the
+	 * person's one (owner), and hold the ones of the shards after it, as the shards come in their order within an age.
+	 */
+	private static String sortedListPath(Order order, Integer fromAge, Integer toAge, Integer afterAge,
+										 String afterName, Integer limit, int shard, int owner, int afterNameAge) {
+		if (owner >= 0 && shard != owner) {
+			afterName = null;
+			if (shard < owner) {
+				afterAge = afterNameAge;
+			} else {
+				afterAge = null;
+				if (order.isDescending()) {
+					toAge = toAge == null ? afterNameAge : Math.min(toAge, afterNameAge);
+				} else {
+					fromAge = fromAge == null ? afterNameAge : Math.max(fromAge, afterNameAge);
+				}
+				if (fromAge != null && toAge != null && fromAge > toAge) {
+					return null;
+				}
+			}
+		}
+		StringBuilder path = new StringBuilder("/familyTree?withAges=true&order=").append(order.name());
+		appendParam(path, "fromAge", fromAge);
+		appendParam(path, "toAge", toAge);
+		appendParam(path, "afterAge", afterAge);
+		appendParam(path, "afterName", afterName);
+		appendParam(path, "limit", limit);
+		return path.toString();
+	}
+
+	private static Comparator<Cursor> comparator(Order order) {
+		Comparator<String> names = order.isDescending() ? Comparator.reverseOrder() : Comparator.naturalOrder();
+		Comparator<Cursor> byName = Comparator.comparing(cursor -> cursor.name, names);
+		if (order.getKey() == Order.Key.NAME) {
+			return byName;
+		}
+		Comparator<Cursor> byAge = Comparator.comparingInt(cursor -> cursor.age);
+		if (order.isDescending()) {
+			byAge = byAge.reversed();
+		}
+		return order.getKey() == Order.Key.AGE_NAME ? byAge.thenComparing(byName)
+				: byAge.thenComparingInt(cursor -> cursor.shard);
+	}
+
+	/**
+	 * Counts the persons within an age range on all of the shards, in total and per age.
+	 * The shards are asked under the move lock, so that the persons of a component being moved aren't counted twice.
+	 * Performance: O(S * maxAge) where S is the number of shards
+	 */
+	public AgeCounts countPersons(Integer fromAge, Integer toAge) {
+		StringBuilder path = new StringBuilder("/familyTree?count");
+		appendParam(path, "fromAge", fromAge);
+		appendParam(path, "toAge", toAge);
+		int total = 0;
+		SortedMap<Integer, Integer> perAge = new TreeMap<>();
+		for (JsonNode counts : scatterUnderMoveLock(shard -> readTree(shards.get(shard)
+				.send("GET", path.toString(), null, null).check().body))) {
+			total += counts.get("total").asInt();
+			Iterator<Map.Entry<String, JsonNode>> ages = counts.get("perAge").fields();
+			while (ages.hasNext()) {
+				Map.Entry<String, JsonNode> age = ages.next();
+				perAge.merge(Integer.valueOf(age.getKey()), age.getValue().asInt(), Integer::sum);
+			}
+		}
+		return new AgeCounts(total, perAge);
+	}
+
+	/**
+	 * Searches the names on all of the shards (see FamilyTree#searchNames). The shards don't tell the distance of
+	 * their names, so they're searched a distance at a time, and the closest names come first again.
+	 * Like the counts, the shards are asked under the move lock.
+	 * Performance: (fuzzy + 1) requests to every shard at most
+	 */
+	public List<String> searchNames(String prefix, int fuzzy, int limit) {
+		if (fuzzy < 0 || limit < 0) {
+			throw new IllegalArgumentException("Fuzzy distance and limit cannot be negative");
+		}
+		Set<String> names = new LinkedHashSet<>();
+		for (int distance = 0; distance <= fuzzy && names.size() < limit; distance++) {
+			String path = "/familyTree/search?prefix=" + UriUtils.encodeQueryParam(prefix, StandardCharsets.UTF_8)
+					+ "&fuzzy=" + distance + "&limit=" + limit;
+			// the names of the distance, as the closer ones have been taken already
+			TreeSet<String> found = new TreeSet<>();
+			for (JsonNode result : scatterUnderMoveLock(shard -> readTree(shards.get(shard)
+					.send("GET", path, null, null).check().body))) {
+				for (JsonNode name : result) {
+					if (!names.contains(name.asText())) {
+						found.add(name.asText());
+					}
+				}
+			}
+			for (String name : found) {
+				if (names.size() == limit) {
+					break;
+				}
+				names.add(name);
+			}
+		}
+		return new ArrayList<>(names);
+	}
+
+	/**
+	 * Returns the index of the shard holding a given name, or -1 if there's no such name.
+	 * Performance: O(1) if the name is in the directory, a request to every shard otherwise
+	 */
+	private int locate(String name) {
+		Integer shard = directory.get(name);
+		if (shard != null) {
+			return shard;
+		}
+		List<Integer> sizes = scatter(index -> componentSize(index, name));
+		for (int index = 0; index < sizes.size(); index++) {
+			if (sizes.get(index) > 0) {
+				directory.put(name, index);
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	private int locateExisting(String name) {
+		int shard = locate(name);
+		if (shard < 0) {
+			throw new IllegalArgumentException("Name " + name + " doesn't exist");
+		}
+		return shard;
+	}
+
+	/**
+	 * Returns the size of a name's component on a given shard, or 0 if the shard doesn't hold the name.
+	 */
+	private int componentSize(int shard, String name) {
+		ShardClient.Response response = shards.get(shard)
+				.send("GET", "/familyTree/" + encode(name) + "/component/size", null, null);
+		if (response.status == 404) {
+			return 0;
+		}
+		return Integer.parseInt(new String(response.check().body, StandardCharsets.UTF_8).trim());
+	}
+
+	private int home(String name) {
+		return name == null ? 0 : Math.floorMod(name.hashCode(), shards.size());
+	}
+
+	/**
+	 * Sends requests to all of the shards at once and returns their results in the shard order.
+	 */
+	private <T> List<T> scatter(IntFunction<T> request) {
+		List<Future<T>> futures = new ArrayList<>();
+		for (int shard = 0; shard < shards.size(); shard++) {
+			int index = shard;
+			futures.add(executor.submit(() -> request.apply(index)));
+		}
+		List<T> results = new ArrayList<>();
+		for (Future<T> future : futures) {
+			results.add(get(future));
+		}
+		return results;
+	}
+
+	private <T> List<T> scatterUnderMoveLock(IntFunction<T> request) {
+		moveLock.readLock().lock();
+		try {
+			return scatter(request);
+		} finally {
+			moveLock.readLock().unlock();
+		}
+	}
+
+	private static <T> T get(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private static void closeQuietly(Future<InputStream> response) {
+		if (response == null) {
+			return;
+		}
+		try {
+			get(response).close();
+		} catch (RuntimeException | IOException e) {
+			// the response has failed or it's closed already
+		}
+	}
+
+	private static List<String> relativeNames(PersonForm personForm) {
+		List<String> names = new ArrayList<>();
+		if (personForm.getParent1() != null) {
+			names.add(personForm.getParent1());
+		}
+		if (personForm.getParent2() != null) {
+			names.add(personForm.getParent2());
+		}
+		if (personForm.getChildren() != null) {
+			names.addAll(personForm.getChildren());
+		}
+		return names;
+	}
+
+	private static void appendParam(StringBuilder path, String name, Object value) {
+		if (value != null) {
+			path.append('&').append(name).append('=')
+					.append(UriUtils.encodeQueryParam(value.toString(), StandardCharsets.UTF_8));
+		}
+	}
+
+	private static String encode(String name) {
+		return UriUtils.encodePathSegment(name, StandardCharsets.UTF_8);
+	}
+
+	private byte[] toJson(Object value) {
+		try {
+			return objectMapper.writeValueAsBytes(value);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private JsonNode readTree(byte[] body) {
+		try {
+			return objectMapper.readTree(body);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * A shard's sorted list being merged, positioned at its current person.
+	 */
+	private static class Cursor {
+		final int shard;
+		final JsonParser parser;
+		String name;
+		int age;
+
+		Cursor(int shard, JsonParser parser) {
+			this.shard = shard;
+			this.parser = parser;
+		}
+
+		void start() throws IOException {
+			if (parser.nextToken() != JsonToken.START_ARRAY) {
+				throw new IOException("Shard " + shard + " hasn't sent a JSON array");
+			}
+		}
+
+		/**
+		 * Reads the next person of the list and returns true, or returns false at the end of the list.
+		 */
+		boolean next() throws IOException {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return false;
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				parser.nextToken();
+				if ("name".equals(field)) {
+					name = parser.getText();
+				} else if ("age".equals(field)) {
+					age = parser.getIntValue();
+				} else {
+					parser.skipChildren();
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package com.example.familytree.collections;
+
+/**
+ * Element counts of the buckets of a sorted list, indexed 0..maxSize.
+ * Each bucket keeps a size counter, a Fenwick (binary indexed) tree sums the counters up, so that the number
+ * of elements within an index range is known in O(log maxSize), and a bitset of non-empty buckets lets
+ * the iterators skip empty buckets 64 at a time.
+ * It's shared by the SortedList and the IntSortedList.
+ * The collection is not thread safe, so must be used within a thread-safe environment.
+ */
+class BucketCounts {
+	private final int maxSize;
+
+	/**
+	 * Number of elements of each bucket.
+	 */
+	private final int[] bucketSizes;
+
+	/**
+	 * A Fenwick tree over the bucket sizes; fenwickTree[i] holds the size sum of buckets (i - lowbit(i), i - 1].
+	 */
+	private final int[] fenwickTree;
+
+	/**
+	 * A bitset of non-empty buckets.
+	 */
+	private final long[] occupied;
+
+	BucketCounts(int maxSize) {
+		this.maxSize = maxSize;
+		this.bucketSizes = new int[maxSize + 1];
+		this.fenwickTree = new int[maxSize + 2];
+		this.occupied = new long[(maxSize >>> 6) + 1];
+	}
+
+	/**
+	 * Counts an element added to a bucket.
+	 * Performance: O(log maxSize)
+	 */
+	void increment(int index) {
+		bucketSizes[index]++;
+		update(index, 1);
+		occupied[index >>> 6] |= 1L << index;
+	}
+
+	/**
+	 * Counts an element removed from a bucket.
+	 * Performance: O(log maxSize)
+	 */
+	void decrement(int index) {
+		if (--bucketSizes[index] == 0) {
+			occupied[index >>> 6] &= ~(1L << index);
+		}
+		update(index, -1);
+	}
+
+	/**
+	 * Returns the number of elements of a bucket.
+	 * Performance: O(1)
+	 */
+	int count(int index) {
+		return bucketSizes[index];
+	}
+
+	/**
+	 * Returns the number of elements of the buckets up to a given one (inclusive).
+	 * Performance: O(log maxSize)
+	 */
+	int prefixCount(int index) {
+		int count = 0;
+		for (int i = index + 1; i > 0; i -= i & -i) {
+			count += fenwickTree[i];
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the first non-empty bucket index from a given one upwards, or maxSize + 1 if there's none.
+	 * Performance: O(maxSize / 64)
+	 */
+	int nextOccupied(int fromIndex) {
+		if (fromIndex > maxSize) {
+			return maxSize + 1;
+		}
+		int wordIndex = fromIndex >>> 6;
+		long word = occupied[wordIndex] & (-1L << fromIndex);
+		while (word == 0) {
+			if (++wordIndex == occupied.length) {
+				return maxSize + 1;
+			}
+			word = occupied[wordIndex];
+		}
+		return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+	}
+
+	/**
+	 * Returns the first non-empty bucket index from a given one downwards, or -1 if there's none.
+	 * Performance: O(maxSize / 64)
+	 */
+	int previousOccupied(int fromIndex) {
+		if (fromIndex < 0) {
+			return -1;
+		}
+		int wordIndex = fromIndex >>> 6;
+		long word = occupied[wordIndex] & (-1L >>> -(fromIndex + 1));
+		while (word == 0) {
+			if (wordIndex-- == 0) {
+				return -1;
+			}
+			word = occupied[wordIndex];
+		}
+		return (wordIndex << 6) + 63 - Long.numberOfLeadingZeros(word);
+	}
+
+	private void update(int index, int delta) {
+		for (int i = index + 1; i < fenwickTree.length; i += i & -i) {
+			fenwickTree[i] += delta;
+		}
+	}
+}
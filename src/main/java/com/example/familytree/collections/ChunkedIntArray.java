@@ -0,0 +1,98 @@
+package com.example.familytree.collections;
+
+import java.util.Arrays;
+
+/**
+ * A growable int array split into fixed-size chunks.
+ * Growing never copies already allocated chunks, so a huge array neither needs a contiguous block of memory
+ * nor causes latency spikes when it grows.
+ * Slots that haven't been written yet hold a given default value.
+ * The collection is not thread safe, so must be used within a thread-safe environment.
+ */
+public class ChunkedIntArray {
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final int defaultValue;
+	private int[][] chunks;
+	private int size;
+
+	public ChunkedIntArray(int defaultValue) {
+		this.defaultValue = defaultValue;
+		this.chunks = new int[8][];
+	}
+
+	/**
+	 * Returns an element at a given index.
+	 * Performance: O(1)
+	 */
+	public int get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index must be with the range [0, " + (size - 1) + "]");
+		}
+		return chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+	}
+
+	/**
+	 * Replaces an element at a given index.
+	 * Performance: O(1)
+	 */
+	public void set(int index, int value) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index must be with the range [0, " + (size - 1) + "]");
+		}
+		chunks[index >>> CHUNK_BITS][index & CHUNK_MASK] = value;
+	}
+
+	/**
+	 * Appends an element and returns its index.
+	 * Performance: O(1)
+	 */
+	public int add(int value) {
+		int index = size;
+		grow(size + 1);
+		chunks[index >>> CHUNK_BITS][index & CHUNK_MASK] = value;
+		return index;
+	}
+
+	/**
+	 * Grows the array to a given size; new slots hold the default value.
+	 * Performance: O(k) where k is the number of new slots
+	 */
+	public void grow(int newSize) {
+		if (newSize <= size) {
+			return;
+		}
+		int lastChunk = (newSize - 1) >>> CHUNK_BITS;
+		if (lastChunk >= chunks.length) {
+			chunks = Arrays.copyOf(chunks, Math.max(chunks.length * 2, lastChunk + 1));
+		}
+		for (int i = size == 0 ? 0 : ((size - 1) >>> CHUNK_BITS) + 1; i <= lastChunk; i++) {
+			int[] chunk = new int[CHUNK_SIZE];
+			if (defaultValue != 0) {
+				Arrays.fill(chunk, defaultValue);
+			}
+			chunks[i] = chunk;
+		}
+		size = newSize;
+	}
+
+	/**
+	 * Sets all of the elements to a given value.
+	 * Performance: O(N)
+	 */
+	public void fill(int value) {
+		for (int i = 0; i < chunks.length && chunks[i] != null; i++) {
+			Arrays.fill(chunks[i], value);
+		}
+	}
+
+	/**
+	 * Returns the array size.
+	 * Performance: O(1)
+	 */
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,323 @@
+package com.example.familytree.collections;
+
+import java.util.Arrays;
+
+/**
+ * A compact family graph data structure where persons are identified by integer ids (0, 1, 2, ...).
+ * Ids are assigned in the insertion order, and names are interned to ids by an open-addressing hash table
+ * that holds ids only, so there are no per-entry map nodes.
+ * The names are stored once, as UTF-8 bytes of a NameArena (on or off the heap), rather than as String objects,
+ * and the lookups compare a given name with the bytes, so they don't allocate.
+ * All of the per-person attributes are kept in parallel chunked arrays:
+ * - parents in two int arrays (-1 stands for no parent),
+ * - ages in a short array,
+ * - children in blocks of an adjacency pool; a block is reallocated twice as big when it's full
+ *   and freed blocks are reused by later allocations of the same size,
+ * - age buckets as singly linked lists of ids, the same way the SortedList orders its entries.
+ * It takes roughly 40 bytes per person on top of the name's UTF-8 bytes, instead of 100+ bytes of the object graph
+ * (see NameFootprint in the benchmarks).
+ * The collection is not thread safe, so must be used within a thread-safe environment.
+ */
+public class CompactFamilyGraph implements FamilyGraph {
+	private static final int NONE = -1;
+	private static final int MAX_TABLE_LENGTH = 1 << 30;
+	private static final int MAX_SIZE = MAX_TABLE_LENGTH / 4 * 3;
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+	private final int maxAge;
+
+	/**
+	 * Names indexed by ids.
+	 */
+	private final NameArena names;
+
+	/**
+	 * An open-addressing hash table of (id + 1) values; 0 stands for an empty slot.
+	 */
+	private int[] nameTable;
+
+	private short[][] ages;
+	private final ChunkedIntArray parents1;
+	private final ChunkedIntArray parents2;
+
+	/**
+	 * Offset of the children block in the pool, per person.
+	 */
+	private final ChunkedIntArray childOffsets;
+
+	/**
+	 * Number of children, per person. A block capacity is derived from it.
+	 */
+	private final ChunkedIntArray childCounts;
+
+	/**
+	 * Adjacency pool holding children blocks.
+	 */
+	private final ChunkedIntArray childPool;
+
+	/**
+	 * Heads of free block lists, per block size class (the block size is 2^class).
+	 * The first slot of a free block holds the offset of the next free block.
+	 */
+	private final int[] freeBlocks;
+
+	private final int[] bucketHeads;
+	private final ChunkedIntArray bucketNext;
+
+	private int size;
+
+	public CompactFamilyGraph(int maxAge) {
+		this(maxAge, false);
+	}
+
+	/**
+	 * Creates a graph whose names are kept off the heap, in direct buffers, if offHeapNames is set.
+	 */
+	public CompactFamilyGraph(int maxAge, boolean offHeapNames) {
+		if (maxAge < 1 || maxAge > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("Max age must be within the range [1, " + Short.MAX_VALUE + "]");
+		}
+		this.maxAge = maxAge;
+		this.names = new NameArena(offHeapNames);
+		this.nameTable = new int[16];
+		this.ages = new short[8][];
+		this.parents1 = new ChunkedIntArray(NONE);
+		this.parents2 = new ChunkedIntArray(NONE);
+		this.childOffsets = new ChunkedIntArray(NONE);
+		this.childCounts = new ChunkedIntArray(0);
+		this.childPool = new ChunkedIntArray(NONE);
+		this.freeBlocks = new int[32];
+		Arrays.fill(freeBlocks, NONE);
+		this.bucketHeads = new int[maxAge + 1];
+		Arrays.fill(bucketHeads, NONE);
+		this.bucketNext = new ChunkedIntArray(NONE);
+	}
+
+	/**
+	 * Adds a new person without any relatives and returns its id.
+	 * Performance: O(1) amortized
+	 */
+	public int add(String name, int age) {
+		if (age < 0 || age > maxAge) {
+			throw new IndexOutOfBoundsException("Age must be with the range [0, " + maxAge + "]");
+		}
+		if (size == MAX_SIZE) {
+			throw new IllegalStateException("The graph is full");
+		}
+		if (indexOf(name) != NONE) {
+			throw new IllegalArgumentException("Name " + name + " is already defined");
+		}
+		int id = names.add(name);
+		size++;
+
+		int chunk = id >>> CHUNK_BITS;
+		if (chunk == ages.length) {
+			ages = Arrays.copyOf(ages, chunk * 2);
+		}
+		if (ages[chunk] == null) {
+			ages[chunk] = new short[CHUNK_MASK + 1];
+		}
+		ages[chunk][id & CHUNK_MASK] = (short) age;
+
+		parents1.grow(size);
+		parents2.grow(size);
+		childOffsets.grow(size);
+		childCounts.grow(size);
+
+		bucketNext.add(bucketHeads[age]);
+		bucketHeads[age] = id;
+
+		if ((long) size * 2 > nameTable.length && nameTable.length < MAX_TABLE_LENGTH) {
+			rehash(nameTable.length * 2);
+		}
+		insertName(id);
+		return id;
+	}
+
+	/**
+	 * Returns an id of a given name or -1 if the name doesn't exist.
+	 * The name is compared with the stored UTF-8 bytes as it's encoded, so nothing is allocated.
+	 * Performance: O(1)
+	 */
+	@Override
+	public int indexOf(String name) {
+		if (name == null) {
+			return NONE;
+		}
+		int mask = nameTable.length - 1;
+		for (int slot = spread(name.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+			int entry = nameTable[slot];
+			if (entry == 0) {
+				return NONE;
+			}
+			if (names.equals(entry - 1, name)) {
+				return entry - 1;
+			}
+		}
+	}
+
+	/**
+	 * Returns the name of a given id; it's decoded from the UTF-8 bytes, so it's a new String on every call.
+	 */
+	@Override
+	public String name(int id) {
+		checkId(id);
+		return names.get(id);
+	}
+
+	@Override
+	public int age(int id) {
+		checkId(id);
+		return ages[id >>> CHUNK_BITS][id & CHUNK_MASK];
+	}
+
+	/**
+	 * Returns the first parent id or -1.
+	 */
+	@Override
+	public int parent1(int id) {
+		return parents1.get(id);
+	}
+
+	/**
+	 * Returns the second parent id or -1.
+	 */
+	@Override
+	public int parent2(int id) {
+		return parents2.get(id);
+	}
+
+	public void setParent1(int id, int parentId) {
+		checkId(parentId);
+		parents1.set(id, parentId);
+	}
+
+	public void setParent2(int id, int parentId) {
+		checkId(parentId);
+		parents2.set(id, parentId);
+	}
+
+	@Override
+	public int childCount(int id) {
+		return childCounts.get(id);
+	}
+
+	/**
+	 * Returns the i-th child id, in the order the children were added.
+	 */
+	@Override
+	public int child(int id, int i) {
+		int count = childCounts.get(id);
+		if (i < 0 || i >= count) {
+			throw new IndexOutOfBoundsException("Index must be with the range [0, " + (count - 1) + "]");
+		}
+		return childPool.get(childOffsets.get(id) + i);
+	}
+
+	/**
+	 * Appends a child to a given person's children block.
+	 * Performance: O(1) amortized
+	 */
+	public void addChild(int id, int childId) {
+		checkId(childId);
+		int count = childCounts.get(id);
+		int offset = childOffsets.get(id);
+		// a block is full when its size is 0 or a power of two (blocks are at least 2 slots big)
+		if (count == 0 || (count >= 2 && (count & (count - 1)) == 0)) {
+			int newOffset = allocateBlock(count == 0 ? 2 : count * 2);
+			for (int i = 0; i < count; i++) {
+				childPool.set(newOffset + i, childPool.get(offset + i));
+			}
+			if (count > 0) {
+				freeBlock(offset, count);
+			}
+			offset = newOffset;
+			childOffsets.set(id, offset);
+		}
+		childPool.set(offset + count, childId);
+		childCounts.set(id, count + 1);
+	}
+
+	/**
+	 * Returns the most recently added id of a given age or -1 if there is none.
+	 */
+	@Override
+	public int firstInBucket(int age) {
+		return bucketHeads[age];
+	}
+
+	/**
+	 * Returns the next id of the same age or -1 if it's the last one.
+	 */
+	@Override
+	public int nextInBucket(int id) {
+		return bucketNext.get(id);
+	}
+
+	@Override
+	public int maxAge() {
+		return maxAge;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	private int allocateBlock(int blockSize) {
+		int sizeClass = Integer.numberOfTrailingZeros(blockSize);
+		int offset = freeBlocks[sizeClass];
+		if (offset != NONE) {
+			freeBlocks[sizeClass] = childPool.get(offset);
+			return offset;
+		}
+		offset = childPool.size();
+		if (offset > Integer.MAX_VALUE - blockSize) {
+			throw new IllegalStateException("Children pool is full");
+		}
+		childPool.grow(offset + blockSize);
+		return offset;
+	}
+
+	private void freeBlock(int offset, int blockSize) {
+		int sizeClass = Integer.numberOfTrailingZeros(blockSize);
+		childPool.set(offset, freeBlocks[sizeClass]);
+		freeBlocks[sizeClass] = offset;
+	}
+
+	/**
+	 * Rebuilds the name table; the most recently added id is inserted by the caller.
+	 * The hashes are computed from the stored bytes, so no name is decoded.
+	 */
+	private void rehash(int newLength) {
+		nameTable = new int[newLength];
+		for (int id = 0; id < size - 1; id++) {
+			insertName(id);
+		}
+	}
+
+	private void insertName(int id) {
+		int mask = nameTable.length - 1;
+		int slot = spread(names.hashCode(id)) & mask;
+		while (nameTable[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		nameTable[slot] = id + 1;
+	}
+
+	private void checkId(int id) {
+		if (id < 0 || id >= size) {
+			throw new IndexOutOfBoundsException("Id must be with the range [0, " + (size - 1) + "]");
+		}
+	}
+
+	/**
+	 * Mixes all of the hash bits into the lower ones that are used as a table index.
+	 * It's shared with the MappedFamilyGraph, as snapshots are looked up the same way.
+	 */
+	static int spread(int hash) {
+		hash *= 0x9E3779B1;
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,177 @@
+package com.example.familytree.collections;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Locks of connected components of a family graph, so that writers of unrelated families don't block each other.
+ * Components are kept in a union-find (disjoint set) structure: every name points to a component node,
+ * and merged components point to the component they were merged into, up to a root that holds the lock.
+ * Merging always attaches the smaller component to the bigger one, so a path to a root is O(log N) long.
+ * A component is locked by locking its root. Multiple components are locked in the order of their ids,
+ * which prevents deadlocks; a component merged into another one while a writer was waiting for its lock
+ * is detected, and the writer locks the new root instead.
+ * The structure is thread-safe.
+ */
+public class ComponentLocks {
+	/**
+	 * A component node of each name.
+	 */
+	private final ConcurrentHashMap<String, Component> nameToComponent;
+
+	private final AtomicLong nextId;
+
+	public ComponentLocks() {
+		this.nameToComponent = new ConcurrentHashMap<>();
+		this.nextId = new AtomicLong();
+	}
+
+	/**
+	 * Locks the components of given names; unknown (and null) names are skipped.
+	 * Returns the locked components, which must be passed to unlock() afterwards.
+	 * Performance: O(k log k + k log N) where k is the number of names
+	 */
+	public List<Component> lock(Collection<String> names) {
+		while (true) {
+			TreeMap<Long, Component> roots = new TreeMap<>();
+			for (String name : names) {
+				Component component = name == null ? null : nameToComponent.get(name);
+				if (component != null) {
+					Component root = root(component);
+					roots.put(root.id, root);
+				}
+			}
+
+			List<Component> locked = new ArrayList<>(roots.values());
+			boolean merged = false;
+			for (int i = 0; i < locked.size(); i++) {
+				locked.get(i).lock.lock();
+				if (locked.get(i).parent != null) {
+					// merged into another component in the meantime
+					unlock(locked.subList(0, i + 1));
+					merged = true;
+					break;
+				}
+			}
+			if (!merged) {
+				return locked;
+			}
+		}
+	}
+
+	/**
+	 * Adds a new name to the component of its relatives, merging the relatives' components if there are many.
+	 * The caller must hold the locks of all of the relatives' components (unknown relatives are skipped).
+	 * If there are no known relatives, a new component is created; it's locked straight away and added
+	 * to the locked components, so that nobody else can use it before the caller unlocks it.
+	 * The merged components stay locked until unlock() is called.
+	 * Performance: O(k log N) where k is the number of relatives
+	 */
+	public void join(String name, Collection<String> relativeNames, List<Component> locked) {
+		List<Component> roots = new ArrayList<>();
+		Component root = null;
+		for (String relativeName : relativeNames) {
+			Component component = relativeName == null ? null : nameToComponent.get(relativeName);
+			if (component == null) {
+				continue;
+			}
+			component = root(component);
+			if (!roots.contains(component)) {
+				roots.add(component);
+				if (root == null || component.size > root.size) {
+					root = component;
+				}
+			}
+		}
+		if (root == null) {
+			root = new Component(nextId.getAndIncrement());
+			root.lock.lock();
+			locked.add(root);
+		}
+		for (Component component : roots) {
+			if (component != root) {
+				component.parent = root;
+				root.size += component.size;
+			}
+		}
+		root.size++;
+		nameToComponent.put(name, root);
+	}
+
+	/**
+	 * Removes a name of a deleted person; the caller must hold the lock of its component.
+	 * Components are never split, so the person's former relatives stay in one component even if they're
+	 * not connected anymore, which only makes their writers wait for each other.
+	 * Performance: O(1)
+	 */
+	public void remove(String name) {
+		nameToComponent.remove(name);
+	}
+
+	/**
+	 * Unlocks components returned by lock().
+	 */
+	public void unlock(List<Component> locked) {
+		for (Component component : locked) {
+			component.lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns whether a name's component is one of the given locked ones. A name that was unknown when
+	 * they were locked isn't covered by them, unless it has joined one of them since.
+	 * Performance: O(log N + number of locked components)
+	 */
+	public boolean isLocked(String name, List<Component> locked) {
+		Component component = name == null ? null : nameToComponent.get(name);
+		return component != null && locked.contains(root(component));
+	}
+
+	/**
+	 * Returns whether two names belong to the same component.
+	 * Performance: O(log N)
+	 */
+	public boolean isConnected(String name1, String name2) {
+		Component component1 = nameToComponent.get(name1);
+		Component component2 = nameToComponent.get(name2);
+		return component1 != null && component2 != null && root(component1) == root(component2);
+	}
+
+	/**
+	 * Returns the size of a name's component, or 0 for an unknown name. It's an upper bound, as the names of
+	 * deleted persons are still counted (components are never split, see remove()), and it's read without the lock,
+	 * so it may be stale.
+	 * Performance: O(log N)
+	 */
+	public int size(String name) {
+		Component component = nameToComponent.get(name);
+		return component == null ? 0 : root(component).size;
+	}
+
+	private static Component root(Component component) {
+		while (component.parent != null) {
+			component = component.parent;
+		}
+		return component;
+	}
+
+	/**
+	 * A union-find node; only a root's lock and size are used.
+	 */
+	public static class Component {
+		private final long id;
+		private final ReentrantLock lock;
+		private volatile Component parent;
+		private int size;
+
+		private Component(long id) {
+			this.id = id;
+			this.lock = new ReentrantLock();
+		}
+	}
+}
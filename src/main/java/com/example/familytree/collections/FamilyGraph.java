@@ -0,0 +1,47 @@
+package com.example.familytree.collections;
+
+/**
+ * Read operations of a family graph where persons are identified by integer ids (0, 1, 2, ...).
+ * Relatives that don't exist are represented by -1.
+ */
+public interface FamilyGraph {
+	/**
+	 * Returns an id of a given name or -1 if the name doesn't exist.
+	 */
+	int indexOf(String name);
+
+	String name(int id);
+
+	int age(int id);
+
+	/**
+	 * Returns the first parent id or -1.
+	 */
+	int parent1(int id);
+
+	/**
+	 * Returns the second parent id or -1.
+	 */
+	int parent2(int id);
+
+	int childCount(int id);
+
+	/**
+	 * Returns the i-th child id, in the order the children were added.
+	 */
+	int child(int id, int i);
+
+	/**
+	 * Returns the first id of a given age or -1 if there is none.
+	 */
+	int firstInBucket(int age);
+
+	/**
+	 * Returns the next id of the same age or -1 if it's the last one.
+	 */
+	int nextInBucket(int id);
+
+	int maxAge();
+
+	int size();
+}
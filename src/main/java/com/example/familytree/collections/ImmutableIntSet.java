@@ -0,0 +1,258 @@
+package com.example.familytree.collections;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of non-negative ints stored as a bitmap trie: every node splits its range into 64 slots
+ * and keeps a 64-bit map of the non-empty ones, so only the non-empty slots take memory.
+ * The bottom nodes hold 64-bit words of values; the trie grows a level whenever a bigger value is added.
+ * Adding a value or merging sets copies only the nodes that change, so sets built one from another
+ * (e.g. the ancestors of a person from the ancestors of its parents) share most of their nodes.
+ * Operations on two sets skip the subtrees they share, so they're never slower than on the smaller set
+ * and usually much faster.
+ * The collection is immutable, so it's thread safe.
+ */
+public final class ImmutableIntSet {
+	private static final int BITS = 6;
+	private static final int MASK = (1 << BITS) - 1;
+
+	public static final ImmutableIntSet EMPTY = new ImmutableIntSet(BITS, 0L, new long[0], null);
+
+	// a node holds values whose bits above its shift + 6 are all 0; its slot of a value is (value >>> shift) & 63
+	private final int shift;
+	private final long bitmap;
+	// the words of the non-empty slots if the node is a bottom one (its shift is 6), the children otherwise
+	private final long[] words;
+	private final ImmutableIntSet[] children;
+
+	private ImmutableIntSet(int shift, long bitmap, long[] words, ImmutableIntSet[] children) {
+		this.shift = shift;
+		this.bitmap = bitmap;
+		this.words = words;
+		this.children = children;
+	}
+
+	public boolean isEmpty() {
+		return bitmap == 0;
+	}
+
+	/**
+	 * This function checks if a set contains a given value.
+	 * Performance: O(log N) where N is the biggest value
+	 */
+	public boolean contains(int value) {
+		if (value < 0 || !covers(shift, value)) {
+			return false;
+		}
+		ImmutableIntSet node = this;
+		while (true) {
+			long bit = 1L << ((value >>> node.shift) & MASK);
+			if ((node.bitmap & bit) == 0) {
+				return false;
+			}
+			int index = Long.bitCount(node.bitmap & (bit - 1));
+			if (node.shift == BITS) {
+				return (node.words[index] & (1L << value)) != 0;
+			}
+			node = node.children[index];
+		}
+	}
+
+	/**
+	 * This function returns a set with a given value added.
+	 * Performance: O(log N) where N is the biggest value
+	 */
+	public ImmutableIntSet with(int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("A value can't be negative");
+		}
+		if (contains(value)) {
+			return this;
+		}
+		int shift = BITS;
+		while (!covers(shift, value)) {
+			shift += BITS;
+		}
+		ImmutableIntSet singleton = new ImmutableIntSet(BITS, 1L << ((value >>> BITS) & MASK), new long[] {1L << value}, null);
+		for (int level = 2 * BITS; level <= shift; level += BITS) {
+			singleton = new ImmutableIntSet(level, 1L << ((value >>> level) & MASK), null, new ImmutableIntSet[] {singleton});
+		}
+		return union(singleton);
+	}
+
+	/**
+	 * This function returns a union of two sets. If the set already contains the other one, it's returned as is.
+	 * Performance: O(number of nodes the sets don't share)
+	 */
+	public ImmutableIntSet union(ImmutableIntSet other) {
+		if (other.isEmpty() || this == other) {
+			return this;
+		}
+		if (isEmpty()) {
+			return other;
+		}
+		ImmutableIntSet set1 = this;
+		ImmutableIntSet set2 = other;
+		// the values of a lower trie all lie in the first slots of a higher one
+		while (set1.shift < set2.shift) {
+			set1 = new ImmutableIntSet(set1.shift + BITS, 1L, null, new ImmutableIntSet[] {set1});
+		}
+		while (set2.shift < set1.shift) {
+			set2 = new ImmutableIntSet(set2.shift + BITS, 1L, null, new ImmutableIntSet[] {set2});
+		}
+		ImmutableIntSet union = union(set1, set2);
+		return union == set1 ? this : union == set2 ? other : union;
+	}
+
+	/**
+	 * This function checks if two sets have a common value.
+	 * Performance: O(number of nodes the sets don't share), but it stops at the first common value
+	 */
+	public boolean intersects(ImmutableIntSet other) {
+		if (isEmpty() || other.isEmpty()) {
+			return false;
+		}
+		ImmutableIntSet set1 = lowerTo(this, other.shift);
+		ImmutableIntSet set2 = lowerTo(other, shift);
+		return set1 != null && set2 != null && intersects(set1, set2);
+	}
+
+	/**
+	 * This function returns an intersection of two sets.
+	 * Performance: O(number of nodes the sets don't share)
+	 */
+	public ImmutableIntSet intersection(ImmutableIntSet other) {
+		if (isEmpty() || other.isEmpty()) {
+			return EMPTY;
+		}
+		ImmutableIntSet set1 = lowerTo(this, other.shift);
+		ImmutableIntSet set2 = lowerTo(other, shift);
+		ImmutableIntSet intersection = set1 != null && set2 != null ? intersection(set1, set2) : null;
+		return intersection != null ? intersection : EMPTY;
+	}
+
+	/**
+	 * This function returns the number of values in a set.
+	 * Performance: O(number of nodes)
+	 */
+	public int size() {
+		int size = 0;
+		if (shift == BITS) {
+			for (long word : words) {
+				size += Long.bitCount(word);
+			}
+		} else {
+			for (ImmutableIntSet child : children) {
+				size += child.size();
+			}
+		}
+		return size;
+	}
+
+	private static boolean covers(int shift, int value) {
+		return shift + BITS >= Integer.SIZE - 1 || value >>> (shift + BITS) == 0;
+	}
+
+	// descends the first slots of a higher trie down to a given shift; null if they're empty
+	private static ImmutableIntSet lowerTo(ImmutableIntSet set, int shift) {
+		while (set != null && set.shift > shift) {
+			set = (set.bitmap & 1L) != 0 ? set.children[0] : null;
+		}
+		return set;
+	}
+
+	private static ImmutableIntSet union(ImmutableIntSet set1, ImmutableIntSet set2) {
+		if (set1 == set2) {
+			return set1;
+		}
+		long bitmap = set1.bitmap | set2.bitmap;
+		boolean same1 = bitmap == set1.bitmap;
+		boolean same2 = bitmap == set2.bitmap;
+		int size = Long.bitCount(bitmap);
+		long[] words = set1.shift == BITS ? new long[size] : null;
+		ImmutableIntSet[] children = set1.shift == BITS ? null : new ImmutableIntSet[size];
+		int index1 = 0;
+		int index2 = 0;
+		for (int index = 0; index < size; index++) {
+			long bit = Long.lowestOneBit(bitmap);
+			bitmap ^= bit;
+			boolean in1 = (set1.bitmap & bit) != 0;
+			boolean in2 = (set2.bitmap & bit) != 0;
+			if (words != null) {
+				long word = (in1 ? set1.words[index1] : 0L) | (in2 ? set2.words[index2] : 0L);
+				same1 = same1 && word == set1.words[index];
+				same2 = same2 && word == set2.words[index];
+				words[index] = word;
+			} else {
+				ImmutableIntSet child = in1 && in2 ? union(set1.children[index1], set2.children[index2])
+						: in1 ? set1.children[index1] : set2.children[index2];
+				same1 = same1 && child == set1.children[index];
+				same2 = same2 && child == set2.children[index];
+				children[index] = child;
+			}
+			index1 += in1 ? 1 : 0;
+			index2 += in2 ? 1 : 0;
+		}
+		if (same1) {
+			return set1;
+		}
+		if (same2) {
+			return set2;
+		}
+		return new ImmutableIntSet(set1.shift, set1.bitmap | set2.bitmap, words, children);
+	}
+
+	private static boolean intersects(ImmutableIntSet set1, ImmutableIntSet set2) {
+		if (set1 == set2) {
+			return true;
+		}
+		for (long common = set1.bitmap & set2.bitmap; common != 0; common &= common - 1) {
+			long bit = Long.lowestOneBit(common);
+			int index1 = Long.bitCount(set1.bitmap & (bit - 1));
+			int index2 = Long.bitCount(set2.bitmap & (bit - 1));
+			if (set1.shift == BITS ? (set1.words[index1] & set2.words[index2]) != 0
+					: intersects(set1.children[index1], set2.children[index2])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// null if the intersection is empty, as tries don't hold empty nodes below the root
+	private static ImmutableIntSet intersection(ImmutableIntSet set1, ImmutableIntSet set2) {
+		if (set1 == set2) {
+			return set1;
+		}
+		long common = set1.bitmap & set2.bitmap;
+		int size = Long.bitCount(common);
+		long[] words = set1.shift == BITS ? new long[size] : null;
+		ImmutableIntSet[] children = set1.shift == BITS ? null : new ImmutableIntSet[size];
+		long bitmap = 0L;
+		int count = 0;
+		for (; common != 0; common &= common - 1) {
+			long bit = Long.lowestOneBit(common);
+			int index1 = Long.bitCount(set1.bitmap & (bit - 1));
+			int index2 = Long.bitCount(set2.bitmap & (bit - 1));
+			if (words != null) {
+				long word = set1.words[index1] & set2.words[index2];
+				if (word != 0) {
+					words[count++] = word;
+					bitmap |= bit;
+				}
+			} else {
+				ImmutableIntSet child = intersection(set1.children[index1], set2.children[index2]);
+				if (child != null) {
+					children[count++] = child;
+					bitmap |= bit;
+				}
+			}
+		}
+		if (bitmap == 0) {
+			return null;
+		}
+		if (words != null) {
+			return new ImmutableIntSet(BITS, bitmap, count == size ? words : Arrays.copyOf(words, count), null);
+		}
+		return new ImmutableIntSet(set1.shift, bitmap, null, count == size ? children : Arrays.copyOf(children, count));
+	}
+}
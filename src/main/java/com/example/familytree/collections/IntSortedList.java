@@ -0,0 +1,331 @@
+package com.example.familytree.collections;
+
+import com.example.familytree.enums.Order;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+/**
+ * A sorted list of int ids, a variant of the SortedList specialized for primitive elements.
+ * Instead of a linked list of nodes, every bucket keeps its ids in a growable int array, in the order
+ * they were added, so adding an id takes one array slot instead of a 24+ byte node, and iterating
+ * scans contiguous memory instead of chasing pointers, without allocating anything.
+ * The order is the same as the SortedList one: buckets are ordered by the index, and the elements
+ * of a bucket are returned from the most recently added one.
+ * An id may be stored once; the position of each id in its bucket is kept in a chunked array indexed by ids,
+ * so removing an id takes O(1) time as well: its slot is cleared, and a bucket is compacted (keeping the order)
+ * when more than a half of its slots are cleared.
+ * Counting and skipping empty buckets work the same way as in the SortedList (see BucketCounts).
+ * The collection is not thread safe, so must be used within a thread-safe environment.
+ */
+public class IntSortedList {
+	private static final int NONE = -1;
+	private static final int MIN_BUCKET_LENGTH = 4;
+	private static final int[] EMPTY_BUCKET = new int[0];
+
+	private final int maxSize;
+	private int size;
+	private int modCount;
+
+	/**
+	 * Ids of each bucket, in the order they were added; cleared slots hold -1.
+	 */
+	private final int[][] buckets;
+
+	/**
+	 * Number of used slots of each bucket, including the cleared ones.
+	 */
+	private final int[] bucketEnds;
+
+	/**
+	 * Slot of each id in its bucket, or -1 if the id isn't stored.
+	 */
+	private final ChunkedIntArray positions;
+
+	private final BucketCounts counts;
+
+	public IntSortedList(int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Size must be greater than 0");
+		}
+		this.maxSize = maxSize;
+		this.buckets = new int[maxSize + 1][];
+		Arrays.fill(buckets, EMPTY_BUCKET);
+		this.bucketEnds = new int[maxSize + 1];
+		this.positions = new ChunkedIntArray(NONE);
+		this.counts = new BucketCounts(maxSize);
+	}
+
+	/**
+	 * Adds a new id to the sorted list.
+	 * Performance: O(log maxSize) amortized; this is because of the bucket counts update.
+	 */
+	public void add(int index, int id) {
+		checkIndex(index);
+		if (id < 0) {
+			throw new IllegalArgumentException("Id cannot be negative");
+		}
+		if (contains(id)) {
+			throw new IllegalArgumentException("Id " + id + " is already stored");
+		}
+		int end = bucketEnds[index];
+		int[] bucket = buckets[index];
+		if (end == bucket.length) {
+			bucket = Arrays.copyOf(bucket, Math.max(MIN_BUCKET_LENGTH, end * 2));
+			buckets[index] = bucket;
+		}
+		bucket[end] = id;
+		bucketEnds[index] = end + 1;
+		positions.grow(id + 1);
+		positions.set(id, end);
+		size++;
+		modCount++;
+		counts.increment(index);
+	}
+
+	/**
+	 * Removes an id stored under a given index.
+	 * Performance: O(log maxSize) amortized; this is because of the bucket counts update.
+	 */
+	public void remove(int index, int id) {
+		checkIndex(index);
+		int position = id >= 0 && id < positions.size() ? positions.get(id) : NONE;
+		if (position == NONE || position >= bucketEnds[index] || buckets[index][position] != id) {
+			throw new NoSuchElementException("Id " + id + " isn't stored under index " + index);
+		}
+		buckets[index][position] = NONE;
+		positions.set(id, NONE);
+		size--;
+		modCount++;
+		counts.decrement(index);
+
+		int bucketSize = counts.count(index);
+		if (bucketSize == 0) {
+			bucketEnds[index] = 0;
+		} else if (bucketSize * 2 < bucketEnds[index]) {
+			compact(index);
+		}
+	}
+
+	/**
+	 * Returns whether an id is stored.
+	 * Performance: O(1)
+	 */
+	public boolean contains(int id) {
+		return id >= 0 && id < positions.size() && positions.get(id) != NONE;
+	}
+
+	/**
+	 * Returns the collection size.
+	 * Performance: O(1)
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of ids stored under a given index.
+	 * Performance: O(1)
+	 */
+	public int count(int index) {
+		checkIndex(index);
+		return counts.count(index);
+	}
+
+	/**
+	 * Returns the number of ids stored under the indexes within a given range (both ends inclusive).
+	 * Performance: O(log maxSize)
+	 */
+	public int count(int fromIndex, int toIndex) {
+		checkRange(fromIndex, toIndex);
+		return counts.prefixCount(toIndex) - counts.prefixCount(fromIndex - 1);
+	}
+
+	/**
+	 * Returns the first index of a non-empty bucket which is greater than or equal to a given one,
+	 * or -1 if there's no such bucket.
+	 * Performance: O(maxSize / 64)
+	 */
+	public int nextIndex(int fromIndex) {
+		if (fromIndex < 0) {
+			throw new IndexOutOfBoundsException("Index cannot be negative");
+		}
+		int index = counts.nextOccupied(fromIndex);
+		return index > maxSize ? -1 : index;
+	}
+
+	/**
+	 * Returns the ids in a given order, the counterpart of the SortedList's toOrderedList().
+	 * Performance: O(N)
+	 */
+	public int[] toArray(Order order) {
+		int[] ids = new int[size];
+		int length = 0;
+		int index = order == Order.ASC ? counts.nextOccupied(0) : counts.previousOccupied(maxSize);
+		while (index >= 0 && index <= maxSize) {
+			int[] bucket = buckets[index];
+			for (int i = bucketEnds[index] - 1; i >= 0; i--) {
+				if (bucket[i] != NONE) {
+					ids[length++] = bucket[i];
+				}
+			}
+			index = order == Order.ASC ? counts.nextOccupied(index + 1) : counts.previousOccupied(index - 1);
+		}
+		return ids;
+	}
+
+	/**
+	 * Passes the ids to a given action in a given order.
+	 * Performance: O(N)
+	 */
+	public void forEach(Order order, IntConsumer action) {
+		forEach(order, order == Order.ASC ? 0 : maxSize, order == Order.ASC ? maxSize : 0, action);
+	}
+
+	/**
+	 * Passes the ids to a given action in a given order, starting with the ids of a given index
+	 * and ending with the ids of the last index (inclusive).
+	 * The last index cannot precede the first one in the iteration order.
+	 * Performance: O(number of ids passed + maxSize / 64)
+	 */
+	public void forEach(Order order, int fromIndex, int lastIndex, IntConsumer action) {
+		if (order == Order.ASC) {
+			checkRange(fromIndex, lastIndex);
+			for (int index = counts.nextOccupied(fromIndex); index <= lastIndex; index = counts.nextOccupied(index + 1)) {
+				forEachInBucket(index, action);
+			}
+		} else {
+			checkRange(lastIndex, fromIndex);
+			for (int index = counts.previousOccupied(fromIndex); index >= lastIndex; index = counts.previousOccupied(index - 1)) {
+				forEachInBucket(index, action);
+			}
+		}
+	}
+
+	/**
+	 * Returns an ascending iterator.
+	 */
+	public PrimitiveIterator.OfInt iterator() {
+		return iterator(Order.ASC, 0, maxSize);
+	}
+
+	/**
+	 * Returns an iterator in a given order, starting with the ids of a given index
+	 * and ending with the ids of the last index (inclusive).
+	 * The last index cannot precede the first one in the iteration order.
+	 * The iterator doesn't box the ids (see nextInt()); it fails if the list is modified while it's used.
+	 * Performance: O(1) to create
+	 */
+	public PrimitiveIterator.OfInt iterator(Order order, int fromIndex, int lastIndex) {
+		if (order == Order.ASC) {
+			checkRange(fromIndex, lastIndex);
+		} else {
+			checkRange(lastIndex, fromIndex);
+		}
+		return new IntSortedListIterator(order == Order.ASC ? 1 : -1, fromIndex, lastIndex);
+	}
+
+	private void forEachInBucket(int index, IntConsumer action) {
+		int[] bucket = buckets[index];
+		for (int i = bucketEnds[index] - 1; i >= 0; i--) {
+			int id = bucket[i];
+			if (id != NONE) {
+				action.accept(id);
+			}
+		}
+	}
+
+	/**
+	 * Moves the ids of a bucket to the front of its array, keeping their order.
+	 * It's done once more than a half of the slots are cleared, so its cost is amortized over the removals.
+	 */
+	private void compact(int index) {
+		int[] bucket = buckets[index];
+		int end = 0;
+		for (int i = 0; i < bucketEnds[index]; i++) {
+			int id = bucket[i];
+			if (id != NONE) {
+				bucket[end] = id;
+				positions.set(id, end++);
+			}
+		}
+		Arrays.fill(bucket, end, bucketEnds[index], NONE);
+		bucketEnds[index] = end;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index > maxSize) {
+			throw new IndexOutOfBoundsException("Index must be with the range [0, " + maxSize + "]");
+		}
+	}
+
+	private void checkRange(int fromIndex, int toIndex) {
+		checkIndex(fromIndex);
+		checkIndex(toIndex);
+		if (fromIndex > toIndex) {
+			throw new IllegalArgumentException("Range start " + fromIndex + " is greater than its end " + toIndex);
+		}
+	}
+
+	/**
+	 * An iterator in both directions; step is 1 for the ascending order and -1 for the descending one.
+	 */
+	private class IntSortedListIterator implements PrimitiveIterator.OfInt {
+		final int step;
+		final int lastIndex;
+		final int expectedModCount;
+		int index;
+		int slot;
+		int next = NONE;
+
+		IntSortedListIterator(int step, int fromIndex, int lastIndex) {
+			this.step = step;
+			this.lastIndex = lastIndex;
+			this.expectedModCount = modCount;
+			this.index = fromIndex - step;
+			advance();
+		}
+
+		/**
+		 * Finds the next stored id, walking the current bucket down and then moving to the next non-empty one.
+		 */
+		private void advance() {
+			while (true) {
+				while (--slot >= 0) {
+					int id = buckets[index][slot];
+					if (id != NONE) {
+						next = id;
+						return;
+					}
+				}
+				index = step > 0 ? counts.nextOccupied(index + 1) : counts.previousOccupied(index - 1);
+				if (step > 0 ? index > lastIndex : index < lastIndex) {
+					next = NONE;
+					return;
+				}
+				slot = bucketEnds[index];
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != NONE;
+		}
+
+		@Override
+		public int nextInt() {
+			if (next == NONE) {
+				throw new NoSuchElementException();
+			}
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			int id = next;
+			advance();
+			return id;
+		}
+	}
+}
@@ -0,0 +1,384 @@
+package com.example.familytree.collections;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A read-only family graph served straight from a memory-mapped snapshot file.
+ * Nothing is deserialized into the heap when a snapshot is opened, so opening takes constant time
+ * and the actual reading cost is paid by page faults of the touched parts of the file.
+ *
+ * The snapshot file is little-endian and consists of a header followed by 8-byte aligned sections:
+ * - name offsets: long[size + 1], offsets of UTF-8 encoded names in the name bytes section,
+ * - name bytes: byte[],
+ * - name table: int[tableLength], an open-addressing hash table of (id + 1) values; 0 stands for an empty slot,
+ * - ages: short[size],
+ * - first parents: int[size], second parents: int[size],
+ * - child offsets: int[size + 1], offsets of children lists in the children section (CSR layout),
+ * - children: int[],
+ * - age bucket heads: int[maxAge + 1], age bucket next ids: int[size].
+ * The file is mapped in 1 GB regions, as a single mapping cannot exceed 2 GB.
+ */
+public class MappedFamilyGraph implements FamilyGraph {
+	private static final int NONE = -1;
+	private static final int MAGIC = 0x46545245;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 128;
+	private static final int REGION_BITS = 30;
+	private static final long REGION_SIZE = 1L << REGION_BITS;
+
+	private final Regions regions;
+	private final int size;
+	private final int maxAge;
+	private final int tableLength;
+	private final long nameOffsetsPos;
+	private final long nameBytesPos;
+	private final long nameTablePos;
+	private final long agesPos;
+	private final long parents1Pos;
+	private final long parents2Pos;
+	private final long childOffsetsPos;
+	private final long childrenPos;
+	private final long bucketHeadsPos;
+	private final long bucketNextPos;
+
+	private MappedFamilyGraph(Regions regions) {
+		this.regions = regions;
+		if (regions.getInt(0) != MAGIC) {
+			throw new IllegalArgumentException("Not a family tree snapshot");
+		}
+		if (regions.getInt(4) != VERSION) {
+			throw new IllegalArgumentException("Unsupported snapshot version " + regions.getInt(4));
+		}
+		this.size = regions.getInt(8);
+		this.maxAge = regions.getInt(12);
+		this.tableLength = regions.getInt(16);
+		this.nameOffsetsPos = regions.getLong(24);
+		this.nameBytesPos = regions.getLong(32);
+		this.nameTablePos = regions.getLong(40);
+		this.agesPos = regions.getLong(48);
+		this.parents1Pos = regions.getLong(56);
+		this.parents2Pos = regions.getLong(64);
+		this.childOffsetsPos = regions.getLong(72);
+		this.childrenPos = regions.getLong(80);
+		this.bucketHeadsPos = regions.getLong(88);
+		this.bucketNextPos = regions.getLong(96);
+		if (regions.getLong(104) != regions.length) {
+			throw new IllegalArgumentException("Truncated snapshot file");
+		}
+	}
+
+	/**
+	 * Maps a snapshot file.
+	 * Performance: O(1); the data is read lazily by page faults.
+	 */
+	public static MappedFamilyGraph open(Path path) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+			return new MappedFamilyGraph(new Regions(file.getChannel(), FileChannel.MapMode.READ_ONLY, file.length()));
+		}
+	}
+
+	/**
+	 * Writes a snapshot of a given graph.
+	 * The file is written through a memory mapping, so no part of the graph gets copied into the heap,
+	 * and it's moved to the target path once it's complete.
+	 * Performance: O(N)
+	 */
+	public static void writeSnapshot(FamilyGraph graph, Path path) throws IOException {
+		int size = graph.size();
+		int maxAge = graph.maxAge();
+		long nameBytesLength = 0;
+		long childrenCount = 0;
+		for (int id = 0; id < size; id++) {
+			nameBytesLength += NameArena.utf8Length(graph.name(id));
+			childrenCount += graph.childCount(id);
+		}
+		if (childrenCount > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many children links");
+		}
+		int tableLength = 16;
+		while (tableLength < (long) size * 2 && tableLength < 1 << 30) {
+			tableLength <<= 1;
+		}
+
+		long nameOffsetsPos = HEADER_SIZE;
+		long nameBytesPos = align(nameOffsetsPos + 8L * (size + 1));
+		long nameTablePos = align(nameBytesPos + nameBytesLength);
+		long agesPos = align(nameTablePos + 4L * tableLength);
+		long parents1Pos = align(agesPos + 2L * size);
+		long parents2Pos = align(parents1Pos + 4L * size);
+		long childOffsetsPos = align(parents2Pos + 4L * size);
+		long childrenPos = align(childOffsetsPos + 4L * (size + 1));
+		long bucketHeadsPos = align(childrenPos + 4L * childrenCount);
+		long bucketNextPos = align(bucketHeadsPos + 4L * (maxAge + 1));
+		long fileLength = align(bucketNextPos + 4L * size);
+
+		Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+		try (RandomAccessFile file = new RandomAccessFile(tmpPath.toFile(), "rw")) {
+			file.setLength(0);
+			file.setLength(fileLength);
+			Regions regions = new Regions(file.getChannel(), FileChannel.MapMode.READ_WRITE, fileLength);
+
+			long nameOffset = 0;
+			int childOffset = 0;
+			for (int id = 0; id < size; id++) {
+				String name = graph.name(id);
+				regions.putLong(nameOffsetsPos + 8L * id, nameOffset);
+				nameOffset = encode(name, regions, nameBytesPos + nameOffset) - nameBytesPos;
+
+				int mask = tableLength - 1;
+				int slot = CompactFamilyGraph.spread(name.hashCode()) & mask;
+				while (regions.getInt(nameTablePos + 4L * slot) != 0) {
+					slot = (slot + 1) & mask;
+				}
+				regions.putInt(nameTablePos + 4L * slot, id + 1);
+
+				regions.putShort(agesPos + 2L * id, (short) graph.age(id));
+				regions.putInt(parents1Pos + 4L * id, graph.parent1(id));
+				regions.putInt(parents2Pos + 4L * id, graph.parent2(id));
+
+				regions.putInt(childOffsetsPos + 4L * id, childOffset);
+				for (int i = 0; i < graph.childCount(id); i++) {
+					regions.putInt(childrenPos + 4L * childOffset++, graph.child(id, i));
+				}
+				regions.putInt(bucketNextPos + 4L * id, graph.nextInBucket(id));
+			}
+			regions.putLong(nameOffsetsPos + 8L * size, nameOffset);
+			regions.putInt(childOffsetsPos + 4L * size, childOffset);
+			for (int age = 0; age <= maxAge; age++) {
+				regions.putInt(bucketHeadsPos + 4L * age, graph.firstInBucket(age));
+			}
+
+			regions.putInt(4, VERSION);
+			regions.putInt(8, size);
+			regions.putInt(12, maxAge);
+			regions.putInt(16, tableLength);
+			regions.putLong(24, nameOffsetsPos);
+			regions.putLong(32, nameBytesPos);
+			regions.putLong(40, nameTablePos);
+			regions.putLong(48, agesPos);
+			regions.putLong(56, parents1Pos);
+			regions.putLong(64, parents2Pos);
+			regions.putLong(72, childOffsetsPos);
+			regions.putLong(80, childrenPos);
+			regions.putLong(88, bucketHeadsPos);
+			regions.putLong(96, bucketNextPos);
+			regions.putLong(104, fileLength);
+			regions.putInt(0, MAGIC);
+			regions.force();
+		}
+		Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Returns an id of a given name or -1 if the name doesn't exist.
+	 * Names are compared with the mapped UTF-8 bytes as they're encoded, so nothing is decoded.
+	 * Performance: O(1)
+	 */
+	@Override
+	public int indexOf(String name) {
+		if (name == null) {
+			return NONE;
+		}
+		int mask = tableLength - 1;
+		for (int slot = CompactFamilyGraph.spread(name.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+			int entry = regions.getInt(nameTablePos + 4L * slot);
+			if (entry == 0) {
+				return NONE;
+			}
+			if (nameEquals(entry - 1, name)) {
+				return entry - 1;
+			}
+		}
+	}
+
+	@Override
+	public String name(int id) {
+		checkId(id);
+		long start = regions.getLong(nameOffsetsPos + 8L * id);
+		long end = regions.getLong(nameOffsetsPos + 8L * (id + 1));
+		byte[] bytes = new byte[(int) (end - start)];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = regions.getByte(nameBytesPos + start + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public int age(int id) {
+		checkId(id);
+		return regions.getShort(agesPos + 2L * id);
+	}
+
+	@Override
+	public int parent1(int id) {
+		checkId(id);
+		return regions.getInt(parents1Pos + 4L * id);
+	}
+
+	@Override
+	public int parent2(int id) {
+		checkId(id);
+		return regions.getInt(parents2Pos + 4L * id);
+	}
+
+	@Override
+	public int childCount(int id) {
+		checkId(id);
+		return regions.getInt(childOffsetsPos + 4L * (id + 1)) - regions.getInt(childOffsetsPos + 4L * id);
+	}
+
+	@Override
+	public int child(int id, int i) {
+		int count = childCount(id);
+		if (i < 0 || i >= count) {
+			throw new IndexOutOfBoundsException("Index must be with the range [0, " + (count - 1) + "]");
+		}
+		return regions.getInt(childrenPos + 4L * (regions.getInt(childOffsetsPos + 4L * id) + i));
+	}
+
+	@Override
+	public int firstInBucket(int age) {
+		if (age < 0 || age > maxAge) {
+			throw new IndexOutOfBoundsException("Age must be with the range [0, " + maxAge + "]");
+		}
+		return regions.getInt(bucketHeadsPos + 4L * age);
+	}
+
+	@Override
+	public int nextInBucket(int id) {
+		checkId(id);
+		return regions.getInt(bucketNextPos + 4L * id);
+	}
+
+	@Override
+	public int maxAge() {
+		return maxAge;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	private boolean nameEquals(int id, String name) {
+		long pos = nameBytesPos + regions.getLong(nameOffsetsPos + 8L * id);
+		long end = nameBytesPos + regions.getLong(nameOffsetsPos + 8L * (id + 1));
+		for (int i = 0; i < name.length(); i++) {
+			int codePoint = name.codePointAt(i);
+			if (Character.isSupplementaryCodePoint(codePoint)) {
+				i++;
+			}
+			int length = NameArena.utf8Length(codePoint);
+			if (pos + length > end) {
+				return false;
+			}
+			for (int j = 0; j < length; j++) {
+				if (regions.getByte(pos + j) != NameArena.utf8Byte(codePoint, length, j)) {
+					return false;
+				}
+			}
+			pos += length;
+		}
+		return pos == end;
+	}
+
+	private void checkId(int id) {
+		if (id < 0 || id >= size) {
+			throw new IndexOutOfBoundsException("Id must be with the range [0, " + (size - 1) + "]");
+		}
+	}
+
+	private static long align(long position) {
+		return (position + 7) & ~7L;
+	}
+
+	/**
+	 * Encodes a name at a given position and returns the position right after it.
+	 */
+	private static long encode(String name, Regions regions, long pos) {
+		for (int i = 0; i < name.length(); i++) {
+			int codePoint = name.codePointAt(i);
+			if (Character.isSupplementaryCodePoint(codePoint)) {
+				i++;
+			}
+			int length = NameArena.utf8Length(codePoint);
+			for (int j = 0; j < length; j++) {
+				regions.putByte(pos++, NameArena.utf8Byte(codePoint, length, j));
+			}
+		}
+		return pos;
+	}
+
+	/**
+	 * A file mapped in fixed-size regions and addressed by long positions.
+	 * Sections are 8-byte aligned and regions are a multiple of 8 bytes big,
+	 * so primitives other than bytes never cross a region boundary.
+	 */
+	private static class Regions {
+		private final MappedByteBuffer[] buffers;
+		private final long length;
+
+		Regions(FileChannel channel, FileChannel.MapMode mode, long length) throws IOException {
+			if (length < HEADER_SIZE) {
+				throw new IllegalArgumentException("Not a family tree snapshot");
+			}
+			this.length = length;
+			this.buffers = new MappedByteBuffer[(int) ((length + REGION_SIZE - 1) >>> REGION_BITS)];
+			for (int i = 0; i < buffers.length; i++) {
+				long start = (long) i << REGION_BITS;
+				buffers[i] = channel.map(mode, start, Math.min(REGION_SIZE, length - start));
+				buffers[i].order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+
+		byte getByte(long pos) {
+			return buffers[(int) (pos >>> REGION_BITS)].get(offset(pos));
+		}
+
+		short getShort(long pos) {
+			return buffers[(int) (pos >>> REGION_BITS)].getShort(offset(pos));
+		}
+
+		int getInt(long pos) {
+			return buffers[(int) (pos >>> REGION_BITS)].getInt(offset(pos));
+		}
+
+		long getLong(long pos) {
+			return buffers[(int) (pos >>> REGION_BITS)].getLong(offset(pos));
+		}
+
+		void putByte(long pos, byte value) {
+			buffers[(int) (pos >>> REGION_BITS)].put(offset(pos), value);
+		}
+
+		void putShort(long pos, short value) {
+			buffers[(int) (pos >>> REGION_BITS)].putShort(offset(pos), value);
+		}
+
+		void putInt(long pos, int value) {
+			buffers[(int) (pos >>> REGION_BITS)].putInt(offset(pos), value);
+		}
+
+		void putLong(long pos, long value) {
+			buffers[(int) (pos >>> REGION_BITS)].putLong(offset(pos), value);
+		}
+
+		void force() {
+			for (MappedByteBuffer buffer : buffers) {
+				buffer.force();
+			}
+		}
+
+		private static int offset(long pos) {
+			return (int) (pos & (REGION_SIZE - 1));
+		}
+	}
+}
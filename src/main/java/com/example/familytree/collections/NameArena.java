@@ -0,0 +1,243 @@
+package com.example.familytree.collections;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An append-only store of names encoded in UTF-8, identified by integer ids (0, 1, 2, ...) in the insertion order.
+ * The names are packed one after another into 1 MB chunks of a byte arena, each one prefixed by its length
+ * (one byte, or two for names longer than 127 bytes), and the only other per-name cost is its int position,
+ * so a name takes its UTF-8 bytes plus 5 bytes, instead of a String object, its array and a reference
+ * (50+ bytes on top of the characters). The chunks are heap byte buffers, or direct ones (off-heap)
+ * if the arena is created so, which keeps the names out of the garbage collector's work entirely.
+ * Names are compared and hashed straight from the bytes, so the lookups don't allocate anything;
+ * only get() materializes a String.
+ * A name never crosses a chunk boundary, and positions are unsigned ints, so the arena holds up to 4 GB of names.
+ * The collection is not thread safe, so must be used within a thread-safe environment.
+ */
+public class NameArena {
+	private static final int CHUNK_BITS = 20;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	private static final int MAX_CHUNKS = 1 << (32 - CHUNK_BITS);
+	private static final int MAX_NAME_BYTES = (1 << 14) - 1;
+
+	private final boolean offHeap;
+	private ByteBuffer[] chunks;
+	private int chunkCount;
+
+	/**
+	 * Write position within the last chunk.
+	 */
+	private int end;
+
+	/**
+	 * Position of each name: chunk << CHUNK_BITS | offset within the chunk, as an unsigned int.
+	 */
+	private final ChunkedIntArray positions;
+
+	public NameArena(boolean offHeap) {
+		this.offHeap = offHeap;
+		this.chunks = new ByteBuffer[8];
+		this.positions = new ChunkedIntArray(0);
+		this.end = CHUNK_SIZE;
+	}
+
+	/**
+	 * Appends a name and returns its id.
+	 * Performance: O(name length)
+	 */
+	public int add(String name) {
+		int length = utf8Length(name);
+		if (length > MAX_NAME_BYTES) {
+			throw new IllegalArgumentException("Name cannot be longer than " + MAX_NAME_BYTES + " bytes");
+		}
+		int prefixLength = length < 0x80 ? 1 : 2;
+		if (end + prefixLength + length > CHUNK_SIZE) {
+			if (chunkCount == MAX_CHUNKS) {
+				throw new IllegalStateException("The name arena is full");
+			}
+			if (chunkCount == chunks.length) {
+				chunks = Arrays.copyOf(chunks, chunkCount * 2);
+			}
+			chunks[chunkCount++] = offHeap ? ByteBuffer.allocateDirect(CHUNK_SIZE) : ByteBuffer.allocate(CHUNK_SIZE);
+			end = 0;
+		}
+		int id = positions.size();
+		positions.add((chunkCount - 1) << CHUNK_BITS | end);
+
+		ByteBuffer chunk = chunks[chunkCount - 1];
+		if (prefixLength == 1) {
+			chunk.put(end++, (byte) length);
+		} else {
+			chunk.put(end++, (byte) (0x80 | (length >>> 7)));
+			chunk.put(end++, (byte) (length & 0x7F));
+		}
+		for (int i = 0; i < name.length(); i++) {
+			int codePoint = name.codePointAt(i);
+			if (Character.isSupplementaryCodePoint(codePoint)) {
+				i++;
+			}
+			int codePointLength = utf8Length(codePoint);
+			for (int j = 0; j < codePointLength; j++) {
+				chunk.put(end++, utf8Byte(codePoint, codePointLength, j));
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the name of a given id.
+	 * Performance: O(name length)
+	 */
+	public String get(int id) {
+		int position = positions.get(id);
+		ByteBuffer chunk = chunks[position >>> CHUNK_BITS];
+		int offset = position & CHUNK_MASK;
+		int length = length(chunk, offset);
+		int pos = offset + (length < 0x80 ? 1 : 2);
+		int last = pos + length;
+		// a name has at most as many UTF-16 characters as UTF-8 bytes
+		char[] chars = new char[length];
+		int count = 0;
+		while (pos < last) {
+			int codePoint = decode(chunk, pos);
+			pos += utf8Length(codePoint);
+			count += Character.toChars(codePoint, chars, count);
+		}
+		return new String(chars, 0, count);
+	}
+
+	/**
+	 * Returns whether the name of a given id equals a given string, without decoding the name.
+	 * Performance: O(name length)
+	 */
+	public boolean equals(int id, String name) {
+		int position = positions.get(id);
+		ByteBuffer chunk = chunks[position >>> CHUNK_BITS];
+		int offset = position & CHUNK_MASK;
+		int length = length(chunk, offset);
+		int pos = offset + (length < 0x80 ? 1 : 2);
+		int last = pos + length;
+		for (int i = 0; i < name.length(); i++) {
+			int codePoint = name.codePointAt(i);
+			if (Character.isSupplementaryCodePoint(codePoint)) {
+				i++;
+			}
+			int codePointLength = utf8Length(codePoint);
+			if (pos + codePointLength > last) {
+				return false;
+			}
+			for (int j = 0; j < codePointLength; j++) {
+				if (chunk.get(pos + j) != utf8Byte(codePoint, codePointLength, j)) {
+					return false;
+				}
+			}
+			pos += codePointLength;
+		}
+		return pos == last;
+	}
+
+	/**
+	 * Returns the String#hashCode() of the name of a given id, computed from the bytes.
+	 * Performance: O(name length)
+	 */
+	public int hashCode(int id) {
+		int position = positions.get(id);
+		ByteBuffer chunk = chunks[position >>> CHUNK_BITS];
+		int offset = position & CHUNK_MASK;
+		int length = length(chunk, offset);
+		int pos = offset + (length < 0x80 ? 1 : 2);
+		int last = pos + length;
+		int hash = 0;
+		while (pos < last) {
+			int codePoint = decode(chunk, pos);
+			pos += utf8Length(codePoint);
+			if (Character.isSupplementaryCodePoint(codePoint)) {
+				hash = 31 * hash + Character.highSurrogate(codePoint);
+				hash = 31 * hash + Character.lowSurrogate(codePoint);
+			} else {
+				hash = 31 * hash + codePoint;
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns the number of names.
+	 * Performance: O(1)
+	 */
+	public int size() {
+		return positions.size();
+	}
+
+	/**
+	 * Returns the number of bytes allocated for the names' bytes (the chunks).
+	 * Performance: O(1)
+	 */
+	public long allocatedBytes() {
+		return (long) chunkCount * CHUNK_SIZE;
+	}
+
+	private static int length(ByteBuffer chunk, int offset) {
+		int first = chunk.get(offset);
+		return first >= 0 ? first : (first & 0x7F) << 7 | chunk.get(offset + 1);
+	}
+
+	/**
+	 * Decodes a code point encoded at a given position (the counterpart of utf8Byte()).
+	 */
+	private static int decode(ByteBuffer chunk, int pos) {
+		int first = chunk.get(pos) & 0xFF;
+		if (first < 0x80) {
+			return first;
+		}
+		int length = first >= 0xF0 ? 4 : first >= 0xE0 ? 3 : 2;
+		int codePoint = first & (0x7F >>> length);
+		for (int i = 1; i < length; i++) {
+			codePoint = codePoint << 6 | (chunk.get(pos + i) & 0x3F);
+		}
+		return codePoint;
+	}
+
+	static int utf8Length(String name) {
+		int length = 0;
+		for (int i = 0; i < name.length(); i++) {
+			int codePoint = name.codePointAt(i);
+			if (Character.isSupplementaryCodePoint(codePoint)) {
+				i++;
+			}
+			length += utf8Length(codePoint);
+		}
+		return length;
+	}
+
+	/**
+	 * Returns the number of UTF-8 bytes of a code point; unpaired surrogates are encoded as 3 bytes as well,
+	 * so that every string round-trips.
+	 */
+	static int utf8Length(int codePoint) {
+		if (codePoint < 0x80) {
+			return 1;
+		} else if (codePoint < 0x800) {
+			return 2;
+		} else if (codePoint < 0x10000) {
+			return 3;
+		}
+		return 4;
+	}
+
+	/**
+	 * Returns the i-th byte of a code point encoded in a given number of UTF-8 bytes.
+	 */
+	static byte utf8Byte(int codePoint, int length, int i) {
+		if (length == 1) {
+			return (byte) codePoint;
+		}
+		if (i == 0) {
+			int prefix = length == 2 ? 0xC0 : length == 3 ? 0xE0 : 0xF0;
+			return (byte) (prefix | (codePoint >>> (6 * (length - 1))));
+		}
+		return (byte) (0x80 | ((codePoint >>> (6 * (length - 1 - i))) & 0x3F));
+	}
+}
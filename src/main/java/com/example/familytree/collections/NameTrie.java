@@ -0,0 +1,337 @@
+package com.example.familytree.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A compressed trie (radix tree) of string keys, which finds the keys starting with a given prefix,
+ * or with a misspelled one, without scanning all of them.
+ * Every edge is labeled with a string rather than a single character, and a node without a value has
+ * at least two children, so the tree has fewer than two nodes per key, and a search visits O(limit) nodes below
+ * the prefix; the results are returned in the lexicographic order of the keys.
+ * The fuzzy search walks the tree computing a row of the edit (Levenshtein) distance matrix per character
+ * and prunes a subtree once every cell of the row is greater than the max distance, so it visits the nodes
+ * whose labels are within the max distance from the prefix only, however many keys are stored.
+ * The collection is not thread safe, so must be used within a thread-safe environment.
+ * The only exception are the searches running concurrently with put() and remove(): nodes are never relabeled
+ * and children arrays are copied on write, so a concurrent search may return inconsistent results (which the
+ * caller must validate), or fail, but it never loops.
+ */
+public class NameTrie<E> {
+	@SuppressWarnings("rawtypes")
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	@SuppressWarnings("unchecked")
+	private final Node<E> root = new Node<>("", null, NO_CHILDREN);
+	private int size;
+
+	/**
+	 * Stores a value under a given key, replacing the current one, if any.
+	 * Performance: O(key length + log fanout) per node on the key's path
+	 */
+	@SuppressWarnings("unchecked")
+	public void put(String key, E value) {
+		if (key == null || value == null) {
+			throw new IllegalArgumentException("Key and value must be defined");
+		}
+		Node<E> parent = root;
+		int offset = 0;
+		while (offset < key.length()) {
+			int slot = parent.find(key.charAt(offset));
+			if (slot < 0) {
+				parent.children = inserted(parent.children, -slot - 1, new Node<>(key.substring(offset), value, NO_CHILDREN));
+				size++;
+				return;
+			}
+			Node<E> child = parent.children[slot];
+			int common = commonPrefix(child.label, key, offset);
+			if (common == child.label.length()) {
+				parent = child;
+				offset += common;
+				continue;
+			}
+			// the child's edge is split; the child is copied rather than relabeled, as searches may stand on it
+			Node<E> rest = new Node<>(child.label.substring(common), child.value, child.children);
+			String label = child.label.substring(0, common);
+			Node<E> split;
+			if (offset + common == key.length()) {
+				Node<E>[] children = newChildren(1);
+				children[0] = rest;
+				split = new Node<>(label, value, children);
+			} else {
+				Node<E> leaf = new Node<>(key.substring(offset + common), value, NO_CHILDREN);
+				Node<E>[] children = newChildren(2);
+				boolean restFirst = rest.label.charAt(0) < leaf.label.charAt(0);
+				children[0] = restFirst ? rest : leaf;
+				children[1] = restFirst ? leaf : rest;
+				split = new Node<>(label, null, children);
+			}
+			parent.children = replaced(parent.children, slot, split);
+			size++;
+			return;
+		}
+		if (parent.value == null) {
+			size++;
+		}
+		parent.value = value;
+	}
+
+	/**
+	 * Removes the value stored under a given key and returns it, or null if there's no such key.
+	 * Performance: O(key length + log fanout) per node on the key's path
+	 */
+	public E remove(String key) {
+		if (key == null) {
+			return null;
+		}
+		Node<E> grandparent = null;
+		Node<E> parent = null;
+		Node<E> node = root;
+		int offset = 0;
+		while (offset < key.length()) {
+			int slot = node.find(key.charAt(offset));
+			if (slot < 0 || !key.startsWith(node.children[slot].label, offset)) {
+				return null;
+			}
+			grandparent = parent;
+			parent = node;
+			node = node.children[slot];
+			offset += node.label.length();
+		}
+		E value = node.value;
+		if (value == null) {
+			return null;
+		}
+		size--;
+		if (node == root || node.children.length > 1) {
+			node.value = null;
+		} else if (node.children.length == 1) {
+			// the node has nothing to branch anymore, so it's merged with its only child
+			parent.children = replaced(parent.children, parent.find(node.label.charAt(0)), merged(node, node.children[0]));
+		} else {
+			parent.children = removed(parent.children, parent.find(node.label.charAt(0)));
+			if (parent != root && parent.value == null && parent.children.length == 1) {
+				grandparent.children = replaced(grandparent.children, grandparent.find(parent.label.charAt(0)),
+						merged(parent, parent.children[0]));
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the value stored under a given key, or null if there's no such key.
+	 * Performance: O(key length + log fanout) per node on the key's path
+	 */
+	public E get(String key) {
+		Node<E> node = root;
+		int offset = 0;
+		while (offset < key.length()) {
+			int slot = node.find(key.charAt(offset));
+			if (slot < 0 || !key.startsWith(node.children[slot].label, offset)) {
+				return null;
+			}
+			node = node.children[slot];
+			offset += node.label.length();
+		}
+		return node.value;
+	}
+
+	/**
+	 * Returns the number of keys.
+	 * Performance: O(1)
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the values of at most limit keys starting with a given prefix, in the order of the keys.
+	 * Performance: O(prefix length + limit * key length)
+	 */
+	public List<E> prefixSearch(String prefix, int limit) {
+		Node<E> node = root;
+		int offset = 0;
+		while (offset < prefix.length()) {
+			int slot = node.find(prefix.charAt(offset));
+			if (slot < 0) {
+				return Collections.emptyList();
+			}
+			node = node.children[slot];
+			int common = commonPrefix(node.label, prefix, offset);
+			if (common < node.label.length() && offset + common < prefix.length()) {
+				return Collections.emptyList();
+			}
+			offset += common;
+		}
+		List<E> values = new ArrayList<>(Math.min(limit, 16));
+		collect(node, limit, values, null);
+		return values;
+	}
+
+	/**
+	 * Returns the values of at most limit keys starting with a string whose edit distance from a given prefix
+	 * is at most maxDistance. The closest keys come first (the ones starting with the prefix itself,
+	 * then the ones a single edit away, and so on), and the keys of the same distance are ordered.
+	 * Performance: O(prefix length) per visited node; the number of visited nodes depends on the prefix and the
+	 * max distance, growing exponentially with the latter, and on the limit, but not on the number of keys.
+	 */
+	public List<E> fuzzySearch(String prefix, int maxDistance, int limit) {
+		List<E> values = new ArrayList<>(Math.min(limit, 16));
+		Set<E> found = Collections.newSetFromMap(new IdentityHashMap<>());
+		int[] row = new int[prefix.length() + 1];
+		for (int i = 0; i < row.length; i++) {
+			row[i] = i;
+		}
+		// the search is deepened a distance at a time, so that the closest keys fill the limit first
+		for (int distance = 0; distance <= maxDistance && values.size() < limit; distance++) {
+			fuzzySearch(root, prefix, row, distance, limit, values, found);
+		}
+		return values;
+	}
+
+	private void fuzzySearch(Node<E> node, String prefix, int[] row, int maxDistance, int limit,
+							 List<E> values, Set<E> found) {
+		for (int i = 0; i < node.label.length(); i++) {
+			row = nextRow(row, prefix, node.label.charAt(i));
+			if (row[prefix.length()] <= maxDistance) {
+				// the keys of the node's subtree start with a string close enough to the prefix
+				collect(node, limit, values, found);
+				return;
+			}
+			if (min(row) > maxDistance) {
+				return;
+			}
+		}
+		if (node == root && row[prefix.length()] <= maxDistance) {
+			collect(node, limit, values, found);
+			return;
+		}
+		for (Node<E> child : node.children) {
+			if (values.size() == limit) {
+				return;
+			}
+			fuzzySearch(child, prefix, row, maxDistance, limit, values, found);
+		}
+	}
+
+	/**
+	 * Computes the edit distances between the prefixes of a given string and a string one character longer
+	 * than the one of a given row.
+	 */
+	private static int[] nextRow(int[] row, String prefix, char c) {
+		int[] next = new int[row.length];
+		next[0] = row[0] + 1;
+		for (int i = 1; i < row.length; i++) {
+			int substitution = row[i - 1] + (prefix.charAt(i - 1) == c ? 0 : 1);
+			next[i] = Math.min(substitution, Math.min(row[i] + 1, next[i - 1] + 1));
+		}
+		return next;
+	}
+
+	private static int min(int[] row) {
+		int min = row[0];
+		for (int distance : row) {
+			min = Math.min(min, distance);
+		}
+		return min;
+	}
+
+	/**
+	 * Adds the values of a subtree to a given list in the order of their keys, up to a limit,
+	 * skipping the ones found already, if given.
+	 */
+	private void collect(Node<E> node, int limit, List<E> values, Set<E> found) {
+		if (values.size() == limit) {
+			return;
+		}
+		E value = node.value;
+		if (value != null && (found == null || found.add(value))) {
+			values.add(value);
+		}
+		for (Node<E> child : node.children) {
+			collect(child, limit, values, found);
+		}
+	}
+
+	private static int commonPrefix(String label, String key, int offset) {
+		int length = Math.min(label.length(), key.length() - offset);
+		int i = 0;
+		while (i < length && label.charAt(i) == key.charAt(offset + i)) {
+			i++;
+		}
+		return i;
+	}
+
+	private static <E> Node<E> merged(Node<E> node, Node<E> child) {
+		return new Node<>(node.label + child.label, child.value, child.children);
+	}
+
+	private static <E> Node<E>[] inserted(Node<E>[] children, int slot, Node<E> child) {
+		Node<E>[] copy = Arrays.copyOf(children, children.length + 1);
+		System.arraycopy(children, slot, copy, slot + 1, children.length - slot);
+		copy[slot] = child;
+		return copy;
+	}
+
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	private static <E> Node<E>[] newChildren(int length) {
+		return new Node[length];
+	}
+
+	private static <E> Node<E>[] replaced(Node<E>[] children, int slot, Node<E> child) {
+		Node<E>[] copy = children.clone();
+		copy[slot] = child;
+		return copy;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <E> Node<E>[] removed(Node<E>[] children, int slot) {
+		if (children.length == 1) {
+			return NO_CHILDREN;
+		}
+		Node<E>[] copy = Arrays.copyOf(children, children.length - 1);
+		System.arraycopy(children, slot + 1, copy, slot, children.length - slot - 1);
+		return copy;
+	}
+
+	/**
+	 * A node of the tree; the children are ordered by the first character of their labels, which is unique.
+	 */
+	private static class Node<E> {
+		final String label;
+		E value;
+		Node<E>[] children;
+
+		Node(String label, E value, Node<E>[] children) {
+			this.label = label;
+			this.value = value;
+			this.children = children;
+		}
+
+		/**
+		 * Returns the slot of the child whose label starts with a given character,
+		 * or (-(insertion slot) - 1) if there's no such child.
+		 */
+		int find(char c) {
+			Node<E>[] nodes = children;
+			int low = 0;
+			int high = nodes.length - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				char first = nodes[middle].label.charAt(0);
+				if (first < c) {
+					low = middle + 1;
+				} else if (first > c) {
+					high = middle - 1;
+				} else {
+					return middle;
+				}
+			}
+			return -(low + 1);
+		}
+	}
+}
@@ -5,44 +5,86 @@ import com.example.familytree.enums.Order;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * A simplified sorted list data structure.
  * The implementation is based on the HashMap where hashing function is replaced by an index.
  * This implementation provides constant-time performance for adding a new entry.
  * It stores a given number of buckets ordered by the integer index.
- * Buckets hold a singly linked list of nodes referencing to next elements.
+ * Buckets hold a doubly linked list of nodes referencing to next and previous elements.
  * When a new entry is added, a given bucket is amended by prepending the entry to a given list.
+ * add() returns the node of the entry, which removes it in constant time as well.
  * Example: adding the following pairs (3, test1), (1, test2), (2, test3), (1, test4), (2, test5),
  * creates the following ordered list: [(1, test4), (1, test2), (2, test5), (2, test3), (3, test1)].
+ * Each bucket keeps a size counter, a Fenwick (binary indexed) tree sums the counters up, so that the number
+ * of elements within an index range is known in O(log maxSize), and a bitset of non-empty buckets lets
+ * the iterators skip empty buckets 64 at a time (see BucketCounts).
+ * IntSortedList is a variant specialized for int ids, which keeps the buckets in arrays instead of linked nodes.
  * The collection is not threads safe, so must be used within a thread-safe environment.
+ * The only exception are iterators running concurrently with add() and remove(): nodes are only prepended,
+ * and a removed node keeps pointing to its successor, so such an iterator is weakly consistent - it never fails,
+ * but it may miss the elements added after it has been created, and it may return the ones removed since then.
  */
 public class SortedList<E> implements Iterable<E> {
 	private final Node[] nodes;
 	private final int maxSize;
 	private int size;
 
+	private final BucketCounts counts;
+
 	public SortedList(int maxSize) {
 		if (maxSize < 1) {
 			throw new IllegalArgumentException("Size must be greater than 0");
 		}
 		this.maxSize = maxSize;
 		this.nodes = new Node[maxSize + 1];
+		this.counts = new BucketCounts(maxSize);
 	}
 
 	/**
-	 * Adds a new element to the sorted list.
-	 * Performance: O(1)
+	 * Adds a new element to the sorted list and returns its node, which is needed to remove the element.
+	 * Performance: O(log maxSize); this is because of the Fenwick tree update.
 	 */
 	@SuppressWarnings("unchecked")
-	public void add(int index, E elem) {
-		if (index < 0 || index > maxSize) {
-			throw new IndexOutOfBoundsException("Index must be with the range [0, " + maxSize + "]");
-		}
+	public Node<E> add(int index, E elem) {
+		checkIndex(index);
 		Node<E> nextNode = nodes[index];
 		Node<E> node = new Node<>(elem, nextNode);
+		if (nextNode != null) {
+			nextNode.previous = node;
+		}
 		nodes[index] = node;
 		size++;
+
+		counts.increment(index);
+		return node;
+	}
+
+	/**
+	 * Removes an element, given the node add() has returned for it and the index it's stored under.
+	 * The removed node keeps pointing to its successor, so iterators standing on it carry on with the bucket.
+	 * Performance: O(log maxSize); this is because of the Fenwick tree update.
+	 */
+	public void remove(int index, Node<E> node) {
+		checkIndex(index);
+		if (node.removed || node.previous == null && nodes[index] != node) {
+			throw new NoSuchElementException("Element " + node.item + " isn't stored under index " + index);
+		}
+		Node<E> nextNode = node.next;
+		if (node.previous == null) {
+			nodes[index] = nextNode;
+		} else {
+			node.previous.next = nextNode;
+		}
+		if (nextNode != null) {
+			nextNode.previous = node.previous;
+		}
+		node.previous = null;
+		node.removed = true;
+		size--;
+
+		counts.decrement(index);
 	}
 
 	/**
@@ -66,32 +108,147 @@ public class SortedList<E> implements Iterable<E> {
 		return size;
 	}
 
+	/**
+	 * Returns the number of elements stored under a given index.
+	 * Performance: O(1)
+	 */
+	public int count(int index) {
+		checkIndex(index);
+		return counts.count(index);
+	}
+
+	/**
+	 * Returns the number of elements stored under the indexes within a given range (both ends inclusive).
+	 * Performance: O(log maxSize)
+	 */
+	public int count(int fromIndex, int toIndex) {
+		checkRange(fromIndex, toIndex);
+		return counts.prefixCount(toIndex) - counts.prefixCount(fromIndex - 1);
+	}
+
+	/**
+	 * Returns the first index of a non-empty bucket which is greater than or equal to a given one,
+	 * or -1 if there's no such bucket.
+	 * Performance: O(maxSize / 64)
+	 */
+	public int nextIndex(int fromIndex) {
+		if (fromIndex < 0) {
+			throw new IndexOutOfBoundsException("Index cannot be negative");
+		}
+		int index = counts.nextOccupied(fromIndex);
+		return index > maxSize ? -1 : index;
+	}
+
 	/**
 	 * Returns an ascending iterator.
 	 */
 	@Override
 	public Iterator<E> iterator() {
-		return new SortedListIterator();
+		return new SortedListIterator(0, maxSize, null);
 	}
 
 	/**
 	 * Returns a descending iterator.
 	 */
 	public Iterator<E> reverseIterator() {
-		return new SortedListReverseIterator();
+		return new SortedListReverseIterator(maxSize, 0, null);
 	}
 
 	/**
-	 * A node class that represents a singly linked list element.
+	 * Returns an iterator in a given order, starting with the elements of a given index.
+	 * Performance: O(1) to create
 	 */
-	private static class Node<E> {
-		E item;
-		Node<E> next;
+	public Iterator<E> iterator(Order order, int fromIndex) {
+		return iterator(order, fromIndex, order == Order.ASC ? maxSize : 0);
+	}
+
+	/**
+	 * Returns an iterator in a given order, starting with the elements of a given index
+	 * and ending with the elements of the last index (inclusive).
+	 * The last index cannot precede the first one in the iteration order.
+	 * Performance: O(1) to create
+	 */
+	public Iterator<E> iterator(Order order, int fromIndex, int lastIndex) {
+		if (order == Order.ASC) {
+			checkRange(fromIndex, lastIndex);
+			return new SortedListIterator(fromIndex, lastIndex, null);
+		}
+		checkRange(lastIndex, fromIndex);
+		return new SortedListReverseIterator(fromIndex, lastIndex, null);
+	}
+
+	/**
+	 * Returns an iterator over the elements stored under the indexes within a given range (both ends inclusive).
+	 * Performance: O(1) to create
+	 */
+	public Iterator<E> range(int fromIndex, int toIndex, Order order) {
+		return order == Order.ASC ? iterator(order, fromIndex, toIndex) : iterator(order, toIndex, fromIndex);
+	}
+
+	/**
+	 * Returns an iterator in a given order, starting right after a given element stored under a given index.
+	 * It's used to resume an iteration; elements added to the index since then precede the given element,
+	 * so they're not visited.
+	 * Performance: O(number of elements of the index) to create
+	 */
+	public Iterator<E> iteratorAfter(Order order, int index, E elem) {
+		return iteratorAfter(order, index, elem, order == Order.ASC ? maxSize : 0);
+	}
+
+	/**
+	 * Returns an iterator like the one above, ending with the elements of the last index (inclusive).
+	 * Performance: O(number of elements of the index) to create
+	 */
+	@SuppressWarnings("unchecked")
+	public Iterator<E> iteratorAfter(Order order, int index, E elem, int lastIndex) {
+		if (order == Order.ASC) {
+			checkRange(index, lastIndex);
+		} else {
+			checkRange(lastIndex, index);
+		}
+		Node<E> node = nodes[index];
+		while (node != null && !node.item.equals(elem)) {
+			node = node.next;
+		}
+		if (node == null) {
+			throw new NoSuchElementException("Element " + elem + " isn't stored under index " + index);
+		}
+		return order == Order.ASC ? new SortedListIterator(index + 1, lastIndex, node.next)
+				: new SortedListReverseIterator(index - 1, lastIndex, node.next);
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index > maxSize) {
+			throw new IndexOutOfBoundsException("Index must be with the range [0, " + maxSize + "]");
+		}
+	}
 
-		Node(E item, Node<E> next) {
+	private void checkRange(int fromIndex, int toIndex) {
+		checkIndex(fromIndex);
+		checkIndex(toIndex);
+		if (fromIndex > toIndex) {
+			throw new IllegalArgumentException("Range start " + fromIndex + " is greater than its end " + toIndex);
+		}
+	}
+
+	/**
+	 * A node class that represents a doubly linked list element.
+	 * The successor link is read by the lock-free iterators, so it's volatile; the other fields are used by writers only.
+	 */
+	public static final class Node<E> {
+		private final E item;
+		private volatile Node<E> next;
+		private Node<E> previous;
+		private boolean removed;
+
+		private Node(E item, Node<E> next) {
 			this.item = item;
 			this.next = next;
 		}
+
+		public E getItem() {
+			return item;
+		}
 	}
 
 	/**
@@ -100,15 +257,28 @@ public class SortedList<E> implements Iterable<E> {
 	@SuppressWarnings("unchecked")
 	private class SortedListIterator implements Iterator<E> {
 		Node<E> next;
-		Node<E> current;
 		int index;
+		final int lastIndex;
 
-		SortedListIterator() {
-			current = null;
-			next = null;
-			index = 0;
-			// find first non-empty entry
-			while (index < nodes.length && (next = nodes[index++]) == null) { }
+		/**
+		 * Starts with a given node, or with the first node of the first non-empty index from a given one.
+		 */
+		SortedListIterator(int fromIndex, int lastIndex, Node<E> first) {
+			this.next = first;
+			this.index = fromIndex;
+			this.lastIndex = lastIndex;
+			if (next == null) {
+				advance();
+			}
+		}
+
+		/**
+		 * Finds the next non-empty entry; a bucket may be marked as non-empty before its node is visible.
+		 */
+		private void advance() {
+			while (next == null && (index = counts.nextOccupied(index)) <= lastIndex) {
+				next = nodes[index++];
+			}
 		}
 
 		@Override
@@ -118,9 +288,12 @@ public class SortedList<E> implements Iterable<E> {
 
 		@Override
 		public E next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
 			Node<E> e = next;
 			if ((next = e.next) == null) {
-				while (index < nodes.length && (next = nodes[index++]) == null) { }
+				advance();
 			}
 			return e.item;
 		}
@@ -132,15 +305,28 @@ public class SortedList<E> implements Iterable<E> {
 	@SuppressWarnings("unchecked")
 	private class SortedListReverseIterator implements Iterator<E> {
 		Node<E> next;
-		Node<E> current;
 		int index;
+		final int lastIndex;
 
-		SortedListReverseIterator() {
-			current = null;
-			next = null;
-			index = nodes.length - 1;
-			// find first non-empty entry
-			while (index >= 0 && (next = nodes[index--]) == null) { }
+		/**
+		 * Starts with a given node, or with the first node of the first non-empty index down from a given one.
+		 */
+		SortedListReverseIterator(int fromIndex, int lastIndex, Node<E> first) {
+			this.next = first;
+			this.index = fromIndex;
+			this.lastIndex = lastIndex;
+			if (next == null) {
+				advance();
+			}
+		}
+
+		/**
+		 * Finds the next non-empty entry; a bucket may be marked as non-empty before its node is visible.
+		 */
+		private void advance() {
+			while (next == null && (index = counts.previousOccupied(index)) >= lastIndex) {
+				next = nodes[index--];
+			}
 		}
 
 		@Override
@@ -150,13 +336,15 @@ public class SortedList<E> implements Iterable<E> {
 
 		@Override
 		public E next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
 			Node<E> e = next;
 			if ((next = e.next) == null) {
-				while (index >= 0 && (next = nodes[index--]) == null) { }
+				advance();
 			}
 			return e.item;
 		}
 	}
 
-}
-
+}
\ No newline at end of file
@@ -0,0 +1,40 @@
+package com.example.familytree.configs;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Makes the family tree API of a read replica (familyTree.replica.enabled=true, see ReplicationService) read-only:
+ * its family is changed by the primary's log only, so any other request than a GET answers 405 Method Not Allowed,
+ * and the clients send their writes to the primary.
+ */
+@Configuration
+@ConditionalOnProperty("familyTree.replica.enabled")
+public class ReplicaConfig implements WebMvcConfigurer {
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(new HandlerInterceptor() {
+			@Override
+			public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+					throws IOException {
+				HttpMethod method = HttpMethod.resolve(request.getMethod());
+				if (method == HttpMethod.GET || method == HttpMethod.HEAD || method == HttpMethod.OPTIONS) {
+					return true;
+				}
+				response.setHeader(HttpHeaders.ALLOW, "GET, HEAD, OPTIONS");
+				response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, "A read replica doesn't take writes");
+				return false;
+			}
+		}).addPathPatterns("/familyTree/**");
+	}
+}
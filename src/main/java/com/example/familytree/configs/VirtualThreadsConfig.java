@@ -0,0 +1,60 @@
+package com.example.familytree.configs;
+
+import org.apache.catalina.connector.Connector;
+import org.apache.coyote.AbstractProtocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the request handling on virtual threads, enabled with familyTree.server.virtualThreads.enabled=true.
+ * Tomcat hands every request to a thread of its pool (200 threads by default), so when the requests block,
+ * e.g. in a DBService call, the pool runs out of threads and the following requests queue up even though
+ * the CPUs are idle. A virtual thread per request blocks without holding an OS thread, so the number of requests
+ * in flight is bounded by server.tomcat.max-connections only.
+ * The project is built for Java 8, so the virtual thread executor is looked up reflectively; the service has to
+ * run on Java 21 or later, and it keeps the Tomcat pool (with a warning) on the older runtimes.
+ */
+@Configuration
+@ConditionalOnProperty("familyTree.server.virtualThreads.enabled")
+public class VirtualThreadsConfig {
+	private static final Logger log = LoggerFactory.getLogger(VirtualThreadsConfig.class);
+
+	@Bean
+	public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadsCustomizer() {
+		return factory -> {
+			ExecutorService executor = newVirtualThreadPerTaskExecutor();
+			if (executor == null) {
+				log.warn("Virtual threads need Java 21 or later, running on {}; requests are handled by the Tomcat pool",
+						System.getProperty("java.version"));
+				return;
+			}
+			factory.addConnectorCustomizers((Connector connector) -> {
+				if (connector.getProtocolHandler() instanceof AbstractProtocol) {
+					((AbstractProtocol<?>) connector.getProtocolHandler()).setExecutor(executor);
+				}
+			});
+			log.info("Requests are handled by virtual threads");
+		};
+	}
+
+	/**
+	 * Returns Executors.newVirtualThreadPerTaskExecutor(), or null if the runtime doesn't have virtual threads.
+	 */
+	static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+}
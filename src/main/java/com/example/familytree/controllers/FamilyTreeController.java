@@ -1,50 +1,310 @@
 package com.example.familytree.controllers;
 
+import com.example.familytree.cluster.ShardRouter;
 import com.example.familytree.converters.OrderConverter;
 import com.example.familytree.entities.Person;
 import com.example.familytree.enums.Order;
 import com.example.familytree.forms.PersonForm;
+import com.example.familytree.responses.AgeCounts;
+import com.example.familytree.responses.ImportReport;
+import com.example.familytree.responses.Relationship;
+import com.example.familytree.services.BulkImporter;
 import com.example.familytree.services.FamilyTree;
+import com.example.familytree.services.GenerationSink;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.stream.Collectors;
 
 /**
- * Main REST API controller.
+ * Main REST API controller; a router of a cluster runs RouterController instead.
  */
 @RestController
+@ConditionalOnExpression(ShardRouter.SHARD_MODE)
 public class FamilyTreeController {
 
 	@Autowired
 	private FamilyTree familyTree;
 
+	@Autowired
+	private BulkImporter bulkImporter;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private ResponseCache responseCache;
+
 	@InitBinder
 	public void initBinder(WebDataBinder webdataBinder) {
 		webdataBinder.registerCustomEditor(Order.class, new OrderConverter());
 	}
 
+	/**
+	 * Streams the names of the sorted family as a JSON array, without materializing any list.
+	 * The family may be narrowed down to the fromAge - toAge range, so e.g. the youngest 100 persons
+	 * are returned for order=ASC and limit=100.
+	 * A page of the limit size may be followed by the next one with afterName set to the page's last name.
+	 * The composite orders (e.g. order=AGE_NAME_ASC) come from indexes, so they're streamed already sorted.
+	 * The whole family list is served from the response cache (gzipped, if the client accepts it) until the family
+	 * changes; all of the responses are tagged with the family version, so unchanged ones get 304 Not Modified.
+	 * With withAges=true, persons are streamed as {"name": ..., "age": ...} objects, which a cluster router merges.
+	 */
 	@GetMapping("/familyTree")
-	public List<String> getOrderedFamilyList(@RequestParam Order order) {
-		return familyTree.getSortedFamilyList(order).stream()
-				.map(Person::getName)
-				.collect(Collectors.toList());
+	public void getOrderedFamilyList(@RequestParam Order order,
+									 @RequestParam(required = false) Integer fromAge,
+									 @RequestParam(required = false) Integer toAge,
+									 @RequestParam(required = false) Integer afterAge,
+									 @RequestParam(required = false) String afterName,
+									 @RequestParam(required = false) Integer limit,
+									 @RequestParam(defaultValue = "false") boolean withAges,
+									 WebRequest request,
+									 HttpServletResponse response) throws IOException {
+		if (limit != null && limit < 0) {
+			throw new IllegalArgumentException("Limit cannot be negative");
+		}
+		// the version is read first, so the response reflects it at least
+		long version = familyTree.getVersion();
+		if (fromAge == null && toAge == null && afterAge == null && afterName == null && limit == null && !withAges) {
+			boolean gzip = ResponseCache.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+			response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+			if (responseCache.checkNotModified(request, version, gzip)) {
+				return;
+			}
+			ResponseCache.CachedList list = responseCache.list(order, version, () -> serialize(order));
+			byte[] body = gzip ? list.gzipped() : list.body;
+			response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+			if (gzip) {
+				response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+			}
+			response.setContentLength(body.length);
+			response.getOutputStream().write(body);
+			return;
+		}
+
+		Iterator<Person> persons = familyTree.getSortedFamilyIterator(order, fromAge, toAge, afterAge, afterName);
+		if (responseCache.checkNotModified(request, version, false)) {
+			return;
+		}
+		response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+		writePersons(persons, limit, withAges, response.getOutputStream());
+	}
+
+	/**
+	 * Serializes the names of the whole family in a given order.
+	 */
+	private byte[] serialize(Order order) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			writePersons(familyTree.getSortedFamilyIterator(order, null, null, null, null), null, false, out);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return out.toByteArray();
+	}
+
+	private void writePersons(Iterator<Person> persons, Integer limit, boolean withAges, OutputStream out)
+			throws IOException {
+		try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+			generator.writeStartArray();
+			for (int i = 0; (limit == null || i < limit) && persons.hasNext(); i++) {
+				Person person = persons.next();
+				if (withAges) {
+					generator.writeStartObject();
+					generator.writeStringField("name", person.getName());
+					generator.writeNumberField("age", person.getAge());
+					generator.writeEndObject();
+				} else {
+					generator.writeString(person.getName());
+				}
+			}
+			generator.writeEndArray();
+		}
+	}
+
+	/**
+	 * Counts the persons within the fromAge - toAge range, in total and per age.
+	 */
+	@GetMapping(value = "/familyTree", params = "count", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+	public AgeCounts countPersons(@RequestParam(required = false) Integer fromAge,
+								  @RequestParam(required = false) Integer toAge,
+								  WebRequest request) {
+		if (responseCache.checkNotModified(request, familyTree.getVersion(), false)) {
+			return null;
+		}
+		return new AgeCounts(familyTree.countPersons(fromAge, toAge), familyTree.countPersonsByAge(fromAge, toAge));
+	}
+
+	/**
+	 * Returns at most limit names starting with a given prefix, or with a string up to fuzzy (0 - 2) edits away
+	 * from it, the closest ones first.
+	 */
+	@GetMapping(value = "/familyTree/search", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+	public List<String> searchNames(@RequestParam String prefix,
+									@RequestParam(defaultValue = "0") int fuzzy,
+									@RequestParam(defaultValue = "10") int limit,
+									WebRequest request) {
+		long version = familyTree.getVersion();
+		List<String> names = familyTree.searchNames(prefix, fuzzy, limit);
+		if (responseCache.checkNotModified(request, version, false)) {
+			return null;
+		}
+		return names;
 	}
 
 	@GetMapping(value = "/familyTree/{name}", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
-	public Person getPerson(@PathVariable String name) {
+	public Person getPerson(@PathVariable String name, WebRequest request) {
+		long version = familyTree.getVersion();
 		Person person = familyTree.getPerson(name);
 		if (person == null) {
 			throw new NoSuchElementException();
 		}
+		if (responseCache.checkNotModified(request, version, false)) {
+			return null;
+		}
 		return person;
 	}
 
+	/**
+	 * Streams the names of a person and its ancestors as a JSON array of generations (arrays of names),
+	 * up to maxDepth generations and at most limit names.
+	 * Like the other read endpoints, it answers 304 Not Modified if the family hasn't changed since the tagged response.
+	 */
+	@GetMapping("/familyTree/{name}/ancestors")
+	public void getAncestors(@PathVariable String name,
+							 @RequestParam(required = false) Integer maxDepth,
+							 @RequestParam(required = false) Integer limit,
+							 WebRequest request,
+							 HttpServletResponse response) throws IOException {
+		long version = familyTree.getVersion();
+		if (familyTree.getPerson(name) == null) {
+			throw new NoSuchElementException();
+		}
+		if (maxDepth != null && maxDepth < 0 || limit != null && limit < 0) {
+			throw new IllegalArgumentException("Depth and limit cannot be negative");
+		}
+		if (responseCache.checkNotModified(request, version, false)) {
+			return;
+		}
+
+		response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+		try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+			generator.writeStartArray();
+			GenerationsWriter writer = new GenerationsWriter(generator, limit);
+			familyTree.traverseAncestors(name, maxDepth == null ? Integer.MAX_VALUE : maxDepth, writer);
+			writer.finish();
+			generator.writeEndArray();
+		}
+	}
+
+	/**
+	 * Streams the number of a person's descendants and the names of the person and its descendants
+	 * as a JSON object: {"count": ..., "generations": [[...], ...]}, up to maxDepth generations and at most limit names.
+	 */
+	@GetMapping("/familyTree/{name}/descendants")
+	public void getDescendants(@PathVariable String name,
+							   @RequestParam(required = false) Integer maxDepth,
+							   @RequestParam(required = false) Integer limit,
+							   WebRequest request,
+							   HttpServletResponse response) throws IOException {
+		long version = familyTree.getVersion();
+		if (familyTree.getPerson(name) == null) {
+			throw new NoSuchElementException();
+		}
+		if (maxDepth != null && maxDepth < 0 || limit != null && limit < 0) {
+			throw new IllegalArgumentException("Depth and limit cannot be negative");
+		}
+		if (responseCache.checkNotModified(request, version, false)) {
+			return;
+		}
+
+		response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+		try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+			generator.writeStartObject();
+			generator.writeNumberField("count", familyTree.countDescendants(name));
+			generator.writeArrayFieldStart("generations");
+			GenerationsWriter writer = new GenerationsWriter(generator, limit);
+			familyTree.traverseDescendants(name, maxDepth == null ? Integer.MAX_VALUE : maxDepth, writer);
+			writer.finish();
+			generator.writeEndArray();
+			generator.writeEndObject();
+		}
+	}
+
+	/**
+	 * Streams the persons of a person's family component as NDJSON records of POST /familyTree/bulk,
+	 * parents before their children, so that a cluster router can move the component to another shard.
+	 */
+	@GetMapping(value = "/familyTree/{name}/component", produces = "application/x-ndjson")
+	public void getComponent(@PathVariable String name, HttpServletResponse response) throws IOException {
+		if (familyTree.getPerson(name) == null) {
+			throw new NoSuchElementException();
+		}
+		List<Person> component = familyTree.getComponent(name);
+
+		response.setContentType("application/x-ndjson");
+		try (SequenceWriter writer = objectMapper.writer().withRootValueSeparator("\n")
+				.writeValues(response.getOutputStream())) {
+			for (Person person : component) {
+				PersonForm record = new PersonForm();
+				record.setName(person.getName());
+				record.setAge(person.getAge());
+				record.setParent1(person.getParent1Name());
+				record.setParent2(person.getParent2Name());
+				writer.write(record);
+			}
+		}
+	}
+
+	/**
+	 * Returns the size of a person's family component (an upper bound, see FamilyTree#getComponentSize).
+	 */
+	@GetMapping(value = "/familyTree/{name}/component/size", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+	public int getComponentSize(@PathVariable String name) {
+		if (familyTree.getPerson(name) == null) {
+			throw new NoSuchElementException();
+		}
+		return familyTree.getComponentSize(name);
+	}
+
+	/**
+	 * Deletes a person's family component and returns the number of deleted persons.
+	 */
+	@DeleteMapping(value = "/familyTree/{name}/component", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+	public int deleteComponent(@PathVariable String name) {
+		if (familyTree.getPerson(name) == null) {
+			throw new NoSuchElementException();
+		}
+		return familyTree.deleteComponent(name);
+	}
+
+	@GetMapping(value = "/familyTree/{name}/isAncestorOf/{otherName}", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+	public boolean isAncestorOf(@PathVariable String name, @PathVariable String otherName) {
+		return familyTree.isAncestorOf(name, otherName);
+	}
+
+	@GetMapping(value = "/familyTree/{name}/relationship/{otherName}", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+	public Relationship getRelationship(@PathVariable String name, @PathVariable String otherName) {
+		return familyTree.getRelationship(name, otherName);
+	}
+
 	@PostMapping(value = "/familyTree", consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
 	public void addPerson(@RequestBody PersonForm personForm) {
 		familyTree.addPerson(personForm.getName(),
@@ -55,6 +315,61 @@ public class FamilyTreeController {
 		);
 	}
 
+	/**
+	 * Replaces a person's age and relatives; missing parents and children are removed from the person.
+	 * The name in the body is optional, but it must match the path one, as persons can't be renamed.
+	 */
+	@PutMapping(value = "/familyTree/{name}", consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
+	public void updatePerson(@PathVariable String name, @RequestBody PersonForm personForm) {
+		checkName(name, personForm);
+		familyTree.updatePerson(name,
+				personForm.getAge(),
+				personForm.getParent1(),
+				personForm.getParent2(),
+				personForm.getChildren()
+		);
+	}
+
+	/**
+	 * Changes the given attributes of a person; missing ones are left as they are, and given children
+	 * replace the current ones.
+	 */
+	@PatchMapping(value = "/familyTree/{name}", consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
+	public void patchPerson(@PathVariable String name, @RequestBody PersonForm personForm) {
+		checkName(name, personForm);
+		familyTree.patchPerson(name,
+				personForm.getAge(),
+				personForm.getParent1(),
+				personForm.getParent2(),
+				personForm.getChildren()
+		);
+	}
+
+	/**
+	 * Deletes a person; its parents and children stay in the tree.
+	 */
+	@DeleteMapping("/familyTree/{name}")
+	public void deletePerson(@PathVariable String name) {
+		familyTree.deletePerson(name);
+	}
+
+	@PostMapping(value = "/familyTree/bulk", consumes = "application/x-ndjson",
+			produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+	public ImportReport importNdjson(InputStream body) throws IOException {
+		return bulkImporter.importNdjson(body);
+	}
+
+	@PostMapping(value = "/familyTree/bulk", consumes = "text/csv", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+	public ImportReport importCsv(InputStream body) throws IOException {
+		return bulkImporter.importCsv(body);
+	}
+
+	private static void checkName(String name, PersonForm personForm) {
+		if (personForm.getName() != null && !personForm.getName().equals(name)) {
+			throw new IllegalArgumentException("Person " + name + " cannot be renamed");
+		}
+	}
+
 	@ExceptionHandler(NoSuchElementException.class)
 	@ResponseStatus(HttpStatus.NOT_FOUND)
 	public void handleNoSuchElementException() {
@@ -67,4 +382,45 @@ public class FamilyTreeController {
 		// returns 400 status
 	}
 
+	/**
+	 * Writes the traversed persons' names as JSON arrays, one per generation, up to a limit of names.
+	 */
+	private static class GenerationsWriter implements GenerationSink {
+		private final JsonGenerator generator;
+		private final Integer limit;
+		private int names;
+		private int generations;
+
+		GenerationsWriter(JsonGenerator generator, Integer limit) {
+			this.generator = generator;
+			this.limit = limit;
+		}
+
+		@Override
+		public boolean accept(int generation, Person person) {
+			if (limit != null && names == limit) {
+				return false;
+			}
+			try {
+				if (generation == generations) {
+					if (generations > 0) {
+						generator.writeEndArray();
+					}
+					generator.writeStartArray();
+					generations++;
+				}
+				generator.writeString(person.getName());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			names++;
+			return true;
+		}
+
+		void finish() throws IOException {
+			if (generations > 0) {
+				generator.writeEndArray();
+			}
+		}
+	}
 }
@@ -0,0 +1,149 @@
+package com.example.familytree.controllers;
+
+import com.example.familytree.enums.Order;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A cache of the serialized family lists, keyed by order and tagged with the family tree version they were
+ * serialized at (see FamilyTree#getVersion). A list is serialized once per order and version, and its bytes are
+ * served (gzipped as well, to the clients accepting it) until the family changes, so polling clients don't make
+ * the tree iterate and serialize the whole family over and over again.
+ * It also tags the responses of the read endpoints with the version (see checkNotModified()): a client holding
+ * the tag of the current version gets 304 Not Modified without the family tree being read at all.
+ * Only the latest version of each order is kept, and lists bigger than the max size aren't kept at all.
+ * The cache is thread-safe; concurrent requests of a list that isn't cached wait for a single serialization.
+ */
+@Component
+class ResponseCache {
+	/**
+	 * Max size of a cached list, in bytes.
+	 */
+	private final int maxBytes;
+
+	/**
+	 * Versions start over when the service is restarted, so the tags are prefixed with the start time.
+	 */
+	private final String instance;
+
+	private final ConcurrentHashMap<Order, CachedList> lists;
+
+	private final Counter hits;
+	private final Counter misses;
+	private final Counter notModified;
+
+	@Autowired
+	ResponseCache(@Value("${familyTree.responseCache.maxBytes}") int maxBytes, MeterRegistry registry) {
+		this.maxBytes = maxBytes;
+		this.instance = Long.toString(System.currentTimeMillis(), 36);
+		this.lists = new ConcurrentHashMap<>();
+		this.hits = requests(registry, "hit");
+		this.misses = requests(registry, "miss");
+		this.notModified = requests(registry, "notModified");
+	}
+
+	private static Counter requests(MeterRegistry registry, String result) {
+		return Counter.builder("familytree.responseCache.requests")
+				.description("Read requests served from the response cache, serialized, or answered with 304")
+				.tag("result", result)
+				.register(registry);
+	}
+
+	/**
+	 * Tags a response with a given version; if the request holds the same tag already (If-None-Match),
+	 * the response is set to 304 Not Modified and true is returned, so the caller must not write anything.
+	 * A gzipped representation gets a tag of its own.
+	 * Performance: O(1)
+	 */
+	boolean checkNotModified(WebRequest request, long version, boolean gzip) {
+		String etag = "\"" + instance + "-" + version + (gzip ? "-gzip" : "") + "\"";
+		if (request.checkNotModified(etag)) {
+			notModified.increment();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the serialized list of a given order at a given version (or a later one), serializing it
+	 * with a given serializer if it isn't cached yet.
+	 * Performance: O(1) if the list is cached, O(N) otherwise
+	 */
+	CachedList list(Order order, long version, Supplier<byte[]> serializer) {
+		CachedList cached = lists.get(order);
+		if (cached != null && cached.version >= version) {
+			hits.increment();
+			return cached;
+		}
+		CachedList[] result = new CachedList[1];
+		lists.compute(order, (key, current) -> {
+			if (current != null && current.version >= version) {
+				// serialized by a concurrent request in the meantime
+				hits.increment();
+				result[0] = current;
+				return current;
+			}
+			misses.increment();
+			result[0] = new CachedList(version, serializer.get());
+			return result[0].body.length <= maxBytes ? result[0] : null;
+		});
+		return result[0];
+	}
+
+	/**
+	 * Returns whether an Accept-Encoding header value accepts gzip (and doesn't refuse it with q=0).
+	 */
+	static boolean acceptsGzip(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.trim().split(";");
+			if (parts[0].trim().equalsIgnoreCase("gzip")) {
+				return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * A serialized list; the gzipped bytes are made on the first request accepting them.
+	 */
+	static class CachedList {
+		final long version;
+		final byte[] body;
+		private volatile byte[] gzipped;
+
+		CachedList(long version, byte[] body) {
+			this.version = version;
+			this.body = body;
+		}
+
+		byte[] gzipped() {
+			byte[] result = gzipped;
+			if (result == null) {
+				// concurrent requests may compress it twice, which is cheaper than making them wait
+				ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+				try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+					gzip.write(body);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				result = out.toByteArray();
+				gzipped = result;
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package com.example.familytree.controllers;
+
+import com.example.familytree.cluster.ShardClient;
+import com.example.familytree.cluster.ShardRouter;
+import com.example.familytree.converters.OrderConverter;
+import com.example.familytree.enums.Order;
+import com.example.familytree.forms.PersonForm;
+import com.example.familytree.responses.AgeCounts;
+import com.example.familytree.responses.Relationship;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.WebDataBinder;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * REST API controller of a cluster's router (see ShardRouter); it serves the API of FamilyTreeController,
+ * except for the bulk import and the composite orders resumed after a name.
+ * The requests about a person are forwarded to the person's shard, with the shard's response.
+ */
+@RestController
+@ConditionalOnExpression(ShardRouter.ROUTER_MODE)
+public class RouterController {
+
+	@Autowired
+	private ShardRouter shardRouter;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@InitBinder
+	public void initBinder(WebDataBinder webdataBinder) {
+		webdataBinder.registerCustomEditor(Order.class, new OrderConverter());
+	}
+
+	/**
+	 * Streams the names of the cluster's sorted family, merged from the shards' lists.
+	 */
+	@GetMapping("/familyTree")
+	public void getOrderedFamilyList(@RequestParam Order order,
+									 @RequestParam(required = false) Integer fromAge,
+									 @RequestParam(required = false) Integer toAge,
+									 @RequestParam(required = false) Integer afterAge,
+									 @RequestParam(required = false) String afterName,
+									 @RequestParam(required = false) Integer limit,
+									 HttpServletResponse response) throws IOException {
+		if (limit != null && limit < 0) {
+			throw new IllegalArgumentException("Limit cannot be negative");
+		}
+		response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+		try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+			shardRouter.writeSortedList(order, fromAge, toAge, afterAge, afterName, limit, generator);
+		}
+	}
+
+	@GetMapping(value = "/familyTree", params = "count", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+	public AgeCounts countPersons(@RequestParam(required = false) Integer fromAge,
+								  @RequestParam(required = false) Integer toAge) {
+		return shardRouter.countPersons(fromAge, toAge);
+	}
+
+	@GetMapping(value = "/familyTree/search", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+	public List<String> searchNames(@RequestParam String prefix,
+									@RequestParam(defaultValue = "0") int fuzzy,
+									@RequestParam(defaultValue = "10") int limit) {
+		return shardRouter.searchNames(prefix, fuzzy, limit);
+	}
+
+	@GetMapping({"/familyTree/{name}", "/familyTree/{name}/ancestors", "/familyTree/{name}/descendants"})
+	public ResponseEntity<byte[]> getPerson(@PathVariable String name, HttpServletRequest request) {
+		return toResponseEntity(shardRouter.forward(name, "GET", pathOf(request), null, null));
+	}
+
+	@GetMapping("/familyTree/{name}/isAncestorOf/{otherName}")
+	public ResponseEntity<byte[]> isAncestorOf(@PathVariable String name, @PathVariable String otherName,
+											   HttpServletRequest request) throws IOException {
+		ShardClient.Response response = shardRouter.forward(name, otherName, pathOf(request));
+		return response != null ? toResponseEntity(response) : toResponseEntity(false);
+	}
+
+	@GetMapping("/familyTree/{name}/relationship/{otherName}")
+	public ResponseEntity<byte[]> getRelationship(@PathVariable String name, @PathVariable String otherName,
+												  HttpServletRequest request) throws IOException {
+		ShardClient.Response response = shardRouter.forward(name, otherName, pathOf(request));
+		return response != null ? toResponseEntity(response)
+				: toResponseEntity(new Relationship("unrelated", Collections.emptyList(), null, null));
+	}
+
+	@PostMapping(value = "/familyTree", consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
+	public ResponseEntity<byte[]> addPerson(@RequestBody PersonForm personForm) {
+		return toResponseEntity(shardRouter.addPerson(personForm));
+	}
+
+	@PutMapping(value = "/familyTree/{name}", consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
+	public ResponseEntity<byte[]> updatePerson(@PathVariable String name, @RequestBody PersonForm personForm) {
+		return toResponseEntity(shardRouter.updatePerson(name, personForm, false));
+	}
+
+	@PatchMapping(value = "/familyTree/{name}", consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
+	public ResponseEntity<byte[]> patchPerson(@PathVariable String name, @RequestBody PersonForm personForm) {
+		return toResponseEntity(shardRouter.updatePerson(name, personForm, true));
+	}
+
+	@DeleteMapping("/familyTree/{name}")
+	public ResponseEntity<byte[]> deletePerson(@PathVariable String name, HttpServletRequest request) {
+		return toResponseEntity(shardRouter.forward(name, "DELETE", pathOf(request), null, null));
+	}
+
+	/**
+	 * Returns the path of a request with its query, both still encoded, so that they're forwarded as they are.
+	 */
+	private static String pathOf(HttpServletRequest request) {
+		String query = request.getQueryString();
+		return request.getRequestURI() + (query == null ? "" : "?" + query);
+	}
+
+	private static ResponseEntity<byte[]> toResponseEntity(ShardClient.Response response) {
+		ResponseEntity.BodyBuilder builder = ResponseEntity.status(response.status);
+		if (response.contentType != null) {
+			builder.header(HttpHeaders.CONTENT_TYPE, response.contentType);
+		}
+		return builder.body(response.body);
+	}
+
+	private ResponseEntity<byte[]> toResponseEntity(Object value) throws IOException {
+		return ResponseEntity.ok()
+				.contentType(MediaType.APPLICATION_JSON_UTF8)
+				.body(objectMapper.writeValueAsBytes(value));
+	}
+
+	@ExceptionHandler(NoSuchElementException.class)
+	@ResponseStatus(HttpStatus.NOT_FOUND)
+	public void handleNoSuchElementException() {
+		// returns 404 status
+	}
+
+	@ExceptionHandler(IllegalArgumentException.class)
+	@ResponseStatus(HttpStatus.BAD_REQUEST)
+	public void handleIllegalArgumentException() {
+		// returns 400 status
+	}
+
+	@ExceptionHandler(UncheckedIOException.class)
+	@ResponseStatus(HttpStatus.BAD_GATEWAY)
+	public void handleUncheckedIOException() {
+		// returns 502 status, as a shard has failed
+	}
+}
@@ -2,15 +2,24 @@ package com.example.familytree.converters;
 
 import com.example.familytree.enums.Order;
 import java.beans.PropertyEditorSupport;
+import java.util.Arrays;
+import java.util.Locale;
 
 /**
  * An Order enum converter.
  * It's used to handle @RequestParams in the controller class.
+ * Besides the enum names, it accepts the attributes and the direction separated by commas, dashes or spaces,
+ * in any case: e.g. "age,name,desc" stands for AGE_NAME_DESC.
  */
 public class OrderConverter extends PropertyEditorSupport {
 
 	public void setAsText(String text) throws IllegalArgumentException {
-		setValue(Order.valueOf(text));
+		String name = text.trim().toUpperCase(Locale.ROOT).replaceAll("[,\\-\\s]+", "_");
+		try {
+			setValue(Order.valueOf(name));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Order must be one of " + Arrays.toString(Order.values()), e);
+		}
 	}
 
 }
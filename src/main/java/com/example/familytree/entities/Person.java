@@ -11,10 +11,13 @@ import java.util.stream.Collectors;
 
 /**
  * This class represents a family member node - the main application's entity.
+ * The mutators are internal to the family tree, which calls them under its write lock to keep its indexes
+ * consistent; anybody else changing a linked person would corrupt them, so persons are changed through
+ * the FamilyTree's updatePerson(), patchPerson() and deletePerson() instead.
  */
 @JsonIdentityInfo(generator = ObjectIdGenerators.PropertyGenerator.class, property = "name")
 public class Person {
-	private String name;
+	private final String name;
 	private int age;
 	@JsonIgnore
 	private Person parent1;
@@ -35,10 +38,6 @@ public class Person {
 		return name;
 	}
 
-	public void setName(String name) {
-		this.name = name;
-	}
-
 	public int getAge() {
 		return age;
 	}
@@ -71,6 +70,36 @@ public class Person {
 		children.add(child);
 	}
 
+	/**
+	 * Removes a child. The list is replaced by a copy rather than shifted in place, as the lock-free traversals
+	 * read it by index; they may keep reading the former list, which is left as it was.
+	 * Performance: O(number of children)
+	 */
+	public void removeChild(Person child) {
+		List<Person> remaining = new ArrayList<>(children);
+		remaining.remove(child);
+		children = remaining;
+	}
+
+	/**
+	 * Replaces the children with the same ones in another order. Like in removeChild(), the list is replaced
+	 * rather than changed in place.
+	 */
+	public void setChildren(List<Person> children) {
+		this.children = children;
+	}
+
+	/**
+	 * Clears the parent slot holding a given parent.
+	 */
+	public void removeParent(Person parent) {
+		if (parent1 == parent) {
+			parent1 = null;
+		} else if (parent2 == parent) {
+			parent2 = null;
+		}
+	}
+
 	@JsonGetter("parent1")
 	public String getParent1Name() {
 		if (parent1 != null) {
@@ -132,6 +161,11 @@ public class Person {
 		}
 	}
 
+	/**
+	 * Persons are identified by names as they're unique within a family tree.
+	 * Neither parents nor children are compared, so equality checks and hashing take constant time
+	 * instead of walking a node's descendants.
+	 */
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) return true;
@@ -139,22 +173,12 @@ public class Person {
 
 		Person person = (Person) o;
 
-		if (age != person.age) return false;
-		if (name != null ? !name.equals(person.name) : person.name != null) return false;
-		if (parent1 != null ? !parent1.getName().equals(person.parent1.getName()) : person.parent1 != null) return false;
-		if (parent2 != null ? !parent2.getName().equals(person.parent2.getName()) : person.parent2 != null) return false;
-		return children != null ? children.equals(person.children) : person.children == null;
-
+		return name != null ? name.equals(person.name) : person.name == null;
 	}
 
 	@Override
 	public int hashCode() {
-		int result = name != null ? name.hashCode() : 0;
-		result = 31 * result + age;
-		result = 31 * result + (parent1 != null ? parent1.getName().hashCode() : 0);
-		result = 31 * result + (parent2 != null ? parent2.getName().hashCode() : 0);
-		result = 31 * result + (children != null ? children.hashCode() : 0);
-		return result;
+		return name != null ? name.hashCode() : 0;
 	}
 
 	@Override
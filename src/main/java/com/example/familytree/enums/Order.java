@@ -2,7 +2,48 @@ package com.example.familytree.enums;
 
 /**
  * A sorted list order.
+ * ASC and DESC order persons by age only, the persons of the same age come in no particular order.
+ * The composite orders break the ties: AGE_NAME by the name, AGE_GENERATION by the generation depth
+ * (the length of the longest line of ancestors) and then by the name, while NAME orders by the name only.
+ * A descending composite order is the exact reverse of the ascending one.
  */
 public enum Order {
-	ASC, DESC;
+	ASC(Key.AGE, false),
+	DESC(Key.AGE, true),
+	AGE_NAME_ASC(Key.AGE_NAME, false),
+	AGE_NAME_DESC(Key.AGE_NAME, true),
+	AGE_GENERATION_ASC(Key.AGE_GENERATION, false),
+	AGE_GENERATION_DESC(Key.AGE_GENERATION, true),
+	NAME_ASC(Key.NAME, false),
+	NAME_DESC(Key.NAME, true);
+
+	/**
+	 * Attributes an order sorts by.
+	 */
+	public enum Key {
+		AGE, AGE_NAME, AGE_GENERATION, NAME
+	}
+
+	private final Key key;
+	private final boolean descending;
+
+	Order(Key key, boolean descending) {
+		this.key = key;
+		this.descending = descending;
+	}
+
+	public Key getKey() {
+		return key;
+	}
+
+	public boolean isDescending() {
+		return descending;
+	}
+
+	/**
+	 * Returns the age only order of the same direction.
+	 */
+	public Order byAge() {
+		return descending ? DESC : ASC;
+	}
 }
@@ -0,0 +1,25 @@
+package com.example.familytree.responses;
+
+import java.util.SortedMap;
+
+/**
+ * Simple REST API response that holds the number of persons within an age range, in total and per age.
+ * Ages nobody is of are left out of the per age counts.
+ */
+public class AgeCounts {
+	private final int total;
+	private final SortedMap<Integer, Integer> perAge;
+
+	public AgeCounts(int total, SortedMap<Integer, Integer> perAge) {
+		this.total = total;
+		this.perAge = perAge;
+	}
+
+	public int getTotal() {
+		return total;
+	}
+
+	public SortedMap<Integer, Integer> getPerAge() {
+		return perAge;
+	}
+}
@@ -0,0 +1,76 @@
+package com.example.familytree.responses;
+
+import java.util.List;
+
+/**
+ * Simple REST API response that summarizes a bulk import.
+ * Only the first rejected rows are listed; the number of all of them is given by the rejected field.
+ */
+public class ImportReport {
+	private final long rows;
+	private final long imported;
+	private final long rejected;
+	private final long elapsedMillis;
+	private final long rowsPerSecond;
+	private final List<Rejection> rejections;
+
+	public ImportReport(long rows, long rejected, long elapsedMillis, List<Rejection> rejections) {
+		this.rows = rows;
+		this.imported = rows - rejected;
+		this.rejected = rejected;
+		this.elapsedMillis = elapsedMillis;
+		this.rowsPerSecond = rows * 1000 / Math.max(1, elapsedMillis);
+		this.rejections = rejections;
+	}
+
+	public long getRows() {
+		return rows;
+	}
+
+	public long getImported() {
+		return imported;
+	}
+
+	public long getRejected() {
+		return rejected;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public long getRowsPerSecond() {
+		return rowsPerSecond;
+	}
+
+	public List<Rejection> getRejections() {
+		return rejections;
+	}
+
+	/**
+	 * A rejected row with its line number (starting from 1) and the rejection reason.
+	 */
+	public static class Rejection {
+		private final long line;
+		private final String name;
+		private final String reason;
+
+		public Rejection(long line, String name, String reason) {
+			this.line = line;
+			this.name = name;
+			this.reason = reason;
+		}
+
+		public long getLine() {
+			return line;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getReason() {
+			return reason;
+		}
+	}
+}
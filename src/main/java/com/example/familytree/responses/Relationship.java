@@ -0,0 +1,39 @@
+package com.example.familytree.responses;
+
+import java.util.List;
+
+/**
+ * Simple REST API response that tells how a person is related to another one.
+ * The relation names what the first person is to the second one, e.g. a grandparent or a second cousin.
+ * The generation distances lead from each of the persons to their nearest common ancestors;
+ * unrelated persons have no common ancestors and no generation distances.
+ */
+public class Relationship {
+	private final String relation;
+	private final List<String> commonAncestors;
+	private final Integer generations1;
+	private final Integer generations2;
+
+	public Relationship(String relation, List<String> commonAncestors, Integer generations1, Integer generations2) {
+		this.relation = relation;
+		this.commonAncestors = commonAncestors;
+		this.generations1 = generations1;
+		this.generations2 = generations2;
+	}
+
+	public String getRelation() {
+		return relation;
+	}
+
+	public List<String> getCommonAncestors() {
+		return commonAncestors;
+	}
+
+	public Integer getGenerations1() {
+		return generations1;
+	}
+
+	public Integer getGenerations2() {
+		return generations2;
+	}
+}
@@ -0,0 +1,473 @@
+package com.example.familytree.services;
+
+import com.example.familytree.collections.ImmutableIntSet;
+import com.example.familytree.entities.Person;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+
+/**
+ * A reachability index of a family tree: it tells whether a person is an ancestor of another one,
+ * and whether persons have a common ancestor or a common descendant, which is what the cycle checks ask.
+ * It also finds the nearest common ancestors of two persons, which tell how they're related.
+ * Every person gets a sequence number, and a label holding the exact set of the numbers of all of its ancestors
+ * (the person's own number included): the union of its parents' sets plus its own number.
+ * The sets are ImmutableIntSets, so a person's set shares most of its trie with its parents' ones,
+ * and a person added below its parents takes O(log N) new trie nodes in most families.
+ * A set never saturates, so the ancestor queries never fall back to a search of the family: a person is an ancestor
+ * of another one if its number is in the other one's set, in O(log N), and two persons have a common ancestor
+ * if their sets intersect, which compares the parts of the two tries they don't share; the worst case is
+ * O(number of ancestors / 64), for two persons with big and unrelated pedigrees.
+ * There is no such set of descendants, as adding a child would update the sets of all of its ancestors; whether
+ * persons have a common descendant is searched for, checking each descendant's set of ancestors.
+ * Linking a person with children adds its set to the sets of all of its descendants, and removing one rebuilds
+ * them, so these take O(number of descendants) set updates.
+ * A label also caches the number of the person's descendants. Linking a person marks the counts of its ancestors
+ * as stale, and a stale count is refreshed when it's asked for, from the counts of the person's children;
+ * the few persons reaching some descendants through several lines count their descendants one by one instead.
+ * Removing a person marks its ancestors' counts as stale; the flags of several lines are kept, which is conservative.
+ * The index is maintained under the family tree's write lock and the locks of the components involved.
+ */
+class AncestorIndex {
+	private final Map<Person, Label> labels;
+	private int nextSequence;
+
+	/**
+	 * Sequence numbers of removed persons, which are reused to keep the sets' tries small.
+	 * A removed person's number is dropped from its descendants' sets, so no set holds it anymore.
+	 */
+	private int[] freeSequences = new int[16];
+	private int freeCount;
+
+	/**
+	 * Receives the number of persons visited by each common ancestor or descendant check.
+	 */
+	private final IntConsumer searchSizes;
+
+	AncestorIndex() {
+		this(size -> {
+		});
+	}
+
+	AncestorIndex(IntConsumer searchSizes) {
+		this.labels = new ConcurrentHashMap<>();
+		this.searchSizes = searchSizes;
+	}
+
+	/**
+	 * Indexes a person that has just been linked with its parents and children.
+	 * The parents are expected to have no common ancestor, and the children no common descendant (the cycle checks).
+	 * Performance: O(log N) if the person has no children; O(number of ancestors + number of descendants)
+	 * set operations otherwise, as the person's ancestors are added to the sets of all of its descendants
+	 */
+	void add(Person person) {
+		Label label = new Label(freeCount > 0 ? freeSequences[--freeCount] : nextSequence++);
+		label.ancestors = label(person.getParent1()).ancestors
+				.union(label(person.getParent2()).ancestors)
+				.with(label.sequence);
+		labels.put(person, label);
+		List<Person> descendants = descendants(person);
+		// the counts are marked first, as they need the descendants' sets from before the person was linked
+		updateDescendantCounts(person, label, descendants);
+
+		// the person's ancestors are new ancestors of its descendants
+		for (Person descendant : descendants) {
+			Label descendantLabel = label(descendant);
+			descendantLabel.ancestors = descendantLabel.ancestors.union(label.ancestors);
+		}
+	}
+
+	/**
+	 * Drops a person that is about to be unlinked from its relatives, marks its ancestors' counts as stale,
+	 * and rebuilds the sets of its descendants without the ancestors they reached through the person only.
+	 * Performance: O(1 + number of ancestors whose counts were up to date) if the person has no children,
+	 * O(number of descendants) set operations otherwise
+	 */
+	void remove(Person person) {
+		markAncestorsStale(person);
+		Label label = labels.remove(person);
+		List<Person> descendants = descendants(person);
+		// the parents are older than their children, so their sets are rebuilt first
+		descendants.sort(Comparator.comparingInt(Person::getAge).reversed());
+		for (Person descendant : descendants) {
+			Label descendantLabel = label(descendant);
+			ImmutableIntSet ancestors = ImmutableIntSet.EMPTY.with(descendantLabel.sequence);
+			for (Person parent : Arrays.asList(descendant.getParent1(), descendant.getParent2())) {
+				if (parent != person) {
+					ancestors = ancestors.union(label(parent).ancestors);
+				}
+			}
+			descendantLabel.ancestors = ancestors;
+		}
+		if (freeCount == freeSequences.length) {
+			freeSequences = Arrays.copyOf(freeSequences, 2 * freeCount);
+		}
+		freeSequences[freeCount++] = label.sequence;
+	}
+
+	/**
+	 * Returns the number of a person's descendants; a stale count is refreshed first.
+	 * It updates the counts, so it must be called under the family tree's read lock at least (not optimistically).
+	 * Performance: O(1) if the count is up to date, O(number of stale descendants and their children) otherwise
+	 */
+	synchronized int descendantCount(Person person) {
+		Label label = label(person);
+		if (label.stale) {
+			refresh(person);
+		}
+		return label.descendantCount;
+	}
+
+	/**
+	 * Returns whether a person is an ancestor of another one.
+	 * Performance: O(log N)
+	 */
+	boolean isAncestor(Person ancestor, Person person) {
+		return ancestor != person && label(person).ancestors.contains(label(ancestor).sequence);
+	}
+
+	/**
+	 * Returns whether two persons have a common ancestor; a person counts as its own ancestor here.
+	 * No person is visited, so it reports a search of size 0.
+	 * Performance: O(log N) for persons sharing their ancestors' tries (e.g. a person and its relatives' children),
+	 * O(number of ancestors / 64) in the worst case, for persons with big pedigrees sharing no ancestors
+	 */
+	boolean haveCommonAncestor(Person person1, Person person2) {
+		searchSizes.accept(0);
+		return label(person1).ancestors.intersects(label(person2).ancestors);
+	}
+
+	/**
+	 * Returns whether any two of given persons have a common descendant;
+	 * a person counts as its own descendant here.
+	 * The persons' descendants are searched breadth-first, one of each person's at a time, and a descendant
+	 * reached from two persons, or having another one of the persons in its set of ancestors, is a common one.
+	 * So the search stops once all the persons but one are searched through: the biggest family is never searched
+	 * through unless the persons have a common descendant.
+	 * Performance: O(number of persons * number of descendants of all the persons but the one with the most)
+	 */
+	boolean haveCommonDescendant(List<Person> persons) {
+		int count = persons.size();
+		// the numbers of the other persons, for each person
+		ImmutableIntSet[] others = new ImmutableIntSet[count];
+		List<Deque<Person>> queues = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			others[i] = ImmutableIntSet.EMPTY;
+			for (int j = 0; j < count; j++) {
+				if (j != i) {
+					others[i] = others[i].with(label(persons.get(j)).sequence);
+				}
+			}
+			queues.add(new ArrayDeque<>(Collections.singletonList(persons.get(i))));
+		}
+
+		Map<Person, Integer> owners = new IdentityHashMap<>();
+		int active = count;
+		boolean found = false;
+		while (active > 1 && !found) {
+			active = 0;
+			for (int i = 0; i < count && !found; i++) {
+				Deque<Person> queue = queues.get(i);
+				Person descendant = queue.pollFirst();
+				if (descendant == null) {
+					continue;
+				}
+				Integer owner = owners.putIfAbsent(descendant, i);
+				if (owner == null) {
+					found = label(descendant).ancestors.intersects(others[i]);
+					queue.addAll(descendant.getChildren());
+				} else {
+					found = owner != i;
+				}
+				if (!queue.isEmpty()) {
+					active++;
+				}
+			}
+		}
+		searchSizes.accept(owners.size());
+		return found;
+	}
+
+	/**
+	 * Finds the nearest common ancestors of two persons: the ones with the smallest sum of the generation
+	 * distances to both persons, and among them the ones nearest to the second person.
+	 * A person counts as its own ancestor here, so a person's ancestor is found with the distance 0 on its side.
+	 * Returns null if the persons have no common ancestor.
+	 * Both persons' ancestors are searched breadth-first, the smaller frontier first, until the searches meet;
+	 * the sum of the distances of the meeting point bounds the distances of the nearest common ancestors,
+	 * so both searches are completed up to that bound only. Ancestors having no common ancestor
+	 * of the two persons among their own ancestors are skipped: the sets are exact, so the searches climb
+	 * only the lines leading to the common ancestors, however distant they are.
+	 * Performance: as haveCommonAncestor() if the persons have no common ancestor; otherwise
+	 * O(number of ancestors leading to common ones within the bound * number of common ancestors / 64) at worst
+	 */
+	CommonAncestors nearestCommonAncestors(Person person1, Person person2) {
+		ImmutableIntSet ancestors1 = label(person1).ancestors;
+		ImmutableIntSet ancestors2 = label(person2).ancestors;
+		if (!ancestors1.intersects(ancestors2)) {
+			return null;
+		}
+		ImmutableIntSet shared = ancestors1.intersection(ancestors2);
+		Map<Person, Integer> generations1 = new LinkedHashMap<>();
+		Map<Person, Integer> generations2 = new LinkedHashMap<>();
+		generations1.put(person1, 0);
+		generations2.put(person2, 0);
+		List<Person> level1 = Collections.singletonList(person1);
+		List<Person> level2 = Collections.singletonList(person2);
+		int generation1 = 0;
+		int generation2 = 0;
+		int bound = person1 == person2 ? 0 : Integer.MAX_VALUE;
+
+		while (bound == Integer.MAX_VALUE && (!level1.isEmpty() || !level2.isEmpty())) {
+			if (level2.isEmpty() || !level1.isEmpty() && level1.size() <= level2.size()) {
+				level1 = nextLevel(level1, generation1++, generations1, shared);
+				bound = meet(level1, generation1, generations2, bound);
+			} else {
+				level2 = nextLevel(level2, generation2++, generations2, shared);
+				bound = meet(level2, generation2, generations1, bound);
+			}
+		}
+		if (bound == Integer.MAX_VALUE) {
+			return null;
+		}
+		while (generation1 < bound && !level1.isEmpty()) {
+			level1 = nextLevel(level1, generation1++, generations1, shared);
+		}
+		while (generation2 < bound && !level2.isEmpty()) {
+			level2 = nextLevel(level2, generation2++, generations2, shared);
+		}
+
+		int nearestDistance = Integer.MAX_VALUE;
+		int nearestGeneration2 = 0;
+		for (Map.Entry<Person, Integer> entry : generations2.entrySet()) {
+			Integer ancestorGeneration1 = generations1.get(entry.getKey());
+			if (ancestorGeneration1 != null && ancestorGeneration1 + entry.getValue() < nearestDistance) {
+				nearestDistance = ancestorGeneration1 + entry.getValue();
+				nearestGeneration2 = entry.getValue();
+			}
+		}
+		List<Person> nearest = new ArrayList<>();
+		for (Map.Entry<Person, Integer> entry : generations2.entrySet()) {
+			Integer ancestorGeneration1 = generations1.get(entry.getKey());
+			if (ancestorGeneration1 != null && entry.getValue() == nearestGeneration2
+					&& ancestorGeneration1 + nearestGeneration2 == nearestDistance) {
+				nearest.add(entry.getKey());
+			}
+		}
+		return new CommonAncestors(nearest, nearestDistance - nearestGeneration2, nearestGeneration2);
+	}
+
+	/**
+	 * Marks the descendant counts of a newly linked person and of its ancestors as stale,
+	 * and tells the ones that will reach some descendants through several lines from then on.
+	 */
+	private void updateDescendantCounts(Person person, Label label, List<Person> descendants) {
+		label.stale = !person.getChildren().isEmpty();
+		for (Person child : person.getChildren()) {
+			label.collapsed |= label(child).collapsed;
+		}
+		if (!person.getChildren().isEmpty() && (person.getParent1() != null || person.getParent2() != null)) {
+			markCollapsedAncestors(person, label, descendants);
+		}
+		markAncestorsStale(person);
+	}
+
+	/**
+	 * Marks the descendant counts of a person's ancestors as stale.
+	 * A stale person's ancestors are stale too, so the marking stops at the first stale ancestor of each line.
+	 */
+	private void markAncestorsStale(Person person) {
+		Deque<Person> stack = new ArrayDeque<>();
+		pushParents(stack, person);
+		while (!stack.isEmpty()) {
+			Person ancestor = stack.pollFirst();
+			Label ancestorLabel = label(ancestor);
+			if (!ancestorLabel.stale) {
+				ancestorLabel.stale = true;
+				pushParents(stack, ancestor);
+			}
+		}
+	}
+
+	/**
+	 * Tells the ancestors of a person linked between parents and children that already reach
+	 * some of the children's descendants through another line: the ones in the descendants' sets of ancestors.
+	 * Such ancestors' ancestors reach them too, so the ancestors having none of them among their own are skipped.
+	 * Performance: O(number of descendants) set operations, and O(number of ancestors) if any ancestor is found
+	 */
+	private void markCollapsedAncestors(Person person, Label label, List<Person> descendants) {
+		// the descendants' sets are the ones from before the person was linked, so they miss the person's number
+		ImmutableIntSet reached = ImmutableIntSet.EMPTY;
+		for (Person descendant : descendants) {
+			ImmutableIntSet ancestors = label(descendant).ancestors;
+			if (ancestors.intersects(label.ancestors)) {
+				reached = reached.union(ancestors.intersection(label.ancestors));
+			}
+		}
+		if (reached.isEmpty()) {
+			return;
+		}
+		Set<Person> ancestors = Collections.newSetFromMap(new IdentityHashMap<>());
+		Deque<Person> stack = new ArrayDeque<>();
+		pushParents(stack, person);
+		while (!stack.isEmpty()) {
+			Person ancestor = stack.pollFirst();
+			Label ancestorLabel = label(ancestor);
+			if (ancestors.add(ancestor) && ancestorLabel.ancestors.intersects(reached)) {
+				ancestorLabel.collapsed |= reached.contains(ancestorLabel.sequence);
+				pushParents(stack, ancestor);
+			}
+		}
+	}
+
+	/**
+	 * Recounts the descendants of a stale person, and of its stale descendants, children first.
+	 * A person that reaches every descendant through a single line has as many descendants as its children
+	 * have plus the children themselves, so only the stale children are recounted; a person that reaches
+	 * some descendants through several lines counts them one by one.
+	 */
+	private void refresh(Person person) {
+		Deque<Person> stack = new ArrayDeque<>();
+		stack.addFirst(person);
+		while (!stack.isEmpty()) {
+			Person descendant = stack.peekFirst();
+			Label label = label(descendant);
+			if (!label.stale) {
+				stack.pollFirst();
+				continue;
+			}
+			// the children are refreshed first even if they aren't summed up, as a stale person's ancestors must be stale
+			boolean ready = true;
+			for (Person child : descendant.getChildren()) {
+				if (label(child).stale) {
+					stack.addFirst(child);
+					ready = false;
+				}
+			}
+			if (ready) {
+				int count = 0;
+				for (Person child : descendant.getChildren()) {
+					count += 1 + label(child).descendantCount;
+				}
+				label.descendantCount = label.collapsed ? countOneByOne(descendant) : count;
+				label.stale = false;
+				stack.pollFirst();
+			}
+		}
+	}
+
+	private static int countOneByOne(Person person) {
+		return descendants(person).size();
+	}
+
+	/**
+	 * Returns the descendants of a person, the person excluded.
+	 */
+	private static List<Person> descendants(Person person) {
+		if (person.getChildren().isEmpty()) {
+			return new ArrayList<>();
+		}
+		Set<Person> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		List<Person> descendants = new ArrayList<>();
+		Deque<Person> stack = new ArrayDeque<>(person.getChildren());
+		while (!stack.isEmpty()) {
+			Person descendant = stack.pollFirst();
+			if (visited.add(descendant)) {
+				descendants.add(descendant);
+				stack.addAll(descendant.getChildren());
+			}
+		}
+		return descendants;
+	}
+
+	/**
+	 * Returns the smallest sum of the distances of a level's persons found by the other search, or a given bound.
+	 */
+	private static int meet(List<Person> level, int generation, Map<Person, Integer> otherGenerations, int bound) {
+		for (Person person : level) {
+			Integer otherGeneration = otherGenerations.get(person);
+			if (otherGeneration != null) {
+				bound = Math.min(bound, generation + otherGeneration);
+			}
+		}
+		return bound;
+	}
+
+	/**
+	 * Returns the parents of a level's persons not visited yet, and records their generation;
+	 * the ones having none of the common ancestors among their own ancestors are skipped.
+	 */
+	private List<Person> nextLevel(List<Person> level, int generation, Map<Person, Integer> generations,
+								   ImmutableIntSet shared) {
+		List<Person> nextLevel = new ArrayList<>();
+		for (Person person : level) {
+			for (Person parent : Arrays.asList(person.getParent1(), person.getParent2())) {
+				if (parent != null && !generations.containsKey(parent)
+						&& label(parent).ancestors.intersects(shared)) {
+					generations.put(parent, generation + 1);
+					nextLevel.add(parent);
+				}
+			}
+		}
+		return nextLevel;
+	}
+
+	private Label label(Person person) {
+		return person == null ? Label.EMPTY : labels.get(person);
+	}
+
+	private static void pushParents(Deque<Person> stack, Person person) {
+		if (person.getParent1() != null) {
+			stack.addFirst(person.getParent1());
+		}
+		if (person.getParent2() != null) {
+			stack.addFirst(person.getParent2());
+		}
+	}
+
+	/**
+	 * Nearest common ancestors of two persons, with their generation distances to the persons.
+	 * Nearest common ancestors of the same pair of persons are equally distant to each of them.
+	 */
+	static class CommonAncestors {
+		final List<Person> persons;
+		final int generations1;
+		final int generations2;
+
+		CommonAncestors(List<Person> persons, int generations1, int generations2) {
+			this.persons = persons;
+			this.generations1 = generations1;
+			this.generations2 = generations2;
+		}
+	}
+
+	/**
+	 * The set of ancestors of a person, and its descendant count.
+	 */
+	private static class Label {
+		static final Label EMPTY = new Label(-1);
+
+		final int sequence;
+
+		/**
+		 * The numbers of the person's ancestors and its own; replaced, never modified, so it's read without locks.
+		 */
+		volatile ImmutableIntSet ancestors = ImmutableIntSet.EMPTY;
+
+		/**
+		 * The number of descendants, valid unless it's stale.
+		 */
+		int descendantCount;
+		boolean stale;
+
+		/**
+		 * Whether some descendants are reached through several lines.
+		 */
+		boolean collapsed;
+
+		Label(int sequence) {
+			this.sequence = sequence;
+		}
+	}
+}
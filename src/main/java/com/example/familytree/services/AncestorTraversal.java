@@ -0,0 +1,175 @@
+package com.example.familytree.services;
+
+import com.example.familytree.entities.Person;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A breadth-first traversal of a person's ancestors, generation by generation.
+ * Every ancestor is visited once, in the nearest generation it belongs to, so pedigree collapse
+ * (ancestors reached through several lines) doesn't multiply the result.
+ * The queue and the visited set are scratch buffers reused by the calls of the same thread,
+ * so a traversal doesn't allocate anything once the buffers have grown to the size of the biggest one.
+ * That holds for the pooled request threads only: with virtual threads (the virtualThreads profile) every request
+ * runs on a new thread, which gets new buffers, so a traversal allocates them as if there were no reuse.
+ * The buffers don't keep the visited persons reachable after a traversal, so a pooled thread never retains
+ * persons (deleted ones included) between the calls.
+ * The traversal reads the parent references only, so it may run without any lock; it's weakly consistent then.
+ */
+public class AncestorTraversal {
+
+	private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+	/**
+	 * Visits a person and its ancestors up to a given number of generations.
+	 * Returns the number of persons passed to the sink.
+	 * Performance: O(number of visited ancestors)
+	 */
+	public int traverse(Person person, int maxDepth, GenerationSink sink) {
+		Scratch buffers = scratch.get();
+		if (buffers.busy) {
+			// a sink has started another traversal
+			buffers = new Scratch();
+		}
+		buffers.busy = true;
+		int tail = 0;
+		try {
+			buffers.visited.add(person);
+			buffers.queue[tail++] = person;
+			int head = 0;
+			int generation = 0;
+			int generationEnd = 1;
+
+			while (head < tail) {
+				if (head == generationEnd) {
+					generation++;
+					generationEnd = tail;
+				}
+				Person ancestor = buffers.queue[head++];
+				if (!sink.accept(generation, ancestor)) {
+					return head;
+				}
+				if (generation < maxDepth) {
+					if (tail + 2 > buffers.queue.length) {
+						buffers.queue = Arrays.copyOf(buffers.queue, buffers.queue.length * 2);
+					}
+					if (ancestor.getParent1() != null && buffers.visited.add(ancestor.getParent1())) {
+						buffers.queue[tail++] = ancestor.getParent1();
+					}
+					if (ancestor.getParent2() != null && buffers.visited.add(ancestor.getParent2())) {
+						buffers.queue[tail++] = ancestor.getParent2();
+					}
+				}
+			}
+			return head;
+		} finally {
+			// every visited person has been queued, so the queue tells the visited set's elements to drop
+			buffers.visited.clear(buffers.queue, tail);
+			Arrays.fill(buffers.queue, 0, tail, null);
+			buffers.busy = false;
+		}
+	}
+
+	/**
+	 * Returns the names of a person and its ancestors grouped by generations.
+	 * Performance: O(number of visited ancestors)
+	 */
+	public List<List<String>> collect(Person person, int maxDepth) {
+		List<List<String>> generations = new ArrayList<>();
+		traverse(person, maxDepth, (generation, ancestor) -> {
+			if (generation == generations.size()) {
+				generations.add(new ArrayList<>());
+			}
+			generations.get(generation).add(ancestor.getName());
+			return true;
+		});
+		return generations;
+	}
+
+	/**
+	 * Buffers of a thread.
+	 */
+	private static class Scratch {
+		Person[] queue = new Person[64];
+		final VisitedSet visited = new VisitedSet();
+		boolean busy;
+	}
+
+	/**
+	 * A set of persons compared by reference, based on open addressing.
+	 * A slot belongs to the set if its stamp equals the current epoch, so the set is cleared without
+	 * visiting all of its slots.
+	 */
+	private static class VisitedSet {
+		private Object[] keys = new Object[128];
+		private int[] stamps = new int[128];
+		private int epoch = 1;
+		private int size;
+
+		/**
+		 * Clears the set, given its elements, whose slots are cleared so that it doesn't keep them reachable.
+		 * Performance: O(number of elements)
+		 */
+		void clear(Object[] elements, int count) {
+			int mask = keys.length - 1;
+			for (int j = 0; j < count; j++) {
+				int i = hash(elements[j]) & mask;
+				while (keys[i] != elements[j]) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = null;
+			}
+			size = 0;
+			if (++epoch == Integer.MAX_VALUE) {
+				Arrays.fill(stamps, 0);
+				epoch = 1;
+			}
+		}
+
+		/**
+		 * Adds a person; returns false if it's in the set already.
+		 */
+		boolean add(Object key) {
+			if (size * 2 >= keys.length) {
+				resize();
+			}
+			int mask = keys.length - 1;
+			for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+				if (stamps[i] != epoch) {
+					keys[i] = key;
+					stamps[i] = epoch;
+					size++;
+					return true;
+				}
+				if (keys[i] == key) {
+					return false;
+				}
+			}
+		}
+
+		private void resize() {
+			Object[] oldKeys = keys;
+			int[] oldStamps = stamps;
+			keys = new Object[oldKeys.length * 2];
+			stamps = new int[oldKeys.length * 2];
+			int mask = keys.length - 1;
+			for (int j = 0; j < oldKeys.length; j++) {
+				if (oldStamps[j] == epoch) {
+					int i = hash(oldKeys[j]) & mask;
+					while (stamps[i] == epoch) {
+						i = (i + 1) & mask;
+					}
+					keys[i] = oldKeys[j];
+					stamps[i] = epoch;
+				}
+			}
+		}
+
+		private static int hash(Object key) {
+			int h = System.identityHashCode(key) * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+	}
+}
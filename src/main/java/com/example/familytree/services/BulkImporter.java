@@ -0,0 +1,225 @@
+package com.example.familytree.services;
+
+import com.example.familytree.forms.PersonForm;
+import com.example.familytree.responses.ImportReport;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.stream.Collectors;
+
+/**
+ * A service that loads persons in bulk from NDJSON or CSV streams.
+ * Streams are parsed line by line, and all of the parsed records are added to the family tree as a single batch
+ * (see FamilyTree#addPersons), so they can come in any order.
+ * NDJSON lines hold the same JSON objects as the POST /familyTree requests.
+ * CSV streams start with a header naming the columns: name, age, parent1, parent2 and children,
+ * where children names are separated with semicolons; fields may be quoted and empty fields stand for null.
+ */
+@Service
+public class BulkImporter {
+	/**
+	 * Max number of rejected rows listed in a report.
+	 */
+	private static final int MAX_REPORTED_REJECTIONS = 1000;
+
+	private static final List<String> CSV_COLUMNS = Arrays.asList("name", "age", "parent1", "parent2", "children");
+
+	private final FamilyTree familyTree;
+	private final ObjectReader personReader;
+
+	@Autowired
+	public BulkImporter(FamilyTree familyTree) {
+		this.familyTree = familyTree;
+		this.personReader = new ObjectMapper().readerFor(PersonForm.class);
+	}
+
+	/**
+	 * Imports a file; files with the .csv extension are read as CSV, all of the other ones as NDJSON.
+	 */
+	public ImportReport importFile(Path path) throws IOException {
+		try (InputStream in = Files.newInputStream(path)) {
+			return path.getFileName().toString().toLowerCase().endsWith(".csv") ? importCsv(in) : importNdjson(in);
+		}
+	}
+
+	/**
+	 * Imports a stream of JSON objects, one per line. Blank lines are skipped.
+	 * Performance: O(n) per row; see FamilyTree#addPersons.
+	 */
+	public ImportReport importNdjson(InputStream in) throws IOException {
+		long start = System.nanoTime();
+		Batch batch = new Batch();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		String line;
+		for (long lineNumber = 1; (line = reader.readLine()) != null; lineNumber++) {
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+			try {
+				batch.add(lineNumber, personReader.readValue(line));
+			} catch (IOException e) {
+				batch.reject(lineNumber, null, "Malformed JSON record");
+			}
+		}
+		return batch.importInto(familyTree, start);
+	}
+
+	/**
+	 * Imports a CSV stream with a header line. Blank lines are skipped.
+	 * Performance: O(n) per row; see FamilyTree#addPersons.
+	 */
+	public ImportReport importCsv(InputStream in) throws IOException {
+		long start = System.nanoTime();
+		Batch batch = new Batch();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		String header = reader.readLine();
+		if (header == null) {
+			return batch.importInto(familyTree, start);
+		}
+		// column index of each known column, -1 if it's missing
+		List<String> headerFields = parseCsvLine(header);
+		int[] columns = new int[CSV_COLUMNS.size()];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = -1;
+			for (int j = 0; j < headerFields.size(); j++) {
+				if (headerFields.get(j) != null && headerFields.get(j).trim().equalsIgnoreCase(CSV_COLUMNS.get(i))) {
+					columns[i] = j;
+				}
+			}
+		}
+		if (columns[0] == -1 || columns[1] == -1) {
+			throw new IllegalArgumentException("CSV header must define the name and age columns");
+		}
+
+		String line;
+		for (long lineNumber = 2; (line = reader.readLine()) != null; lineNumber++) {
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+			List<String> fields;
+			try {
+				fields = parseCsvLine(line);
+			} catch (IllegalArgumentException e) {
+				batch.reject(lineNumber, null, e.getMessage());
+				continue;
+			}
+			PersonForm record = new PersonForm();
+			record.setName(field(fields, columns[0]));
+			record.setParent1(field(fields, columns[2]));
+			record.setParent2(field(fields, columns[3]));
+			String children = field(fields, columns[4]);
+			if (children != null) {
+				record.setChildren(Arrays.stream(children.split(";"))
+						.map(String::trim)
+						.filter(c -> !c.isEmpty())
+						.collect(Collectors.toList()));
+			}
+			String age = field(fields, columns[1]);
+			try {
+				record.setAge(age == null ? null : Integer.valueOf(age.trim()));
+			} catch (NumberFormatException e) {
+				batch.reject(lineNumber, record.getName(), "Age must be a number");
+				continue;
+			}
+			batch.add(lineNumber, record);
+		}
+		return batch.importInto(familyTree, start);
+	}
+
+	private static String field(List<String> fields, int column) {
+		return column == -1 || column >= fields.size() ? null : fields.get(column);
+	}
+
+	/**
+	 * Splits a CSV line into fields. Quoted fields may contain commas and doubled quotes;
+	 * unquoted empty fields are returned as nulls.
+	 */
+	static List<String> parseCsvLine(String line) {
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		boolean wasQuoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				} else if (c == '"') {
+					quoted = false;
+				} else {
+					field.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+				wasQuoted = true;
+			} else if (c == ',') {
+				fields.add(field.length() == 0 && !wasQuoted ? null : field.toString());
+				field.setLength(0);
+				wasQuoted = false;
+			} else {
+				field.append(c);
+			}
+		}
+		if (quoted) {
+			throw new IllegalArgumentException("Unterminated quoted field");
+		}
+		fields.add(field.length() == 0 && !wasQuoted ? null : field.toString());
+		return fields;
+	}
+
+	/**
+	 * Parsed records with their line numbers, and the rows rejected while parsing.
+	 * The rejections arrive out of order (the family tree's ones after all of the parsing ones), so the ones
+	 * with the first MAX_REPORTED_REJECTIONS line numbers are kept in a max-heap by line number, whose top is
+	 * the rejection to drop when an earlier one arrives.
+	 */
+	private static class Batch {
+		private final List<PersonForm> records = new ArrayList<>();
+		private final List<Long> lineNumbers = new ArrayList<>();
+		private final PriorityQueue<ImportReport.Rejection> rejections =
+				new PriorityQueue<>((r1, r2) -> Long.compare(r2.getLine(), r1.getLine()));
+		private long rejected;
+
+		void add(long lineNumber, PersonForm record) {
+			records.add(record);
+			lineNumbers.add(lineNumber);
+		}
+
+		void reject(long lineNumber, String name, String reason) {
+			rejected++;
+			if (rejections.size() == MAX_REPORTED_REJECTIONS) {
+				if (rejections.peek().getLine() < lineNumber) {
+					return;
+				}
+				rejections.poll();
+			}
+			rejections.add(new ImportReport.Rejection(lineNumber, name, reason));
+		}
+
+		ImportReport importInto(FamilyTree familyTree, long start) {
+			Map<Integer, String> treeRejections = familyTree.addPersons(records);
+			for (Map.Entry<Integer, String> rejection : treeRejections.entrySet()) {
+				int index = rejection.getKey();
+				reject(lineNumbers.get(index), records.get(index).getName(), rejection.getValue());
+			}
+			List<ImportReport.Rejection> reported = new ArrayList<>(rejections);
+			reported.sort((r1, r2) -> Long.compare(r1.getLine(), r2.getLine()));
+
+			long rows = records.size() + rejected - treeRejections.size();
+			long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+			return new ImportReport(rows, rejected, elapsedMillis, reported);
+		}
+	}
+}
@@ -0,0 +1,421 @@
+package com.example.familytree.services;
+
+import com.example.familytree.collections.ChunkedIntArray;
+import com.example.familytree.collections.CompactFamilyGraph;
+import com.example.familytree.collections.FamilyGraph;
+import com.example.familytree.collections.MappedFamilyGraph;
+import com.example.familytree.entities.Person;
+import com.example.familytree.enums.Order;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A family tree storage engine backed by the CompactFamilyGraph.
+ * It provides the same operations and validation rules as the FamilyTree service, except for changing
+ * and deleting persons (the graph's arrays are append-only), but it doesn't keep
+ * any per-person objects: Person entities are materialized on demand as views of the graph,
+ * with parents and children holding their names and ages only.
+ * It's meant for trees of hundreds of millions of persons, where the object graph doesn't fit into the heap
+ * or its garbage collection becomes unpredictable.
+ * A tree can be written to a snapshot file and opened from it later; an opened snapshot is served
+ * straight from the memory-mapped file and is read-only. The FamilyTree service writes the same snapshots
+ * into its write-ahead log and restores them on startup (see FamilyTree#writeSnapshot).
+ */
+public class CompactFamilyTree {
+	private static final Logger log = LoggerFactory.getLogger(CompactFamilyTree.class);
+
+	private static final int NONE = -1;
+
+	/**
+	 * A database persistence layer service.
+	 */
+	private final DBService dbService;
+
+	/**
+	 * Holds all of the persons and their relations.
+	 */
+	private final FamilyGraph graph;
+
+	/**
+	 * The same graph as above if it's writable, null for read-only snapshots.
+	 */
+	private final CompactFamilyGraph writableGraph;
+
+	private final Lock readLock;
+	private final Lock writeLock;
+	private final int maxAge;
+
+	/**
+	 * Cycle check scratch space, used under the write lock only.
+	 * A node is visited if its stamp equals the current epoch, so the visited set is cleared in O(1).
+	 */
+	private final ChunkedIntArray visitStamps;
+	private int visitEpoch;
+	private int[] stack;
+
+	public CompactFamilyTree(DBService dbService, int maxAge) {
+		this(dbService, new CompactFamilyGraph(maxAge));
+	}
+
+	private CompactFamilyTree(DBService dbService, FamilyGraph graph) {
+		this.dbService = dbService;
+		this.maxAge = graph.maxAge();
+		this.graph = graph;
+		this.writableGraph = graph instanceof CompactFamilyGraph ? (CompactFamilyGraph) graph : null;
+		this.visitStamps = new ChunkedIntArray(0);
+		this.stack = new int[64];
+
+		ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+		this.readLock = readWriteLock.readLock();
+		this.writeLock = readWriteLock.writeLock();
+	}
+
+	/**
+	 * Opens a read-only family tree served from a snapshot file.
+	 * Performance: O(1); see MappedFamilyGraph#open.
+	 */
+	public static CompactFamilyTree openSnapshot(DBService dbService, Path path) throws IOException {
+		return new CompactFamilyTree(dbService, MappedFamilyGraph.open(path));
+	}
+
+	/**
+	 * Writes a snapshot of the family tree, which can be opened with openSnapshot().
+	 * Writers are blocked for the time of writing.
+	 * Performance: O(N)
+	 */
+	public void writeSnapshot(Path path) throws IOException {
+		readLock.lock();
+		try {
+			MappedFamilyGraph.writeSnapshot(graph, path);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * This function adds a new person node to a family tree.
+	 * Performance: O(n); this is because of checking if a cycle exists.
+	 */
+	public void addPerson(String name, Integer age, String parent1Name, String parent2Name, List<String> childNames) {
+		if (writableGraph == null) {
+			throw new UnsupportedOperationException("Family tree snapshots are read-only");
+		}
+		writeLock.lock();
+		try {
+			validate(name, age, parent1Name, parent2Name, childNames);
+
+			int id = writableGraph.add(name, age);
+			visitStamps.grow(graph.size());
+
+			int parent1 = graph.indexOf(parent1Name);
+			int parent2 = graph.indexOf(parent2Name);
+			if (parent1 != NONE) {
+				writableGraph.setParent1(id, parent1);
+				writableGraph.addChild(parent1, id);
+			}
+			if (parent2 != NONE) {
+				writableGraph.setParent2(id, parent2);
+				writableGraph.addChild(parent2, id);
+			}
+
+			if (childNames != null) {
+				for (String childName : childNames) {
+					int child = graph.indexOf(childName);
+					writableGraph.addChild(id, child);
+					if (graph.parent1(child) == NONE) {
+						writableGraph.setParent1(child, id);
+					} else {
+						writableGraph.setParent2(child, id);
+					}
+				}
+			}
+
+			// persist the data
+			dbService.savePerson(materialize(id));
+			if (parent1 != NONE) {
+				dbService.updatePerson(materialize(parent1));
+			}
+			if (parent2 != NONE) {
+				dbService.updatePerson(materialize(parent2));
+			}
+			if (childNames != null) {
+				for (int i = 0; i < graph.childCount(id); i++) {
+					dbService.updatePerson(materialize(graph.child(id, i)));
+				}
+			}
+		} finally {
+			writeLock.unlock();
+		}
+		dbService.awaitPersisted();
+	}
+
+	/**
+	 * This function returns a person view for a given name.
+	 * Performance: O(1 + number of children)
+	 */
+	public Person getPerson(String name) {
+		readLock.lock();
+		try {
+			int id = graph.indexOf(name);
+			return id == NONE ? null : materialize(id);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * This function prints the reverse family tree (upwards) from a node including both parents for each level.
+	 * The function returns a list of names in the upwards order, the same as FamilyTree#printUpwards.
+	 * The lines are printed to the log at the INFO level, after the lock has been released.
+	 * Performance: O(N); this is because of the BFS algorithm complexity.
+	 */
+	public List<String> printUpwards(String name) {
+		List<String> names = new ArrayList<>();
+		List<String> lines = new ArrayList<>();
+		boolean print = log.isInfoEnabled();
+		readLock.lock();
+		try {
+			int id = graph.indexOf(name);
+			if (id == NONE) {
+				throw new IllegalArgumentException("Name " + name + " doesn't exist");
+			}
+
+			int[] queue = new int[16];
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = id;
+			int depth = 0;
+			int nodesToNextDepth = 1;
+
+			while (head < tail) {
+				id = queue[head++];
+				if (print) {
+					StringBuilder line = new StringBuilder();
+					for (int i = 1; i < depth; i++) {
+						line.append("grand ");
+					}
+					line.append(depth == 0 ? "person: " : "parent: ");
+					lines.add(line.append(graph.name(id)).toString());
+				}
+				names.add(graph.name(id));
+
+				if (tail + 2 > queue.length) {
+					queue = Arrays.copyOf(queue, queue.length * 2);
+				}
+				if (graph.parent1(id) != NONE) {
+					queue[tail++] = graph.parent1(id);
+				}
+				if (graph.parent2(id) != NONE) {
+					queue[tail++] = graph.parent2(id);
+				}
+				if (nodesToNextDepth == 1) {
+					nodesToNextDepth = tail - head;
+					depth++;
+				} else {
+					nodesToNextDepth--;
+				}
+			}
+		} finally {
+			readLock.unlock();
+		}
+		lines.forEach(log::info);
+		return names;
+	}
+
+	/**
+	 * This function returns a sorted family list of person views.
+	 * The engine keeps no secondary indexes, so only the age orders (ASC and DESC) are supported.
+	 * Performance: O(N)
+	 */
+	public List<Person> getSortedFamilyList(Order order) {
+		if (order.getKey() != Order.Key.AGE) {
+			throw new IllegalArgumentException("Order " + order + " isn't supported by the compact family tree");
+		}
+		readLock.lock();
+		try {
+			List<Person> persons = new ArrayList<>(graph.size());
+			for (int i = 0; i <= maxAge; i++) {
+				int age = order == Order.ASC ? i : maxAge - i;
+				for (int id = graph.firstInBucket(age); id != NONE; id = graph.nextInBucket(id)) {
+					persons.add(materialize(id));
+				}
+			}
+			return persons;
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of persons.
+	 * Performance: O(1)
+	 */
+	public int size() {
+		readLock.lock();
+		try {
+			return graph.size();
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Builds a person view; its parents and children hold names and ages only.
+	 */
+	private Person materialize(int id) {
+		List<Person> children = new ArrayList<>(graph.childCount(id));
+		for (int i = 0; i < graph.childCount(id); i++) {
+			children.add(materializeRelative(graph.child(id, i)));
+		}
+		return new Person.Builder(graph.name(id), graph.age(id))
+				.parent1(materializeRelative(graph.parent1(id)))
+				.parent2(materializeRelative(graph.parent2(id)))
+				.children(children)
+				.build();
+	}
+
+	private Person materializeRelative(int id) {
+		if (id == NONE) {
+			return null;
+		}
+		return new Person.Builder(graph.name(id), graph.age(id)).build();
+	}
+
+	/**
+	 * Check for a cycle when adding a child node; see FamilyTree#isCycleUpwards.
+	 * Performance: O(N); this is because of the DFS algorithm complexity.
+	 */
+	private boolean isCycleUpwards(int parent1, int parent2) {
+		int epoch = nextVisitEpoch();
+		int top = 0;
+		stack[top++] = parent1;
+		stack[top++] = parent2;
+
+		while (top > 0) {
+			int id = stack[--top];
+			if (visitStamps.get(id) == epoch) {
+				return true;
+			}
+			visitStamps.set(id, epoch);
+
+			ensureStackCapacity(top + 2);
+			if (graph.parent1(id) != NONE) {
+				stack[top++] = graph.parent1(id);
+			}
+			if (graph.parent2(id) != NONE) {
+				stack[top++] = graph.parent2(id);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Check for a cycle when adding a parent node; see FamilyTree#isCycleDownwards.
+	 * Performance: O(N); this is because of the DFS algorithm complexity.
+	 */
+	private boolean isCycleDownwards(List<String> childNames) {
+		int epoch = nextVisitEpoch();
+		int top = 0;
+		ensureStackCapacity(childNames.size());
+		for (String childName : childNames) {
+			stack[top++] = graph.indexOf(childName);
+		}
+
+		while (top > 0) {
+			int id = stack[--top];
+			if (visitStamps.get(id) == epoch) {
+				return true;
+			}
+			visitStamps.set(id, epoch);
+
+			int childCount = graph.childCount(id);
+			ensureStackCapacity(top + childCount);
+			for (int i = 0; i < childCount; i++) {
+				stack[top++] = graph.child(id, i);
+			}
+		}
+		return false;
+	}
+
+	private int nextVisitEpoch() {
+		if (visitEpoch == Integer.MAX_VALUE) {
+			visitStamps.fill(0);
+			visitEpoch = 0;
+		}
+		return ++visitEpoch;
+	}
+
+	private void ensureStackCapacity(int capacity) {
+		if (capacity > stack.length) {
+			stack = Arrays.copyOf(stack, Math.max(capacity, stack.length * 2));
+		}
+	}
+
+	private void validate(String name, Integer age, String parent1Name, String parent2Name, List<String> childNames) {
+		// name & age
+		if (graph.indexOf(name) != NONE) {
+			throw new IllegalArgumentException("Name " + name + " is already defined");
+		}
+
+		if (age == null || age < 0 || age > maxAge) {
+			throw new IllegalArgumentException("Age must be within the range [0, " + maxAge + "]");
+		}
+
+		// parents
+		if (parent1Name != null) {
+			validateParent(parent1Name, age);
+		}
+
+		if (parent2Name != null) {
+			validateParent(parent2Name, age);
+		}
+
+		// check whether adding a node introduces a cycle
+		if (parent1Name != null
+				&& parent2Name != null
+				&& isCycleUpwards(graph.indexOf(parent1Name), graph.indexOf(parent2Name))) {
+			throw new IllegalArgumentException("Cycle detected when adding a child node");
+		}
+
+		// children
+		if (childNames != null) {
+			for (String childName : childNames) {
+				validateChild(childName, age);
+			}
+
+			if (isCycleDownwards(childNames)) {
+				throw new IllegalArgumentException("Cycle detected when adding a parent node");
+			}
+		}
+	}
+
+	private void validateParent(String parentName, int age) {
+		int parent = graph.indexOf(parentName);
+		if (parent == NONE) {
+			throw new IllegalArgumentException("Name " + parentName + " doesn't exist");
+		}
+		if (age >= graph.age(parent)) {
+			throw new IllegalArgumentException("Given age cannot be greater than or equal to a parent age");
+		}
+	}
+
+	private void validateChild(String childName, int age) {
+		int child = graph.indexOf(childName);
+		if (child == NONE) {
+			throw new IllegalArgumentException("Name " + childName + " doesn't exist");
+		}
+		if (age <= graph.age(child)) {
+			throw new IllegalArgumentException("Given age cannot be less than or equal to a child age");
+		}
+		if (graph.parent1(child) != NONE && graph.parent2(child) != NONE) {
+			throw new IllegalArgumentException("Person " + childName + " already has both parents");
+		}
+	}
+}
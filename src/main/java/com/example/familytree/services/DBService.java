@@ -1,11 +1,79 @@
 package com.example.familytree.services;
 
+import com.example.familytree.collections.FamilyGraph;
 import com.example.familytree.entities.Person;
 
+import java.util.List;
+
 /**
  * A database persistence layer service.
  */
 public interface DBService {
 	void savePerson(Person person);
 	void updatePerson(Person person);
+
+	/**
+	 * Deletes a person entry. A person whose age or relatives change is deleted and saved again,
+	 * so a saved entry always holds the relatives the person was linked with.
+	 */
+	void deletePerson(Person person);
+
+	/**
+	 * Persists a batch of new and updated person entries.
+	 * The default implementation falls back to single entry calls.
+	 */
+	default void persistBatch(List<Person> savedPersons, List<Person> updatedPersons) {
+		savedPersons.forEach(this::savePerson);
+		updatedPersons.forEach(this::updatePerson);
+	}
+
+	/**
+	 * Persists a batch of deleted, new and updated person entries; the deletions go first,
+	 * as a person may be deleted and saved again within a batch.
+	 * The default implementation deletes the entries one by one and falls back to the batch above.
+	 */
+	default void persistBatch(List<Person> savedPersons, List<Person> updatedPersons, List<Person> deletedPersons) {
+		deletedPersons.forEach(this::deletePerson);
+		persistBatch(savedPersons, updatedPersons);
+	}
+
+	/**
+	 * Blocks until all of the writes issued by the calling thread are persisted.
+	 * Synchronous implementations persist the data straight away, so there is nothing to wait for.
+	 */
+	default void awaitPersisted() {
+	}
+
+	/**
+	 * Passes all of the persisted persons and deletions to a given handler, in the order they happened,
+	 * so that a family tree can be rebuilt on startup.
+	 * Stores that aren't read back on startup don't replay anything.
+	 */
+	default void replay(PersonRecordHandler handler) {
+	}
+
+	/**
+	 * Stores a snapshot of the family, so that replay() starts with it and passes the later changes only.
+	 * It must be called with the family's writers blocked, so that the snapshot holds exactly the persisted changes.
+	 * Stores that aren't read back on startup don't keep snapshots.
+	 */
+	default void writeSnapshot(FamilyGraph graph) {
+	}
+
+	/**
+	 * Receives a replayed person together with the names of the relatives it was added with,
+	 * the names of the replayed deletions, and the snapshot a replay starts with, if there's one.
+	 */
+	@FunctionalInterface
+	interface PersonRecordHandler {
+		void addPerson(String name, Integer age, String parent1Name, String parent2Name, List<String> childNames);
+
+		default void deletePerson(String name) {
+			throw new UnsupportedOperationException("Replayed deletion of " + name + " isn't handled");
+		}
+
+		default void restoreSnapshot(FamilyGraph graph) {
+			throw new UnsupportedOperationException("Replayed snapshot isn't handled");
+		}
+	}
 }
@@ -0,0 +1,134 @@
+package com.example.familytree.services;
+
+import com.example.familytree.entities.Person;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A breadth-first traversal of a person's descendants, generation by generation.
+ * Every descendant is visited once, in the nearest generation it belongs to.
+ * A generation is expanded into the next one in parallel on a fork/join pool once it's wide enough:
+ * it's split into ranges whose children are collected by separate tasks, and a concurrent visited set
+ * tells the tasks which children have been taken already. The sink is called on the caller's thread only,
+ * one generation after another, as soon as a generation has been expanded.
+ * The traversal reads the children lists without any lock, so it's weakly consistent:
+ * it may miss the children linked in the meantime.
+ */
+public class DescendantTraversal {
+	/**
+	 * The smallest generation expanded in parallel.
+	 */
+	private static final int PARALLEL_THRESHOLD = 2048;
+
+	/**
+	 * The number of persons of a generation expanded by a single task.
+	 */
+	private static final int TASK_SIZE = 512;
+
+	private final ForkJoinPool pool;
+
+	public DescendantTraversal(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Visits a person and its descendants up to a given number of generations.
+	 * Returns the number of persons passed to the sink.
+	 * Performance: O(number of visited descendants), divided among the pool's threads for wide generations
+	 */
+	public int traverse(Person person, int maxDepth, GenerationSink sink) {
+		Set<Person> visited = ConcurrentHashMap.newKeySet();
+		visited.add(person);
+		List<Person> generation = Collections.singletonList(person);
+		int accepted = 0;
+
+		for (int depth = 0; !generation.isEmpty(); depth++) {
+			for (Person descendant : generation) {
+				accepted++;
+				if (!sink.accept(depth, descendant)) {
+					return accepted;
+				}
+			}
+			if (depth == maxDepth) {
+				return accepted;
+			}
+			generation = generation.size() < PARALLEL_THRESHOLD
+					? expand(generation, 0, generation.size(), visited)
+					: pool.invoke(new ExpandTask(generation, 0, generation.size(), visited));
+		}
+		return accepted;
+	}
+
+	/**
+	 * Returns the names of a person and its descendants grouped by generations.
+	 * Performance: O(number of visited descendants)
+	 */
+	public List<List<String>> collect(Person person, int maxDepth) {
+		List<List<String>> generations = new ArrayList<>();
+		traverse(person, maxDepth, (generation, descendant) -> {
+			if (generation == generations.size()) {
+				generations.add(new ArrayList<>());
+			}
+			generations.get(generation).add(descendant.getName());
+			return true;
+		});
+		return generations;
+	}
+
+	/**
+	 * Returns the children of a generation's range of persons which haven't been visited yet.
+	 * A children list may be appended to concurrently, so it's read by index, and a slot not filled in yet is skipped.
+	 */
+	private static List<Person> expand(List<Person> generation, int from, int to, Set<Person> visited) {
+		List<Person> next = new ArrayList<>();
+		for (int i = from; i < to; i++) {
+			List<Person> children = generation.get(i).getChildren();
+			for (int j = 0; j < children.size(); j++) {
+				Person child = children.get(j);
+				if (child != null && visited.add(child)) {
+					next.add(child);
+				}
+			}
+		}
+		return next;
+	}
+
+	/**
+	 * Expands a range of a generation, splitting it in halves down to TASK_SIZE persons.
+	 * The halves' results are concatenated in order, so the next generation keeps the order of the parents.
+	 */
+	private static class ExpandTask extends RecursiveTask<List<Person>> {
+		private static final long serialVersionUID = 1L;
+
+		private final List<Person> generation;
+		private final int from;
+		private final int to;
+		private final Set<Person> visited;
+
+		ExpandTask(List<Person> generation, int from, int to, Set<Person> visited) {
+			this.generation = generation;
+			this.from = from;
+			this.to = to;
+			this.visited = visited;
+		}
+
+		@Override
+		protected List<Person> compute() {
+			if (to - from <= TASK_SIZE) {
+				return expand(generation, from, to, visited);
+			}
+			int middle = (from + to) >>> 1;
+			ExpandTask second = new ExpandTask(generation, middle, to, visited);
+			second.fork();
+			List<Person> next = new ExpandTask(generation, from, middle, visited).compute();
+			next.addAll(second.join());
+			return next;
+		}
+	}
+}
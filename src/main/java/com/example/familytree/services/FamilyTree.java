@@ -1,16 +1,29 @@
 package com.example.familytree.services;
 
+import com.example.familytree.collections.CompactFamilyGraph;
+import com.example.familytree.collections.ComponentLocks;
+import com.example.familytree.collections.FamilyGraph;
+import com.example.familytree.collections.NameTrie;
 import com.example.familytree.collections.SortedList;
 import com.example.familytree.entities.Person;
 import com.example.familytree.enums.Order;
+import com.example.familytree.forms.PersonForm;
+import com.example.familytree.responses.Relationship;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -18,6 +31,18 @@ import java.util.stream.Collectors;
  */
 @Service
 public class FamilyTree {
+	private static final Logger log = LoggerFactory.getLogger(FamilyTree.class);
+
+	/**
+	 * Number of records of a bulk import added under a single write lock.
+	 */
+	private static final int BULK_CHUNK_SIZE = 4096;
+
+	/**
+	 * Max number of edits of a fuzzy name search.
+	 */
+	private static final int MAX_FUZZY_DISTANCE = 2;
+
 	/**
 	 * A database persistence layer service.
 	 */
@@ -25,9 +50,15 @@ public class FamilyTree {
 
 	/**
 	 * Name to person node map.
-	 * Guarantees fast lookups for names.
+	 * Guarantees fast lookups for names, which don't need to take the lock.
 	 */
-	private HashMap<String, Person> nameToPerson;
+	private ConcurrentHashMap<String, Person> nameToPerson;
+
+	/**
+	 * Name search index: a compressed trie of the names, for prefix and fuzzy searches.
+	 * It's changed under the write lock along with the name map and read optimistically.
+	 */
+	private final NameTrie<Person> nameIndex;
 
 	/**
 	 * Contains a list of Person entities ordered by age.
@@ -35,175 +66,914 @@ public class FamilyTree {
 	private SortedList<Person> sortedList;
 
 	/**
-	 * A read lock.
+	 * The sorted list node of each person, so that a person is removed from the list in O(1) time.
+	 * It's used under the write lock only.
+	 */
+	private final Map<Person, SortedList.Node<Person>> sortedListNodes;
+
+	/**
+	 * Contains the persons in the composite orders (age and name, age and generation depth, name).
+	 */
+	private final SortIndexes sortIndexes;
+
+	/**
+	 * Writers take the write lock to link a new person. Readers run optimistically without locking
+	 * and fall back to the read lock only if a write interfered with them.
+	 */
+	private final StampedLock lock;
+
+	/**
+	 * Locks of the family components, held by writers while validating a new person.
+	 */
+	private final ComponentLocks components;
+
+	/**
+	 * Answers ancestry queries, including the cycle checks.
+	 */
+	private final AncestorIndex ancestorIndex;
+
+	/**
+	 * Walks the ancestors with per-thread scratch buffers.
+	 */
+	private final AncestorTraversal ancestorTraversal;
+
+	/**
+	 * Walks the descendants, expanding wide generations on the common fork/join pool.
 	 */
-	private final Lock readLock;
+	private final DescendantTraversal descendantTraversal;
 
 	/**
-	 * A write lock.
+	 * Lock, validation, persistence and traversal meters.
 	 */
-	private final Lock writeLock;
+	private final FamilyTreeMetrics metrics;
+
+	/**
+	 * When the write lock was taken; it's used by the write lock holder only.
+	 */
+	private long writeLockedAt;
+
+	/**
+	 * Names of the persons being added, changed or deleted.
+	 */
+	private final Set<String> pendingNames;
+
+	/**
+	 * Number of changes made to the family; it's incremented by the write lock holder once a change is done.
+	 */
+	private volatile long version;
 
 	/**
 	 * Max age limit.
 	 */
 	private final int maxAge;
 
+	public FamilyTree(DBService dbService, int maxAge) {
+		this(dbService, maxAge, new CompositeMeterRegistry());
+	}
+
 	@Autowired
-	public FamilyTree(DBService dbService, @Value("${familyTree.maxAge}") int maxAge) {
+	public FamilyTree(DBService dbService, @Value("${familyTree.maxAge}") int maxAge, MeterRegistry meterRegistry) {
 		this.dbService = dbService;
-		this.nameToPerson = new HashMap<>();
+		this.nameToPerson = new ConcurrentHashMap<>();
+		this.nameIndex = new NameTrie<>();
 		this.maxAge = maxAge;
 		this.sortedList = new SortedList<>(maxAge);
+		this.sortedListNodes = new HashMap<>();
+		this.sortIndexes = new SortIndexes();
+		this.lock = new StampedLock();
+		this.components = new ComponentLocks();
+		this.metrics = new FamilyTreeMetrics(meterRegistry);
+		this.ancestorIndex = new AncestorIndex(metrics.cycleCheckVisited::record);
+		this.ancestorTraversal = new AncestorTraversal();
+		this.descendantTraversal = new DescendantTraversal(ForkJoinPool.commonPool());
+		this.pendingNames = ConcurrentHashMap.newKeySet();
+		meterRegistry.gauge("familytree.persons", nameToPerson, Map::size);
 
-		ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
-		this.readLock = readWriteLock.readLock();
-		this.writeLock = readWriteLock.writeLock();
+		// rebuild the tree from the persisted persons
+		dbService.replay(new DBService.PersonRecordHandler() {
+			@Override
+			public void addPerson(String name, Integer age, String parent1Name, String parent2Name, List<String> childNames) {
+				restorePerson(name, age, parent1Name, parent2Name, childNames);
+			}
+
+			@Override
+			public void deletePerson(String name) {
+				restoreDeletion(name);
+			}
+
+			@Override
+			public void restoreSnapshot(FamilyGraph graph) {
+				FamilyTree.this.restoreSnapshot(graph);
+			}
+		});
 	}
 
 	/**
 	 * This function adds a new person node to a family tree.
-	 * Performance: O(n); this is because of checking if a cycle exists.
+	 * Only the family components of the new person's relatives are locked for the time of validation,
+	 * so persons of unrelated families are added in parallel; a relative added by another writer meanwhile is
+	 * either locked as well or treated as non-existent (see lockRelatives()). The write lock is taken just to link
+	 * the new person and to call the persistence layer, while waiting for its acknowledgement
+	 * (e.g. the durable mode of the write-behind service) happens after all of the locks are released.
+	 * Performance: O(log N) per parent for the cycle check when the person has no children; with children,
+	 * O(number of children * number of descendants of all the children but the biggest family) for the cycle check,
+	 * and O(number of ancestors + number of descendants) to index the new ancestors; see AncestorIndex.
 	 */
 	public void addPerson(String name, Integer age, String parent1Name, String parent2Name, List<String> childNames) {
-		writeLock.lock();
-		try {
-			validate(name, age, parent1Name, parent2Name, childNames);
+		if (name == null) {
+			throw new IllegalArgumentException("Name must be defined");
+		}
+		// the name isn't guarded by any component lock, so concurrent additions of the same name are rejected here
+		if (!pendingNames.add(name)) {
+			throw new IllegalArgumentException("Name " + name + " is already defined");
+		}
+		List<String> relativeNames = new ArrayList<>();
+		relativeNames.add(parent1Name);
+		relativeNames.add(parent2Name);
+		if (childNames != null) {
+			relativeNames.addAll(childNames);
+		}
 
-			Person parent1 = nameToPerson.get(parent1Name);
-			Person parent2 = nameToPerson.get(parent2Name);
+		List<ComponentLocks.Component> lockedComponents = lockRelatives(relativeNames);
+		try {
+			Function<String, Person> resolver = lockedResolver(lockedComponents);
+			validateTimed(() -> validate(name, age, parent1Name, parent2Name, childNames, resolver));
 
-			List<Person> children = null;
-			if (childNames != null && !childNames.isEmpty()) {
-				children = childNames.stream()
-						.map(c -> nameToPerson.get(c))
-						.collect(Collectors.toList());
+			long stamp = writeLock();
+			try {
+				// the component is joined first, so whoever finds the person can lock its component
+				components.join(name, relativeNames, lockedComponents);
+				Person person = link(name, age, parent1Name, parent2Name, childNames);
+				persist(person);
+			} finally {
+				unlockWrite(stamp);
 			}
+		} finally {
+			components.unlock(lockedComponents);
+			pendingNames.remove(name);
+		}
+		metrics.added.increment();
+		metrics.dbAwait.record(dbService::awaitPersisted);
+	}
 
-			Person person = new Person.Builder(name, age)
-					.parent1(parent1)
-					.parent2(parent2)
-					.children(children)
-					.build();
+	/**
+	 * This function adds a batch of persons to a family tree (a bulk import).
+	 * Records may come in any order and refer to each other. A record's children that are in the batch as well
+	 * become parents of the children's records, and the records are sorted topologically,
+	 * so every person is added after its parents. Each record is validated with the same rules as in addPerson,
+	 * but the batch locks the family components it refers to only once, and it takes the write lock once
+	 * per chunk of records. Invalid records are skipped, as well as the records that depend on them.
+	 * The function returns the rejection reasons keyed by the record index.
+	 * Performance: O(n) per record in the worst case; this is because of checking if a cycle exists.
+	 */
+	public Map<Integer, String> addPersons(List<PersonForm> records) {
+		Map<Integer, String> rejections = new TreeMap<>();
+		int size = records.size();
 
-			// update name mapping
-			nameToPerson.put(name, person);
-			// add to the sorted list
-			sortedList.add(age, person);
-			// persist the data
-			dbService.savePerson(person);
+		// index the batch names; the first record of a name wins
+		Map<String, Integer> batchIndex = new HashMap<>();
+		List<String> reservedNames = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			String name = records.get(i).getName();
+			if (name == null) {
+				rejections.put(i, "Name must be defined");
+			} else if (batchIndex.containsKey(name) || find(name) != null || !pendingNames.add(name)) {
+				rejections.put(i, "Name " + name + " is already defined");
+			} else {
+				batchIndex.put(name, i);
+				reservedNames.add(name);
+			}
+		}
 
-			if (parent1 != null) {
-				parent1.addChild(person);
-				dbService.updatePerson(parent1);
+		try {
+			// parents of each record: the declared ones followed by the batch records listing it as a child
+			List<List<String>> parentNames = new ArrayList<>(size);
+			List<List<String>> existingChildNames = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				PersonForm record = records.get(i);
+				List<String> parents = new ArrayList<>(2);
+				if (record.getParent1() != null) {
+					parents.add(record.getParent1());
+				}
+				if (record.getParent2() != null) {
+					parents.add(record.getParent2());
+				}
+				parentNames.add(parents);
+				existingChildNames.add(new ArrayList<>());
+			}
+			for (int i = 0; i < size; i++) {
+				if (rejections.containsKey(i) || records.get(i).getChildren() == null) {
+					continue;
+				}
+				for (String childName : records.get(i).getChildren()) {
+					Integer child = childName == null ? null : batchIndex.get(childName);
+					if (child != null && child != i) {
+						parentNames.get(child).add(records.get(i).getName());
+					} else {
+						existingChildNames.get(i).add(childName);
+					}
+				}
 			}
-			if (parent2 != null) {
-				parent2.addChild(person);
-				dbService.updatePerson(parent2);
+
+			int[] order = sortTopologically(records, parentNames, batchIndex, rejections);
+
+			// lock the components of the persons that already exist; the batch ones are created locked
+			Set<String> existingNames = new HashSet<>();
+			for (int i : order) {
+				for (String relativeName : parentNames.get(i)) {
+					if (!batchIndex.containsKey(relativeName) && find(relativeName) != null) {
+						existingNames.add(relativeName);
+					}
+				}
+				for (String relativeName : existingChildNames.get(i)) {
+					if (find(relativeName) != null) {
+						existingNames.add(relativeName);
+					}
+				}
 			}
+			// persons added concurrently after that aren't locked, so they're treated as non-existent
+			Function<String, Person> resolver = name -> name != null
+					&& (batchIndex.containsKey(name) || existingNames.contains(name)) ? find(name) : null;
 
-			if (children != null) {
-				for (Person child : children) {
-					if (child.getParent1() == null) {
-						child.setParent1(person);
-					} else {
-						child.setParent2(person);
+			long start = System.nanoTime();
+			List<ComponentLocks.Component> lockedComponents = components.lock(existingNames);
+			metrics.componentLockWait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			try {
+				long stamp = writeLock();
+				try {
+					int added = 0;
+					for (int i : order) {
+						String name = records.get(i).getName();
+						List<String> parents = parentNames.get(i);
+						List<String> children = existingChildNames.get(i);
+						if (parents.size() > 2) {
+							rejections.put(i, "Person " + name + " has more than two parents");
+							continue;
+						}
+						String parent1Name = parents.size() > 0 ? parents.get(0) : null;
+						String parent2Name = parents.size() > 1 ? parents.get(1) : null;
+						try {
+							Integer age = records.get(i).getAge();
+							validateTimed(() -> validate(name, age, parent1Name, parent2Name, children, resolver));
+						} catch (IllegalArgumentException e) {
+							rejections.put(i, e.getMessage());
+							continue;
+						}
+
+						List<String> relativeNames = new ArrayList<>(parents);
+						relativeNames.addAll(children);
+						components.join(name, relativeNames, lockedComponents);
+						persist(link(name, records.get(i).getAge(), parent1Name, parent2Name, children));
+						metrics.added.increment();
+
+						// let the readers in from time to time
+						if (++added % BULK_CHUNK_SIZE == 0) {
+							unlockWrite(stamp);
+							stamp = writeLock();
+						}
 					}
-					dbService.updatePerson(child);
+				} finally {
+					unlockWrite(stamp);
 				}
+			} finally {
+				components.unlock(lockedComponents);
 			}
 		} finally {
-			writeLock.unlock();
+			// removed one by one, as removeAll() may check the list's contains() for every pending name
+			for (String name : reservedNames) {
+				pendingNames.remove(name);
+			}
 		}
+		metrics.dbAwait.record(dbService::awaitPersisted);
+		return rejections;
 	}
 
 	/**
-	 * This function returns a person node for a given name.
-	 * Performance: O(1)
+	 * This function replaces the age and the relatives of a person (a full update); null parents stand for none.
+	 * The person is validated like a new one against its new relatives, under the locks of the components involved,
+	 * and it's changed under the write lock: if only the age changes, the person is moved to another age in place,
+	 * otherwise it's unlinked from its current relatives and linked with the new ones. Either way the indexes
+	 * are updated incrementally, without a rebuild.
+	 * The validation sees the person's current relations, so a change that's valid only once they're dropped
+	 * (e.g. new parents related through a dropped child) is rejected; the person may be deleted and added again then.
+	 * Concurrent changes of the same person are rejected.
+	 * Performance: O(log maxAge) if only the age changes, O(1 + number of former and new relatives) otherwise
+	 * if the person has no children; O(number of ancestors + number of descendants) if it has some, as their sets
+	 * of ancestors are rebuilt (see AncestorIndex#remove and AncestorIndex#add), plus the cycle checks of addPerson().
 	 */
-	public Person getPerson(String name) {
-		readLock.lock();
+	public void updatePerson(String name, Integer age, String parent1Name, String parent2Name, List<String> childNames) {
+		update(name, age, parent1Name, parent2Name, childNames, false);
+	}
+
+	/**
+	 * This function changes the given attributes of a person (a partial update): null ones are left as they are,
+	 * and the given children replace the current ones. See updatePerson().
+	 */
+	public void patchPerson(String name, Integer age, String parent1Name, String parent2Name, List<String> childNames) {
+		update(name, age, parent1Name, parent2Name, childNames, true);
+	}
+
+	/**
+	 * This function deletes a person. The person's parents and children stay in the tree, unlinked from it
+	 * (the children's parent slot is cleared), and the person is removed from the indexes incrementally.
+	 * Concurrent changes of the same person are rejected.
+	 * Performance: O(log maxAge + number of relatives), O(number of ancestors) to mark their descendant counts
+	 * as stale, and O(number of descendants) to rebuild their sets of ancestors; see AncestorIndex#remove.
+	 */
+	public void deletePerson(String name) {
+		Person person = reserve(name);
 		try {
-			return nameToPerson.get(name);
+			List<ComponentLocks.Component> lockedComponents = lockComponents(Collections.singletonList(name));
+			try {
+				long stamp = writeLock();
+				try {
+					List<Person> relatives = relatives(person);
+					// the name is removed first, so lock-free lookups don't find a half unlinked person
+					nameToPerson.remove(name);
+					nameIndex.remove(name);
+					unlink(person);
+					components.remove(name);
+					persistDeletion(person, relatives);
+				} finally {
+					unlockWrite(stamp);
+				}
+			} finally {
+				components.unlock(lockedComponents);
+			}
 		} finally {
-			readLock.unlock();
+			pendingNames.remove(name);
 		}
+		metrics.deleted.increment();
+		metrics.dbAwait.record(dbService::awaitPersisted);
 	}
 
-	/**
-	 * This function prints the reverse family tree (upwards) from a node including both parents for each level.
-	 * The function returns a list of names in the upwards order.
-	 * The implementation is based on the Breadth-First Search (BFS) algorithm.
-	 * Performance: O(N); this is because of the BFS algorithm complexity.
-	 */
-	public List<String> printUpwards(String name) {
-		readLock.lock();
+	private void update(String name, Integer age, String parent1Name, String parent2Name, List<String> childNames,
+						boolean partial) {
+		Person person = reserve(name);
 		try {
-			Person person = nameToPerson.get(name);
-			if (person == null) {
-				throw new IllegalArgumentException("Name " + name + " doesn't exist");
+			List<String> relativeNames = new ArrayList<>();
+			relativeNames.add(parent1Name);
+			relativeNames.add(parent2Name);
+			if (childNames != null) {
+				relativeNames.addAll(childNames);
 			}
+			// the current relatives are in the person's component
+			relativeNames.add(name);
+			List<ComponentLocks.Component> lockedComponents = lockRelatives(relativeNames);
+			try {
+				Integer newAge = age;
+				String newParent1Name = parent1Name;
+				String newParent2Name = parent2Name;
+				List<String> newChildNames = childNames == null ? Collections.emptyList() : childNames;
+				if (partial) {
+					newAge = age == null ? Integer.valueOf(person.getAge()) : age;
+					newParent1Name = parent1Name == null ? person.getParent1Name() : parent1Name;
+					newParent2Name = parent2Name == null ? person.getParent2Name() : parent2Name;
+					newChildNames = childNames == null ? person.getChildrenNames() : childNames;
+				}
+				validateUpdate(person, newAge, newParent1Name, newParent2Name, newChildNames,
+						lockedResolver(lockedComponents));
 
-			List<String> names = new ArrayList<>();
+				long stamp = writeLock();
+				try {
+					if (Objects.equals(newParent1Name, person.getParent1Name())
+							&& Objects.equals(newParent2Name, person.getParent2Name())
+							&& newChildNames.equals(person.getChildrenNames())) {
+						if (newAge != person.getAge()) {
+							changeAge(person, newAge);
+							persistUpdate(person, person, Collections.emptyList());
+						}
+					} else {
+						List<Person> relatives = relatives(person);
+						unlink(person);
+						components.join(name, relativeNames, lockedComponents);
+						// the former person stays mapped until link() replaces it, so lookups always find one
+						Person updated = link(name, newAge, newParent1Name, newParent2Name, newChildNames);
+						relatives.addAll(relatives(updated));
+						persistUpdate(person, updated, relatives);
+					}
+				} finally {
+					unlockWrite(stamp);
+				}
+			} finally {
+				components.unlock(lockedComponents);
+			}
+		} finally {
+			pendingNames.remove(name);
+		}
+		metrics.updated.increment();
+		metrics.dbAwait.record(dbService::awaitPersisted);
+	}
 
-			Deque<Person> queue = new ArrayDeque<>();
-			queue.add(person);
-			int depth = 0;
-			int nodesToNextDepth = 1;
+	/**
+	 * Reserves the name of an existing person that is about to be changed or deleted, and returns the person.
+	 * The caller must remove the name from the pending names afterwards.
+	 */
+	private Person reserve(String name) {
+		if (name == null) {
+			throw new IllegalArgumentException("Name must be defined");
+		}
+		if (!pendingNames.add(name)) {
+			throw new IllegalArgumentException("Person " + name + " is being changed");
+		}
+		Person person = find(name);
+		if (person == null) {
+			pendingNames.remove(name);
+			throw new NoSuchElementException("Name " + name + " doesn't exist");
+		}
+		return person;
+	}
 
-			while (!queue.isEmpty()) {
-				person = queue.poll();
-				if (depth == 0) {
-					System.out.println("person: " + person.getName());
-					names.add(person.getName());
-				} else {
-					for (int i=1; i<depth; i++) {
-						System.out.print("grand ");
-					}
-					System.out.println("parent: " + person.getName());
-					names.add(person.getName());
+	/**
+	 * Locks the components of the relatives of a person being added or changed. The components of relatives
+	 * that don't exist yet can't be locked, so if one appears before the locks are taken, they're taken again.
+	 * One may still appear afterwards, which is why the relatives are validated with lockedResolver().
+	 */
+	private List<ComponentLocks.Component> lockRelatives(Collection<String> names) {
+		while (true) {
+			List<ComponentLocks.Component> lockedComponents = lockComponents(names);
+			boolean appeared = false;
+			for (String name : names) {
+				if (name != null && find(name) != null && !components.isLocked(name, lockedComponents)) {
+					appeared = true;
+					break;
 				}
+			}
+			if (!appeared) {
+				return lockedComponents;
+			}
+			components.unlock(lockedComponents);
+		}
+	}
+
+	/**
+	 * Looks the relatives up within the locked components only: a person added concurrently to an unlocked one
+	 * is treated as non-existent, as it's changed by its writers without the locks of the caller.
+	 */
+	private Function<String, Person> lockedResolver(List<ComponentLocks.Component> lockedComponents) {
+		return name -> components.isLocked(name, lockedComponents) ? find(name) : null;
+	}
+
+	private List<ComponentLocks.Component> lockComponents(Collection<String> names) {
+		long start = System.nanoTime();
+		List<ComponentLocks.Component> lockedComponents = components.lock(names);
+		metrics.componentLockWait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		return lockedComponents;
+	}
+
+	private static List<Person> relatives(Person person) {
+		List<Person> relatives = new ArrayList<>(person.getChildren());
+		if (person.getParent1() != null) {
+			relatives.add(person.getParent1());
+		}
+		if (person.getParent2() != null) {
+			relatives.add(person.getParent2());
+		}
+		return relatives;
+	}
+
+	/**
+	 * This function deletes a person's family component (see getComponent()), the youngest persons first,
+	 * and returns the number of deleted persons. It's used to move a component to another shard of a cluster,
+	 * whose router makes sure nobody changes the component in the meantime.
+	 * Performance: O(C log C) where C is the size of the component, plus a deletePerson() per person
+	 */
+	public int deleteComponent(String name) {
+		List<Person> component = getComponent(name);
+		for (int i = component.size() - 1; i >= 0; i--) {
+			deletePerson(component.get(i).getName());
+		}
+		return component.size();
+	}
+
+	/**
+	 * This function returns the version of the family, which grows with every change made to it;
+	 * a result read at a version reflects that version's changes at least, so it's safe to be tagged with it.
+	 * Performance: O(1)
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * This function writes a snapshot of the family to the persistence layer, so that the family is restored from it
+	 * on startup, and only the changes persisted afterwards are replayed (see WriteAheadLogDBService#writeSnapshot).
+	 * The persons are copied into a CompactFamilyGraph in the sorted list order, which the restoring keeps.
+	 * Writers are blocked for the time of writing, readers aren't.
+	 * Performance: O(N)
+	 */
+	public void writeSnapshot() {
+		long stamp = lock.readLock();
+		try {
+			CompactFamilyGraph graph = new CompactFamilyGraph(maxAge);
+			for (Person person : sortedList) {
+				graph.add(person.getName(), person.getAge());
+			}
+			// the ids are given in the same order
+			int id = 0;
+			for (Person person : sortedList) {
 				if (person.getParent1() != null) {
-					queue.add(person.getParent1());
+					graph.setParent1(id, graph.indexOf(person.getParent1Name()));
 				}
 				if (person.getParent2() != null) {
-					queue.add(person.getParent2());
+					graph.setParent2(id, graph.indexOf(person.getParent2Name()));
 				}
-				if (nodesToNextDepth == 1) {
-					nodesToNextDepth = queue.size();
-					depth++;
-				} else {
-					nodesToNextDepth--;
+				for (Person child : person.getChildren()) {
+					graph.addChild(id, graph.indexOf(child.getName()));
+				}
+				id++;
+			}
+			dbService.writeSnapshot(graph);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * This function returns a person node for a given name.
+	 * The name map is concurrent and a person is put into it once it's fully linked, so no lock is needed.
+	 * Performance: O(1)
+	 */
+	public Person getPerson(String name) {
+		return find(name);
+	}
+
+	/**
+	 * This function returns at most limit names starting with a given prefix, or with a string up to fuzzy edits
+	 * (insertions, deletions or substitutions of a character) away from it, so misspelled names are found too.
+	 * The closest names come first, and the names of the same distance are ordered.
+	 * Performance: O(prefix length + limit * name length) for exact prefixes; a fuzzy search visits the names
+	 * within the distance from the prefix only, which takes bounded time for a given prefix however big the family
+	 * is, but it grows exponentially with the distance, so the distance is limited to 2.
+	 */
+	public List<String> searchNames(String prefix, int fuzzy, int limit) {
+		if (prefix == null) {
+			throw new IllegalArgumentException("Prefix must be defined");
+		}
+		if (fuzzy < 0 || fuzzy > MAX_FUZZY_DISTANCE) {
+			throw new IllegalArgumentException("Fuzzy distance must be within the range [0, " + MAX_FUZZY_DISTANCE + "]");
+		}
+		if (limit < 0) {
+			throw new IllegalArgumentException("Limit cannot be negative");
+		}
+		List<Person> persons = optimisticRead(() -> fuzzy == 0 ? nameIndex.prefixSearch(prefix, limit)
+				: nameIndex.fuzzySearch(prefix, fuzzy, limit));
+		return persons.stream()
+				.map(Person::getName)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * This function returns the persons of a person's family component, i.e. the persons connected with it through
+	 * parents and children, from the oldest to the youngest, so that the parents come before their children.
+	 * Performance: O(C log C) where C is the size of the component
+	 */
+	public List<Person> getComponent(String name) {
+		Person person = find(name);
+		if (person == null) {
+			throw new IllegalArgumentException("Name " + name + " doesn't exist");
+		}
+		return optimisticRead(() -> {
+			Set<Person> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+			List<Person> component = new ArrayList<>();
+			visited.add(person);
+			component.add(person);
+			for (int i = 0; i < component.size(); i++) {
+				for (Person relative : relatives(component.get(i))) {
+					if (visited.add(relative)) {
+						component.add(relative);
+					}
 				}
 			}
-			return names;
+			component.sort(Comparator.comparingInt(Person::getAge).reversed());
+			return component;
+		});
+	}
+
+	/**
+	 * This function returns the size of a person's family component, or 0 if there's no such person.
+	 * It's an upper bound, as components are never split; see ComponentLocks#size.
+	 * Performance: O(log N)
+	 */
+	public int getComponentSize(String name) {
+		return components.size(name);
+	}
+
+	/**
+	 * This function returns whether a person is an ancestor of another one.
+	 * Performance: O(log N), a lookup in the person's set of ancestors; see AncestorIndex.
+	 */
+	public boolean isAncestorOf(String ancestorName, String name) {
+		Person ancestor = find(ancestorName);
+		if (ancestor == null) {
+			throw new IllegalArgumentException("Name " + ancestorName + " doesn't exist");
+		}
+		Person person = find(name);
+		if (person == null) {
+			throw new IllegalArgumentException("Name " + name + " doesn't exist");
+		}
+		return optimisticRead(() -> ancestorIndex.isAncestor(ancestor, person));
+	}
+
+	/**
+	 * This function tells how a person is related to another one, by the generation distances of both persons
+	 * to their nearest common ancestors; see AncestorIndex#nearestCommonAncestors.
+	 * Performance: as a cycle check of two parents if the persons aren't related; otherwise the search visits only
+	 * the ancestors on the lines leading to the nearest common ones.
+	 */
+	public Relationship getRelationship(String name, String otherName) {
+		Person person = find(name);
+		if (person == null) {
+			throw new IllegalArgumentException("Name " + name + " doesn't exist");
+		}
+		Person other = find(otherName);
+		if (other == null) {
+			throw new IllegalArgumentException("Name " + otherName + " doesn't exist");
+		}
+		AncestorIndex.CommonAncestors common = optimisticRead(() -> ancestorIndex.nearestCommonAncestors(person, other));
+		if (common == null) {
+			return new Relationship("unrelated", Collections.emptyList(), null, null);
+		}
+		List<String> commonNames = common.persons.stream()
+				.map(Person::getName)
+				.collect(Collectors.toList());
+		String relation = relationName(common.generations1, common.generations2);
+		return new Relationship(relation, commonNames, common.generations1, common.generations2);
+	}
+
+	/**
+	 * Names the relation of a person to another one, given their generation distances to the nearest common ancestors.
+	 * Half relatives aren't told apart, as a common ancestor's partner may just be missing in the tree.
+	 */
+	private static String relationName(int generations1, int generations2) {
+		if (generations1 == 0 && generations2 == 0) {
+			return "self";
+		}
+		if (generations1 == 0) {
+			return generations2 == 1 ? "parent" : greats(generations2 - 2) + "grandparent";
+		}
+		if (generations2 == 0) {
+			return generations1 == 1 ? "child" : greats(generations1 - 2) + "grandchild";
+		}
+		if (generations1 == 1 && generations2 == 1) {
+			return "sibling";
+		}
+		if (generations1 == 1) {
+			return greats(generations2 - 2) + "aunt/uncle";
+		}
+		if (generations2 == 1) {
+			return greats(generations1 - 2) + "niece/nephew";
+		}
+		int degree = Math.min(generations1, generations2) - 1;
+		int removed = Math.abs(generations1 - generations2);
+		String relation = ordinal(degree) + " cousin";
+		if (removed == 1) {
+			relation += " once removed";
+		} else if (removed == 2) {
+			relation += " twice removed";
+		} else if (removed > 2) {
+			relation += " " + removed + " times removed";
+		}
+		return relation;
+	}
+
+	private static String greats(int count) {
+		StringBuilder greats = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			greats.append("great-");
+		}
+		return greats.toString();
+	}
+
+	private static String ordinal(int number) {
+		switch (number) {
+			case 1: return "first";
+			case 2: return "second";
+			case 3: return "third";
+			default: return number + "th";
+		}
+	}
+
+	/**
+	 * This function prints the reverse family tree (upwards) from a node including both parents for each level.
+	 * The function returns a list of names in the upwards order; every ancestor is listed once.
+	 * The lines are printed to the log at the INFO level, after the ancestors have been collected.
+	 * The implementation is based on the Breadth-First Search (BFS) algorithm; see AncestorTraversal.
+	 * Performance: O(N); this is because of the BFS algorithm complexity.
+	 */
+	public List<String> printUpwards(String name) {
+		List<List<String>> levels = getAncestors(name, Integer.MAX_VALUE);
+
+		boolean print = log.isInfoEnabled();
+		List<String> names = new ArrayList<>();
+		for (int depth = 0; depth < levels.size(); depth++) {
+			if (!print) {
+				// the prefixes grow with the depth, so they aren't built unless they're logged
+				names.addAll(levels.get(depth));
+				continue;
+			}
+			StringBuilder prefix = new StringBuilder();
+			for (int i=1; i<depth; i++) {
+				prefix.append("grand ");
+			}
+			prefix.append(depth == 0 ? "person: " : "parent: ");
+			for (String levelName : levels.get(depth)) {
+				log.info("{}{}", prefix, levelName);
+				names.add(levelName);
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * This function returns the names of a person and its ancestors grouped by generations,
+	 * up to a given number of generations; every ancestor is listed once, in the nearest generation.
+	 * Performance: O(number of the ancestors returned)
+	 */
+	public List<List<String>> getAncestors(String name, int maxDepth) {
+		Person person = findTraversalRoot(name, maxDepth);
+		List<List<String>> generations = optimisticRead(() -> ancestorTraversal.collect(person, maxDepth));
+		metrics.ancestorsVisited.record(count(generations));
+		return generations;
+	}
+
+	/**
+	 * This function passes a person and its ancestors to a sink, generation by generation, like getAncestors().
+	 * It doesn't collect anything, nor does it take the lock, so the sink may write the persons out straight away;
+	 * the traversal is weakly consistent: it may miss the parents linked in the meantime.
+	 * Performance: O(number of the ancestors visited)
+	 */
+	public void traverseAncestors(String name, int maxDepth, GenerationSink sink) {
+		metrics.ancestorsVisited.record(ancestorTraversal.traverse(findTraversalRoot(name, maxDepth), maxDepth, sink));
+	}
+
+	/**
+	 * This function returns the names of a person and its descendants grouped by generations,
+	 * up to a given number of generations; every descendant is listed once, in the nearest generation.
+	 * Wide generations are expanded in parallel; see DescendantTraversal.
+	 * Performance: O(number of the descendants returned)
+	 */
+	public List<List<String>> getDescendants(String name, int maxDepth) {
+		Person person = findTraversalRoot(name, maxDepth);
+		List<List<String>> generations = optimisticRead(() -> descendantTraversal.collect(person, maxDepth));
+		metrics.descendantsVisited.record(count(generations));
+		return generations;
+	}
+
+	/**
+	 * This function passes a person and its descendants to a sink, generation by generation, like getDescendants().
+	 * It doesn't take the lock, so the traversal is weakly consistent: it may miss the children linked in the meantime.
+	 * Performance: O(number of the descendants visited)
+	 */
+	public void traverseDescendants(String name, int maxDepth, GenerationSink sink) {
+		metrics.descendantsVisited.record(descendantTraversal.traverse(findTraversalRoot(name, maxDepth), maxDepth, sink));
+	}
+
+	/**
+	 * This function returns the number of a person's descendants. The counts are cached by the ancestor index;
+	 * addPerson() marks the ones of the new person's ancestors as stale, and a stale count is refreshed here,
+	 * which is why it's run under the read lock rather than optimistically.
+	 * Performance: O(1) if the count is up to date, O(number of stale descendants) otherwise;
+	 * see AncestorIndex#descendantCount.
+	 */
+	public int countDescendants(String name) {
+		Person person = find(name);
+		if (person == null) {
+			throw new IllegalArgumentException("Name " + name + " doesn't exist");
+		}
+		long stamp = lock.readLock();
+		try {
+			return ancestorIndex.descendantCount(person);
 		} finally {
-			readLock.unlock();
+			lock.unlockRead(stamp);
+		}
+	}
+
+	private static int count(List<List<String>> generations) {
+		int count = 0;
+		for (List<String> generation : generations) {
+			count += generation.size();
 		}
+		return count;
+	}
+
+	private Person findTraversalRoot(String name, int maxDepth) {
+		if (maxDepth < 0) {
+			throw new IllegalArgumentException("Depth cannot be negative");
+		}
+		Person person = find(name);
+		if (person == null) {
+			throw new IllegalArgumentException("Name " + name + " doesn't exist");
+		}
+		return person;
 	}
 
 	/**
 	 * This function returns a sorted family list.
-	 * The element order must be defined.
+	 * The element order must be defined; the composite orders are read from their indexes, already sorted.
 	 * Performance: O(N); this is because of the SortedList's toOrderedList() complexity.
 	 */
 	public List<Person> getSortedFamilyList(Order order) {
-		readLock.lock();
-		try {
-			return sortedList.toOrderedList(order);
-		} finally {
-			readLock.unlock();
+		ensureIndexed(order);
+		return optimisticRead(() -> toOrderedList(order));
+	}
+
+	/**
+	 * This function returns an iterator over the sorted family, so that it can be streamed out page by page.
+	 * The family may be narrowed down to an age range (both ends inclusive, null stands for no bound).
+	 * An iteration may resume after a given age (all of the persons of that age have been visited already),
+	 * or after a given person; the age of the person may be given too, but it must match.
+	 * The iterator doesn't take the lock and it's weakly consistent: it may miss the persons added in the meantime.
+	 * The composite orders are iterated over their indexes; the NAME order can resume after a person only.
+	 * Performance: O(1) to create, O(number of persons of the same age) to resume after a person;
+	 * O(log N) to create for the composite orders
+	 */
+	public Iterator<Person> getSortedFamilyIterator(Order order, Integer fromAge, Integer toAge,
+													Integer afterAge, String afterName) {
+		int from = fromAge == null ? 0 : fromAge;
+		int to = toAge == null ? maxAge : toAge;
+		validateAgeRange(from, to);
+		if (afterAge != null && (afterAge < 0 || afterAge > maxAge)) {
+			throw new IllegalArgumentException("Age must be within the range [0, " + maxAge + "]");
+		}
+		Person after = null;
+		if (afterName != null) {
+			after = find(afterName);
+			if (after == null) {
+				throw new IllegalArgumentException("Name " + afterName + " doesn't exist");
+			}
+			if (afterAge != null && afterAge != after.getAge()) {
+				throw new IllegalArgumentException("Person " + afterName + " isn't " + afterAge + " years old");
+			}
+		}
+		if (order.getKey() != Order.Key.AGE) {
+			ensureIndexed(order);
+			return sortIndexes.iterator(order, from, to, after, afterAge);
+		}
+
+		int first = order == Order.ASC ? from : to;
+		int last = order == Order.ASC ? to : from;
+		if (after != null) {
+			if (after.getAge() >= from && after.getAge() <= to) {
+				return sortedList.iteratorAfter(order, after.getAge(), after, last);
+			}
+			afterAge = after.getAge();
+		}
+		if (afterAge != null) {
+			first = order == Order.ASC ? Math.max(first, afterAge + 1) : Math.min(first, afterAge - 1);
+		}
+		if (order == Order.ASC ? first > last : first < last) {
+			return Collections.emptyIterator();
+		}
+		return sortedList.iterator(order, first, last);
+	}
+
+	/**
+	 * This function returns the number of persons within an age range (both ends inclusive, null stands for no bound).
+	 * Performance: O(log maxAge); this is because of the SortedList's count() complexity.
+	 */
+	public int countPersons(Integer fromAge, Integer toAge) {
+		int from = fromAge == null ? 0 : fromAge;
+		int to = toAge == null ? maxAge : toAge;
+		validateAgeRange(from, to);
+		return optimisticRead(() -> sortedList.count(from, to));
+	}
+
+	/**
+	 * This function returns the number of persons of each age within an age range; ages nobody is of are skipped.
+	 * Performance: O(maxAge / 64 + number of ages returned)
+	 */
+	public SortedMap<Integer, Integer> countPersonsByAge(Integer fromAge, Integer toAge) {
+		int from = fromAge == null ? 0 : fromAge;
+		int to = toAge == null ? maxAge : toAge;
+		validateAgeRange(from, to);
+		return optimisticRead(() -> {
+			SortedMap<Integer, Integer> counts = new TreeMap<>();
+			for (int age = sortedList.nextIndex(from); age != -1 && age <= to; age = sortedList.nextIndex(age + 1)) {
+				counts.put(age, sortedList.count(age));
+			}
+			return counts;
+		});
+	}
+
+	private void validateAgeRange(int fromAge, int toAge) {
+		if (fromAge < 0 || toAge > maxAge || fromAge > toAge) {
+			throw new IllegalArgumentException("Age range must be within the range [0, " + maxAge + "]");
 		}
 	}
 
 	/**
-	 * Pretty print function.
+	 * Pretty print function; it prints to the log at the INFO level, and does nothing if the level is disabled.
 	 * Performance: O(N); this is because of the getSortedFamilyList() complexity.
 	 */
 	public void printFamilyTree(Order order) {
-		readLock.lock();
-		try {
-			for (Person person : getSortedFamilyList(order)) {
+		if (!log.isInfoEnabled()) {
+			return;
+		}
+		ensureIndexed(order);
+		List<String> lines = optimisticRead(() -> {
+			List<String> result = new ArrayList<>();
+			for (Person person : toOrderedList(order)) {
 				StringBuilder str = new StringBuilder();
 
 				str.append("Person: ");
@@ -234,105 +1004,467 @@ public class FamilyTree {
 					str.append(childrenNames);
 				}
 
-				System.out.println(str.toString());
+				result.add(str.toString());
+			}
+			return result;
+		});
+		lines.forEach(log::info);
+	}
+
+	/**
+	 * Runs a read without taking the lock and returns its result if no write happened in the meantime.
+	 * Otherwise, the read may have seen a half-done write (and even failed because of it),
+	 * so it's run again under the read lock.
+	 * The reader must not have any side effects.
+	 */
+	private <T> T optimisticRead(Supplier<T> reader) {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0) {
+			try {
+				T result = reader.get();
+				if (lock.validate(stamp)) {
+					return result;
+				}
+			} catch (RuntimeException e) {
+				// a concurrent write has been seen half-done
 			}
+		}
+		metrics.optimisticReadRetries.increment();
+		stamp = lock.readLock();
+		try {
+			return reader.get();
 		} finally {
-			readLock.unlock();
+			lock.unlockRead(stamp);
 		}
 	}
 
 	/**
-	 * Check for a cycle when adding a child node.
-	 * The implementation is based on the Depth-First Search (DFS) algorithm.
-	 * Performance: O(N); this is because of the DFS algorithm complexity.
+	 * Returns the family in a given order; it must be called within optimisticRead() (or under a lock),
+	 * and a composite order must have been indexed before (see ensureIndexed()).
 	 */
-	private boolean isCycleUpwards(Person parent1, Person parent2) {
-		Deque<Person> stack = new ArrayDeque<>();
-		stack.add(parent1);
-		stack.add(parent2);
+	private List<Person> toOrderedList(Order order) {
+		return order.getKey() == Order.Key.AGE ? sortedList.toOrderedList(order)
+				: new ArrayList<>(sortIndexes.ordered(order));
+	}
+
+	/**
+	 * Builds the index of a composite order when it's asked for the first time.
+	 * Performance: O(1) if the index is built already, O(N log N) otherwise
+	 */
+	private void ensureIndexed(Order order) {
+		if (order.getKey() != Order.Key.AGE && !sortIndexes.isIndexed(order)) {
+			long stamp = writeLock();
+			try {
+				sortIndexes.index(order, nameToPerson.values());
+			} finally {
+				unlockWrite(stamp);
+			}
+		}
+	}
 
-		Set<Person> visited = new HashSet<>();
+	private Person find(String name) {
+		return name == null ? null : nameToPerson.get(name);
+	}
 
-		while (!stack.isEmpty()) {
-			Person person = stack.pollFirst();
+	/**
+	 * Creates a person node, registers it and links it with its relatives.
+	 * Performance: O(log N + number of relatives) if the person has no children,
+	 * O(number of ancestors + number of descendants) otherwise; see AncestorIndex#add.
+	 */
+	private Person link(String name, Integer age, String parent1Name, String parent2Name, List<String> childNames) {
+		Person parent1 = find(parent1Name);
+		Person parent2 = find(parent2Name);
 
-			if (visited.contains(person)) {
-				return true;
-			}
-			if (person.getParent1() != null) {
-				stack.addFirst(person.getParent1());
-			}
-			if (person.getParent2() != null) {
-				stack.addFirst(person.getParent2());
+		List<Person> children = null;
+		if (childNames != null && !childNames.isEmpty()) {
+			children = childNames.stream()
+					.map(this::find)
+					.collect(Collectors.toList());
+		}
+
+		Person person = new Person.Builder(name, age)
+				.parent1(parent1)
+				.parent2(parent2)
+				.children(children)
+				.build();
+
+		// add to the sorted list
+		sortedListNodes.put(person, sortedList.add(age, person));
+
+		if (parent1 != null) {
+			parent1.addChild(person);
+		}
+		if (parent2 != null) {
+			parent2.addChild(person);
+		}
+
+		if (children != null) {
+			for (Person child : children) {
+				if (child.getParent1() == null) {
+					child.setParent1(person);
+				} else {
+					child.setParent2(person);
+				}
 			}
+		}
 
-			visited.add(person);
+		ancestorIndex.add(person);
+		sortIndexes.add(person);
+
+		// update name mapping; it's done last, so lock-free lookups see the person fully linked
+		nameToPerson.put(name, person);
+		nameIndex.put(name, person);
+		version++;
+		return person;
+	}
+
+	/**
+	 * Unlinks a person from its relatives and removes it from the indexes, except for the name mapping;
+	 * the reverse of link(). The person itself keeps its fields, so readers holding it still see it consistent.
+	 * Performance: O(log maxAge + number of relatives), and O(number of descendants) if the person has children;
+	 * see AncestorIndex#remove.
+	 */
+	private void unlink(Person person) {
+		ancestorIndex.remove(person);
+		sortedList.remove(person.getAge(), sortedListNodes.remove(person));
+		if (person.getParent1() != null) {
+			person.getParent1().removeChild(person);
+		}
+		if (person.getParent2() != null) {
+			person.getParent2().removeChild(person);
+		}
+		for (Person child : person.getChildren()) {
+			child.removeParent(person);
 		}
-		return false;
+		sortIndexes.remove(person, person.getChildren());
+		version++;
 	}
 
 	/**
-	 * Check for a cycle when adding a parent node.
-	 * The implementation is based on the Depth-First Search (DFS) algorithm.
-	 * Performance: O(N); this is because of the DFS algorithm complexity.
+	 * Moves a person to another age; its relatives don't change, so only the age ordered indexes are updated.
+	 * Performance: O(log maxAge) + O(log N) per composite order index built
 	 */
-	private boolean isCycleDownwards(List<Person> children) {
-		Deque<Person> stack = new ArrayDeque<>();
-		for (Person child : children) {
-			stack.add(child);
+	private void changeAge(Person person, int age) {
+		sortIndexes.remove(person, Collections.emptyList());
+		sortedList.remove(person.getAge(), sortedListNodes.get(person));
+		person.setAge(age);
+		sortedListNodes.put(person, sortedList.add(age, person));
+		sortIndexes.add(person);
+		version++;
+	}
+
+	/**
+	 * This function applies a person record of a primary's write-ahead log to a read replica's tree
+	 * (see ReplicationService): the person is added with the relatives it was added with on the primary.
+	 * The primary has validated it, and the replica takes no other writes, so it's only linked under the write lock
+	 * and not persisted.
+	 * Performance: amortized O(1 + number of relatives)
+	 */
+	public void applyPerson(String name, Integer age, String parent1Name, String parent2Name, List<String> childNames) {
+		long stamp = writeLock();
+		try {
+			restorePerson(name, age, parent1Name, parent2Name, childNames);
+		} finally {
+			unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * This function applies a deleted person record of a primary's write-ahead log to a read replica's tree.
+	 * Performance: O(log maxAge + number of relatives)
+	 */
+	public void applyDeletion(String name) {
+		long stamp = writeLock();
+		try {
+			restoreDeletion(name);
+		} finally {
+			unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Adds a replayed person to the tree. It has been validated before it was persisted,
+	 * so only the relatives are checked to exist, which keeps the recovery linear.
+	 * Performance: amortized O(1 + number of relatives)
+	 */
+	private void restorePerson(String name, Integer age, String parent1Name, String parent2Name, List<String> childNames) {
+		List<String> relativeNames = new ArrayList<>(childNames == null ? Collections.emptyList() : childNames);
+		relativeNames.add(parent1Name);
+		relativeNames.add(parent2Name);
+		for (String relativeName : relativeNames) {
+			if (relativeName != null && !nameToPerson.containsKey(relativeName)) {
+				throw new IllegalStateException("Replayed person " + name + " refers to unknown person " + relativeName);
+			}
+		}
+		if (nameToPerson.containsKey(name)) {
+			throw new IllegalStateException("Replayed person " + name + " is already defined");
+		}
+		List<ComponentLocks.Component> lockedComponents = components.lock(relativeNames);
+		components.join(name, relativeNames, lockedComponents);
+		components.unlock(lockedComponents);
+
+		link(name, age, parent1Name, parent2Name, childNames);
+	}
+
+	/**
+	 * Adds the persons of a replayed snapshot (see writeSnapshot()) to the empty tree. They're added from the oldest
+	 * to the youngest, so the parents of a person are there before it, and within an age in the order of the snapshot's
+	 * bucket, which puts them back into their sorted list order. The children are linked to their parents in the order
+	 * they're added then, so the children lists are put back into the order of the snapshot afterwards.
+	 * Performance: amortized O(N + number of relatives), and the indexing of the persons; see link()
+	 */
+	private void restoreSnapshot(FamilyGraph graph) {
+		for (int age = graph.maxAge(); age >= 0; age--) {
+			for (int id = graph.firstInBucket(age); id >= 0; id = graph.nextInBucket(id)) {
+				restorePerson(graph.name(id), age, name(graph, graph.parent1(id)), name(graph, graph.parent2(id)), null);
+			}
 		}
+		for (int id = 0; id < graph.size(); id++) {
+			int childCount = graph.childCount(id);
+			if (childCount > 1) {
+				List<Person> children = new ArrayList<>(childCount);
+				for (int i = 0; i < childCount; i++) {
+					children.add(nameToPerson.get(graph.name(graph.child(id, i))));
+				}
+				nameToPerson.get(graph.name(id)).setChildren(children);
+			}
+		}
+	}
 
-		Set<Person> visited = new HashSet<>();
+	private static String name(FamilyGraph graph, int id) {
+		return id < 0 ? null : graph.name(id);
+	}
+
+	/**
+	 * Deletes a replayed person from the tree.
+	 * Performance: O(log maxAge + number of relatives)
+	 */
+	private void restoreDeletion(String name) {
+		Person person = nameToPerson.remove(name);
+		if (person == null) {
+			throw new IllegalStateException("Replayed deletion refers to unknown person " + name);
+		}
+		nameIndex.remove(name);
+		unlink(person);
+		components.remove(name);
+	}
 
-		while (!stack.isEmpty()) {
-			Person person = stack.pollFirst();
+	/**
+	 * Sorts the batch records topologically (Kahn's algorithm), so that parents come before their children.
+	 * Records that are part of a cycle, or descend from one, are rejected.
+	 * Performance: O(n + number of relations)
+	 */
+	private int[] sortTopologically(List<PersonForm> records, List<List<String>> parentNames,
+									Map<String, Integer> batchIndex, Map<Integer, String> rejections) {
+		int size = records.size();
+		// the batch children of each record, as singly linked lists of edges
+		int[] firstEdge = new int[size];
+		Arrays.fill(firstEdge, -1);
+		int[] edgeChild = new int[16];
+		int[] edgeNext = new int[16];
+		int edges = 0;
+		int[] pendingParents = new int[size];
+		// edges are prepended, so records are visited backwards to keep the children in the batch order
+		for (int i = size - 1; i >= 0; i--) {
+			if (rejections.containsKey(i)) {
+				continue;
+			}
+			for (String parentName : parentNames.get(i)) {
+				Integer parent = batchIndex.get(parentName);
+				if (parent == null || parent == i) {
+					continue;
+				}
+				if (edges == edgeChild.length) {
+					edgeChild = Arrays.copyOf(edgeChild, edges * 2);
+					edgeNext = Arrays.copyOf(edgeNext, edges * 2);
+				}
+				edgeChild[edges] = i;
+				edgeNext[edges] = firstEdge[parent];
+				firstEdge[parent] = edges++;
+				pendingParents[i]++;
+			}
+		}
 
-			if (visited.contains(person)) {
-				return true;
+		int[] order = new int[size];
+		int head = 0;
+		int tail = 0;
+		for (int i = 0; i < size; i++) {
+			if (!rejections.containsKey(i) && pendingParents[i] == 0) {
+				order[tail++] = i;
 			}
-			for (Person child : person.getChildren()) {
-				stack.addFirst(child);
+		}
+		while (head < tail) {
+			int parent = order[head++];
+			for (int edge = firstEdge[parent]; edge != -1; edge = edgeNext[edge]) {
+				if (--pendingParents[edgeChild[edge]] == 0) {
+					order[tail++] = edgeChild[edge];
+				}
 			}
+		}
 
-			visited.add(person);
+		for (int i = 0; i < size; i++) {
+			if (!rejections.containsKey(i) && pendingParents[i] > 0) {
+				rejections.put(i, "Cycle detected among the records of " + records.get(i).getName() + "'s ancestors");
+			}
 		}
-		return false;
+		return Arrays.copyOf(order, tail);
 	}
 
-	private void validate(String name, Integer age, String parent1Name, String parent2Name, List<String> childNames) {
-		// name & age
-		if (nameToPerson.containsKey(name)) {
+	/**
+	 * Calls the persistence layer for a newly linked person and its relatives.
+	 */
+	private void persist(Person person) {
+		metrics.dbSave.record(() -> dbService.savePerson(person));
+		if (person.getParent1() != null) {
+			metrics.dbUpdate.record(() -> dbService.updatePerson(person.getParent1()));
+		}
+		if (person.getParent2() != null) {
+			metrics.dbUpdate.record(() -> dbService.updatePerson(person.getParent2()));
+		}
+		for (Person child : person.getChildren()) {
+			metrics.dbUpdate.record(() -> dbService.updatePerson(child));
+		}
+	}
+
+	/**
+	 * Calls the persistence layer for a deleted person and its former relatives.
+	 */
+	private void persistDeletion(Person person, List<Person> relatives) {
+		metrics.dbDelete.record(() -> dbService.deletePerson(person));
+		for (Person relative : relatives) {
+			metrics.dbUpdate.record(() -> dbService.updatePerson(relative));
+		}
+	}
+
+	/**
+	 * Calls the persistence layer for a changed person, which is deleted and saved again, and for its former
+	 * and new relatives.
+	 */
+	private void persistUpdate(Person former, Person person, List<Person> relatives) {
+		metrics.dbDelete.record(() -> dbService.deletePerson(former));
+		metrics.dbSave.record(() -> dbService.savePerson(person));
+		for (Person relative : new LinkedHashSet<>(relatives)) {
+			metrics.dbUpdate.record(() -> dbService.updatePerson(relative));
+		}
+	}
+
+	/**
+	 * Takes the write lock, recording the time spent waiting for it.
+	 */
+	private long writeLock() {
+		long start = System.nanoTime();
+		long stamp = lock.writeLock();
+		writeLockedAt = System.nanoTime();
+		metrics.writeLockWait.record(writeLockedAt - start, TimeUnit.NANOSECONDS);
+		return stamp;
+	}
+
+	/**
+	 * Releases the write lock, recording the time it has been held for.
+	 */
+	private void unlockWrite(long stamp) {
+		long held = System.nanoTime() - writeLockedAt;
+		lock.unlockWrite(stamp);
+		metrics.writeLockHold.record(held, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Check for a cycle when adding a child node: the parents cannot have a common ancestor,
+	 * nor can one of them be an ancestor of the other one.
+	 * Performance: O(log N) for parents sharing parts of their sets of ancestors, O(number of ancestors / 64)
+	 * in the worst case; see AncestorIndex#haveCommonAncestor.
+	 */
+	private boolean isCycleUpwards(Person parent1, Person parent2) {
+		return ancestorIndex.haveCommonAncestor(parent1, parent2);
+	}
+
+	/**
+	 * Check for a cycle when adding a parent node: the children cannot have a common descendant,
+	 * nor can one of them be a descendant of another one.
+	 * Performance: O(number of children * number of descendants of all the children but the biggest family);
+	 * see AncestorIndex#haveCommonDescendant.
+	 */
+	private boolean isCycleDownwards(List<Person> children) {
+		return ancestorIndex.haveCommonDescendant(children);
+	}
+
+	/**
+	 * Runs a validation, recording the time it takes and the rejections.
+	 */
+	private void validateTimed(Runnable validation) {
+		long start = System.nanoTime();
+		try {
+			validation.run();
+		} catch (IllegalArgumentException e) {
+			metrics.rejected.increment();
+			throw e;
+		} finally {
+			metrics.validation.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Validates a new person; the relatives are looked up with a given resolver.
+	 */
+	private void validate(String name, Integer age, String parent1Name, String parent2Name, List<String> childNames,
+						  Function<String, Person> resolver) {
+		// name
+		if (find(name) != null) {
 			throw new IllegalArgumentException("Name " + name + " is already defined");
 		}
+		validateRelatives(null, age, parent1Name, parent2Name, childNames, resolver);
+	}
 
+	/**
+	 * Validates new attributes of an existing person like validate() does for a new one;
+	 * the person can't be its own relative.
+	 */
+	private void validateUpdate(Person person, Integer age, String parent1Name, String parent2Name,
+								List<String> childNames, Function<String, Person> resolver) {
+		validateTimed(() -> {
+			String name = person.getName();
+			if (name.equals(parent1Name) || name.equals(parent2Name) || childNames.contains(name)) {
+				throw new IllegalArgumentException("Person " + name + " cannot be its own relative");
+			}
+			validateRelatives(person, age, parent1Name, parent2Name, childNames, resolver);
+		});
+	}
+
+	/**
+	 * Validates the age and the relatives of a new person (null), or of an existing one being changed,
+	 * which may already be a parent of the given children.
+	 */
+	private void validateRelatives(Person person, Integer age, String parent1Name, String parent2Name,
+								   List<String> childNames, Function<String, Person> resolver) {
+		// age
 		if (age == null || age < 0 || age > maxAge) {
 			throw new IllegalArgumentException("Age must be within the range [0, " + maxAge + "]");
 		}
 
 		// parents
 		if (parent1Name != null) {
-			validateParent(parent1Name, age);
+			validateParent(parent1Name, age, resolver);
 		}
 
 		if (parent2Name != null) {
-			validateParent(parent2Name, age);
+			validateParent(parent2Name, age, resolver);
 		}
 
 		// check whether adding a node introduces a cycle
 		if (parent1Name != null
 				&& parent2Name != null
-				&& isCycleUpwards(nameToPerson.get(parent1Name), nameToPerson.get(parent2Name))) {
+				&& isCycleUpwards(resolver.apply(parent1Name), resolver.apply(parent2Name))) {
 			throw new IllegalArgumentException("Cycle detected when adding a child node");
 		}
 
 		// children
 		if (childNames != null) {
 			for (String childName : childNames) {
-				validateChild(childName, age);
+				validateChild(childName, age, person, resolver);
 			}
 
 			List<Person> children = childNames.stream()
-					.map(c -> nameToPerson.get(c))
+					.map(resolver)
 					.collect(Collectors.toList());
 
 			if (isCycleDownwards(children)) {
@@ -341,8 +1473,8 @@ public class FamilyTree {
 		}
 	}
 
-	private void validateParent(String parentName, int age) {
-		Person parent = nameToPerson.get(parentName);
+	private void validateParent(String parentName, int age, Function<String, Person> resolver) {
+		Person parent = resolver.apply(parentName);
 		if (parent == null) {
 			throw new IllegalArgumentException("Name " + parentName + " doesn't exist");
 		}
@@ -351,15 +1483,16 @@ public class FamilyTree {
 		}
 	}
 
-	private void validateChild(String childName, int age) {
-		Person child = nameToPerson.get(childName);
+	private void validateChild(String childName, int age, Person person, Function<String, Person> resolver) {
+		Person child = resolver.apply(childName);
 		if (child == null) {
 			throw new IllegalArgumentException("Name " + childName + " doesn't exist");
 		}
 		if (age <= child.getAge()) {
 			throw new IllegalArgumentException("Given age cannot be less than or equal to a child age");
 		}
-		if (child.getParent1() != null && child.getParent2() != null) {
+		if (child.getParent1() != null && child.getParent2() != null
+				&& child.getParent1() != person && child.getParent2() != person) {
 			throw new IllegalArgumentException("Person " + childName + " already has both parents");
 		}
 	}
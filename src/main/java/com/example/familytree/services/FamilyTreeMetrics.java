@@ -0,0 +1,89 @@
+package com.example.familytree.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Meters of the family tree service, published by Spring Boot Actuator (/actuator/metrics/familytree.*).
+ * They're registered once, so the hot path only records values.
+ */
+class FamilyTreeMetrics {
+	final Timer componentLockWait;
+	final Timer writeLockWait;
+	final Timer writeLockHold;
+	final Counter optimisticReadRetries;
+	final Timer validation;
+	final DistributionSummary cycleCheckVisited;
+	final Counter added;
+	final Counter updated;
+	final Counter deleted;
+	final Counter rejected;
+	final Timer dbSave;
+	final Timer dbUpdate;
+	final Timer dbDelete;
+	final Timer dbAwait;
+	final DistributionSummary ancestorsVisited;
+	final DistributionSummary descendantsVisited;
+
+	FamilyTreeMetrics(MeterRegistry registry) {
+		this.componentLockWait = Timer.builder("familytree.lock.wait")
+				.description("Time spent waiting for the family component locks")
+				.tag("lock", "component")
+				.register(registry);
+		this.writeLockWait = Timer.builder("familytree.lock.wait")
+				.description("Time spent waiting for the write lock")
+				.tag("lock", "write")
+				.register(registry);
+		this.writeLockHold = Timer.builder("familytree.lock.hold")
+				.description("Time the write lock is held for")
+				.tag("lock", "write")
+				.register(registry);
+		this.optimisticReadRetries = Counter.builder("familytree.lock.optimistic.retries")
+				.description("Optimistic reads run again under the read lock")
+				.register(registry);
+		this.validation = Timer.builder("familytree.validation")
+				.description("Time spent validating a new person, including the cycle checks")
+				.register(registry);
+		this.cycleCheckVisited = DistributionSummary.builder("familytree.cycleCheck.visited")
+				.description("Persons visited by a cycle check; 0 for the parents' check, answered by the ancestor index")
+				.baseUnit("persons")
+				.register(registry);
+		this.added = Counter.builder("familytree.persons.added")
+				.register(registry);
+		this.updated = Counter.builder("familytree.persons.updated")
+				.register(registry);
+		this.deleted = Counter.builder("familytree.persons.deleted")
+				.register(registry);
+		this.rejected = Counter.builder("familytree.persons.rejected")
+				.description("Persons rejected by the validation")
+				.register(registry);
+		this.dbSave = Timer.builder("familytree.db.latency")
+				.description("Time spent in the persistence layer")
+				.tag("operation", "save")
+				.register(registry);
+		this.dbUpdate = Timer.builder("familytree.db.latency")
+				.description("Time spent in the persistence layer")
+				.tag("operation", "update")
+				.register(registry);
+		this.dbDelete = Timer.builder("familytree.db.latency")
+				.description("Time spent in the persistence layer")
+				.tag("operation", "delete")
+				.register(registry);
+		this.dbAwait = Timer.builder("familytree.db.latency")
+				.description("Time spent in the persistence layer")
+				.tag("operation", "await")
+				.register(registry);
+		this.ancestorsVisited = DistributionSummary.builder("familytree.traversal.size")
+				.description("Persons visited by a traversal")
+				.baseUnit("persons")
+				.tag("direction", "ancestors")
+				.register(registry);
+		this.descendantsVisited = DistributionSummary.builder("familytree.traversal.size")
+				.description("Persons visited by a traversal")
+				.baseUnit("persons")
+				.tag("direction", "descendants")
+				.register(registry);
+	}
+}
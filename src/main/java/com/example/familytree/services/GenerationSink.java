@@ -0,0 +1,15 @@
+package com.example.familytree.services;
+
+import com.example.familytree.entities.Person;
+
+/**
+ * Receives the persons visited by a traversal, generation by generation; the person the traversal starts from
+ * is the generation 0, its parents (or children) the generation 1, and so on.
+ */
+@FunctionalInterface
+public interface GenerationSink {
+	/**
+	 * Returns whether the traversal should go on.
+	 */
+	boolean accept(int generation, Person person);
+}
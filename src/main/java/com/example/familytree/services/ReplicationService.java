@@ -0,0 +1,127 @@
+package com.example.familytree.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a read replica's family tree up to date with a primary's write-ahead log; it's enabled with
+ * familyTree.replica.enabled=true. The primary runs with the log (familyTree.db.wal.enabled=true), and the replica
+ * tails the log's directory (familyTree.replica.walDirectory), which the primary shares with it,
+ * every familyTree.replica.pollMillis, applying the new records to the tree incrementally; the replica
+ * rejects writes (see ReplicaConfig). The replication lag is exposed as metrics:
+ * familytree.replica.sequence is the number of applied records, which the primary's familytree.wal.sequence
+ * is compared with, familytree.replica.lag.bytes is the log left unread by the last poll, and
+ * familytree.replica.lag.millis is the time since the replica last caught up with the log, so it stays
+ * within the poll interval while the replica keeps up.
+ */
+@Service
+@ConditionalOnProperty("familyTree.replica.enabled")
+public class ReplicationService {
+	private static final Logger log = LoggerFactory.getLogger(ReplicationService.class);
+
+	private final FamilyTree familyTree;
+	private final WriteAheadLogTailer tailer;
+	private final long pollMillis;
+	private final ScheduledExecutorService scheduler;
+
+	/**
+	 * Time of the last poll that left nothing unread.
+	 */
+	private volatile long caughtUpAt;
+	private volatile long sequence;
+	private volatile long lagBytes;
+
+	@Autowired
+	public ReplicationService(FamilyTree familyTree,
+							  @Value("${familyTree.replica.walDirectory}") String walDirectory,
+							  @Value("${familyTree.replica.pollMillis}") long pollMillis,
+							  @Value("${familyTree.db.wal.enabled}") boolean walEnabled,
+							  MeterRegistry meterRegistry) {
+		if (walEnabled) {
+			throw new IllegalStateException("A read replica cannot write a write-ahead log of its own");
+		}
+		this.familyTree = familyTree;
+		this.tailer = new WriteAheadLogTailer(Paths.get(walDirectory));
+		this.pollMillis = pollMillis;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "replication");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.caughtUpAt = System.currentTimeMillis();
+		meterRegistry.gauge("familytree.replica.sequence", this, service -> service.sequence);
+		meterRegistry.gauge("familytree.replica.lag.bytes", this, service -> service.lagBytes);
+		meterRegistry.gauge("familytree.replica.lag.millis", this, ReplicationService::getLagMillis);
+	}
+
+	@PostConstruct
+	public void start() {
+		scheduler.scheduleWithFixedDelay(this::poll, 0, pollMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() throws IOException {
+		scheduler.shutdownNow();
+		try {
+			scheduler.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		tailer.close();
+	}
+
+	/**
+	 * Returns the number of the primary's log records applied so far.
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Returns the time since the replica last caught up with the primary's log.
+	 */
+	public long getLagMillis() {
+		return System.currentTimeMillis() - caughtUpAt;
+	}
+
+	/**
+	 * Applies the records written since the last poll; a record that fails is logged and retried by the next poll.
+	 */
+	void poll() {
+		try {
+			tailer.poll(new DBService.PersonRecordHandler() {
+				@Override
+				public void addPerson(String name, Integer age, String parent1Name, String parent2Name,
+									  List<String> childNames) {
+					familyTree.applyPerson(name, age, parent1Name, parent2Name, childNames);
+				}
+
+				@Override
+				public void deletePerson(String name) {
+					familyTree.applyDeletion(name);
+				}
+			});
+			lagBytes = tailer.getLagBytes();
+			if (lagBytes == 0) {
+				caughtUpAt = System.currentTimeMillis();
+			}
+		} catch (IOException | RuntimeException e) {
+			log.error("Failed to apply the write-ahead log record {}", tailer.getSequence() + 1, e);
+		}
+		sequence = tailer.getSequence();
+	}
+}
@@ -0,0 +1,83 @@
+package com.example.familytree.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes snapshots of the family tree to the write-ahead log every familyTree.db.wal.snapshotIntervalMillis,
+ * and once more on shutdown, so that a restart restores the family from the latest snapshot and replays
+ * the records logged after it only (see WriteAheadLogDBService#writeSnapshot). It's enabled with the log
+ * (familyTree.db.wal.enabled=true) and a positive interval; a snapshot isn't written if the family hasn't changed.
+ */
+@Service
+@ConditionalOnExpression("${familyTree.db.wal.enabled} && ${familyTree.db.wal.snapshotIntervalMillis} > 0")
+public class SnapshotService {
+	private static final Logger log = LoggerFactory.getLogger(SnapshotService.class);
+
+	private final FamilyTree familyTree;
+	private final long intervalMillis;
+	private final ScheduledExecutorService scheduler;
+
+	/**
+	 * The family version of the last snapshot; -1 before the first one.
+	 */
+	private long snapshotVersion;
+
+	@Autowired
+	public SnapshotService(FamilyTree familyTree,
+						   @Value("${familyTree.db.wal.snapshotIntervalMillis}") long intervalMillis) {
+		this.familyTree = familyTree;
+		this.intervalMillis = intervalMillis;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "snapshot");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.snapshotVersion = -1;
+	}
+
+	@PostConstruct
+	public void start() {
+		scheduler.scheduleWithFixedDelay(this::writeSnapshot, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		scheduler.shutdownNow();
+		try {
+			scheduler.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		writeSnapshot();
+	}
+
+	/**
+	 * Writes a snapshot if the family has changed since the last one; a failed snapshot is logged,
+	 * and the next one is tried by the next run.
+	 */
+	synchronized void writeSnapshot() {
+		long version = familyTree.getVersion();
+		if (version == snapshotVersion) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		try {
+			familyTree.writeSnapshot();
+			snapshotVersion = version;
+			log.info("Wrote a snapshot of the family tree in {} ms", System.currentTimeMillis() - start);
+		} catch (RuntimeException e) {
+			log.error("Failed to write a snapshot of the family tree", e);
+		}
+	}
+}
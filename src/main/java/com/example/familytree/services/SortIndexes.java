@@ -0,0 +1,280 @@
+package com.example.familytree.services;
+
+import com.example.familytree.entities.Person;
+import com.example.familytree.enums.Order;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Indexes of the composite orders (see Order), maintained as persons are linked, so that the family is returned
+ * in any of the orders pre-sorted, without sorting it per request.
+ * An index is built when its order is asked for the first time, so families that are never listed in a composite
+ * order don't pay for the indexes when persons are added.
+ * Every order is a concurrent skip list of immutable sort keys, so readers iterate it without a lock; like the
+ * SortedList iterators, they're weakly consistent and may miss the persons added in the meantime.
+ * The indexes are built and updated under the family tree's write lock.
+ * The generation depth of a person is the length of its longest line of ancestors (0 for a person without parents).
+ * It may grow when a person gets a parent with a longer line of ancestors, and so may the depths of the person's
+ * descendants; such persons are moved within the AGE_GENERATION index. Likewise, the depths may shrink
+ * when a person is removed.
+ */
+class SortIndexes {
+	private static final Comparator<SortKey> AGE_NAME = Comparator.<SortKey>comparingInt(key -> key.age)
+			.thenComparing(key -> key.name);
+	private static final Comparator<SortKey> AGE_GENERATION = Comparator.<SortKey>comparingInt(key -> key.age)
+			.thenComparingInt(key -> key.generation)
+			.thenComparing(key -> key.name);
+	private static final Comparator<SortKey> NAME = Comparator.comparing(key -> key.name);
+
+	/**
+	 * The indexes built so far, in the ascending direction.
+	 */
+	private final Map<Order.Key, NavigableMap<SortKey, Person>> indexes = new ConcurrentHashMap<>();
+
+	/**
+	 * Generation depths of the persons; they're tracked once the AGE_GENERATION index is built.
+	 */
+	private final Map<Person, Integer> generations = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns whether the index of a given composite order has been built.
+	 * Performance: O(1)
+	 */
+	boolean isIndexed(Order order) {
+		return indexes.containsKey(order.getKey());
+	}
+
+	/**
+	 * Builds the index of a given composite order out of all of the persons, unless it's built already.
+	 * Performance: O(N log N)
+	 */
+	void index(Order order, Collection<Person> persons) {
+		Order.Key key = order.getKey();
+		if (key == Order.Key.AGE || indexes.containsKey(key)) {
+			return;
+		}
+		NavigableMap<SortKey, Person> index;
+		if (key == Order.Key.AGE_GENERATION) {
+			index = new ConcurrentSkipListMap<>(AGE_GENERATION);
+			computeGenerations(persons);
+		} else {
+			index = new ConcurrentSkipListMap<>(key == Order.Key.AGE_NAME ? AGE_NAME : NAME);
+		}
+		for (Person person : persons) {
+			index.put(key(person), person);
+		}
+		// it's published once it's complete
+		indexes.put(key, index);
+	}
+
+	/**
+	 * Indexes a person that has just been linked with its parents and children.
+	 * Performance: O(log N) per index built + O(log N) per descendant whose generation depth grows
+	 */
+	void add(Person person) {
+		if (indexes.isEmpty()) {
+			return;
+		}
+		NavigableMap<SortKey, Person> byAgeGeneration = indexes.get(Order.Key.AGE_GENERATION);
+		if (byAgeGeneration != null) {
+			generations.put(person, generationOf(person));
+		}
+		SortKey key = key(person);
+		for (NavigableMap<SortKey, Person> index : indexes.values()) {
+			index.put(key, person);
+		}
+		if (byAgeGeneration != null) {
+			// the children may have got a longer line of ancestors
+			updateGenerations(person.getChildren(), byAgeGeneration);
+		}
+	}
+
+	/**
+	 * Removes a person that has just been unlinked from its relatives; its former children are given,
+	 * as their generation depths may shrink.
+	 * Performance: O(log N) per index built + O(log N) per descendant whose generation depth shrinks
+	 */
+	void remove(Person person, Collection<Person> formerChildren) {
+		if (indexes.isEmpty()) {
+			return;
+		}
+		SortKey key = key(person);
+		for (NavigableMap<SortKey, Person> index : indexes.values()) {
+			index.remove(key);
+		}
+		NavigableMap<SortKey, Person> byAgeGeneration = indexes.get(Order.Key.AGE_GENERATION);
+		if (byAgeGeneration != null) {
+			generations.remove(person);
+			updateGenerations(formerChildren, byAgeGeneration);
+		}
+	}
+
+	/**
+	 * Returns the persons in a given composite order.
+	 * Performance: O(1) to create a view, O(N) to iterate it
+	 */
+	Collection<Person> ordered(Order order) {
+		NavigableMap<SortKey, Person> index = index(order);
+		return (order.isDescending() ? index.descendingMap() : index).values();
+	}
+
+	/**
+	 * Returns an iterator over the persons of an age range (both ends inclusive) in a given composite order,
+	 * starting right after a given person or after a given age, if any.
+	 * The age ordered indexes are narrowed down to the range; the NAME order filters the persons by age instead,
+	 * so it visits all of the persons following the starting one, and it can resume after a person only.
+	 * Performance: O(log N) to create
+	 */
+	Iterator<Person> iterator(Order order, int fromAge, int toAge, Person after, Integer afterAge) {
+		if (order.getKey() == Order.Key.NAME) {
+			if (after == null && afterAge != null) {
+				throw new IllegalArgumentException("Order " + order + " can't resume after an age");
+			}
+			NavigableMap<SortKey, Person> index = index(order);
+			if (order.isDescending()) {
+				index = index.descendingMap();
+			}
+			if (after != null) {
+				index = index.tailMap(key(after), false);
+			}
+			return index.values().stream()
+					.filter(person -> person.getAge() >= fromAge && person.getAge() <= toAge)
+					.iterator();
+		}
+
+		if (after != null) {
+			if (after.getAge() >= fromAge && after.getAge() <= toAge) {
+				afterAge = null;
+			} else {
+				// all of the persons of the range precede or follow the person
+				afterAge = after.getAge();
+				after = null;
+			}
+		}
+		int from = fromAge;
+		int to = toAge;
+		if (afterAge != null) {
+			if (order.isDescending()) {
+				to = Math.min(to, afterAge - 1);
+			} else {
+				from = Math.max(from, afterAge + 1);
+			}
+		}
+		if (from > to) {
+			return Collections.emptyIterator();
+		}
+		NavigableMap<SortKey, Person> index = index(order).subMap(SortKey.first(from), true, SortKey.first(to + 1), false);
+		if (order.isDescending()) {
+			index = index.descendingMap();
+		}
+		if (after != null) {
+			index = index.tailMap(key(after), false);
+		}
+		return index.values().iterator();
+	}
+
+	/**
+	 * Returns the index of a given composite order, in the ascending direction.
+	 */
+	private NavigableMap<SortKey, Person> index(Order order) {
+		NavigableMap<SortKey, Person> index = indexes.get(order.getKey());
+		if (index == null) {
+			throw new IllegalStateException("Order " + order + " isn't indexed");
+		}
+		return index;
+	}
+
+	private SortKey key(Person person) {
+		Integer generation = generations.get(person);
+		return new SortKey(person.getAge(), generation == null ? 0 : generation, person.getName());
+	}
+
+	/**
+	 * Computes the generation depths of given persons, visiting the parents of a person first.
+	 * Performance: O(N)
+	 */
+	private void computeGenerations(Collection<Person> persons) {
+		Deque<Person> stack = new ArrayDeque<>();
+		for (Person person : persons) {
+			stack.push(person);
+			while (!stack.isEmpty()) {
+				Person top = stack.peek();
+				if (generations.containsKey(top)) {
+					stack.pop();
+					continue;
+				}
+				boolean ready = true;
+				for (Person parent : new Person[]{top.getParent1(), top.getParent2()}) {
+					if (parent != null && !generations.containsKey(parent)) {
+						stack.push(parent);
+						ready = false;
+					}
+				}
+				if (ready) {
+					generations.put(top, generationOf(top));
+					stack.pop();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Recomputes the generation depths of given persons, moving the ones whose depths have changed
+	 * within the AGE_GENERATION index, and then the depths of their children, and so on.
+	 */
+	private void updateGenerations(Collection<Person> persons, NavigableMap<SortKey, Person> byAgeGeneration) {
+		Deque<Person> stack = new ArrayDeque<>(persons);
+		while (!stack.isEmpty()) {
+			Person descendant = stack.pollFirst();
+			int generation = generationOf(descendant);
+			if (generation != generations.get(descendant)) {
+				byAgeGeneration.remove(key(descendant));
+				generations.put(descendant, generation);
+				byAgeGeneration.put(key(descendant), descendant);
+				stack.addAll(descendant.getChildren());
+			}
+		}
+	}
+
+	private int generationOf(Person person) {
+		int generation = 0;
+		if (person.getParent1() != null) {
+			generation = generations.get(person.getParent1()) + 1;
+		}
+		if (person.getParent2() != null) {
+			generation = Math.max(generation, generations.get(person.getParent2()) + 1);
+		}
+		return generation;
+	}
+
+	/**
+	 * An immutable sort key; each index compares the attributes of its order only.
+	 */
+	private static class SortKey {
+		final int age;
+		final int generation;
+		final String name;
+
+		SortKey(int age, int generation, String name) {
+			this.age = age;
+			this.generation = generation;
+			this.name = name;
+		}
+
+		/**
+		 * Returns a key that precedes the keys of all of the persons of a given age in the age ordered indexes.
+		 */
+		static SortKey first(int age) {
+			return new SortKey(age, -1, "");
+		}
+	}
+}
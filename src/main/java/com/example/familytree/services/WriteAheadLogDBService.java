@@ -0,0 +1,602 @@
+package com.example.familytree.services;
+
+import com.example.familytree.collections.FamilyGraph;
+import com.example.familytree.collections.MappedFamilyGraph;
+import com.example.familytree.entities.Person;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * A database persistence layer service that appends every saved person to a write-ahead log.
+ * A saved person record holds the person's name, age and the names of the relatives it was added with,
+ * which is everything needed to redo the addPerson call. Updates of existing persons are always implied
+ * by a saved one (linking a new parent or child), so they aren't logged at all. A deleted person record
+ * holds the name only; a person whose age or relatives change is logged as deleted and saved again.
+ * The log is split into segment files (wal-00000000000000000000.log, ...); a new segment is started
+ * once the current one reaches the segment size.
+ * Writes are encoded into a memory buffer and become durable in awaitPersisted() with the group commit:
+ * the first waiting thread writes the buffer out and calls fsync once for all of the records appended so far,
+ * while the other threads wait for it and are acknowledged by the same fsync.
+ * On startup, replay() passes all of the logged records to a handler and truncates a torn record
+ * left at the end of the log by a crash.
+ * A snapshot of the family (see writeSnapshot()) is written at the start of a new segment and covers all of the
+ * former ones, so replay() passes the latest snapshot and the records of the segments after it only.
+ * The covered segments are kept, as read replicas tail the log from its first segment.
+ * Records are numbered from 1 in the order they're logged, across restarts, and they're written out to the segment
+ * files by the group commit only, so read replicas tail the files (see WriteAheadLogTailer) as a change stream.
+ */
+public class WriteAheadLogDBService implements DBService, AutoCloseable {
+	static final String SEGMENT_PREFIX = "wal-";
+	static final String SEGMENT_SUFFIX = ".log";
+	static final String SNAPSHOT_PREFIX = "snapshot-";
+	static final String SNAPSHOT_SUFFIX = ".bin";
+	static final int HEADER_SIZE = 8;
+	static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+	private static final byte SAVE_PERSON = 1;
+	private static final byte DELETE_PERSON = 2;
+
+	/**
+	 * A directory holding the segment files.
+	 */
+	private final Path directory;
+
+	/**
+	 * Size after which a new segment file is started.
+	 */
+	private final long segmentSize;
+
+	/**
+	 * The last appended record sequence number of the calling thread.
+	 */
+	private final ThreadLocal<long[]> callerSequence;
+
+	/**
+	 * Records appended but not written to the segment file yet.
+	 */
+	private ByteArrayOutputStream buffer;
+	private ByteArrayOutputStream spareBuffer;
+
+	private FileChannel segment;
+	private long segmentIndex;
+
+	private long appendedSequence;
+	private long syncedSequence;
+	private boolean syncing;
+	private boolean recovered;
+	private boolean closed;
+	private IOException failure;
+
+	public WriteAheadLogDBService(Path directory, long segmentSize) {
+		if (segmentSize < 1) {
+			throw new IllegalArgumentException("Segment size must be greater than 0");
+		}
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.callerSequence = ThreadLocal.withInitial(() -> new long[1]);
+		this.buffer = new ByteArrayOutputStream();
+		this.spareBuffer = new ByteArrayOutputStream();
+	}
+
+	/**
+	 * Appends a record of a new person.
+	 * Performance: O(1 + number of children)
+	 */
+	@Override
+	public void savePerson(Person person) {
+		append(encode(person));
+	}
+
+	/**
+	 * Updates are implied by the saved persons, so there is nothing to log.
+	 */
+	@Override
+	public void updatePerson(Person person) {
+	}
+
+	/**
+	 * Appends a record of a deleted person.
+	 * Performance: O(1)
+	 */
+	@Override
+	public void deletePerson(Person person) {
+		append(encodeDeletion(person));
+	}
+
+	private synchronized void append(byte[] record) {
+		checkOpen();
+		buffer.write(record, 0, record.length);
+		callerSequence.get()[0] = ++appendedSequence;
+	}
+
+	/**
+	 * Blocks until all of the records appended by the calling thread are written and synced to the disk.
+	 * Throws IllegalStateException if the log failed; a failed log doesn't accept any further writes.
+	 */
+	@Override
+	public void awaitPersisted() {
+		long sequence = callerSequence.get()[0];
+		while (true) {
+			ByteArrayOutputStream batch;
+			long batchSequence;
+			synchronized (this) {
+				while (syncedSequence < sequence && syncing && failure == null) {
+					await();
+				}
+				if (failure != null) {
+					throw new IllegalStateException("Write-ahead log failed", failure);
+				}
+				if (syncedSequence >= sequence) {
+					return;
+				}
+				// become the leader of the next group commit
+				syncing = true;
+				batch = buffer;
+				buffer = spareBuffer;
+				spareBuffer = batch;
+				batchSequence = appendedSequence;
+			}
+
+			IOException batchFailure = null;
+			try {
+				writeAndSync(batch);
+			} catch (IOException e) {
+				batchFailure = e;
+			}
+			batch.reset();
+
+			synchronized (this) {
+				syncing = false;
+				if (batchFailure != null) {
+					failure = batchFailure;
+				} else {
+					syncedSequence = batchSequence;
+				}
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Passes the latest snapshot, if there's one, and the persons and deletions logged after it to a given handler,
+	 * in the order they were logged. The snapshot is memory-mapped rather than read, so it's loaded by page faults
+	 * as the handler reads it.
+	 * A torn record at the end of the last segment (a crash in the middle of a write) is truncated,
+	 * and any other damaged record fails the recovery with an IllegalStateException.
+	 * It must be called before any writes, and only once.
+	 * Performance: O(size of the log after the snapshot), plus the handler's reading of the snapshot
+	 */
+	@Override
+	public synchronized void replay(PersonRecordHandler handler) {
+		if (recovered) {
+			throw new IllegalStateException("Write-ahead log has already been opened");
+		}
+		try {
+			recover(handler);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to recover the write-ahead log", e);
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the family, which must hold exactly the logged records, so the writers must be blocked.
+	 * The log is synced and a new segment is started first; the snapshot is named after the new segment's index
+	 * and the number of records it covers (snapshot-<segment index>-<sequence>.bin), and it's written through
+	 * a memory mapping (see MappedFamilyGraph). The former snapshots are deleted once the new one is in place.
+	 * Performance: O(N) where N is the number of persons
+	 */
+	@Override
+	public void writeSnapshot(FamilyGraph graph) {
+		checkOpen();
+		awaitAll();
+		long index;
+		long sequence;
+		synchronized (this) {
+			while (syncing && failure == null) {
+				await();
+			}
+			if (failure != null) {
+				throw new IllegalStateException("Write-ahead log failed", failure);
+			}
+			if (syncedSequence != appendedSequence) {
+				throw new IllegalStateException("Records were logged while a snapshot was being taken");
+			}
+			try {
+				if (segment.position() > 0) {
+					segment.close();
+					segment = openSegment(segmentIndex + 1);
+				}
+			} catch (IOException e) {
+				failure = e;
+				throw new IllegalStateException("Write-ahead log failed", e);
+			}
+			index = segmentIndex;
+			sequence = syncedSequence;
+		}
+
+		try {
+			List<Path> formerSnapshots = listSnapshots(directory);
+			Path path = snapshotPath(directory, index, sequence);
+			MappedFamilyGraph.writeSnapshot(graph, path);
+			syncDirectory();
+			for (Path formerSnapshot : formerSnapshots) {
+				if (!formerSnapshot.equals(path)) {
+					Files.deleteIfExists(formerSnapshot);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to write a snapshot", e);
+		}
+	}
+
+	/**
+	 * Syncs all of the appended records and closes the current segment.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+		}
+		if (failure == null) {
+			awaitAll();
+		}
+		synchronized (this) {
+			closed = true;
+			try {
+				if (segment != null) {
+					segment.close();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to close the write-ahead log", e);
+			}
+		}
+	}
+
+	/**
+	 * Returns the sequence number of the last synced record, i.e. the number of records in the log.
+	 * A replica that has applied as many records is up to date.
+	 * Performance: O(1)
+	 */
+	public synchronized long getSyncedSequence() {
+		return syncedSequence;
+	}
+
+	/**
+	 * Returns the number of segment files.
+	 */
+	public int segmentCount() {
+		try {
+			return listSegments().size();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void awaitAll() {
+		long[] sequence = callerSequence.get();
+		long ownSequence = sequence[0];
+		synchronized (this) {
+			sequence[0] = appendedSequence;
+		}
+		try {
+			awaitPersisted();
+		} finally {
+			sequence[0] = ownSequence;
+		}
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Write-ahead log is closed");
+		}
+		if (failure != null) {
+			throw new IllegalStateException("Write-ahead log failed", failure);
+		}
+		if (!recovered) {
+			// nothing to replay into, but the log still has to be checked and opened for appending
+			replay(null);
+		}
+	}
+
+	/**
+	 * Writes a batch to the current segment and syncs it; called by the group commit leader only.
+	 */
+	private void writeAndSync(ByteArrayOutputStream batch) throws IOException {
+		if (batch.size() == 0) {
+			return;
+		}
+		batch.writeTo(Channels.newOutputStream(segment));
+		segment.force(false);
+		if (segment.position() >= segmentSize) {
+			segment.close();
+			segment = openSegment(segmentIndex + 1);
+		}
+	}
+
+	private void recover(PersonRecordHandler handler) throws IOException {
+		Files.createDirectories(directory);
+		long firstIndex = 0;
+		List<Path> snapshots = listSnapshots(directory);
+		if (!snapshots.isEmpty()) {
+			Path snapshot = snapshots.get(snapshots.size() - 1);
+			long[] position = snapshotPosition(snapshot);
+			firstIndex = position[0];
+			appendedSequence = position[1];
+			if (handler != null) {
+				handler.restoreSnapshot(MappedFamilyGraph.open(snapshot));
+			}
+		}
+
+		List<Path> segments = new ArrayList<>();
+		for (Path path : listSegments()) {
+			if (segmentIndex(path) >= firstIndex) {
+				segments.add(path);
+			}
+		}
+		for (int i = 0; i < segments.size(); i++) {
+			Path path = segments.get(i);
+			long validLength = replaySegment(path, handler);
+			if (validLength < Files.size(path)) {
+				if (i < segments.size() - 1) {
+					throw new IllegalStateException("Write-ahead log segment " + path + " is corrupted");
+				}
+				try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+					channel.truncate(validLength);
+					channel.force(true);
+				}
+			}
+		}
+
+		long lastIndex = segments.isEmpty() ? firstIndex : segmentIndex(segments.get(segments.size() - 1));
+		segment = openSegment(lastIndex);
+		// the records are numbered on from the recovered ones
+		syncedSequence = appendedSequence;
+		recovered = true;
+	}
+
+	/**
+	 * Replays the valid records of a segment and returns their total length.
+	 */
+	private long replaySegment(Path path, PersonRecordHandler handler) throws IOException {
+		long validLength = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+			CRC32 crc = new CRC32();
+			while (true) {
+				int length;
+				int checksum;
+				byte[] payload;
+				try {
+					length = in.readInt();
+					checksum = in.readInt();
+					if (length < 1 || length > MAX_RECORD_SIZE) {
+						return validLength;
+					}
+					payload = new byte[length];
+					in.readFully(payload);
+				} catch (EOFException e) {
+					return validLength;
+				}
+				crc.reset();
+				crc.update(payload, 0, length);
+				if ((int) crc.getValue() != checksum) {
+					return validLength;
+				}
+				if (handler != null) {
+					decode(ByteBuffer.wrap(payload), handler);
+				}
+				appendedSequence++;
+				validLength += HEADER_SIZE + length;
+			}
+		}
+	}
+
+	private FileChannel openSegment(long index) throws IOException {
+		Path path = segmentPath(directory, index);
+		boolean created = !Files.exists(path);
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		channel.position(channel.size());
+		segmentIndex = index;
+		if (created) {
+			syncDirectory();
+		}
+		return channel;
+	}
+
+	static Path segmentPath(Path directory, long index) {
+		return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+	}
+
+	/**
+	 * Makes a newly created segment file entry durable.
+	 */
+	private void syncDirectory() {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// directories can't be opened on some platforms (e.g. Windows), where it's not needed either
+		}
+	}
+
+	private List<Path> listSegments() throws IOException {
+		return listSegments(directory);
+	}
+
+	/**
+	 * Returns the segment files of a given directory in the log order.
+	 */
+	static List<Path> listSegments(Path directory) throws IOException {
+		if (!Files.isDirectory(directory)) {
+			return new ArrayList<>();
+		}
+		try (Stream<Path> files = Files.list(directory)) {
+			return files
+					.filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX)
+							&& p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	static Path snapshotPath(Path directory, long index, long sequence) {
+		return directory.resolve(String.format("%s%020d-%020d%s", SNAPSHOT_PREFIX, index, sequence, SNAPSHOT_SUFFIX));
+	}
+
+	/**
+	 * Returns the snapshot files of a given directory from the oldest to the latest.
+	 */
+	static List<Path> listSnapshots(Path directory) throws IOException {
+		if (!Files.isDirectory(directory)) {
+			return new ArrayList<>();
+		}
+		try (Stream<Path> files = Files.list(directory)) {
+			return files
+					.filter(p -> p.getFileName().toString().startsWith(SNAPSHOT_PREFIX)
+							&& p.getFileName().toString().endsWith(SNAPSHOT_SUFFIX))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Returns the index of the first segment after a snapshot and the number of records the snapshot covers.
+	 */
+	static long[] snapshotPosition(Path path) {
+		String fileName = path.getFileName().toString();
+		String[] numbers = fileName.substring(SNAPSHOT_PREFIX.length(), fileName.length() - SNAPSHOT_SUFFIX.length())
+				.split("-");
+		return new long[] {Long.parseLong(numbers[0]), Long.parseLong(numbers[1])};
+	}
+
+	static long segmentIndex(Path path) {
+		String fileName = path.getFileName().toString();
+		return Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length()));
+	}
+
+	/**
+	 * Encodes a record: payload length, payload CRC32 and the payload itself, which is
+	 * the record type, name, age, parent names, children count and children names.
+	 * Numbers are encoded as varints and names as varint (length + 1) prefixed UTF-8 bytes, 0 standing for null.
+	 */
+	private static byte[] encode(Person person) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+		// the header is filled in once the payload is known
+		out.write(new byte[HEADER_SIZE], 0, HEADER_SIZE);
+		out.write(SAVE_PERSON);
+		writeString(out, person.getName());
+		writeVarInt(out, person.getAge());
+		writeString(out, person.getParent1() == null ? null : person.getParent1().getName());
+		writeString(out, person.getParent2() == null ? null : person.getParent2().getName());
+		List<Person> children = person.getChildren();
+		writeVarInt(out, children.size());
+		for (Person child : children) {
+			writeString(out, child.getName());
+		}
+		return seal(out);
+	}
+
+	/**
+	 * Encodes a deleted person record, whose payload is the record type and the name.
+	 */
+	private static byte[] encodeDeletion(Person person) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(32);
+		out.write(new byte[HEADER_SIZE], 0, HEADER_SIZE);
+		out.write(DELETE_PERSON);
+		writeString(out, person.getName());
+		return seal(out);
+	}
+
+	/**
+	 * Fills the header of an encoded record in.
+	 */
+	private static byte[] seal(ByteArrayOutputStream out) {
+		byte[] record = out.toByteArray();
+		int length = record.length - HEADER_SIZE;
+		CRC32 crc = new CRC32();
+		crc.update(record, HEADER_SIZE, length);
+		ByteBuffer.wrap(record).putInt(length).putInt((int) crc.getValue());
+		return record;
+	}
+
+	/**
+	 * Passes a record's payload to a handler.
+	 */
+	static void decode(ByteBuffer payload, PersonRecordHandler handler) {
+		byte type = payload.get();
+		if (type == DELETE_PERSON) {
+			handler.deletePerson(readString(payload));
+			return;
+		}
+		if (type != SAVE_PERSON) {
+			throw new IllegalStateException("Unknown write-ahead log record type " + type);
+		}
+		String name = readString(payload);
+		int age = readVarInt(payload);
+		String parent1Name = readString(payload);
+		String parent2Name = readString(payload);
+		int childCount = readVarInt(payload);
+		List<String> childNames = new ArrayList<>(childCount);
+		for (int i = 0; i < childCount; i++) {
+			childNames.add(readString(payload));
+		}
+		handler.addPerson(name, age, parent1Name, parent2Name, childNames);
+	}
+
+	private static void writeString(ByteArrayOutputStream out, String value) {
+		if (value == null) {
+			writeVarInt(out, 0);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length + 1);
+		out.write(bytes, 0, bytes.length);
+	}
+
+	private static String readString(ByteBuffer in) {
+		int length = readVarInt(in) - 1;
+		if (length < 0) {
+			return null;
+		}
+		String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+		in.position(in.position() + length);
+		return value;
+	}
+
+	private static void writeVarInt(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private static int readVarInt(ByteBuffer in) {
+		int value = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+	}
+
+	private void await() {
+		try {
+			wait();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the write-ahead log", e);
+		}
+	}
+}
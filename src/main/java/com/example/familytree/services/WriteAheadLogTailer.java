@@ -0,0 +1,179 @@
+package com.example.familytree.services;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static com.example.familytree.services.WriteAheadLogDBService.HEADER_SIZE;
+import static com.example.familytree.services.WriteAheadLogDBService.MAX_RECORD_SIZE;
+
+/**
+ * Follows a write-ahead log (see WriteAheadLogDBService) written by another process into a shared directory,
+ * and passes its records to a handler as they're written out, so that a read replica applies a primary's changes
+ * incrementally. Every record is either a new person with the relatives it was linked with (so it carries
+ * the parents' and children's new links too) or a deleted person, and the records are numbered from 1
+ * in the log order, like the log numbers them.
+ * A poll reads the complete records appended since the previous one; a record at the end of the last segment
+ * that's still being written (short, or failing its checksum) is read again by the next poll. The log never
+ * appends to a segment once the next one exists, so a damaged record followed by more of the log
+ * fails the poll with an IllegalStateException.
+ * The tailer is not thread safe, so it must be polled by a single thread.
+ */
+public class WriteAheadLogTailer implements AutoCloseable {
+	private final Path directory;
+	private final ByteBuffer header;
+	private final CRC32 crc;
+
+	private FileChannel segment;
+	private long segmentIndex;
+	private boolean started;
+
+	/**
+	 * Position of the next record within the current segment.
+	 */
+	private long position;
+
+	/**
+	 * Sequence number of the last record passed to a handler.
+	 */
+	private long sequence;
+
+	private long lagBytes;
+
+	public WriteAheadLogTailer(Path directory) {
+		this.directory = directory;
+		this.header = ByteBuffer.allocate(HEADER_SIZE);
+		this.crc = new CRC32();
+	}
+
+	/**
+	 * Passes the records written since the previous poll to a given handler and returns their number.
+	 * If the handler fails, the record is passed again by the next poll.
+	 * Performance: O(size of the new records)
+	 */
+	public int poll(DBService.PersonRecordHandler handler) throws IOException {
+		int count = 0;
+		while (open()) {
+			// the next segment is looked for first, so that the current one is known to be finished once it's read
+			boolean finished = Files.exists(WriteAheadLogDBService.segmentPath(directory, segmentIndex + 1));
+			count += readRecords(handler);
+			if (!finished) {
+				break;
+			}
+			if (position < segment.size()) {
+				throw new IllegalStateException("Write-ahead log segment "
+						+ WriteAheadLogDBService.segmentPath(directory, segmentIndex) + " is corrupted at " + position);
+			}
+			segment.close();
+			segment = null;
+			segmentIndex++;
+			position = 0;
+		}
+		lagBytes = unreadBytes();
+		return count;
+	}
+
+	/**
+	 * Returns the sequence number of the last record passed to a handler, i.e. the number of such records.
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Returns the number of the log's bytes that were left unread by the last poll; it's 0 if the tailer
+	 * has caught up with the log.
+	 */
+	public long getLagBytes() {
+		return lagBytes;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (segment != null) {
+			segment.close();
+			segment = null;
+		}
+	}
+
+	/**
+	 * Opens the current segment if it isn't open yet, and returns false if it doesn't exist yet.
+	 */
+	private boolean open() throws IOException {
+		if (segment != null) {
+			return true;
+		}
+		if (!started) {
+			List<Path> segments = WriteAheadLogDBService.listSegments(directory);
+			if (segments.isEmpty()) {
+				return false;
+			}
+			segmentIndex = WriteAheadLogDBService.segmentIndex(segments.get(0));
+			started = true;
+		}
+		try {
+			segment = FileChannel.open(WriteAheadLogDBService.segmentPath(directory, segmentIndex), StandardOpenOption.READ);
+		} catch (NoSuchFileException e) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Passes the complete records of the current segment to a handler and returns their number.
+	 */
+	private int readRecords(DBService.PersonRecordHandler handler) throws IOException {
+		int count = 0;
+		long size = segment.size();
+		while (position + HEADER_SIZE <= size) {
+			header.clear();
+			readFully(header, position);
+			int length = header.getInt(0);
+			int checksum = header.getInt(4);
+			if (length < 1 || length > MAX_RECORD_SIZE || position + HEADER_SIZE + length > size) {
+				break;
+			}
+			ByteBuffer payload = ByteBuffer.allocate(length);
+			readFully(payload, position + HEADER_SIZE);
+			crc.reset();
+			crc.update(payload.array(), 0, length);
+			if ((int) crc.getValue() != checksum) {
+				break;
+			}
+			payload.flip();
+			WriteAheadLogDBService.decode(payload, handler);
+			position += HEADER_SIZE + length;
+			sequence++;
+			count++;
+		}
+		return count;
+	}
+
+	private void readFully(ByteBuffer buffer, long at) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (segment.read(buffer, at + buffer.position()) < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+
+	/**
+	 * Returns the size of the current and the following segments, less the bytes read already.
+	 */
+	private long unreadBytes() throws IOException {
+		long unread = -position;
+		for (Path path : WriteAheadLogDBService.listSegments(directory)) {
+			if (WriteAheadLogDBService.segmentIndex(path) >= segmentIndex) {
+				unread += Files.size(path);
+			}
+		}
+		return Math.max(unread, 0);
+	}
+}
@@ -0,0 +1,319 @@
+package com.example.familytree.services;
+
+import com.example.familytree.entities.Person;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A write-behind database persistence layer service.
+ * It decorates another DBService so that callers only enqueue writes and don't wait for the underlying store.
+ * The queue is ordered by the first write of a given person; repeated writes of the same person
+ * are merged into a single entry that holds the latest person state. A deletion merged into an entry
+ * cancels the writes of a person saved within the entry, and otherwise it's flushed before them,
+ * so a person deleted and saved again (e.g. a changed age) is flushed as a deletion followed by a save.
+ * A background thread flushes the queue in batches once the batch size is reached
+ * or the oldest entry has been waiting longer than the max latency.
+ * The queue is bounded - when it's full, writers block until the flusher drains it (backpressure).
+ * In the durable mode awaitPersisted() blocks until all of the caller's writes are flushed.
+ */
+public class WriteBehindDBService implements DBService, AutoCloseable {
+	/**
+	 * The underlying persistence layer service.
+	 */
+	private final DBService delegate;
+
+	/**
+	 * Max number of entries flushed at once.
+	 */
+	private final int batchSize;
+
+	/**
+	 * Max time an entry waits in the queue before it gets flushed.
+	 */
+	private final long maxLatencyNanos;
+
+	/**
+	 * Max number of pending entries.
+	 */
+	private final int capacity;
+
+	/**
+	 * Whether awaitPersisted() waits for the caller's writes to be flushed.
+	 */
+	private final boolean durable;
+
+	/**
+	 * Pending writes keyed by person name, in the first write order.
+	 */
+	private final LinkedHashMap<String, PendingWrite> pending;
+
+	/**
+	 * The last write sequence number and the failure count seen by the calling thread.
+	 */
+	private final ThreadLocal<long[]> callerState;
+
+	private final Thread flusher;
+
+	private long writeSequence;
+	private long flushedSequence;
+	private long failureCount;
+	private RuntimeException lastFailure;
+	private boolean closed;
+
+	public WriteBehindDBService(DBService delegate, int batchSize, long maxLatencyMillis, int capacity, boolean durable) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be greater than 0");
+		}
+		if (capacity < batchSize) {
+			throw new IllegalArgumentException("Capacity cannot be less than the batch size");
+		}
+		if (maxLatencyMillis < 0) {
+			throw new IllegalArgumentException("Max latency cannot be negative");
+		}
+		this.delegate = delegate;
+		this.batchSize = batchSize;
+		this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+		this.capacity = capacity;
+		this.durable = durable;
+		this.pending = new LinkedHashMap<>();
+		this.callerState = ThreadLocal.withInitial(() -> new long[2]);
+
+		this.flusher = new Thread(this::flushLoop, "db-write-behind");
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+	@Override
+	public void savePerson(Person person) {
+		enqueue(person, WriteType.SAVE);
+	}
+
+	@Override
+	public void updatePerson(Person person) {
+		enqueue(person, WriteType.UPDATE);
+	}
+
+	@Override
+	public void deletePerson(Person person) {
+		enqueue(person, WriteType.DELETE);
+	}
+
+	/**
+	 * Waits for the caller's writes in the durable mode; returns immediately otherwise.
+	 * Throws IllegalStateException if a batch failed while the caller's writes were pending.
+	 */
+	@Override
+	public void awaitPersisted() {
+		if (!durable) {
+			return;
+		}
+		long[] state = callerState.get();
+		synchronized (this) {
+			while (flushedSequence < state[0]) {
+				if (closed && !flusher.isAlive()) {
+					throw new IllegalStateException("Write-behind queue is closed");
+				}
+				await(0);
+			}
+			if (failureCount > state[1]) {
+				state[1] = failureCount;
+				throw new IllegalStateException("Failed to persist a batch of persons", lastFailure);
+			}
+		}
+	}
+
+	/**
+	 * Flushes all of the pending writes and stops the background thread.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		try {
+			flusher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the number of pending entries.
+	 */
+	public synchronized int pendingSize() {
+		return pending.size();
+	}
+
+	/**
+	 * Puts a snapshot of a given person on the queue or merges it with an already pending entry.
+	 * The snapshot is taken by the caller, who holds the family tree lock, so the flusher never reads
+	 * a person's children list while it's being modified.
+	 */
+	private void enqueue(Person person, WriteType type) {
+		Person snapshot = new Person.Builder(person.getName(), person.getAge())
+				.parent1(person.getParent1())
+				.parent2(person.getParent2())
+				.children(new ArrayList<>(person.getChildren()))
+				.build();
+
+		long[] state = callerState.get();
+		synchronized (this) {
+			if (closed) {
+				throw new IllegalStateException("Write-behind queue is closed");
+			}
+			PendingWrite write = pending.get(person.getName());
+			if (write == null) {
+				// backpressure - wait for the flusher to make room for a new entry
+				while (pending.size() >= capacity && !closed) {
+					await(0);
+				}
+				write = new PendingWrite(++writeSequence, System.nanoTime());
+				pending.put(person.getName(), write);
+				if (pending.size() == 1 || pending.size() >= batchSize) {
+					// wake the flusher up to set up the latency deadline or to flush a full batch
+					notifyAll();
+				}
+			} else {
+				++writeSequence;
+			}
+			write.merge(type, snapshot);
+			if (flushedSequence >= state[0]) {
+				// nothing of the caller's is pending, so earlier failures don't concern it
+				state[1] = failureCount;
+			}
+			state[0] = writeSequence;
+		}
+	}
+
+	private void flushLoop() {
+		while (true) {
+			List<Person> savedPersons = new ArrayList<>();
+			List<Person> updatedPersons = new ArrayList<>();
+			List<Person> deletedPersons = new ArrayList<>();
+
+			synchronized (this) {
+				long waitNanos;
+				while ((waitNanos = nanosToNextFlush()) > 0) {
+					try {
+						wait(TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1);
+					} catch (InterruptedException e) {
+						// the flusher stops only when the service is closed
+					}
+				}
+				if (pending.isEmpty()) {
+					// closed and fully drained
+					notifyAll();
+					return;
+				}
+				Iterator<PendingWrite> it = pending.values().iterator();
+				for (int i = 0; i < batchSize && it.hasNext(); i++) {
+					PendingWrite write = it.next();
+					if (write.deleted != null) {
+						deletedPersons.add(write.deleted);
+					}
+					if (write.person != null && write.isNew) {
+						savedPersons.add(write.person);
+					} else if (write.person != null) {
+						updatedPersons.add(write.person);
+					}
+					it.remove();
+				}
+				// wake up writers blocked on a full queue
+				notifyAll();
+			}
+
+			RuntimeException failure = null;
+			try {
+				if (deletedPersons.isEmpty()) {
+					delegate.persistBatch(savedPersons, updatedPersons);
+				} else {
+					delegate.persistBatch(savedPersons, updatedPersons, deletedPersons);
+				}
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+
+			synchronized (this) {
+				if (failure != null) {
+					failureCount++;
+					lastFailure = failure;
+				}
+				// every write older than the oldest pending entry has been flushed
+				flushedSequence = pending.isEmpty()
+						? writeSequence
+						: pending.values().iterator().next().firstSequence - 1;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Returns 0 if a batch should be flushed now, otherwise the time to wait for.
+	 */
+	private long nanosToNextFlush() {
+		if (closed || pending.size() >= batchSize) {
+			return 0;
+		}
+		if (pending.isEmpty()) {
+			return Long.MAX_VALUE / 2;
+		}
+		long oldestAge = System.nanoTime() - pending.values().iterator().next().enqueuedAt;
+		return Math.max(0, maxLatencyNanos - oldestAge);
+	}
+
+	private void await(long millis) {
+		try {
+			wait(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the write-behind queue", e);
+		}
+	}
+
+	private enum WriteType {
+		SAVE, UPDATE, DELETE
+	}
+
+	/**
+	 * A queued write of a single person.
+	 */
+	private static class PendingWrite {
+		final long firstSequence;
+		final long enqueuedAt;
+
+		/**
+		 * The latest person state, or null if the person is deleted.
+		 */
+		Person person;
+		boolean isNew;
+
+		/**
+		 * The stored person to delete before the latest state is written, if any.
+		 */
+		Person deleted;
+
+		PendingWrite(long firstSequence, long enqueuedAt) {
+			this.firstSequence = firstSequence;
+			this.enqueuedAt = enqueuedAt;
+		}
+
+		void merge(WriteType type, Person snapshot) {
+			if (type != WriteType.DELETE) {
+				person = snapshot;
+				isNew |= type == WriteType.SAVE;
+				return;
+			}
+			if (!isNew && deleted == null) {
+				// a person saved within the entry has never reached the store, so there's nothing to delete
+				deleted = snapshot;
+			}
+			person = null;
+			isNew = false;
+		}
+	}
+}
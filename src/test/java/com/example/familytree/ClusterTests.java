@@ -0,0 +1,215 @@
+package com.example.familytree;
+
+import com.example.familytree.cluster.ShardClient;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a cluster of two shards and a router on the loopback interface.
+ */
+public class ClusterTests {
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
+	private static final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+	private static ShardClient shard0;
+	private static ShardClient shard1;
+	private static ShardClient router;
+
+	@BeforeClass
+	public static void startCluster() {
+		shard0 = start("--spring.mvc.hiddenmethod.filter.enabled=true");
+		shard1 = start("--spring.mvc.hiddenmethod.filter.enabled=true");
+		// the tests send PATCH through a ShardClient too, so the router takes it the way the shards do
+		router = start("--familyTree.cluster.shards=" + shard0.getUrl() + "," + shard1.getUrl(),
+				"--spring.mvc.hiddenmethod.filter.enabled=true");
+	}
+
+	@AfterClass
+	public static void stopCluster() {
+		contexts.forEach(ConfigurableApplicationContext::close);
+	}
+
+	/**
+	 * Starts a service on a random port; the command line arguments override application.properties.
+	 */
+	private static ShardClient start(String... args) {
+		ConfigurableApplicationContext context = new SpringApplicationBuilder(FamilyTreeApplication.class)
+				.properties("server.port=0", "server.address=127.0.0.1", "spring.jmx.enabled=false")
+				.run(args);
+		contexts.add(context);
+		return new ShardClient("http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port"), 10000);
+	}
+
+	@Test
+	public void testComponentMovedWhenLinked() throws IOException {
+		// GIVEN:
+		String parent1 = nameOfShard("Mover", 0);
+		String parent2 = nameOfShard("Mover", 1);
+		add(parent1, 60, null, null);
+		add(parent2, 50, null, null);
+		add("MoverChild", 30, parent2, null);
+		Assert.assertEquals(200, shard0.send("GET", "/familyTree/" + parent1, null, null).status);
+		Assert.assertEquals(200, shard1.send("GET", "/familyTree/MoverChild", null, null).status);
+
+		// WHEN:
+		ShardClient.Response added = add("MoverGrandchild", 10, "MoverChild", parent1);
+
+		// THEN:
+		Assert.assertEquals(200, added.status);
+		// the smaller component (of the first parent) has joined the bigger one
+		for (String name : Arrays.asList(parent1, parent2, "MoverChild", "MoverGrandchild")) {
+			Assert.assertEquals(404, shard0.send("GET", "/familyTree/" + name, null, null).status);
+			Assert.assertEquals(200, shard1.send("GET", "/familyTree/" + name, null, null).status);
+			Assert.assertEquals(200, router.send("GET", "/familyTree/" + name, null, null).status);
+		}
+		Assert.assertEquals("true", body(router.send("GET", "/familyTree/" + parent1 + "/isAncestorOf/MoverGrandchild",
+				null, null)));
+		Assert.assertEquals(400, add(parent1, 20, null, null).status);
+	}
+
+	@Test
+	public void testPersonsRouted() throws IOException {
+		// GIVEN:
+		String name0 = nameOfShard("Routed", 0);
+		String name1 = nameOfShard("Routed", 1);
+		add(name0, 70, null, null);
+		add(name1, 70, null, null);
+
+		// WHEN:
+		ShardClient.Response patched = router.send("PATCH", "/familyTree/" + name0, MediaType.APPLICATION_JSON_UTF8_VALUE,
+				json(person(null, 71, null, null)));
+		ShardClient.Response unrelated = router.send("GET", "/familyTree/" + name0 + "/relationship/" + name1,
+				null, null);
+		ShardClient.Response deleted = router.send("DELETE", "/familyTree/" + name1, null, null);
+
+		// THEN:
+		Assert.assertEquals(200, patched.status);
+		Assert.assertEquals(71, objectMapper.readTree(router.send("GET", "/familyTree/" + name0, null, null).body)
+				.get("age").asInt());
+		Assert.assertEquals(200, shard0.send("GET", "/familyTree/" + name0, null, null).status);
+		Assert.assertEquals("unrelated", objectMapper.readTree(unrelated.body).get("relation").asText());
+		Assert.assertEquals(200, deleted.status);
+		Assert.assertEquals(404, router.send("GET", "/familyTree/" + name1, null, null).status);
+		Assert.assertEquals(404, router.send("GET", "/familyTree/Nobody", null, null).status);
+	}
+
+	@Test
+	public void testSortedListMerged() throws IOException {
+		// GIVEN:
+		List<String> names = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			String name = nameOfShard("Sorted" + i + "-", i % 2);
+			add(name, 80 + i / 2, null, null);
+			names.add(name);
+		}
+
+		// WHEN:
+		List<String> ascending = list("/familyTree?order=AGE_NAME_ASC&fromAge=80&toAge=83");
+		List<String> descending = list("/familyTree?order=AGE_NAME_DESC&fromAge=80&toAge=83&limit=3");
+		List<String> byAge = list("/familyTree?order=ASC&fromAge=80&toAge=83");
+		List<String> resumed = new ArrayList<>(list("/familyTree?order=ASC&fromAge=80&toAge=83&limit=3"));
+		resumed.addAll(list("/familyTree?order=ASC&fromAge=80&toAge=83&afterName=" + resumed.get(2)));
+
+		// THEN:
+		List<String> sorted = new ArrayList<>(names);
+		sorted.sort((name1, name2) -> names.indexOf(name1) / 2 != names.indexOf(name2) / 2
+				? names.indexOf(name1) / 2 - names.indexOf(name2) / 2 : name1.compareTo(name2));
+		Assert.assertEquals(sorted, ascending);
+		Assert.assertEquals(Arrays.asList(sorted.get(7), sorted.get(6), sorted.get(5)), descending);
+		// the persons of the same age come from the first shard first
+		Assert.assertEquals(names, byAge);
+		Assert.assertEquals(names, resumed);
+		Assert.assertEquals(8, objectMapper.readTree(router.send("GET", "/familyTree?count&fromAge=80&toAge=83",
+				null, null).body).get("total").asInt());
+		Assert.assertEquals(names.subList(0, 3), objectMapper.readValue(router.send("GET",
+				"/familyTree/search?prefix=Sorted&limit=3", null, null).body, List.class));
+	}
+
+	@Test
+	public void testSameNameAddedConcurrently() throws Exception {
+		// GIVEN:
+		String parent0 = nameOfShard("Twins", 0);
+		String parent1 = nameOfShard("Twins", 1);
+		add(parent0, 90, null, null);
+		add(parent1, 90, null, null);
+		ExecutorService executorService = Executors.newFixedThreadPool(2);
+
+		for (int i = 0; i < 20; i++) {
+			// WHEN:
+			// the same name as a child of persons of different shards
+			String name = "Twin" + i;
+			CountDownLatch start = new CountDownLatch(1);
+			Future<ShardClient.Response> added0 = executorService.submit(() -> {
+				start.await();
+				return add(name, 10, parent0, null);
+			});
+			Future<ShardClient.Response> added1 = executorService.submit(() -> {
+				start.await();
+				return add(name, 10, parent1, null);
+			});
+			start.countDown();
+
+			// THEN:
+			Assert.assertEquals(1, (added0.get().isOk() ? 1 : 0) + (added1.get().isOk() ? 1 : 0));
+			Assert.assertEquals(1, (shard0.send("GET", "/familyTree/" + name, null, null).isOk() ? 1 : 0)
+					+ (shard1.send("GET", "/familyTree/" + name, null, null).isOk() ? 1 : 0));
+		}
+		executorService.shutdown();
+	}
+
+	/**
+	 * Returns a name with a given prefix that's placed on a given shard (by its hash).
+	 */
+	private static String nameOfShard(String prefix, int shard) {
+		for (int i = 0; ; i++) {
+			String name = prefix + i;
+			if (Math.floorMod(name.hashCode(), 2) == shard) {
+				return name;
+			}
+		}
+	}
+
+	private static ShardClient.Response add(String name, int age, String parent1, String parent2) throws IOException {
+		return router.send("POST", "/familyTree", MediaType.APPLICATION_JSON_UTF8_VALUE,
+				json(person(name, age, parent1, parent2)));
+	}
+
+	private static Map<String, Object> person(String name, int age, String parent1, String parent2) {
+		Map<String, Object> person = new HashMap<>();
+		person.put("name", name);
+		person.put("age", age);
+		person.put("parent1", parent1);
+		person.put("parent2", parent2);
+		return person;
+	}
+
+	private static byte[] json(Object value) throws IOException {
+		return objectMapper.writeValueAsBytes(value);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<String> list(String path) throws IOException {
+		return objectMapper.readValue(router.send("GET", path, null, null).check().body, List.class);
+	}
+
+	private static String body(ShardClient.Response response) {
+		return new String(response.body);
+	}
+}
@@ -1,20 +1,31 @@
 package com.example.familytree;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.zip.GZIPInputStream;
 
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
@@ -91,4 +102,254 @@ public class FamilyTreeApplicationTests {
 				.andExpect(status().isOk())
 				.andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE));
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testBulkImport() throws Exception {
+		// WHEN
+		String csv = "name,age,parent1,parent2,children\n"
+				+ "Bulk2,40,Bulk1,,\n"
+				+ "Bulk1,70,,,\n"
+				+ "Bulk3,abc,,,\n";
+
+		// THEN
+		mockMvc.perform(post("/familyTree/bulk")
+				.contentType("text/csv")
+				.content(csv))
+				.andExpect(status().isOk())
+				.andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
+				.andExpect(jsonPath("$.rows").value(3))
+				.andExpect(jsonPath("$.imported").value(2))
+				.andExpect(jsonPath("$.rejections[0].line").value(4));
+
+		mockMvc.perform(get("/familyTree/Bulk2"))
+				.andExpect(status().isOk());
+
+		mockMvc.perform(get("/familyTree/Bulk1/isAncestorOf/Bulk2"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("true"));
+
+		mockMvc.perform(get("/familyTree/Bulk2/isAncestorOf/Bulk1"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("false"));
+
+		mockMvc.perform(get("/familyTree/Bulk2/ancestors?maxDepth=1"))
+				.andExpect(status().isOk())
+				.andExpect(content().json("[[\"Bulk2\"],[\"Bulk1\"]]", true));
+
+		mockMvc.perform(get("/familyTree/Bulk2/ancestors?limit=1"))
+				.andExpect(status().isOk())
+				.andExpect(content().json("[[\"Bulk2\"]]", true));
+
+		mockMvc.perform(get("/familyTree/Bulk1/descendants"))
+				.andExpect(status().isOk())
+				.andExpect(content().json("{\"count\":1,\"generations\":[[\"Bulk1\"],[\"Bulk2\"]]}", true));
+
+		mockMvc.perform(get("/familyTree/Bulk3/descendants"))
+				.andExpect(status().isNotFound());
+
+		mockMvc.perform(get("/actuator/metrics/familytree.persons.added"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.measurements[0].value").isNumber());
+
+		mockMvc.perform(get("/familyTree/Bulk2/relationship/Bulk1"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.relation").value("child"))
+				.andExpect(jsonPath("$.commonAncestors[0]").value("Bulk1"));
+	}
+
+	@Test
+	public void testOrderedListPages() throws Exception {
+		// WHEN
+		ObjectMapper objectMapper = new ObjectMapper();
+		for (int age = 1; age <= 3; age++) {
+			HashMap<String, Object> jsonMap = new HashMap<>();
+			jsonMap.put("name", "Page" + age);
+			jsonMap.put("age", age);
+
+			mockMvc.perform(post("/familyTree")
+					.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+					.content(objectMapper.writeValueAsString(jsonMap)))
+					.andExpect(status().isOk());
+		}
+
+		// THEN
+		mockMvc.perform(get("/familyTree?order=ASC&limit=2"))
+				.andExpect(status().isOk())
+				.andExpect(content().json("[\"Page1\",\"Page2\"]", true));
+
+		mockMvc.perform(get("/familyTree?order=ASC&afterName=Page2&limit=1"))
+				.andExpect(status().isOk())
+				.andExpect(content().json("[\"Page3\"]", true));
+
+		mockMvc.perform(get("/familyTree?order=DESC&afterAge=2"))
+				.andExpect(status().isOk())
+				.andExpect(content().json("[\"Page1\"]", true));
+
+		mockMvc.perform(get("/familyTree?order=DESC&fromAge=2&toAge=3"))
+				.andExpect(status().isOk())
+				.andExpect(content().json("[\"Page3\",\"Page2\"]", true));
+
+		mockMvc.perform(get("/familyTree?order=name,desc&fromAge=1&toAge=3&afterName=Page3"))
+				.andExpect(status().isOk())
+				.andExpect(content().json("[\"Page2\",\"Page1\"]", true));
+
+		mockMvc.perform(get("/familyTree?order=AGE_NAME_ASC&fromAge=2&toAge=3"))
+				.andExpect(status().isOk())
+				.andExpect(content().json("[\"Page2\",\"Page3\"]", true));
+
+		mockMvc.perform(get("/familyTree?order=SIDEWAYS"))
+				.andExpect(status().isBadRequest());
+
+		mockMvc.perform(get("/familyTree?count&toAge=2"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.total").value(2))
+				.andExpect(jsonPath("$.perAge.1").value(1));
+
+		mockMvc.perform(get("/familyTree?order=ASC&limit=-1"))
+				.andExpect(status().isBadRequest());
+
+		mockMvc.perform(get("/familyTree?order=ASC&fromAge=3&toAge=2"))
+				.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void testUpdateAndDeletePerson() throws Exception {
+		// WHEN
+		ObjectMapper objectMapper = new ObjectMapper();
+		for (int i = 1; i <= 3; i++) {
+			HashMap<String, Object> jsonMap = new HashMap<>();
+			jsonMap.put("name", "Edit" + i);
+			jsonMap.put("age", 80 - 20 * i);
+			if (i > 1) {
+				jsonMap.put("parent1", "Edit" + (i - 1));
+			}
+
+			mockMvc.perform(post("/familyTree")
+					.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+					.content(objectMapper.writeValueAsString(jsonMap)))
+					.andExpect(status().isOk());
+		}
+
+		// THEN
+		mockMvc.perform(patch("/familyTree/Edit2")
+				.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+				.content("{\"age\": 45}"))
+				.andExpect(status().isOk());
+
+		mockMvc.perform(get("/familyTree/Edit2"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.age").value(45))
+				.andExpect(jsonPath("$.parent1").value("Edit1"))
+				.andExpect(jsonPath("$.children[0]").value("Edit3"));
+
+		mockMvc.perform(patch("/familyTree/Edit2")
+				.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+				.content("{\"age\": 70}"))
+				.andExpect(status().isBadRequest());
+
+		mockMvc.perform(put("/familyTree/Edit3")
+				.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+				.content("{\"name\": \"Edit3\", \"age\": 25}"))
+				.andExpect(status().isOk());
+
+		mockMvc.perform(get("/familyTree/Edit3"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.age").value(25))
+				.andExpect(jsonPath("$.parent1").doesNotExist());
+
+		mockMvc.perform(put("/familyTree/Edit3")
+				.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+				.content("{\"name\": \"Renamed\", \"age\": 25}"))
+				.andExpect(status().isBadRequest());
+
+		mockMvc.perform(delete("/familyTree/Edit1"))
+				.andExpect(status().isOk());
+
+		mockMvc.perform(get("/familyTree/Edit1"))
+				.andExpect(status().isNotFound());
+
+		mockMvc.perform(get("/familyTree/Edit2"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.parent1").doesNotExist());
+
+		mockMvc.perform(delete("/familyTree/Edit1"))
+				.andExpect(status().isNotFound());
+
+		mockMvc.perform(put("/familyTree/Missing")
+				.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+				.content("{\"age\": 25}"))
+				.andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void testCachedOrderedList() throws Exception {
+		// GIVEN:
+		mockMvc.perform(post("/familyTree")
+				.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+				.content("{\"name\": \"Cached1\", \"age\": 40}"))
+				.andExpect(status().isOk());
+		String etag = mockMvc.perform(get("/familyTree?order=ASC"))
+				.andExpect(status().isOk())
+				.andExpect(header().exists(HttpHeaders.ETAG))
+				.andExpect(jsonPath("$[?(@ == 'Cached1')]").exists())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+		// WHEN:
+		// THEN:
+		mockMvc.perform(get("/familyTree?order=ASC").header(HttpHeaders.IF_NONE_MATCH, etag))
+				.andExpect(status().isNotModified())
+				.andExpect(content().string(""));
+		mockMvc.perform(get("/familyTree/Cached1").header(HttpHeaders.IF_NONE_MATCH, etag))
+				.andExpect(status().isNotModified());
+
+		byte[] gzipped = mockMvc.perform(get("/familyTree?order=ASC").header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+				.andReturn().getResponse().getContentAsByteArray();
+		String plain = mockMvc.perform(get("/familyTree?order=ASC"))
+				.andReturn().getResponse().getContentAsString();
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+			Assert.assertEquals(plain, new String(readAll(in), "UTF-8"));
+		}
+
+		mockMvc.perform(post("/familyTree")
+				.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+				.content("{\"name\": \"Cached2\", \"age\": 20}"))
+				.andExpect(status().isOk());
+
+		mockMvc.perform(get("/familyTree?order=ASC").header(HttpHeaders.IF_NONE_MATCH, etag))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$[?(@ == 'Cached2')]").exists());
+	}
+
+	@Test
+	public void testSearchNames() throws Exception {
+		// GIVEN:
+		for (String name : new String[]{"Searched1", "Searched2", "Serched3"}) {
+			mockMvc.perform(post("/familyTree")
+					.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+					.content("{\"name\": \"" + name + "\", \"age\": 40}"))
+					.andExpect(status().isOk());
+		}
+
+		// WHEN:
+		// THEN:
+		mockMvc.perform(get("/familyTree/search?prefix=Searched&limit=1"))
+				.andExpect(status().isOk())
+				.andExpect(content().json("[\"Searched1\"]"));
+		mockMvc.perform(get("/familyTree/search?prefix=Searched&fuzzy=1"))
+				.andExpect(status().isOk())
+				.andExpect(content().json("[\"Searched1\", \"Searched2\", \"Serched3\"]"));
+		mockMvc.perform(get("/familyTree/search?prefix=Searched&fuzzy=3"))
+				.andExpect(status().isBadRequest());
+	}
+
+	private static byte[] readAll(GZIPInputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		for (int read; (read = in.read(buffer)) > 0; ) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+}
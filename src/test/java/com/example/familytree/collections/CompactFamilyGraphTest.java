@@ -0,0 +1,94 @@
+package com.example.familytree.collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompactFamilyGraphTest {
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNameAlreadyExists() {
+		CompactFamilyGraph graph = new CompactFamilyGraph(100);
+		graph.add("Person1", 10);
+		graph.add("Person1", 20);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testWrongAge() {
+		CompactFamilyGraph graph = new CompactFamilyGraph(100);
+		graph.add("Person1", 101);
+	}
+
+	@Test
+	public void testNameLookup() {
+		// GIVEN:
+		CompactFamilyGraph graph = new CompactFamilyGraph(100);
+
+		// WHEN:
+		for (int i = 0; i < 100_000; i++) {
+			graph.add("Person" + i, i % 101);
+		}
+
+		// THEN:
+		Assert.assertEquals(100_000, graph.size());
+		for (int i = 0; i < 100_000; i++) {
+			int id = graph.indexOf("Person" + i);
+			Assert.assertEquals(i, id);
+			Assert.assertEquals("Person" + i, graph.name(id));
+			Assert.assertEquals(i % 101, graph.age(id));
+		}
+		Assert.assertEquals(-1, graph.indexOf("Person100000"));
+		Assert.assertEquals(-1, graph.indexOf(null));
+	}
+
+	@Test
+	public void testChildrenBlocks() {
+		// GIVEN:
+		CompactFamilyGraph graph = new CompactFamilyGraph(100);
+		int parent1 = graph.add("Parent1", 90);
+		int parent2 = graph.add("Parent2", 80);
+
+		// WHEN:
+		// interleave both parents, so that their blocks get reallocated and reused
+		for (int i = 0; i < 50; i++) {
+			int child = graph.add("Child" + i, 10);
+			graph.addChild(parent1, child);
+			graph.setParent1(child, parent1);
+			if (i % 2 == 0) {
+				graph.addChild(parent2, child);
+				graph.setParent2(child, parent2);
+			}
+		}
+
+		// THEN:
+		Assert.assertEquals(50, graph.childCount(parent1));
+		Assert.assertEquals(25, graph.childCount(parent2));
+		for (int i = 0; i < 50; i++) {
+			Assert.assertEquals("Child" + i, graph.name(graph.child(parent1, i)));
+		}
+		for (int i = 0; i < 25; i++) {
+			Assert.assertEquals("Child" + (i * 2), graph.name(graph.child(parent2, i)));
+		}
+		Assert.assertEquals(parent1, graph.parent1(graph.indexOf("Child1")));
+		Assert.assertEquals(-1, graph.parent2(graph.indexOf("Child1")));
+		Assert.assertEquals(0, graph.childCount(graph.indexOf("Child1")));
+	}
+
+	@Test
+	public void testAgeBuckets() {
+		// GIVEN:
+		CompactFamilyGraph graph = new CompactFamilyGraph(5);
+
+		// WHEN:
+		graph.add("test1", 3);
+		graph.add("test2", 1);
+		graph.add("test3", 1);
+
+		// THEN:
+		Assert.assertEquals(-1, graph.firstInBucket(0));
+		int id = graph.firstInBucket(1);
+		Assert.assertEquals("test3", graph.name(id));
+		Assert.assertEquals("test2", graph.name(graph.nextInBucket(id)));
+		Assert.assertEquals(-1, graph.nextInBucket(graph.nextInBucket(id)));
+		Assert.assertEquals("test1", graph.name(graph.firstInBucket(3)));
+	}
+}
@@ -0,0 +1,131 @@
+package com.example.familytree.collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class ComponentLocksTest {
+
+	private final ExecutorService executorService = Executors.newCachedThreadPool();
+
+	@Test
+	public void testJoinComponents() {
+		// GIVEN:
+		ComponentLocks components = new ComponentLocks();
+		join(components, "A");
+		join(components, "B");
+		join(components, "C", "A");
+
+		// WHEN:
+		join(components, "D", "B", "C");
+
+		// THEN:
+		Assert.assertTrue(components.isConnected("A", "C"));
+		Assert.assertTrue(components.isConnected("A", "B"));
+		Assert.assertTrue(components.isConnected("D", "A"));
+		Assert.assertFalse(components.isConnected("A", "E"));
+	}
+
+	@Test
+	public void testUnrelatedComponentsDontBlock() throws Exception {
+		// GIVEN:
+		ComponentLocks components = new ComponentLocks();
+		join(components, "A");
+		join(components, "B");
+		List<ComponentLocks.Component> locked = components.lock(Collections.singletonList("A"));
+
+		// WHEN:
+		Future<?> other = executorService.submit(() -> join(components, "C", "B"));
+
+		// THEN:
+		other.get(5, TimeUnit.SECONDS);
+		components.unlock(locked);
+	}
+
+	@Test
+	public void testWaitingWriterLocksMergedComponent() throws Exception {
+		// GIVEN:
+		ComponentLocks components = new ComponentLocks();
+		join(components, "A");
+		join(components, "B");
+		join(components, "B2", "B");
+		List<ComponentLocks.Component> locked = components.lock(Arrays.asList("A", "B"));
+		CountDownLatch acquired = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Future<?> writer = executorService.submit(() -> {
+			List<ComponentLocks.Component> writerLocked = components.lock(Collections.singletonList("A"));
+			acquired.countDown();
+			release.await();
+			components.unlock(writerLocked);
+			return null;
+		});
+
+		// WHEN:
+		components.join("C", Arrays.asList("A", "B"), locked);
+		components.unlock(locked);
+
+		// THEN:
+		Assert.assertTrue(acquired.await(5, TimeUnit.SECONDS));
+		Future<?> blocked = executorService.submit(() -> join(components, "D", "B"));
+		try {
+			blocked.get(200, TimeUnit.MILLISECONDS);
+			Assert.fail("The merged component must stay locked");
+		} catch (TimeoutException e) {
+			// expected
+		}
+		release.countDown();
+		writer.get(5, TimeUnit.SECONDS);
+		blocked.get(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testNewComponentStaysLocked() throws Exception {
+		// GIVEN:
+		ComponentLocks components = new ComponentLocks();
+		List<ComponentLocks.Component> locked = components.lock(Collections.singletonList("A"));
+		components.join("A", Collections.emptyList(), locked);
+
+		// WHEN:
+		Future<?> writer = executorService.submit(() -> join(components, "B", "A"));
+
+		// THEN:
+		try {
+			writer.get(200, TimeUnit.MILLISECONDS);
+			Assert.fail("A new component must stay locked until its writer unlocks it");
+		} catch (TimeoutException e) {
+			// expected
+		}
+		components.unlock(locked);
+		writer.get(5, TimeUnit.SECONDS);
+		Assert.assertTrue(components.isConnected("A", "B"));
+	}
+
+	@Test
+	public void testNameAddedAfterLockingIsntLocked() {
+		// GIVEN:
+		ComponentLocks components = new ComponentLocks();
+		join(components, "A");
+		List<ComponentLocks.Component> locked = components.lock(Arrays.asList("A", "B"));
+
+		// WHEN:
+		join(components, "B");
+		components.join("C", Collections.singletonList("A"), locked);
+
+		// THEN:
+		Assert.assertTrue(components.isLocked("A", locked));
+		Assert.assertTrue(components.isLocked("C", locked));
+		Assert.assertFalse(components.isLocked("B", locked));
+		Assert.assertFalse(components.isLocked(null, locked));
+		components.unlock(locked);
+	}
+
+	private void join(ComponentLocks components, String name, String... relatives) {
+		List<ComponentLocks.Component> locked = components.lock(Arrays.asList(relatives));
+		components.join(name, Arrays.asList(relatives), locked);
+		components.unlock(locked);
+	}
+}
@@ -0,0 +1,83 @@
+package com.example.familytree.collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+public class ImmutableIntSetTest {
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeValue() {
+		ImmutableIntSet.EMPTY.with(-1);
+	}
+
+	@Test
+	public void testSharing() {
+		// GIVEN:
+		ImmutableIntSet set = ImmutableIntSet.EMPTY.with(3).with(5000).with(Integer.MAX_VALUE);
+
+		// WHEN:
+		ImmutableIntSet subset = ImmutableIntSet.EMPTY.with(5000);
+		ImmutableIntSet bigger = set.with(70);
+
+		// THEN:
+		Assert.assertSame(set, set.with(5000));
+		Assert.assertSame(set, set.union(subset));
+		Assert.assertEquals(3, subset.union(set).size());
+		Assert.assertTrue(set.contains(Integer.MAX_VALUE));
+		Assert.assertFalse(set.contains(70));
+		Assert.assertTrue(bigger.contains(70));
+		Assert.assertEquals(3, set.size());
+		Assert.assertEquals(4, bigger.size());
+		Assert.assertTrue(subset.intersects(bigger));
+		Assert.assertFalse(ImmutableIntSet.EMPTY.with(70).intersects(set));
+		Assert.assertTrue(ImmutableIntSet.EMPTY.intersection(set).isEmpty());
+	}
+
+	@Test
+	public void testSameAsBitSet() {
+		// GIVEN:
+		Random random = new Random(42);
+		ImmutableIntSet[] sets = new ImmutableIntSet[50];
+		BitSet[] bitSets = new BitSet[sets.length];
+
+		// WHEN:
+		for (int i = 0; i < sets.length; i++) {
+			// small values make the sets overlap, big ones make their tries of different heights
+			int bound = i % 3 == 0 ? 300 : i % 3 == 1 ? 20000 : 3000000;
+			sets[i] = ImmutableIntSet.EMPTY;
+			bitSets[i] = new BitSet();
+			int count = 10 + random.nextInt(40);
+			for (int value = 0; value < count; value++) {
+				int next = random.nextInt(bound);
+				sets[i] = sets[i].with(next);
+				bitSets[i].set(next);
+			}
+			if (i > 0) {
+				sets[i] = sets[i].union(sets[i - 1]);
+				bitSets[i].or(bitSets[i - 1]);
+			}
+		}
+
+		// THEN:
+		for (int i = 0; i < sets.length; i++) {
+			Assert.assertEquals(bitSets[i].cardinality(), sets[i].size());
+			for (int value = 0; value < 300; value++) {
+				Assert.assertEquals(bitSets[i].get(value), sets[i].contains(value));
+			}
+			for (int j = 0; j < sets.length; j += 7) {
+				BitSet union = (BitSet) bitSets[i].clone();
+				union.or(bitSets[j]);
+				BitSet intersection = (BitSet) bitSets[i].clone();
+				intersection.and(bitSets[j]);
+				ImmutableIntSet setIntersection = sets[i].intersection(sets[j]);
+				Assert.assertEquals(union.cardinality(), sets[i].union(sets[j]).size());
+				Assert.assertEquals(intersection.cardinality(), setIntersection.size());
+				Assert.assertEquals(!intersection.isEmpty(), sets[i].intersects(sets[j]));
+				intersection.stream().forEach(value -> Assert.assertTrue(setIntersection.contains(value)));
+			}
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package com.example.familytree.collections;
+
+import com.example.familytree.enums.Order;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+
+public class IntSortedListTest {
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDuplicateId() {
+		IntSortedList sortedList = new IntSortedList(5);
+		sortedList.add(1, 7);
+		sortedList.add(2, 7);
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void testRemoveFromWrongIndex() {
+		IntSortedList sortedList = new IntSortedList(5);
+		sortedList.add(1, 7);
+		sortedList.remove(2, 7);
+	}
+
+	@Test
+	public void testSameOrderAsSortedList() {
+		// GIVEN:
+		IntSortedList intSortedList = new IntSortedList(200);
+		SortedList<Integer> sortedList = new SortedList<>(200);
+		Random random = new Random(42);
+
+		// WHEN:
+		for (int id = 0; id < 5000; id++) {
+			int index = random.nextInt(201);
+			intSortedList.add(index, id);
+			sortedList.add(index, id);
+		}
+
+		// THEN:
+		for (Order order : new Order[]{Order.ASC, Order.DESC}) {
+			Assert.assertEquals(sortedList.toOrderedList(order), toList(intSortedList.toArray(order)));
+			List<Integer> forEach = new ArrayList<>();
+			intSortedList.forEach(order, forEach::add);
+			Assert.assertEquals(sortedList.toOrderedList(order), forEach);
+		}
+		List<Integer> range = new ArrayList<>();
+		PrimitiveIterator.OfInt iterator = intSortedList.iterator(Order.DESC, 130, 60);
+		while (iterator.hasNext()) {
+			range.add(iterator.nextInt());
+		}
+		List<Integer> expected = new ArrayList<>();
+		sortedList.range(60, 130, Order.DESC).forEachRemaining(expected::add);
+		Assert.assertEquals(expected, range);
+		Assert.assertEquals(sortedList.count(60, 130), intSortedList.count(60, 130));
+		Assert.assertEquals(sortedList.nextIndex(0), intSortedList.nextIndex(0));
+	}
+
+	@Test
+	public void testRemoveKeepsOrder() {
+		// GIVEN:
+		IntSortedList sortedList = new IntSortedList(3);
+		for (int id = 0; id < 100; id++) {
+			sortedList.add(id % 2, id);
+		}
+
+		// WHEN:
+		for (int id = 0; id < 100; id++) {
+			if (id % 10 != 0) {
+				sortedList.remove(id % 2, id);
+			}
+		}
+		sortedList.add(0, 100);
+
+		// THEN:
+		Assert.assertEquals(11, sortedList.size());
+		Assert.assertEquals(11, sortedList.count(0));
+		Assert.assertEquals(0, sortedList.count(1));
+		Assert.assertEquals(-1, sortedList.nextIndex(1));
+		Assert.assertFalse(sortedList.contains(55));
+		Assert.assertArrayEquals(new int[]{100, 90, 80, 70, 60, 50, 40, 30, 20, 10, 0}, sortedList.toArray(Order.ASC));
+
+		sortedList.remove(0, 100);
+		sortedList.add(0, 55);
+		Assert.assertArrayEquals(new int[]{55, 90, 80, 70, 60, 50, 40, 30, 20, 10, 0}, sortedList.toArray(Order.DESC));
+	}
+
+	@Test(expected = ConcurrentModificationException.class)
+	public void testIteratorFailsOnModification() {
+		IntSortedList sortedList = new IntSortedList(5);
+		sortedList.add(1, 1);
+		sortedList.add(2, 2);
+		PrimitiveIterator.OfInt iterator = sortedList.iterator();
+		sortedList.add(3, 3);
+		iterator.nextInt();
+	}
+
+	private static List<Integer> toList(int[] ids) {
+		List<Integer> list = new ArrayList<>();
+		for (int id : ids) {
+			list.add(id);
+		}
+		return list;
+	}
+}
@@ -0,0 +1,64 @@
+package com.example.familytree.collections;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class MappedFamilyGraphTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSnapshotRoundTrip() throws IOException {
+		// GIVEN:
+		CompactFamilyGraph graph = new CompactFamilyGraph(100);
+		int parent = graph.add("Zoë", 90);
+		for (int i = 0; i < 1000; i++) {
+			int child = graph.add("Person" + i, i % 90);
+			graph.addChild(parent, child);
+			graph.setParent1(child, parent);
+		}
+		int grandChild = graph.add("😀 Łukasz", 0);
+		graph.setParent2(grandChild, graph.indexOf("Person5"));
+		graph.addChild(graph.indexOf("Person5"), grandChild);
+		Path path = folder.getRoot().toPath().resolve("tree.snapshot");
+
+		// WHEN:
+		MappedFamilyGraph.writeSnapshot(graph, path);
+		MappedFamilyGraph mapped = MappedFamilyGraph.open(path);
+
+		// THEN:
+		Assert.assertEquals(graph.size(), mapped.size());
+		Assert.assertEquals(graph.maxAge(), mapped.maxAge());
+		for (int id = 0; id < graph.size(); id++) {
+			Assert.assertEquals(graph.name(id), mapped.name(id));
+			Assert.assertEquals(id, mapped.indexOf(graph.name(id)));
+			Assert.assertEquals(graph.age(id), mapped.age(id));
+			Assert.assertEquals(graph.parent1(id), mapped.parent1(id));
+			Assert.assertEquals(graph.parent2(id), mapped.parent2(id));
+			Assert.assertEquals(graph.childCount(id), mapped.childCount(id));
+			for (int i = 0; i < graph.childCount(id); i++) {
+				Assert.assertEquals(graph.child(id, i), mapped.child(id, i));
+			}
+			Assert.assertEquals(graph.nextInBucket(id), mapped.nextInBucket(id));
+		}
+		for (int age = 0; age <= graph.maxAge(); age++) {
+			Assert.assertEquals(graph.firstInBucket(age), mapped.firstInBucket(age));
+		}
+		Assert.assertEquals(-1, mapped.indexOf("Zoe"));
+		Assert.assertEquals(-1, mapped.indexOf("Person1000"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotSnapshotFile() throws IOException {
+		Path path = folder.newFile("tree.snapshot").toPath();
+		Files.write(path, new byte[256]);
+		MappedFamilyGraph.open(path);
+	}
+}
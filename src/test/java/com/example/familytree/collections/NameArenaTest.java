@@ -0,0 +1,70 @@
+package com.example.familytree.collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class NameArenaTest {
+
+	@Test
+	public void testRoundTrip() {
+		// GIVEN:
+		StringBuilder longName = new StringBuilder();
+		for (int i = 0; i < 300; i++) {
+			longName.append('ł');
+		}
+		List<String> names = Arrays.asList("Person1", "", "Zoë", "Łukasz", "李小龍", "😀 Smiley",
+				"unpaired \uD800 surrogate", longName.toString());
+
+		for (boolean offHeap : new boolean[]{false, true}) {
+			NameArena arena = new NameArena(offHeap);
+
+			// WHEN:
+			for (String name : names) {
+				arena.add(name);
+			}
+
+			// THEN:
+			Assert.assertEquals(names.size(), arena.size());
+			for (int id = 0; id < names.size(); id++) {
+				String name = names.get(id);
+				Assert.assertEquals(name, arena.get(id));
+				Assert.assertEquals(name.hashCode(), arena.hashCode(id));
+				Assert.assertTrue(arena.equals(id, name));
+				Assert.assertFalse(arena.equals(id, name + "x"));
+				Assert.assertFalse(arena.equals(id, "x" + name));
+			}
+		}
+	}
+
+	@Test
+	public void testNamesFillChunks() {
+		// GIVEN:
+		NameArena arena = new NameArena(false);
+		List<String> names = new ArrayList<>();
+
+		// WHEN:
+		for (int i = 0; i < 300000; i++) {
+			String name = "Person" + i;
+			names.add(name);
+			Assert.assertEquals(i, arena.add(name));
+		}
+
+		// THEN:
+		Assert.assertTrue(arena.allocatedBytes() > 1 << 20);
+		for (int id = 0; id < names.size(); id += 997) {
+			Assert.assertEquals(names.get(id), arena.get(id));
+		}
+		Assert.assertEquals(names.get(names.size() - 1), arena.get(names.size() - 1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooLongName() {
+		char[] name = new char[1 << 14];
+		Arrays.fill(name, 'a');
+		new NameArena(false).add(new String(name));
+	}
+}
@@ -0,0 +1,149 @@
+package com.example.familytree.collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+public class NameTrieTest {
+
+	@Test
+	public void testPrefixSearch() {
+		// GIVEN:
+		NameTrie<String> trie = new NameTrie<>();
+
+		// WHEN:
+		for (String name : Arrays.asList("Johnson", "John", "Joan", "Jo", "Jack", "Johanna", "Mary")) {
+			trie.put(name, name);
+		}
+
+		// THEN:
+		Assert.assertEquals(7, trie.size());
+		Assert.assertEquals(Arrays.asList("Jo", "Joan", "Johanna", "John", "Johnson"), trie.prefixSearch("Jo", 10));
+		Assert.assertEquals(Arrays.asList("Johanna", "John", "Johnson"), trie.prefixSearch("Joh", 10));
+		Assert.assertEquals(Arrays.asList("Jack", "Jo"), trie.prefixSearch("J", 2));
+		Assert.assertEquals(Arrays.asList("Johnson"), trie.prefixSearch("Johns", 10));
+		Assert.assertEquals(Collections.emptyList(), trie.prefixSearch("Jos", 10));
+		Assert.assertEquals(Collections.emptyList(), trie.prefixSearch("Johnsons", 10));
+		Assert.assertEquals(7, trie.prefixSearch("", 10).size());
+		Assert.assertEquals("John", trie.get("John"));
+		Assert.assertNull(trie.get("Joh"));
+	}
+
+	@Test
+	public void testFuzzySearch() {
+		// GIVEN:
+		NameTrie<String> trie = new NameTrie<>();
+		for (String name : Arrays.asList("Jonathan", "Johnson", "John", "Jane", "Mary", "Marie")) {
+			trie.put(name, name);
+		}
+
+		// WHEN:
+		List<String> exact = trie.fuzzySearch("Jon", 0, 10);
+		List<String> oneEdit = trie.fuzzySearch("Jon", 1, 10);
+		List<String> misspelled = trie.fuzzySearch("Mery", 1, 10);
+
+		// THEN:
+		Assert.assertEquals(Arrays.asList("Jonathan"), exact);
+		// the closest names come first
+		Assert.assertEquals(Arrays.asList("Jonathan", "Jane", "John", "Johnson"), oneEdit);
+		Assert.assertEquals(Arrays.asList("Mary"), misspelled);
+		Assert.assertEquals(Arrays.asList("Mary", "Marie"), trie.fuzzySearch("Mery", 2, 10));
+		Assert.assertEquals(Arrays.asList("Jonathan", "Jane"), trie.fuzzySearch("Jon", 1, 2));
+	}
+
+	@Test
+	public void testRemove() {
+		// GIVEN:
+		NameTrie<String> trie = new NameTrie<>();
+		for (String name : Arrays.asList("Anna", "Ann", "Annabel", "Anne")) {
+			trie.put(name, name);
+		}
+
+		// WHEN:
+		String removed = trie.remove("Ann");
+		String missing = trie.remove("An");
+		trie.remove("Anne");
+		trie.put("Annabel", "Annabel2");
+
+		// THEN:
+		Assert.assertEquals("Ann", removed);
+		Assert.assertNull(missing);
+		Assert.assertEquals(2, trie.size());
+		Assert.assertEquals(Arrays.asList("Anna", "Annabel2"), trie.prefixSearch("Ann", 10));
+		Assert.assertNull(trie.get("Ann"));
+	}
+
+	@Test
+	public void testSameResultsAsScan() {
+		// GIVEN:
+		NameTrie<String> trie = new NameTrie<>();
+		TreeSet<String> names = new TreeSet<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 5000; i++) {
+			String name = randomName(random);
+			trie.put(name, name);
+			names.add(name);
+		}
+
+		// WHEN:
+		List<String> removed = new ArrayList<>(names).subList(0, 2000);
+		for (int i = 0; i < removed.size(); i += 2) {
+			Assert.assertEquals(removed.get(i), trie.remove(removed.get(i)));
+			names.remove(removed.get(i));
+		}
+
+		// THEN:
+		Assert.assertEquals(names.size(), trie.size());
+		for (int i = 0; i < 100; i++) {
+			String prefix = randomName(random).substring(0, 1 + random.nextInt(3));
+			Assert.assertEquals(names.stream().filter(name -> name.startsWith(prefix)).collect(Collectors.toList()),
+					trie.prefixSearch(prefix, Integer.MAX_VALUE));
+			Assert.assertEquals(new TreeSet<>(names.stream()
+							.filter(name -> prefixDistance(prefix, name) <= 1)
+							.collect(Collectors.toList())),
+					new TreeSet<>(trie.fuzzySearch(prefix, 1, Integer.MAX_VALUE)));
+		}
+	}
+
+	private static String randomName(Random random) {
+		StringBuilder name = new StringBuilder();
+		int length = 3 + random.nextInt(6);
+		for (int i = 0; i < length; i++) {
+			name.append((char) ('a' + random.nextInt(5)));
+		}
+		return name.toString();
+	}
+
+	/**
+	 * Returns the min edit distance between a prefix and the prefixes of a name.
+	 */
+	private static int prefixDistance(String prefix, String name) {
+		int min = Integer.MAX_VALUE;
+		for (int length = 0; length <= name.length(); length++) {
+			min = Math.min(min, distance(prefix, name.substring(0, length)));
+		}
+		return min;
+	}
+
+	private static int distance(String a, String b) {
+		int[][] d = new int[a.length() + 1][b.length() + 1];
+		for (int i = 0; i <= a.length(); i++) {
+			for (int j = 0; j <= b.length(); j++) {
+				if (i == 0 || j == 0) {
+					d[i][j] = i + j;
+				} else {
+					d[i][j] = Math.min(d[i - 1][j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1),
+							Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+				}
+			}
+		}
+		return d[a.length()][b.length()];
+	}
+}
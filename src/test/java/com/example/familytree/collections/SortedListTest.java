@@ -4,7 +4,12 @@ import com.example.familytree.enums.Order;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 public class SortedListTest {
 
@@ -55,6 +60,109 @@ public class SortedListTest {
 		Assert.assertEquals(Arrays.asList(5, 4, 3, 2, 1, 0), sortedList.toOrderedList(Order.DESC));
 	}
 
+	@Test
+	public void testIteratorAfter() {
+		// GIVEN:
+		SortedList<String> sortedList = new SortedList<>(5);
+		sortedList.add(1, "a");
+		sortedList.add(3, "b");
+		sortedList.add(3, "c");
+		sortedList.add(4, "d");
+		List<String> asc = sortedList.toOrderedList(Order.ASC);
+		List<String> desc = sortedList.toOrderedList(Order.DESC);
+
+		// WHEN:
+		List<String> ascAfter = new ArrayList<>();
+		sortedList.iteratorAfter(Order.ASC, 3, asc.get(1)).forEachRemaining(ascAfter::add);
+		List<String> descAfter = new ArrayList<>();
+		sortedList.iteratorAfter(Order.DESC, 3, desc.get(1)).forEachRemaining(descAfter::add);
+		List<String> descFrom = new ArrayList<>();
+		sortedList.iterator(Order.DESC, 2).forEachRemaining(descFrom::add);
 
+		// THEN:
+		Assert.assertEquals(asc.subList(2, 4), ascAfter);
+		Assert.assertEquals(desc.subList(2, 4), descAfter);
+		Assert.assertEquals(Arrays.asList("a"), descFrom);
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void testIteratorAfterMissingElement() {
+		SortedList<String> sortedList = new SortedList<>(5);
+		sortedList.add(1, "a");
+		sortedList.iteratorAfter(Order.ASC, 2, "a");
+	}
 
+	@Test
+	public void testRemove() {
+		// GIVEN:
+		SortedList<String> sortedList = new SortedList<>(5);
+		SortedList.Node<String> a = sortedList.add(1, "a");
+		SortedList.Node<String> b = sortedList.add(3, "b");
+		SortedList.Node<String> c = sortedList.add(3, "c");
+		SortedList.Node<String> d = sortedList.add(3, "d");
+		Iterator<String> iterator = sortedList.iterator();
+		iterator.next();
+
+		// WHEN:
+		sortedList.remove(3, c);
+		sortedList.remove(1, a);
+		sortedList.remove(3, d);
+
+		// THEN:
+		Assert.assertEquals(Arrays.asList("b"), sortedList.toOrderedList(Order.ASC));
+		Assert.assertEquals(1, sortedList.size());
+		Assert.assertEquals(0, sortedList.count(1));
+		Assert.assertEquals(1, sortedList.count(0, 5));
+		Assert.assertEquals(3, sortedList.nextIndex(0));
+		Assert.assertEquals("b", b.getItem());
+		// an iterator standing on a removed node carries on with its successors
+		List<String> rest = new ArrayList<>();
+		iterator.forEachRemaining(rest::add);
+		Assert.assertEquals(Arrays.asList("d", "b"), rest);
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void testRemoveTwice() {
+		SortedList<String> sortedList = new SortedList<>(5);
+		SortedList.Node<String> a = sortedList.add(1, "a");
+		sortedList.add(1, "b");
+		sortedList.remove(1, a);
+		sortedList.remove(1, a);
+	}
+
+	@Test
+	public void testCountAndRange() {
+		// GIVEN:
+		SortedList<Integer> sortedList = new SortedList<>(200);
+
+		// WHEN:
+		for (int i = 0; i <= 200; i += 7) {
+			sortedList.add(i, i);
+			sortedList.add(i, i);
+		}
+
+		// THEN:
+		Assert.assertEquals(2, sortedList.count(63));
+		Assert.assertEquals(0, sortedList.count(64));
+		Assert.assertEquals(2 * 29, sortedList.count(0, 200));
+		Assert.assertEquals(6, sortedList.count(60, 77));
+		Assert.assertEquals(0, sortedList.count(64, 69));
+		Assert.assertEquals(70, sortedList.nextIndex(64));
+		Assert.assertEquals(-1, sortedList.nextIndex(197));
+
+		List<Integer> asc = new ArrayList<>();
+		sortedList.range(60, 130, Order.ASC).forEachRemaining(asc::add);
+		Assert.assertEquals(Arrays.asList(63, 63, 70, 70, 77, 77, 84, 84, 91, 91, 98, 98, 105, 105, 112, 112,
+				119, 119, 126, 126), asc);
+		List<Integer> desc = new ArrayList<>();
+		sortedList.range(60, 130, Order.DESC).forEachRemaining(desc::add);
+		Collections.reverse(desc);
+		Assert.assertEquals(asc, desc);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongRange() {
+		SortedList<Object> sortedList = new SortedList<>(10);
+		sortedList.count(5, 4);
+	}
 }
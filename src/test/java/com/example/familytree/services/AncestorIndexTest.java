@@ -0,0 +1,252 @@
+package com.example.familytree.services;
+
+import com.example.familytree.entities.Person;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+public class AncestorIndexTest {
+
+	private final AncestorIndex ancestorIndex = new AncestorIndex();
+
+	@Test
+	public void testRelations() {
+		// GIVEN:
+		Person grandParent = add("GrandParent", 90, null, null);
+		Person parent1 = add("Parent1", 60, grandParent, null);
+		Person parent2 = add("Parent2", 60, null, null);
+		Person child = add("Child", 30, parent1, parent2);
+		// a person added later as a parent of an existing one
+		Person grandParent2 = add("GrandParent2", 80, null, null, parent2);
+		Person other = add("Other", 50, null, null);
+
+		// THEN:
+		Assert.assertTrue(ancestorIndex.isAncestor(grandParent, child));
+		Assert.assertTrue(ancestorIndex.isAncestor(grandParent2, child));
+		Assert.assertTrue(ancestorIndex.isAncestor(parent2, child));
+		Assert.assertFalse(ancestorIndex.isAncestor(child, grandParent));
+		Assert.assertFalse(ancestorIndex.isAncestor(grandParent, parent2));
+		Assert.assertFalse(ancestorIndex.isAncestor(child, child));
+
+		Assert.assertTrue(ancestorIndex.haveCommonAncestor(parent1, child));
+		Assert.assertFalse(ancestorIndex.haveCommonAncestor(parent1, parent2));
+		Assert.assertFalse(ancestorIndex.isAncestor(other, child));
+		Assert.assertTrue(ancestorIndex.haveCommonDescendant(Arrays.asList(grandParent, grandParent2)));
+		Assert.assertFalse(ancestorIndex.haveCommonDescendant(Arrays.asList(grandParent, other)));
+		Assert.assertTrue(ancestorIndex.haveCommonDescendant(Arrays.asList(child, child)));
+	}
+
+	@Test
+	public void testDescendantCounts() {
+		// GIVEN:
+		Person grandParent = add("GrandParent", 90, null, null);
+		Person parent1 = add("Parent1", 60, grandParent, null);
+		Person aunt = add("Aunt", 60, grandParent, null);
+		Person child = add("Child", 30, parent1, null);
+		Assert.assertEquals(3, ancestorIndex.descendantCount(grandParent));
+
+		// WHEN:
+		// the grandparent reaches the child through both of its parents now
+		Person parent2 = add("Parent2", 40, aunt, null, child);
+		Person grandChild = add("GrandChild", 10, child, null);
+
+		// THEN:
+		Assert.assertEquals(5, ancestorIndex.descendantCount(grandParent));
+		Assert.assertEquals(3, ancestorIndex.descendantCount(aunt));
+		Assert.assertEquals(2, ancestorIndex.descendantCount(parent2));
+		Assert.assertEquals(0, ancestorIndex.descendantCount(grandChild));
+	}
+
+	@Test
+	public void testRemove() {
+		// GIVEN:
+		Person grandParent = add("GrandParent", 90, null, null);
+		Person parent1 = add("Parent1", 60, grandParent, null);
+		Person parent2 = add("Parent2", 60, null, null);
+		Person child = add("Child", 30, parent1, parent2);
+		Person grandChild = add("GrandChild", 10, child, null);
+
+		// WHEN:
+		ancestorIndex.remove(parent1);
+		grandParent.removeChild(parent1);
+		child.removeParent(parent1);
+		Person newParent1 = add("NewParent1", 50, null, null, child);
+
+		// THEN:
+		Assert.assertFalse(ancestorIndex.isAncestor(grandParent, grandChild));
+		Assert.assertTrue(ancestorIndex.isAncestor(parent2, grandChild));
+		Assert.assertTrue(ancestorIndex.isAncestor(newParent1, grandChild));
+		Assert.assertFalse(ancestorIndex.haveCommonAncestor(grandParent, child));
+		Assert.assertEquals(0, ancestorIndex.descendantCount(grandParent));
+		Assert.assertEquals(2, ancestorIndex.descendantCount(newParent1));
+	}
+
+	@Test
+	public void testRandomFamilies() {
+		// GIVEN:
+		// enough persons for the sets of ancestors to take several levels of trie nodes
+		Random random = new Random(42);
+		List<Person> persons = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			int age = random.nextInt(10000);
+			Person parent1 = randomRelative(persons, random, p -> p.getAge() > age);
+			// the parents pass the cycle check, as the descendant counts expect
+			Person parent2 = randomRelative(persons, random, p -> p.getAge() > age && p != parent1
+					&& (parent1 == null || Collections.disjoint(ancestors(parent1), ancestors(p))));
+			Person child = randomRelative(persons, random, p -> p.getAge() < age && p.getParent2() == null);
+			persons.add(child == null
+					? add("Person" + i, age, parent1, parent2)
+					: add("Person" + i, age, parent1, parent2, child));
+			// some counts are refreshed in the meantime, so that later additions find them up to date
+			Person counted = persons.get(random.nextInt(persons.size()));
+			Assert.assertEquals(descendants(counted).size() - 1, ancestorIndex.descendantCount(counted));
+		}
+
+		// WHEN:
+		// removals rebuild the removed persons' descendants' sets, and their numbers are reused by the next additions
+		for (int i = 0; i < 300; i++) {
+			Person removed = persons.remove(random.nextInt(persons.size()));
+			ancestorIndex.remove(removed);
+			for (Person parent : Arrays.asList(removed.getParent1(), removed.getParent2())) {
+				if (parent != null) {
+					parent.removeChild(removed);
+				}
+			}
+			for (Person child : removed.getChildren()) {
+				child.removeParent(removed);
+			}
+			if (i % 2 == 0) {
+				int age = random.nextInt(10000);
+				persons.add(add("Added" + i, age, randomRelative(persons, random, p -> p.getAge() > age), null));
+			}
+		}
+
+		// THEN:
+		for (int i = 0; i < 20000; i++) {
+			Person person1 = persons.get(random.nextInt(persons.size()));
+			Person person2 = persons.get(random.nextInt(persons.size()));
+			Set<Person> ancestors1 = ancestors(person1);
+			Set<Person> ancestors2 = ancestors(person2);
+
+			Assert.assertEquals(ancestors2.contains(person1) && person1 != person2,
+					ancestorIndex.isAncestor(person1, person2));
+			Assert.assertEquals(!Collections.disjoint(ancestors1, ancestors2),
+					ancestorIndex.haveCommonAncestor(person1, person2));
+			Assert.assertEquals(!Collections.disjoint(descendants(person1), descendants(person2)),
+					ancestorIndex.haveCommonDescendant(Arrays.asList(person1, person2)));
+			AncestorIndex.CommonAncestors common = ancestorIndex.nearestCommonAncestors(person1, person2);
+			Assert.assertEquals(nearestDistance(person1, person2), common == null ? -1 : common.generations1 + common.generations2);
+		}
+		for (Person person : persons) {
+			Assert.assertEquals(descendants(person).size() - 1, ancestorIndex.descendantCount(person));
+		}
+	}
+
+	private Person add(String name, int age, Person parent1, Person parent2, Person... children) {
+		Person person = new Person.Builder(name, age)
+				.parent1(parent1)
+				.parent2(parent2)
+				.children(new ArrayList<>(Arrays.asList(children)))
+				.build();
+		if (parent1 != null) {
+			parent1.addChild(person);
+		}
+		if (parent2 != null) {
+			parent2.addChild(person);
+		}
+		for (Person child : children) {
+			if (child.getParent1() == null) {
+				child.setParent1(person);
+			} else {
+				child.setParent2(person);
+			}
+		}
+		ancestorIndex.add(person);
+		return person;
+	}
+
+	private Person randomRelative(List<Person> persons, Random random, Predicate<Person> filter) {
+		for (int attempt = 0; attempt < 3 && !persons.isEmpty(); attempt++) {
+			Person person = persons.get(random.nextInt(persons.size()));
+			if (filter.test(person)) {
+				return person;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the smallest sum of the generation distances of two persons to a common ancestor, -1 if there's none.
+	 */
+	private int nearestDistance(Person person1, Person person2) {
+		Map<Person, Integer> generations1 = generations(person1);
+		Map<Person, Integer> generations2 = generations(person2);
+		int nearest = -1;
+		for (Map.Entry<Person, Integer> entry : generations1.entrySet()) {
+			Integer generation2 = generations2.get(entry.getKey());
+			if (generation2 != null && (nearest == -1 || entry.getValue() + generation2 < nearest)) {
+				nearest = entry.getValue() + generation2;
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * Returns the generation distances of a person's ancestors, including the person, found breadth-first.
+	 */
+	private Map<Person, Integer> generations(Person person) {
+		Map<Person, Integer> generations = new IdentityHashMap<>();
+		Deque<Person> queue = new ArrayDeque<>();
+		generations.put(person, 0);
+		queue.add(person);
+		while (!queue.isEmpty()) {
+			Person ancestor = queue.pollFirst();
+			for (Person parent : Arrays.asList(ancestor.getParent1(), ancestor.getParent2())) {
+				if (parent != null && !generations.containsKey(parent)) {
+					generations.put(parent, generations.get(ancestor) + 1);
+					queue.add(parent);
+				}
+			}
+		}
+		return generations;
+	}
+
+	/**
+	 * Returns a person's descendants, including the person.
+	 */
+	private Set<Person> descendants(Person person) {
+		Set<Person> descendants = Collections.newSetFromMap(new IdentityHashMap<>());
+		Deque<Person> stack = new ArrayDeque<>();
+		stack.add(person);
+		while (!stack.isEmpty()) {
+			Person descendant = stack.pollFirst();
+			if (descendants.add(descendant)) {
+				stack.addAll(descendant.getChildren());
+			}
+		}
+		return descendants;
+	}
+
+	/**
+	 * Returns a person's ancestors, including the person.
+	 */
+	private Set<Person> ancestors(Person person) {
+		Set<Person> ancestors = Collections.newSetFromMap(new IdentityHashMap<>());
+		Deque<Person> stack = new ArrayDeque<>();
+		stack.add(person);
+		while (!stack.isEmpty()) {
+			Person ancestor = stack.pollFirst();
+			if (ancestors.add(ancestor)) {
+				if (ancestor.getParent1() != null) {
+					stack.add(ancestor.getParent1());
+				}
+				if (ancestor.getParent2() != null) {
+					stack.add(ancestor.getParent2());
+				}
+			}
+		}
+		return ancestors;
+	}
+}
@@ -0,0 +1,85 @@
+package com.example.familytree.services;
+
+import com.example.familytree.entities.Person;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class AncestorTraversalTest {
+
+	private final AncestorTraversal traversal = new AncestorTraversal();
+
+	@Test
+	public void testPedigreeCollapse() {
+		// GIVEN:
+		// every generation has two persons who are both parents of both persons of the next generation
+		Person parent1 = new Person.Builder("Founder1", 100).build();
+		Person parent2 = new Person.Builder("Founder2", 100).build();
+		for (int generation = 1; generation <= 40; generation++) {
+			Person child1 = new Person.Builder("Child" + generation + "a", 100 - generation)
+					.parent1(parent1)
+					.parent2(parent2)
+					.build();
+			Person child2 = new Person.Builder("Child" + generation + "b", 100 - generation)
+					.parent1(parent1)
+					.parent2(parent2)
+					.build();
+			parent1 = child1;
+			parent2 = child2;
+		}
+
+		// WHEN:
+		List<List<String>> generations = traversal.collect(parent1, Integer.MAX_VALUE);
+
+		// THEN:
+		Assert.assertEquals(41, generations.size());
+		Assert.assertEquals(Arrays.asList("Child40a"), generations.get(0));
+		Assert.assertEquals(Arrays.asList("Child39a", "Child39b"), generations.get(1));
+		Assert.assertEquals(Arrays.asList("Founder1", "Founder2"), generations.get(40));
+	}
+
+	@Test
+	public void testMaxDepthAndStop() {
+		// GIVEN:
+		Person grandParent = new Person.Builder("GrandParent", 90).build();
+		Person parent1 = new Person.Builder("Parent1", 60).parent1(grandParent).build();
+		Person parent2 = new Person.Builder("Parent2", 60).build();
+		Person child = new Person.Builder("Child", 30).parent1(parent1).parent2(parent2).build();
+
+		// WHEN:
+		List<List<String>> generations = traversal.collect(child, 1);
+		List<String> names = new ArrayList<>();
+		traversal.traverse(child, Integer.MAX_VALUE, (generation, person) -> {
+			// a sink may run another traversal
+			names.add(person.getName() + traversal.collect(person, 0));
+			return names.size() < 2;
+		});
+
+		// THEN:
+		Assert.assertEquals(Arrays.asList(Arrays.asList("Child"), Arrays.asList("Parent1", "Parent2")), generations);
+		Assert.assertEquals(Arrays.asList("Child[[Child]]", "Parent1[[Parent1]]"), names);
+	}
+
+	@Test
+	public void testDoesntRetainPersons() throws InterruptedException {
+		// GIVEN:
+		Person parent = new Person.Builder("Parent", 60).build();
+		WeakReference<Person> reference = new WeakReference<>(parent);
+		traversal.collect(new Person.Builder("Child", 30).parent1(parent).build(), Integer.MAX_VALUE);
+
+		// WHEN:
+		parent = null;
+		for (int attempt = 0; attempt < 10 && reference.get() != null; attempt++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+
+		// THEN:
+		// the thread's buffers are kept for the next traversals, but the persons aren't
+		Assert.assertNull(reference.get());
+	}
+}
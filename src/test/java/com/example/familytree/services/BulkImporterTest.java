@@ -0,0 +1,93 @@
+package com.example.familytree.services;
+
+import com.example.familytree.responses.ImportReport;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class BulkImporterTest {
+
+	private final DBService dbService = Mockito.mock(DBService.class);
+	private final FamilyTree familyTree = new FamilyTree(dbService, 100);
+	private final BulkImporter bulkImporter = new BulkImporter(familyTree);
+
+	@Test
+	public void testImportNdjson() throws IOException {
+		// GIVEN:
+		String ndjson = "{\"name\": \"Person3\", \"age\": 20, \"parent1\": \"Person1\", \"parent2\": \"Person2\"}\n"
+				+ "\n"
+				+ "{\"name\": \"Person1\", \"age\": 60}\n"
+				+ "{\"name\": \"Person2\", \"age\": 50, \"children\": [\"Person4\"]}\n"
+				+ "{\"name\": \"Person4\", \"age\": 25, \"parent1\": \"Person1\"}\n"
+				+ "{\"name\": \n";
+
+		// WHEN:
+		ImportReport report = bulkImporter.importNdjson(stream(ndjson));
+
+		// THEN:
+		Assert.assertEquals(5, report.getRows());
+		Assert.assertEquals(4, report.getImported());
+		Assert.assertEquals(1, report.getRejected());
+		Assert.assertEquals(6, report.getRejections().get(0).getLine());
+		Assert.assertEquals(Arrays.asList("Person3", "Person1", "Person2"), familyTree.printUpwards("Person3"));
+		Assert.assertEquals(Arrays.asList("Person4", "Person1", "Person2"), familyTree.printUpwards("Person4"));
+	}
+
+	@Test
+	public void testFirstRejectionsReported() throws IOException {
+		// GIVEN:
+		// a family tree rejection on the line 2, reported after the parsing rejections of all of the later lines
+		StringBuilder ndjson = new StringBuilder("{\"name\": \"Person1\", \"age\": 60}\n")
+				.append("{\"name\": \"Person2\", \"age\": 20, \"parent1\": \"Nobody\"}\n");
+		for (int i = 0; i < 1500; i++) {
+			ndjson.append("{\"name\": \n");
+		}
+
+		// WHEN:
+		ImportReport report = bulkImporter.importNdjson(stream(ndjson.toString()));
+
+		// THEN:
+		Assert.assertEquals(1501, report.getRejected());
+		Assert.assertEquals(1000, report.getRejections().size());
+		Assert.assertEquals(2, report.getRejections().get(0).getLine());
+		Assert.assertEquals("Person2", report.getRejections().get(0).getName());
+		Assert.assertEquals(1001, report.getRejections().get(999).getLine());
+	}
+
+	@Test
+	public void testImportCsv() throws IOException {
+		// GIVEN:
+		String csv = "age,name,children,parent1\n"
+				+ "30,\"Smith, John\",,\n"
+				+ "60,Person1,\"Smith, John;Person2\",\n"
+				+ "20,Person2,,\n"
+				+ "10,Person3,,Person4\n"
+				+ "\"10,Person5\n";
+
+		// WHEN:
+		ImportReport report = bulkImporter.importCsv(stream(csv));
+
+		// THEN:
+		Assert.assertEquals(5, report.getRows());
+		Assert.assertEquals(3, report.getImported());
+		Assert.assertEquals("Person3", report.getRejections().get(0).getName());
+		Assert.assertEquals("Name Person4 doesn't exist", report.getRejections().get(0).getReason());
+		Assert.assertEquals(6, report.getRejections().get(1).getLine());
+		Assert.assertEquals(Arrays.asList("Smith, John", "Person2"), familyTree.getPerson("Person1").getChildrenNames());
+	}
+
+	@Test
+	public void testParseCsvLine() {
+		Assert.assertEquals(Arrays.asList("a", null, "b,\"c\"", ""), BulkImporter.parseCsvLine("a,,\"b,\"\"c\"\"\",\"\""));
+	}
+
+	private InputStream stream(String text) {
+		return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,146 @@
+package com.example.familytree.services;
+
+import com.example.familytree.entities.Person;
+import com.example.familytree.enums.Order;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+public class CompactFamilyTreeTest {
+
+	private final DBService dbService = Mockito.mock(DBService.class);
+	private final int maxAge = 100;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongAge() {
+		CompactFamilyTree familyTree = new CompactFamilyTree(dbService, maxAge);
+		familyTree.addPerson("Person1", 30, null, null, null);
+		familyTree.addPerson("Person2", 50, "Person1", null, null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testChildAlreadyHasBothParents() {
+		CompactFamilyTree familyTree = new CompactFamilyTree(dbService, maxAge);
+		familyTree.addPerson("Person1", 50, null, null, null);
+		familyTree.addPerson("Person2", 70, null, null, null);
+		familyTree.addPerson("Person3", 30, "Person1", "Person2", null);
+		familyTree.addPerson("Person4", 50, null, null, Arrays.asList("Person3"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCycleDetectionWhenAddingParent() {
+		CompactFamilyTree familyTree = new CompactFamilyTree(dbService, maxAge);
+		familyTree.addPerson("Person1", 30, null, null, null);
+		familyTree.addPerson("Person2", 40, null, null, null);
+		familyTree.addPerson("Person3", 10, "Person1", "Person2", null);
+		familyTree.addPerson("Person4", 60, null, null, Arrays.asList("Person1", "Person2"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCycleDetectionWhenAddingChild() {
+		CompactFamilyTree familyTree = new CompactFamilyTree(dbService, maxAge);
+		familyTree.addPerson("Person1", 50, null, null, null);
+		familyTree.addPerson("Person2", 70, null, null, null);
+		familyTree.addPerson("Person3", 30, "Person1", "Person2", null);
+		familyTree.addPerson("Person4", 10, "Person1", "Person3", null);
+	}
+
+	@Test
+	public void testPersonView() {
+		// GIVEN:
+		CompactFamilyTree familyTree = new CompactFamilyTree(dbService, maxAge);
+		familyTree.addPerson("Person1", 50, null, null, null);
+		familyTree.addPerson("Person2", 10, null, null, null);
+
+		// WHEN:
+		familyTree.addPerson("Person3", 30, "Person1", null, Arrays.asList("Person2"));
+		Person person = familyTree.getPerson("Person3");
+
+		// THEN:
+		Assert.assertEquals(30, person.getAge());
+		Assert.assertEquals("Person1", person.getParent1Name());
+		Assert.assertNull(person.getParent2Name());
+		Assert.assertEquals(Arrays.asList("Person2"), person.getChildrenNames());
+		Assert.assertEquals("Person3", familyTree.getPerson("Person2").getParent1Name());
+		Assert.assertNull(familyTree.getPerson("Person4"));
+		Mockito.verify(dbService).savePerson(Mockito.refEq(person));
+	}
+
+	@Test
+	public void testPrintUpwards() {
+		// GIVEN:
+		CompactFamilyTree familyTree = new CompactFamilyTree(dbService, maxAge);
+		familyTree.addPerson("Person1", 90, null, null, null);
+		familyTree.addPerson("Person2", 91, null, null, null);
+		familyTree.addPerson("Person3", 70, "Person1", "Person2", null);
+		familyTree.addPerson("Person4", 72, null, null, null);
+		familyTree.addPerson("Person5", 50, "Person3", "Person4", null);
+
+		// WHEN:
+		List<String> personNames = familyTree.printUpwards("Person5");
+
+		// THEN:
+		Assert.assertEquals(Arrays.asList("Person5", "Person3", "Person4", "Person1", "Person2"), personNames);
+	}
+
+	@Test
+	public void testSortByAge() {
+		// GIVEN:
+		CompactFamilyTree familyTree = new CompactFamilyTree(dbService, maxAge);
+		for (int i = 0; i < 100; i++) {
+			familyTree.addPerson("Person" + i, (i * 37) % 101, null, null, null);
+		}
+
+		// WHEN:
+		List<Person> asc = familyTree.getSortedFamilyList(Order.ASC);
+		List<Person> desc = familyTree.getSortedFamilyList(Order.DESC);
+
+		// THEN:
+		Assert.assertEquals(100, asc.size());
+		Assert.assertEquals(100, desc.size());
+		for (int i = 1; i < asc.size(); i++) {
+			Assert.assertTrue(asc.get(i-1).getAge() <= asc.get(i).getAge());
+			Assert.assertTrue(desc.get(i-1).getAge() >= desc.get(i).getAge());
+		}
+	}
+
+	@Test
+	public void testServeFromSnapshot() throws IOException {
+		// GIVEN:
+		CompactFamilyTree familyTree = new CompactFamilyTree(dbService, maxAge);
+		familyTree.addPerson("Person1", 90, null, null, null);
+		familyTree.addPerson("Person2", 91, null, null, null);
+		familyTree.addPerson("Person3", 70, "Person1", "Person2", null);
+		Path path = folder.getRoot().toPath().resolve("tree.snapshot");
+
+		// WHEN:
+		familyTree.writeSnapshot(path);
+		CompactFamilyTree snapshot = CompactFamilyTree.openSnapshot(dbService, path);
+
+		// THEN:
+		Assert.assertEquals(3, snapshot.size());
+		Assert.assertEquals(Arrays.asList("Person3", "Person1", "Person2"), snapshot.printUpwards("Person3"));
+		Assert.assertEquals(Arrays.asList("Person3"), snapshot.getPerson("Person1").getChildrenNames());
+		Assert.assertEquals(91, snapshot.getSortedFamilyList(Order.DESC).get(0).getAge());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testSnapshotIsReadOnly() throws IOException {
+		// GIVEN:
+		Path path = folder.getRoot().toPath().resolve("tree.snapshot");
+		new CompactFamilyTree(dbService, maxAge).writeSnapshot(path);
+
+		// WHEN:
+		CompactFamilyTree.openSnapshot(dbService, path).addPerson("Person1", 90, null, null, null);
+	}
+}
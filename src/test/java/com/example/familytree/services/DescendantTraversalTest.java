@@ -0,0 +1,73 @@
+package com.example.familytree.services;
+
+import com.example.familytree.entities.Person;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class DescendantTraversalTest {
+
+	private final DescendantTraversal traversal = new DescendantTraversal(new ForkJoinPool(4));
+
+	@Test
+	public void testWideGenerations() {
+		// GIVEN:
+		// a founder with 5000 children, every pair of which has 2 common children
+		Person founder = new Person.Builder("Founder", 100).build();
+		List<Person> children = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			children.add(child(founder, null, "Child" + i, 70));
+		}
+		for (int i = 0; i < 5000; i += 2) {
+			child(children.get(i), children.get(i + 1), "GrandChild" + i + "a", 40);
+			child(children.get(i), children.get(i + 1), "GrandChild" + i + "b", 40);
+		}
+
+		// WHEN:
+		List<List<String>> generations = traversal.collect(founder, Integer.MAX_VALUE);
+
+		// THEN:
+		Assert.assertEquals(3, generations.size());
+		Assert.assertEquals(Arrays.asList("Founder"), generations.get(0));
+		Assert.assertEquals(5000, generations.get(1).size());
+		Assert.assertEquals("Child0", generations.get(1).get(0));
+		Assert.assertEquals("Child4999", generations.get(1).get(4999));
+		Assert.assertEquals(5000, generations.get(2).size());
+		Assert.assertEquals(5000, new HashSet<>(generations.get(2)).size());
+	}
+
+	@Test
+	public void testMaxDepthAndStop() {
+		// GIVEN:
+		Person grandParent = new Person.Builder("GrandParent", 90).build();
+		Person parent = child(grandParent, null, "Parent", 60);
+		child(parent, null, "Child1", 30);
+		child(parent, null, "Child2", 30);
+
+		// WHEN:
+		List<List<String>> generations = traversal.collect(grandParent, 1);
+		List<String> names = new ArrayList<>();
+		traversal.traverse(grandParent, Integer.MAX_VALUE, (generation, person) -> {
+			names.add(person.getName());
+			return names.size() < 3;
+		});
+
+		// THEN:
+		Assert.assertEquals(Arrays.asList(Arrays.asList("GrandParent"), Arrays.asList("Parent")), generations);
+		Assert.assertEquals(Arrays.asList("GrandParent", "Parent", "Child1"), names);
+	}
+
+	private Person child(Person parent1, Person parent2, String name, int age) {
+		Person child = new Person.Builder(name, age).parent1(parent1).parent2(parent2).build();
+		parent1.addChild(child);
+		if (parent2 != null) {
+			parent2.addChild(child);
+		}
+		return child;
+	}
+}
@@ -2,15 +2,36 @@ package com.example.familytree.services;
 
 import com.example.familytree.entities.Person;
 import com.example.familytree.enums.Order;
+import com.example.familytree.forms.PersonForm;
+import com.example.familytree.responses.Relationship;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.cumulative.CumulativeTimer;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.distribution.pause.PauseDetector;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 public class FamilyTreeTest {
 
@@ -95,6 +116,99 @@ public class FamilyTreeTest {
 		Assert.assertEquals(Arrays.asList("Person26", "Person19", "Person20", "Person12", "Person13", "Person14", "Person05", "Person06", "Person07"), personNames);
 	}
 
+	@Test
+	public void testGetAncestors() {
+		// GIVEN:
+		FamilyTree familyTree = buildFamilyTree();
+
+		// WHEN:
+		List<List<String>> generations = familyTree.getAncestors("Person26", 1);
+
+		// THEN:
+		Assert.assertEquals(Arrays.asList(Arrays.asList("Person26"), Arrays.asList("Person19", "Person20")), generations);
+	}
+
+	@Test
+	public void testMetrics() {
+		// GIVEN:
+		MeterRegistry meterRegistry = new SimpleMeterRegistry();
+		FamilyTree familyTree = new FamilyTree(dbService, maxAge, meterRegistry);
+
+		// WHEN:
+		familyTree.addPerson("Person1", 60, null, null, null);
+		familyTree.addPerson("Person2", 30, "Person1", null, null);
+		try {
+			familyTree.addPerson("Person3", 70, "Person2", null, null);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// the parent is younger
+		}
+		familyTree.getAncestors("Person2", Integer.MAX_VALUE);
+
+		// THEN:
+		Assert.assertEquals(2.0, meterRegistry.get("familytree.persons.added").counter().count(), 0.0);
+		Assert.assertEquals(1.0, meterRegistry.get("familytree.persons.rejected").counter().count(), 0.0);
+		Assert.assertEquals(2.0, meterRegistry.get("familytree.persons").gauge().value(), 0.0);
+		Assert.assertEquals(3, meterRegistry.get("familytree.validation").timer().count());
+		Assert.assertEquals(2, meterRegistry.get("familytree.lock.hold").timer().count());
+		Assert.assertEquals(3, meterRegistry.get("familytree.db.latency").tag("operation", "save").timer().count()
+				+ meterRegistry.get("familytree.db.latency").tag("operation", "update").timer().count());
+		Assert.assertEquals(2.0, meterRegistry.get("familytree.traversal.size").tag("direction", "ancestors")
+				.summary().totalAmount(), 0.0);
+	}
+
+	@Test
+	public void testGetDescendants() {
+		// GIVEN:
+		FamilyTree familyTree = buildFamilyTree();
+
+		// WHEN:
+		List<List<String>> generations = familyTree.getDescendants("Person19", Integer.MAX_VALUE);
+
+		// THEN:
+		Assert.assertEquals(Arrays.asList(
+				Arrays.asList("Person19"),
+				Arrays.asList("Person25", "Person26", "Person27"),
+				Arrays.asList("Person29", "Person30", "Person31", "Person32")), generations);
+		Assert.assertEquals(7, familyTree.countDescendants("Person19"));
+		Assert.assertEquals(9, familyTree.countDescendants("Person05"));
+		Assert.assertEquals(0, familyTree.countDescendants("Person29"));
+	}
+
+	@Test
+	public void testIsAncestorOf() {
+		// GIVEN:
+		FamilyTree familyTree = buildFamilyTree();
+
+		// THEN:
+		Assert.assertTrue(familyTree.isAncestorOf("Person07", "Person26"));
+		Assert.assertTrue(familyTree.isAncestorOf("Person19", "Person26"));
+		Assert.assertFalse(familyTree.isAncestorOf("Person26", "Person07"));
+		Assert.assertFalse(familyTree.isAncestorOf("Person01", "Person26"));
+	}
+
+	@Test
+	public void testRelationship() {
+		// GIVEN:
+		FamilyTree familyTree = buildFamilyTree();
+
+		// WHEN:
+		Relationship siblings = familyTree.getRelationship("Person30", "Person31");
+		Relationship cousins = familyTree.getRelationship("Person29", "Person30");
+
+		// THEN:
+		Assert.assertEquals("sibling", siblings.getRelation());
+		Assert.assertEquals(Arrays.asList("Person27", "Person28"), siblings.getCommonAncestors());
+		Assert.assertEquals("first cousin", cousins.getRelation());
+		Assert.assertEquals(Arrays.asList("Person19"), cousins.getCommonAncestors());
+		Assert.assertEquals(Integer.valueOf(2), cousins.getGenerations1());
+		Assert.assertEquals("niece/nephew", familyTree.getRelationship("Person29", "Person26").getRelation());
+		Assert.assertEquals("grandparent", familyTree.getRelationship("Person12", "Person26").getRelation());
+		Assert.assertEquals("great-great-grandparent", familyTree.getRelationship("Person05", "Person29").getRelation());
+		Assert.assertEquals("great-great-grandchild", familyTree.getRelationship("Person29", "Person05").getRelation());
+		Assert.assertEquals("unrelated", familyTree.getRelationship("Person01", "Person26").getRelation());
+	}
+
 	@Test
 	public void testSortByAgeAsc() {
 		// GIVEN:
@@ -109,6 +223,29 @@ public class FamilyTreeTest {
 		}
 	}
 
+	@Test
+	public void testAgeRange() {
+		// GIVEN:
+		FamilyTree familyTree = new FamilyTree(dbService, maxAge);
+		familyTree.addPerson("Person1", 20, null, null, null);
+		familyTree.addPerson("Person2", 30, null, null, null);
+		familyTree.addPerson("Person3", 35, null, null, null);
+		familyTree.addPerson("Person4", 40, null, null, null);
+		familyTree.addPerson("Person5", 50, null, null, null);
+
+		// WHEN:
+		List<String> names = new ArrayList<>();
+		familyTree.getSortedFamilyIterator(Order.DESC, 30, 40, null, "Person4")
+				.forEachRemaining(person -> names.add(person.getName()));
+
+		// THEN:
+		Assert.assertEquals(Arrays.asList("Person3", "Person2"), names);
+		Assert.assertEquals(3, familyTree.countPersons(30, 40));
+		Assert.assertEquals(5, familyTree.countPersons(null, null));
+		Assert.assertEquals("{20=1, 30=1, 35=1}", familyTree.countPersonsByAge(null, 35).toString());
+		Assert.assertFalse(familyTree.getSortedFamilyIterator(Order.ASC, 30, 40, null, "Person5").hasNext());
+	}
+
 	@Test
 	public void testSortByAgeDesc() {
 		// GIVEN:
@@ -123,6 +260,250 @@ public class FamilyTreeTest {
 		}
 	}
 
+	@Test
+	public void testCompositeOrders() {
+		// GIVEN:
+		FamilyTree familyTree = new FamilyTree(dbService, maxAge);
+		familyTree.addPerson("Dan", 30, null, null, null);
+		familyTree.addPerson("Bob", 80, null, null, null);
+		familyTree.addPerson("Eve", 30, "Bob", null, null);
+		familyTree.addPerson("Amy", 30, null, null, null);
+		familyTree.addPerson("Cid", 10, "Dan", null, null);
+		// the indexes are built on the first use, and maintained from then on
+		List<Person> before = familyTree.getSortedFamilyList(Order.AGE_GENERATION_ASC);
+
+		// WHEN:
+		// Ann adopts Dan, so Dan gets a longer line of ancestors, and so does Cid
+		familyTree.addPerson("Ann", 60, "Bob", null, Collections.singletonList("Dan"));
+
+		// THEN:
+		Assert.assertEquals(Arrays.asList("Cid", "Amy", "Dan", "Eve", "Bob"), names(before));
+		Assert.assertEquals(Arrays.asList("Cid", "Amy", "Dan", "Eve", "Ann", "Bob"),
+				names(familyTree.getSortedFamilyList(Order.AGE_NAME_ASC)));
+		Assert.assertEquals(Arrays.asList("Bob", "Ann", "Eve", "Dan", "Amy", "Cid"),
+				names(familyTree.getSortedFamilyList(Order.AGE_NAME_DESC)));
+		Assert.assertEquals(Arrays.asList("Cid", "Amy", "Eve", "Dan", "Ann", "Bob"),
+				names(familyTree.getSortedFamilyList(Order.AGE_GENERATION_ASC)));
+		Assert.assertEquals(Arrays.asList("Amy", "Ann", "Bob", "Cid", "Dan", "Eve"),
+				names(familyTree.getSortedFamilyList(Order.NAME_ASC)));
+	}
+
+	@Test
+	public void testCompositeOrderPages() {
+		// GIVEN:
+		FamilyTree familyTree = new FamilyTree(dbService, maxAge);
+		for (String name : Arrays.asList("Dan", "Amy", "Eve", "Cid", "Bob")) {
+			familyTree.addPerson(name, 30, null, null, null);
+		}
+		familyTree.addPerson("Ann", 40, null, null, null);
+		familyTree.addPerson("Fay", 20, null, null, null);
+
+		// WHEN:
+		List<String> page = new ArrayList<>();
+		familyTree.getSortedFamilyIterator(Order.AGE_NAME_DESC, 20, 30, null, "Cid")
+				.forEachRemaining(person -> page.add(person.getName()));
+		List<String> afterAge = new ArrayList<>();
+		familyTree.getSortedFamilyIterator(Order.AGE_NAME_ASC, null, null, 20, null)
+				.forEachRemaining(person -> afterAge.add(person.getName()));
+		List<String> byName = new ArrayList<>();
+		familyTree.getSortedFamilyIterator(Order.NAME_ASC, 30, 40, null, "Bob")
+				.forEachRemaining(person -> byName.add(person.getName()));
+
+		// THEN:
+		Assert.assertEquals(Arrays.asList("Bob", "Amy", "Fay"), page);
+		Assert.assertEquals(Arrays.asList("Amy", "Bob", "Cid", "Dan", "Eve", "Ann"), afterAge);
+		Assert.assertEquals(Arrays.asList("Cid", "Dan", "Eve"), byName);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNameOrderAfterAge() {
+		FamilyTree familyTree = new FamilyTree(dbService, maxAge);
+		familyTree.getSortedFamilyIterator(Order.NAME_ASC, null, null, 20, null);
+	}
+
+	@Test
+	public void testSearchNames() {
+		// GIVEN:
+		FamilyTree familyTree = buildFamilyTree();
+
+		// WHEN:
+		familyTree.deletePerson("Person27");
+
+		// THEN:
+		Assert.assertEquals(Arrays.asList("Person20", "Person21", "Person22"), familyTree.searchNames("Person2", 0, 3));
+		Assert.assertEquals(Arrays.asList("Person25", "Person26", "Person28", "Person29"),
+				familyTree.searchNames("Person2", 0, 20).subList(5, 9));
+		Assert.assertEquals(Arrays.asList("Person30", "Person31", "Person32"), familyTree.searchNames("Persn3", 1, 10));
+		Assert.assertEquals(Collections.emptyList(), familyTree.searchNames("Persn3", 0, 10));
+		Assert.assertEquals(31, familyTree.searchNames("", 0, 100).size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSearchNamesTooFuzzy() {
+		FamilyTree familyTree = new FamilyTree(dbService, maxAge);
+		familyTree.searchNames("Person", 3, 10);
+	}
+
+	@Test
+	public void testComponent() {
+		// GIVEN:
+		FamilyTree familyTree = new FamilyTree(dbService, maxAge);
+		familyTree.addPerson("Grandparent", 80, null, null, null);
+		familyTree.addPerson("Parent", 50, "Grandparent", null, null);
+		familyTree.addPerson("Partner", 48, null, null, null);
+		familyTree.addPerson("Child", 20, "Parent", "Partner", null);
+		familyTree.addPerson("Stranger", 60, null, null, null);
+
+		// WHEN:
+		List<String> component = familyTree.getComponent("Partner").stream()
+				.map(Person::getName)
+				.collect(Collectors.toList());
+		int deleted = familyTree.deleteComponent("Child");
+
+		// THEN:
+		// parents come before their children
+		Assert.assertEquals(Arrays.asList("Grandparent", "Parent", "Partner", "Child"), component);
+		Assert.assertEquals(4, deleted);
+		Assert.assertNull(familyTree.getPerson("Grandparent"));
+		Assert.assertEquals(1, familyTree.countPersons(null, null));
+		Assert.assertEquals(1, familyTree.getComponentSize("Stranger"));
+		Assert.assertEquals(0, familyTree.getComponentSize("Child"));
+	}
+
+	@Test
+	public void testDeletePerson() {
+		// GIVEN:
+		FamilyTree familyTree = buildFamilyTree();
+		Person person27 = familyTree.getPerson("Person27");
+		Assert.assertEquals(7, familyTree.countDescendants("Person19"));
+		Assert.assertEquals(Arrays.asList("Person29", "Person31"),
+				names(familyTree.getSortedFamilyList(Order.AGE_GENERATION_ASC).subList(0, 2)));
+
+		// WHEN:
+		familyTree.deletePerson("Person27");
+
+		// THEN:
+		Assert.assertNull(familyTree.getPerson("Person27"));
+		Assert.assertEquals(Arrays.asList("Person25", "Person26"), familyTree.getPerson("Person19").getChildrenNames());
+		Assert.assertNull(familyTree.getPerson("Person30").getParent1());
+		Assert.assertEquals("Person28", familyTree.getPerson("Person30").getParent2Name());
+		Assert.assertEquals(3, familyTree.countDescendants("Person19"));
+		Assert.assertFalse(familyTree.isAncestorOf("Person19", "Person30"));
+		Assert.assertEquals(Arrays.asList("Person28"), familyTree.getRelationship("Person30", "Person31").getCommonAncestors());
+		Assert.assertEquals(31, familyTree.countPersons(null, null));
+		Assert.assertEquals(31, familyTree.getSortedFamilyList(Order.ASC).size());
+		Assert.assertFalse(names(familyTree.getSortedFamilyList(Order.NAME_ASC)).contains("Person27"));
+		// Person31 has lost its longer line of ancestors
+		Assert.assertEquals(Arrays.asList("Person31", "Person29"),
+				names(familyTree.getSortedFamilyList(Order.AGE_GENERATION_ASC).subList(0, 2)));
+		Mockito.verify(dbService).deletePerson(person27);
+		Mockito.verify(dbService).updatePerson(familyTree.getPerson("Person30"));
+
+		// the name can be used again
+		familyTree.addPerson("Person27", 20, null, null, null);
+		Assert.assertEquals(0, familyTree.countDescendants("Person27"));
+	}
+
+	@Test
+	public void testUpdatePerson() {
+		// GIVEN:
+		FamilyTree familyTree = buildFamilyTree();
+		Person person25 = familyTree.getPerson("Person25");
+		Assert.assertEquals(7, familyTree.countDescendants("Person19"));
+
+		// WHEN:
+		familyTree.updatePerson("Person25", 40, "Person21", null, Collections.singletonList("Person29"));
+
+		// THEN:
+		Person updated = familyTree.getPerson("Person25");
+		Assert.assertEquals(40, updated.getAge());
+		Assert.assertEquals("Person21", updated.getParent1Name());
+		Assert.assertEquals(Arrays.asList("Person29"), updated.getChildrenNames());
+		Assert.assertEquals(Arrays.asList("Person26", "Person27"), familyTree.getPerson("Person19").getChildrenNames());
+		Assert.assertEquals(Arrays.asList("Person27", "Person25"), familyTree.getPerson("Person21").getChildrenNames());
+		Assert.assertEquals(5, familyTree.countDescendants("Person19"));
+		Assert.assertEquals(6, familyTree.countDescendants("Person21"));
+		Assert.assertTrue(familyTree.isAncestorOf("Person21", "Person29"));
+		Assert.assertFalse(familyTree.isAncestorOf("Person19", "Person29"));
+		Assert.assertEquals(Arrays.asList("Person21"), familyTree.getRelationship("Person29", "Person30").getCommonAncestors());
+		Assert.assertEquals(Arrays.asList("Person25"), names(familyTree.getSortedFamilyList(Order.ASC).subList(8, 9)));
+		InOrder inOrder = Mockito.inOrder(dbService);
+		inOrder.verify(dbService).deletePerson(person25);
+		inOrder.verify(dbService).savePerson(updated);
+	}
+
+	@Test
+	public void testPatchPersonAge() {
+		// GIVEN:
+		FamilyTree familyTree = new FamilyTree(dbService, maxAge);
+		familyTree.addPerson("Person1", 60, null, null, null);
+		familyTree.addPerson("Person2", 30, "Person1", null, null);
+		familyTree.addPerson("Person3", 10, "Person2", null, null);
+		Person person2 = familyTree.getPerson("Person2");
+		Assert.assertEquals(Arrays.asList("Person1", "Person2", "Person3"),
+				names(familyTree.getSortedFamilyList(Order.AGE_NAME_DESC)));
+
+		// WHEN:
+		familyTree.patchPerson("Person2", 40, null, null, null);
+
+		// THEN:
+		Assert.assertSame(person2, familyTree.getPerson("Person2"));
+		Assert.assertEquals(40, person2.getAge());
+		Assert.assertEquals("Person1", person2.getParent1Name());
+		Assert.assertEquals(Arrays.asList("Person3"), person2.getChildrenNames());
+		Assert.assertEquals("{10=1, 40=1, 60=1}", familyTree.countPersonsByAge(null, null).toString());
+		Assert.assertEquals(Arrays.asList("Person3", "Person2", "Person1"),
+				names(familyTree.getSortedFamilyList(Order.ASC)));
+		Assert.assertEquals(Arrays.asList("Person1", "Person2", "Person3"),
+				names(familyTree.getSortedFamilyList(Order.AGE_NAME_DESC)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPatchPersonOlderThanParent() {
+		FamilyTree familyTree = new FamilyTree(dbService, maxAge);
+		familyTree.addPerson("Person1", 60, null, null, null);
+		familyTree.addPerson("Person2", 30, "Person1", null, null);
+		familyTree.patchPerson("Person2", 70, null, null, null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUpdatePersonAsOwnParent() {
+		FamilyTree familyTree = new FamilyTree(dbService, maxAge);
+		familyTree.addPerson("Person1", 60, null, null, null);
+		familyTree.updatePerson("Person1", 50, "Person1", null, null);
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void testDeleteUnknownPerson() {
+		FamilyTree familyTree = new FamilyTree(dbService, maxAge);
+		familyTree.deletePerson("Person1");
+	}
+
+	@Test
+	public void testVersionGrowsWithChanges() {
+		// GIVEN:
+		FamilyTree familyTree = new FamilyTree(dbService, maxAge);
+		long initial = familyTree.getVersion();
+
+		// WHEN:
+		familyTree.addPerson("Person1", 50, null, null, null);
+		long added = familyTree.getVersion();
+		familyTree.patchPerson("Person1", 50, null, null, null);
+		long unchanged = familyTree.getVersion();
+		familyTree.patchPerson("Person1", 40, null, null, null);
+		long updated = familyTree.getVersion();
+		familyTree.getSortedFamilyList(Order.ASC);
+		long read = familyTree.getVersion();
+		familyTree.deletePerson("Person1");
+
+		// THEN:
+		Assert.assertTrue(added > initial);
+		Assert.assertEquals(added, unchanged);
+		Assert.assertTrue(updated > unchanged);
+		Assert.assertEquals(updated, read);
+		Assert.assertTrue(familyTree.getVersion() > read);
+	}
+
 	@Test
 	public void testPersistenceLayerAddPerson() {
 		// GIVEN:
@@ -235,6 +616,199 @@ public class FamilyTreeTest {
 		}
 	}
 
+	@Test
+	public void testReadWhileAddingPersons() throws InterruptedException {
+		// GIVEN:
+		FamilyTree familyTree = new FamilyTree(dbService, maxAge);
+		familyTree.addPerson("Person0", maxAge, null, null, null);
+
+		// WHEN
+		int M = 1000;
+		Thread writer = new Thread(() -> {
+			for (int j = 1; j <= M; j++) {
+				familyTree.addPerson("Person" + j, maxAge - 1 - j % maxAge / 2, "Person0", null, null);
+			}
+		});
+		writer.start();
+
+		// THEN
+		int lastSize = 0;
+		while (writer.isAlive() || lastSize < M + 1) {
+			List<Person> persons = familyTree.getSortedFamilyList(Order.DESC);
+			Assert.assertTrue(persons.size() >= lastSize);
+			Assert.assertEquals("Person0", persons.get(0).getName());
+			lastSize = persons.size();
+			if (lastSize > 1) {
+				String name = "Person" + (lastSize - 1);
+				Assert.assertNotNull(familyTree.getPerson(name));
+				Assert.assertEquals(Arrays.asList(name, "Person0"), familyTree.printUpwards(name));
+			}
+		}
+		writer.join();
+		Assert.assertEquals(M + 1, lastSize);
+	}
+
+	@Test
+	public void testAddFamiliesConcurrently() throws Exception {
+		// GIVEN:
+		FamilyTree familyTree = new FamilyTree(dbService, maxAge);
+		familyTree.addPerson("Parent1", 90, null, null, null);
+		familyTree.addPerson("Parent2", 90, null, null, null);
+		int T = 4;
+		int M = 50;
+		ExecutorService executorService = Executors.newFixedThreadPool(T);
+		List<Future<?>> futures = new ArrayList<>();
+
+		// WHEN
+		for (int i = 0; i < T; i++) {
+			int idx = i;
+			futures.add(executorService.submit(() -> {
+				// a separate family line of each thread
+				familyTree.addPerson("Family" + idx + "-0", 80, null, null, null);
+				for (int j = 1; j < M; j++) {
+					familyTree.addPerson("Family" + idx + "-" + j, 80 - j, "Family" + idx + "-" + (j - 1), null, null);
+				}
+				// children of the shared parents
+				for (int j = 0; j < M; j++) {
+					familyTree.addPerson("Child" + idx + "-" + j, 10, "Parent1", "Parent2", null);
+				}
+				return null;
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executorService.shutdown();
+
+		// THEN
+		Assert.assertEquals(2 + 2 * T * M, familyTree.getSortedFamilyList(Order.ASC).size());
+		Assert.assertEquals(T * M, familyTree.getPerson("Parent1").getChildren().size());
+		Assert.assertEquals(T * M, familyTree.getPerson("Parent2").getChildren().size());
+		Assert.assertEquals(M, familyTree.printUpwards("Family0-" + (M - 1)).size());
+	}
+
+	@Test
+	public void testRelativeAddedAfterLocking() throws Exception {
+		// GIVEN:
+		HookRegistry meterRegistry = new HookRegistry();
+		FamilyTree familyTree = new FamilyTree(dbService, maxAge, meterRegistry);
+		familyTree.addPerson("Parent0", 90, null, null, null);
+		CountDownLatch locked = new CountDownLatch(1);
+		CountDownLatch childAdded = new CountDownLatch(1);
+		CountDownLatch validated = new CountDownLatch(1);
+		CountDownLatch resume = new CountDownLatch(1);
+		ExecutorService executorService = Executors.newFixedThreadPool(2);
+		// the first writer stops once it has locked the components of its relatives, before Child exists,
+		// and once it has validated Child as its child
+		Future<?> writer1 = executorService.submit(() -> {
+			meterRegistry.hook(id -> "component".equals(id.getTag("lock")), () -> {
+				locked.countDown();
+				await(childAdded);
+			});
+			meterRegistry.hook(id -> id.getName().equals("familytree.validation"), () -> {
+				validated.countDown();
+				await(resume);
+			});
+			familyTree.addPerson("Parent1", 80, null, null, Collections.singletonList("Child"));
+			return null;
+		});
+		await(locked);
+		familyTree.addPerson("Child", 20, "Parent0", null, null);
+		childAdded.countDown();
+		await(validated);
+
+		// WHEN:
+		// the second writer claims the same parent slot of Child
+		Future<?> writer2 = executorService.submit(() -> {
+			familyTree.addPerson("Parent2", 80, null, null, Collections.singletonList("Child"));
+			return null;
+		});
+		try {
+			writer2.get(500, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			// it waits for the lock of Child's component, held by the first writer
+		}
+		resume.countDown();
+		writer1.get(5, TimeUnit.SECONDS);
+		try {
+			writer2.get(5, TimeUnit.SECONDS);
+			Assert.fail("Child has both parents already");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+		executorService.shutdown();
+
+		// THEN:
+		Person child = familyTree.getPerson("Child");
+		Assert.assertEquals("Parent0", child.getParent1Name());
+		Assert.assertEquals("Parent1", child.getParent2Name());
+		Assert.assertEquals(Collections.singletonList("Child"), familyTree.getPerson("Parent1").getChildrenNames());
+		Assert.assertNull(familyTree.getPerson("Parent2"));
+	}
+
+	@Test
+	public void testAddPersonsInAnyOrder() {
+		// GIVEN:
+		FamilyTree familyTree = new FamilyTree(dbService, maxAge);
+		familyTree.addPerson("Person1", 80, null, null, null);
+		List<PersonForm> records = Arrays.asList(
+				form("Person4", 20, "Person2", "Person3", null),
+				form("Person2", 50, "Person1", null, null),
+				form("Person3", 40, null, null, null),
+				form("Person5", 60, null, null, Arrays.asList("Person3")));
+
+		// WHEN:
+		Map<Integer, String> rejections = familyTree.addPersons(records);
+
+		// THEN:
+		Assert.assertTrue(rejections.isEmpty());
+		Assert.assertEquals(Arrays.asList("Person4", "Person2", "Person3", "Person1", "Person5"),
+				familyTree.printUpwards("Person4"));
+		Assert.assertEquals(Arrays.asList("Person2"), familyTree.getPerson("Person1").getChildrenNames());
+		InOrder inOrder = Mockito.inOrder(dbService);
+		inOrder.verify(dbService).savePerson(familyTree.getPerson("Person5"));
+		inOrder.verify(dbService).savePerson(familyTree.getPerson("Person3"));
+		inOrder.verify(dbService).savePerson(familyTree.getPerson("Person4"));
+	}
+
+	@Test
+	public void testAddPersonsRejections() {
+		// GIVEN:
+		FamilyTree familyTree = new FamilyTree(dbService, maxAge);
+		familyTree.addPerson("Person1", 80, null, null, null);
+		List<PersonForm> records = Arrays.asList(
+				form("Person1", 20, null, null, null),
+				form("Person2", 90, "Person1", null, null),
+				form("Person3", 10, "Person2", null, null),
+				form("Person4", 30, "Person5", null, null),
+				form("Person5", 40, "Person4", null, null),
+				form("Person6", 30, "Person1", null, null),
+				form("Person6", 30, null, null, null));
+
+		// WHEN:
+		Map<Integer, String> rejections = familyTree.addPersons(records);
+
+		// THEN:
+		Assert.assertEquals("Name Person1 is already defined", rejections.get(0));
+		Assert.assertEquals("Given age cannot be greater than or equal to a parent age", rejections.get(1));
+		Assert.assertEquals("Name Person2 doesn't exist", rejections.get(2));
+		Assert.assertTrue(rejections.get(3).startsWith("Cycle detected"));
+		Assert.assertTrue(rejections.get(4).startsWith("Cycle detected"));
+		Assert.assertNull(rejections.get(5));
+		Assert.assertEquals("Name Person6 is already defined", rejections.get(6));
+		Assert.assertEquals(2, familyTree.getSortedFamilyList(Order.ASC).size());
+	}
+
+	private PersonForm form(String name, Integer age, String parent1, String parent2, List<String> children) {
+		PersonForm form = new PersonForm();
+		form.setName(name);
+		form.setAge(age);
+		form.setParent1(parent1);
+		form.setParent2(parent2);
+		form.setChildren(children);
+		return form;
+	}
+
 	private FamilyTree buildFamilyTree() {
 		FamilyTree familyTree = new FamilyTree(dbService, maxAge);
 		// level 1
@@ -278,4 +852,50 @@ public class FamilyTreeTest {
 		return familyTree;
 	}
 
+	private static void await(CountDownLatch latch) {
+		try {
+			Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+		} catch (InterruptedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * A meter registry that runs a hook when a given thread records a timer for the first time, so that a test
+	 * can stop a writer at the points the family tree records its meters.
+	 */
+	private static class HookRegistry extends SimpleMeterRegistry {
+		private final Map<Predicate<Meter.Id>, Runnable> hooks = new ConcurrentHashMap<>();
+		private volatile Thread thread;
+
+		void hook(Predicate<Meter.Id> timer, Runnable hook) {
+			thread = Thread.currentThread();
+			hooks.put(timer, hook);
+		}
+
+		@Override
+		protected Timer newTimer(Meter.Id id, DistributionStatisticConfig distributionStatisticConfig,
+								 PauseDetector pauseDetector) {
+			return new CumulativeTimer(id, clock, distributionStatisticConfig, pauseDetector, getBaseTimeUnit()) {
+				@Override
+				protected void recordNonNegative(long amount, TimeUnit unit) {
+					if (Thread.currentThread() == thread) {
+						for (Predicate<Meter.Id> timer : hooks.keySet()) {
+							Runnable hook = timer.test(id) ? hooks.remove(timer) : null;
+							if (hook != null) {
+								hook.run();
+							}
+						}
+					}
+					super.recordNonNegative(amount, unit);
+				}
+			};
+		}
+	}
+
+	private static List<String> names(List<Person> persons) {
+		return persons.stream()
+				.map(Person::getName)
+				.collect(Collectors.toList());
+	}
 }
@@ -0,0 +1,280 @@
+package com.example.familytree.services;
+
+import com.example.familytree.collections.FamilyGraph;
+import com.example.familytree.entities.Person;
+import com.example.familytree.enums.Order;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class WriteAheadLogDBServiceTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testReplayRecords() {
+		// GIVEN:
+		Path directory = folder.getRoot().toPath();
+		WriteAheadLogDBService dbService = new WriteAheadLogDBService(directory, 1024);
+		dbService.replay(null);
+		Person parent = new Person.Builder("Zoë", 50).build();
+		Person child = new Person.Builder("Person2", 20).build();
+		Person person = new Person.Builder("Person3", 40)
+				.parent1(parent)
+				.children(Arrays.asList(child))
+				.build();
+
+		// WHEN:
+		dbService.savePerson(parent);
+		dbService.savePerson(child);
+		dbService.updatePerson(parent);
+		dbService.savePerson(person);
+		dbService.awaitPersisted();
+		dbService.close();
+
+		// THEN:
+		List<String> records = replay(directory, 1024);
+		Assert.assertEquals(Arrays.asList(
+				"Zoë 50 null null []",
+				"Person2 20 null null []",
+				"Person3 40 Zoë null [Person2]"), records);
+	}
+
+	@Test
+	public void testSegmentRolling() {
+		// GIVEN:
+		Path directory = folder.getRoot().toPath();
+		WriteAheadLogDBService dbService = new WriteAheadLogDBService(directory, 100);
+		dbService.replay(null);
+
+		// WHEN:
+		for (int i = 0; i < 50; i++) {
+			dbService.savePerson(new Person.Builder("Person" + i, 50).build());
+			dbService.awaitPersisted();
+		}
+		dbService.close();
+
+		// THEN:
+		Assert.assertTrue(dbService.segmentCount() > 1);
+		List<String> records = replay(directory, 100);
+		Assert.assertEquals(50, records.size());
+		for (int i = 0; i < 50; i++) {
+			Assert.assertEquals("Person" + i + " 50 null null []", records.get(i));
+		}
+	}
+
+	@Test
+	public void testTornRecordIsTruncated() throws IOException {
+		// GIVEN:
+		Path directory = folder.getRoot().toPath();
+		WriteAheadLogDBService dbService = new WriteAheadLogDBService(directory, 1024);
+		dbService.replay(null);
+		dbService.savePerson(new Person.Builder("Person1", 50).build());
+		dbService.savePerson(new Person.Builder("Person2", 50).build());
+		dbService.awaitPersisted();
+		dbService.close();
+
+		// a crash in the middle of the second record
+		Path segment = lastSegment(directory);
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 3);
+		}
+
+		// WHEN:
+		dbService = new WriteAheadLogDBService(directory, 1024);
+		List<String> records = new ArrayList<>();
+		dbService.replay((name, age, parent1Name, parent2Name, childNames) -> records.add(name));
+		dbService.savePerson(new Person.Builder("Person3", 50).build());
+		dbService.awaitPersisted();
+		dbService.close();
+
+		// THEN:
+		Assert.assertEquals(Arrays.asList("Person1"), records);
+		Assert.assertEquals(Arrays.asList("Person1 50 null null []", "Person3 50 null null []"), replay(directory, 1024));
+	}
+
+	@Test
+	public void testConcurrentWriters() throws InterruptedException {
+		// GIVEN:
+		Path directory = folder.getRoot().toPath();
+		WriteAheadLogDBService dbService = new WriteAheadLogDBService(directory, 4096);
+		dbService.replay(null);
+		List<Thread> threads = new ArrayList<>();
+
+		// WHEN:
+		for (int t = 0; t < 8; t++) {
+			int thread = t;
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 100; i++) {
+					dbService.savePerson(new Person.Builder("Person" + thread + "-" + i, 50).build());
+					dbService.awaitPersisted();
+				}
+			}));
+		}
+		threads.forEach(Thread::start);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		dbService.close();
+
+		// THEN:
+		Assert.assertEquals(800, replay(directory, 4096).stream().distinct().count());
+	}
+
+	@Test
+	public void testRecoverFamilyTree() {
+		// GIVEN:
+		Path directory = folder.getRoot().toPath();
+		WriteAheadLogDBService dbService = new WriteAheadLogDBService(directory, 1024);
+		FamilyTree familyTree = new FamilyTree(dbService, 100);
+		familyTree.addPerson("Person1", 90, null, null, null);
+		familyTree.addPerson("Person2", 50, null, null, null);
+		familyTree.addPerson("Person3", 70, "Person1", null, Collections.singletonList("Person2"));
+		dbService.close();
+
+		// WHEN:
+		familyTree = new FamilyTree(new WriteAheadLogDBService(directory, 1024), 100);
+
+		// THEN:
+		Assert.assertEquals(Arrays.asList("Person2", "Person3", "Person1"), familyTree.printUpwards("Person2"));
+		Assert.assertEquals(Arrays.asList("Person3"), familyTree.getPerson("Person1").getChildrenNames());
+		Assert.assertEquals(Arrays.asList("Person2", "Person3", "Person1"), familyTree.getSortedFamilyList(Order.ASC)
+				.stream()
+				.map(Person::getName)
+				.collect(Collectors.toList()));
+	}
+
+	@Test
+	public void testRecoverChangedFamilyTree() {
+		// GIVEN:
+		Path directory = folder.getRoot().toPath();
+		WriteAheadLogDBService dbService = new WriteAheadLogDBService(directory, 1024);
+		FamilyTree familyTree = new FamilyTree(dbService, 100);
+		familyTree.addPerson("Person1", 90, null, null, null);
+		familyTree.addPerson("Person2", 50, null, null, null);
+		familyTree.addPerson("Person3", 70, "Person1", null, Collections.singletonList("Person2"));
+		familyTree.patchPerson("Person3", 60, null, null, null);
+		familyTree.deletePerson("Person1");
+		familyTree.addPerson("Person1", 80, null, null, Collections.singletonList("Person3"));
+		dbService.close();
+
+		// WHEN:
+		List<String> records = new ArrayList<>();
+		WriteAheadLogDBService replayed = new WriteAheadLogDBService(directory, 1024);
+		replayed.replay(new DBService.PersonRecordHandler() {
+			@Override
+			public void addPerson(String name, Integer age, String parent1Name, String parent2Name, List<String> childNames) {
+				records.add(name + " " + age);
+			}
+
+			@Override
+			public void deletePerson(String name) {
+				records.add("-" + name);
+			}
+		});
+		replayed.close();
+		familyTree = new FamilyTree(new WriteAheadLogDBService(directory, 1024), 100);
+
+		// THEN:
+		Assert.assertEquals(Arrays.asList("Person1 90", "Person2 50", "Person3 70", "-Person3", "Person3 60",
+				"-Person1", "Person1 80"), records);
+		Assert.assertEquals(60, familyTree.getPerson("Person3").getAge());
+		Assert.assertEquals("Person1", familyTree.getPerson("Person3").getParent1Name());
+		Assert.assertEquals(Arrays.asList("Person2"), familyTree.getPerson("Person3").getChildrenNames());
+		Assert.assertEquals(Arrays.asList("Person2", "Person3", "Person1"), familyTree.printUpwards("Person2"));
+		Assert.assertEquals(Arrays.asList("Person2", "Person3", "Person1"), familyTree.getSortedFamilyList(Order.ASC)
+				.stream()
+				.map(Person::getName)
+				.collect(Collectors.toList()));
+	}
+
+	@Test
+	public void testRecoverFromSnapshot() {
+		// GIVEN:
+		Path directory = folder.getRoot().toPath();
+		WriteAheadLogDBService dbService = new WriteAheadLogDBService(directory, 1024);
+		FamilyTree familyTree = new FamilyTree(dbService, 100);
+		familyTree.addPerson("Person1", 90, null, null, null);
+		familyTree.addPerson("Person2", 90, null, null, null);
+		familyTree.addPerson("Child1", 20, "Person1", null, null);
+		familyTree.addPerson("Child2", 30, "Person1", "Person2", null);
+		familyTree.addPerson("Person3", 95, null, null, Collections.singletonList("Child1"));
+		familyTree.writeSnapshot();
+		familyTree.addPerson("Grandchild", 10, "Child1", null, null);
+		familyTree.deletePerson("Person2");
+		List<String> persons = describe(familyTree);
+		dbService.close();
+
+		// WHEN:
+		List<String> records = new ArrayList<>();
+		WriteAheadLogDBService replayed = new WriteAheadLogDBService(directory, 1024);
+		replayed.replay(new DBService.PersonRecordHandler() {
+			@Override
+			public void addPerson(String name, Integer age, String parent1Name, String parent2Name, List<String> childNames) {
+				records.add(name + " " + age);
+			}
+
+			@Override
+			public void deletePerson(String name) {
+				records.add("-" + name);
+			}
+
+			@Override
+			public void restoreSnapshot(FamilyGraph graph) {
+				records.add("snapshot of " + graph.size());
+			}
+		});
+		replayed.close();
+		WriteAheadLogDBService recovered = new WriteAheadLogDBService(directory, 1024);
+		familyTree = new FamilyTree(recovered, 100);
+
+		// THEN:
+		Assert.assertEquals(Arrays.asList("snapshot of 5", "Grandchild 10", "-Person2"), records);
+		Assert.assertEquals(persons, describe(familyTree));
+		Assert.assertEquals(Arrays.asList("Child1", "Child2"), familyTree.getPerson("Person1").getChildrenNames());
+		// the records are numbered on from the ones the snapshot covers
+		Assert.assertEquals(7, recovered.getSyncedSequence());
+		familyTree.addPerson("Person4", 50, null, null, null);
+		recovered.close();
+		Assert.assertNotNull(new FamilyTree(new WriteAheadLogDBService(directory, 1024), 100).getPerson("Person4"));
+	}
+
+	/**
+	 * Returns the persons with their relatives in the sorted list order.
+	 */
+	private static List<String> describe(FamilyTree familyTree) {
+		return familyTree.getSortedFamilyList(Order.ASC).stream()
+				.map(person -> person.getName() + " " + person.getAge() + " " + person.getParent1Name() + " "
+						+ person.getParent2Name() + " " + person.getChildrenNames())
+				.collect(Collectors.toList());
+	}
+
+	private List<String> replay(Path directory, long segmentSize) {
+		List<String> records = new ArrayList<>();
+		WriteAheadLogDBService dbService = new WriteAheadLogDBService(directory, segmentSize);
+		dbService.replay((name, age, parent1Name, parent2Name, childNames) ->
+				records.add(name + " " + age + " " + parent1Name + " " + parent2Name + " " + childNames));
+		dbService.close();
+		return records;
+	}
+
+	private Path lastSegment(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.sorted().reduce((first, second) -> second).get();
+		}
+	}
+}
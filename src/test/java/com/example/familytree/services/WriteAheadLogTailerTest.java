@@ -0,0 +1,143 @@
+package com.example.familytree.services;
+
+import com.example.familytree.entities.Person;
+import com.example.familytree.enums.Order;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class WriteAheadLogTailerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testTailNewRecords() throws IOException {
+		// GIVEN:
+		Path directory = folder.getRoot().toPath();
+		WriteAheadLogDBService dbService = new WriteAheadLogDBService(directory, 100);
+		dbService.replay(null);
+		WriteAheadLogTailer tailer = new WriteAheadLogTailer(directory);
+		List<String> records = new ArrayList<>();
+		int empty = tailer.poll((name, age, parent1Name, parent2Name, childNames) -> records.add(name));
+
+		// WHEN:
+		save(dbService, 0, 10);
+		int first = tailer.poll((name, age, parent1Name, parent2Name, childNames) -> records.add(name));
+		save(dbService, 10, 40);
+		int second = tailer.poll((name, age, parent1Name, parent2Name, childNames) -> records.add(name));
+		dbService.close();
+		tailer.close();
+
+		// THEN:
+		Assert.assertEquals(0, empty);
+		Assert.assertEquals(10, first);
+		Assert.assertEquals(30, second);
+		Assert.assertTrue(dbService.segmentCount() > 1);
+		Assert.assertEquals(40, tailer.getSequence());
+		Assert.assertEquals(0, tailer.getLagBytes());
+		Assert.assertEquals(40, dbService.getSyncedSequence());
+		for (int i = 0; i < 40; i++) {
+			Assert.assertEquals("Person" + i, records.get(i));
+		}
+		// the records are numbered on after a restart
+		WriteAheadLogDBService reopened = new WriteAheadLogDBService(directory, 100);
+		reopened.replay(null);
+		Assert.assertEquals(40, reopened.getSyncedSequence());
+		reopened.close();
+	}
+
+	@Test
+	public void testPartialRecordReadLater() throws IOException {
+		// GIVEN:
+		Path directory = folder.getRoot().toPath();
+		Path source = folder.newFolder().toPath();
+		WriteAheadLogDBService dbService = new WriteAheadLogDBService(source, 1024);
+		dbService.replay(null);
+		save(dbService, 0, 2);
+		dbService.close();
+		byte[] log = Files.readAllBytes(WriteAheadLogDBService.segmentPath(source, 0));
+		Path segment = WriteAheadLogDBService.segmentPath(directory, 0);
+		WriteAheadLogTailer tailer = new WriteAheadLogTailer(directory);
+		List<String> records = new ArrayList<>();
+
+		// WHEN:
+		// the log is written out up to the middle of the second record
+		Files.write(segment, Arrays.copyOf(log, log.length - 3));
+		int first = tailer.poll((name, age, parent1Name, parent2Name, childNames) -> records.add(name));
+		long lagBytes = tailer.getLagBytes();
+		Files.write(segment, Arrays.copyOfRange(log, log.length - 3, log.length), StandardOpenOption.APPEND);
+		int second = tailer.poll((name, age, parent1Name, parent2Name, childNames) -> records.add(name));
+		tailer.close();
+
+		// THEN:
+		Assert.assertEquals(1, first);
+		Assert.assertTrue(lagBytes > 0);
+		Assert.assertEquals(1, second);
+		Assert.assertEquals(Arrays.asList("Person0", "Person1"), records);
+		Assert.assertEquals(0, tailer.getLagBytes());
+	}
+
+	@Test
+	public void testReplicaFollowsPrimary() throws IOException {
+		// GIVEN:
+		Path directory = folder.getRoot().toPath();
+		WriteAheadLogDBService dbService = new WriteAheadLogDBService(directory, 1024);
+		FamilyTree primary = new FamilyTree(dbService, 100);
+		FamilyTree replica = new FamilyTree(Mockito.mock(DBService.class), 100);
+		WriteAheadLogTailer tailer = new WriteAheadLogTailer(directory);
+		DBService.PersonRecordHandler replicator = new DBService.PersonRecordHandler() {
+			@Override
+			public void addPerson(String name, Integer age, String parent1Name, String parent2Name, List<String> childNames) {
+				replica.applyPerson(name, age, parent1Name, parent2Name, childNames);
+			}
+
+			@Override
+			public void deletePerson(String name) {
+				replica.applyDeletion(name);
+			}
+		};
+		primary.addPerson("Person1", 90, null, null, null);
+		primary.addPerson("Person2", 50, null, null, null);
+		tailer.poll(replicator);
+		long version = replica.getVersion();
+
+		// WHEN:
+		primary.addPerson("Person3", 70, "Person1", null, Collections.singletonList("Person2"));
+		primary.patchPerson("Person3", 60, null, null, null);
+		primary.deletePerson("Person1");
+		int applied = tailer.poll(replicator);
+		dbService.close();
+		tailer.close();
+
+		// THEN:
+		Assert.assertEquals(4, applied);
+		Assert.assertEquals(dbService.getSyncedSequence(), tailer.getSequence());
+		Assert.assertTrue(replica.getVersion() > version);
+		Assert.assertNull(replica.getPerson("Person1"));
+		Assert.assertEquals(60, replica.getPerson("Person3").getAge());
+		Assert.assertEquals(Arrays.asList("Person2", "Person3"), replica.printUpwards("Person2"));
+		Assert.assertEquals(Arrays.asList("Person2", "Person3"), replica.getSortedFamilyList(Order.ASC).stream()
+				.map(Person::getName)
+				.collect(Collectors.toList()));
+	}
+
+	private static void save(WriteAheadLogDBService dbService, int from, int to) {
+		for (int i = from; i < to; i++) {
+			dbService.savePerson(new Person.Builder("Person" + i, 50).build());
+			dbService.awaitPersisted();
+		}
+	}
+}
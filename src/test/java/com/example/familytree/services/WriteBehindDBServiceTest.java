@@ -0,0 +1,120 @@
+package com.example.familytree.services;
+
+import com.example.familytree.entities.Person;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class WriteBehindDBServiceTest {
+
+	private final DBService delegate = Mockito.mock(DBService.class);
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongCapacity() {
+		new WriteBehindDBService(delegate, 10, 0, 5, false);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testRepeatedWritesAreMerged() {
+		// GIVEN:
+		WriteBehindDBService dbService = new WriteBehindDBService(delegate, 100, 60_000, 100, false);
+		Person person1 = new Person.Builder("Person1", 50).build();
+		Person person2 = new Person.Builder("Person2", 20).parent1(person1).build();
+
+		// WHEN:
+		dbService.savePerson(person1);
+		dbService.savePerson(person2);
+		person1.addChild(person2);
+		dbService.updatePerson(person1);
+		dbService.updatePerson(person2);
+		dbService.close();
+
+		// THEN:
+		ArgumentCaptor<List<Person>> saved = ArgumentCaptor.forClass(List.class);
+		ArgumentCaptor<List<Person>> updated = ArgumentCaptor.forClass(List.class);
+		Mockito.verify(delegate).persistBatch(saved.capture(), updated.capture());
+		Assert.assertEquals(2, saved.getValue().size());
+		Assert.assertEquals("Person1", saved.getValue().get(0).getName());
+		Assert.assertEquals(Arrays.asList("Person2"), saved.getValue().get(0).getChildrenNames());
+		Assert.assertEquals("Person2", saved.getValue().get(1).getName());
+		Assert.assertEquals(Collections.emptyList(), updated.getValue());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testDeletionsAreMerged() {
+		// GIVEN:
+		WriteBehindDBService dbService = new WriteBehindDBService(delegate, 100, 60_000, 100, false);
+		Person stored = new Person.Builder("Person1", 50).build();
+		Person changed = new Person.Builder("Person1", 55).build();
+		Person added = new Person.Builder("Person2", 20).build();
+
+		// WHEN:
+		dbService.updatePerson(stored);
+		dbService.deletePerson(stored);
+		dbService.savePerson(changed);
+		dbService.savePerson(added);
+		dbService.deletePerson(added);
+		dbService.close();
+
+		// THEN:
+		ArgumentCaptor<List<Person>> saved = ArgumentCaptor.forClass(List.class);
+		ArgumentCaptor<List<Person>> updated = ArgumentCaptor.forClass(List.class);
+		ArgumentCaptor<List<Person>> deleted = ArgumentCaptor.forClass(List.class);
+		Mockito.verify(delegate).persistBatch(saved.capture(), updated.capture(), deleted.capture());
+		Assert.assertEquals(1, deleted.getValue().size());
+		Assert.assertEquals(50, deleted.getValue().get(0).getAge());
+		Assert.assertEquals(1, saved.getValue().size());
+		Assert.assertEquals(55, saved.getValue().get(0).getAge());
+		Assert.assertEquals(Collections.emptyList(), updated.getValue());
+	}
+
+	@Test
+	public void testFlushInBatches() {
+		// GIVEN:
+		WriteBehindDBService dbService = new WriteBehindDBService(delegate, 2, 60_000, 2, false);
+
+		// WHEN:
+		for (int i = 0; i < 5; i++) {
+			dbService.savePerson(new Person.Builder("Person" + i, 50).build());
+		}
+		dbService.close();
+
+		// THEN:
+		Mockito.verify(delegate, Mockito.times(3)).persistBatch(Mockito.anyList(), Mockito.anyList());
+		Assert.assertEquals(0, dbService.pendingSize());
+	}
+
+	@Test
+	public void testDurableModeWaitsForFlush() {
+		// GIVEN:
+		WriteBehindDBService dbService = new WriteBehindDBService(delegate, 100, 10, 100, true);
+
+		// WHEN:
+		dbService.savePerson(new Person.Builder("Person1", 50).build());
+		dbService.awaitPersisted();
+
+		// THEN:
+		Mockito.verify(delegate).persistBatch(Mockito.anyList(), Mockito.anyList());
+		Assert.assertEquals(0, dbService.pendingSize());
+		dbService.close();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testDurableModeReportsFailures() {
+		// GIVEN:
+		WriteBehindDBService dbService = new WriteBehindDBService(delegate, 1, 0, 1, true);
+		Mockito.doThrow(new RuntimeException("store is down"))
+				.when(delegate).persistBatch(Mockito.anyList(), Mockito.anyList());
+
+		// WHEN:
+		dbService.savePerson(new Person.Builder("Person1", 50).build());
+		dbService.awaitPersisted();
+	}
+}